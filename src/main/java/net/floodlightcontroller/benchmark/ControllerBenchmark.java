@@ -0,0 +1,395 @@
+package net.floodlightcontroller.benchmark;
+
+import java.io.PrintStream;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.internal.OFMessageDecoder;
+import net.floodlightcontroller.core.internal.OFMessageEncoder;
+import net.floodlightcontroller.perfmon.LatencyHistogram;
+
+import org.jboss.netty.bootstrap.ClientBootstrap;
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelPipeline;
+import org.jboss.netty.channel.ChannelPipelineFactory;
+import org.jboss.netty.channel.Channels;
+import org.jboss.netty.channel.socket.nio.NioClientSocketChannelFactory;
+import org.kohsuke.args4j.CmdLineException;
+import org.kohsuke.args4j.CmdLineParser;
+import org.kohsuke.args4j.Option;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+/**
+ * Measures the throughput and latency of a running controller in the
+ * manner of cbench.  It connects a number of {@link SimulatedSwitch}es to
+ * the controller, lets them complete the OpenFlow handshake, and then has
+ * them send packet-ins while counting the flow-mods that come back.
+ *
+ * In throughput mode, each switch keeps up to a window of packet-ins
+ * waiting for a response, or sends at a fixed rate.  In latency mode each
+ * switch sends the next packet-in only once the last one was answered.
+ *
+ * To compare applications, run the controller with a configuration that
+ * loads the application to test, e.g. Forwarding, LearningSwitch,
+ * L2Pairs or the firewall, then run:
+ * <pre>
+ * java -cp 'target/floodlight.jar' \
+ *   net.floodlightcontroller.benchmark.ControllerBenchmark -s 16 -m 1000 -l 10
+ * </pre>
+ */
+public class ControllerBenchmark {
+    /**
+     * Command-line settings
+     */
+    protected static class BenchmarkSettings {
+        @Option(name="--help", aliases="-h",
+                usage="Show help")
+        protected boolean help;
+
+        @Option(name="--controller", aliases="-c",
+                usage="Controller hostname (default \"localhost\")")
+        protected String hostname = "localhost";
+
+        @Option(name="--port", aliases="-p",
+                usage="Controller OpenFlow port (default 6653)")
+        protected int port = 6653;
+
+        @Option(name="--switches", aliases="-s",
+                usage="Number of switches to simulate (default 16)")
+        protected int switches = 16;
+
+        @Option(name="--hosts", aliases="-M",
+                usage="Number of hosts on each switch, at most 254 " +
+                      "(default 16)")
+        protected int hosts = 16;
+
+        @Option(name="--version", aliases="-V",
+                usage="OpenFlow version to use, 1.0 or 1.3 (default 1.3)")
+        protected String version = "1.3";
+
+        @Option(name="--latency", aliases="-t",
+                usage="Run in latency mode, with one packet-in per switch " +
+                      "waiting for a response at a time, rather than in " +
+                      "throughput mode")
+        protected boolean latency;
+
+        @Option(name="--window", aliases="-W",
+                usage="In throughput mode, the most packet-ins per switch " +
+                      "waiting for a response (default 1000)")
+        protected int window = 1000;
+
+        @Option(name="--rate", aliases="-r",
+                usage="In throughput mode, the packet-ins to send per " +
+                      "second per switch, or 0 to send whenever the " +
+                      "window allows (default 0)")
+        protected long rate = 0;
+
+        @Option(name="--mix",
+                usage="Weights of the packet types to send as " +
+                      "tcp:N,arp:N,lldp:N (default tcp:8,arp:1,lldp:1)")
+        protected String mix = "tcp:8,arp:1,lldp:1";
+
+        @Option(name="--count-packet-outs",
+                usage="Also count packet-outs as responses, for " +
+                      "applications that do not install flows.  Do not " +
+                      "use with applications that answer with both")
+        protected boolean countPacketOuts;
+
+        @Option(name="--duration", aliases="-m",
+                usage="Length of each test loop in ms (default 1000)")
+        protected long duration = 1000;
+
+        @Option(name="--loops", aliases="-l",
+                usage="Number of test loops (default 10)")
+        protected int loops = 10;
+
+        @Option(name="--warmup", aliases="-w",
+                usage="Number of loops to run before measuring (default 1)")
+        protected int warmup = 1;
+
+        @Option(name="--timeout",
+                usage="Time in ms after which a packet-in is counted as " +
+                      "unanswered (default 1000)")
+        protected long timeout = 1000;
+
+        @Option(name="--connect-timeout",
+                usage="Time in ms to wait for all switches to complete " +
+                      "the handshake (default 30000)")
+        protected long connectTimeout = 30000;
+
+        CmdLineParser parser = new CmdLineParser(this);
+
+        protected OFVersion ofVersion;
+        protected int[] weights;
+
+        protected void init(String[] args) {
+            try {
+                parser.parseArgument(args);
+                ofVersion = parseVersion(version);
+                weights = parseMix(mix);
+                if (hosts < 1 || hosts > 254)
+                    throw new CmdLineException(parser,
+                            "hosts must be between 1 and 254");
+                if (switches < 1)
+                    throw new CmdLineException(parser,
+                            "switches must be at least 1");
+            } catch (CmdLineException e) {
+                System.err.println(e.getMessage());
+                parser.printUsage(System.err);
+                System.exit(1);
+            }
+            if (help) {
+                parser.printUsage(System.err);
+                System.exit(1);
+            }
+        }
+
+        private OFVersion parseVersion(String v) throws CmdLineException {
+            if ("1.0".equals(v))
+                return OFVersion.OF_10;
+            if ("1.3".equals(v))
+                return OFVersion.OF_13;
+            throw new CmdLineException(parser,
+                                       "Unsupported OpenFlow version " + v);
+        }
+
+        private int[] parseMix(String m) throws CmdLineException {
+            SimulatedSwitch.PacketType[] types =
+                    SimulatedSwitch.PacketType.values();
+            int[] w = new int[types.length];
+            int total = 0;
+            for (String part : m.split(",")) {
+                String[] kv = part.trim().split(":");
+                try {
+                    SimulatedSwitch.PacketType t = SimulatedSwitch.PacketType
+                            .valueOf(kv[0].trim().toUpperCase());
+                    w[t.ordinal()] = Integer.parseInt(kv[1].trim());
+                    if (w[t.ordinal()] < 0)
+                        throw new NumberFormatException();
+                    total += w[t.ordinal()];
+                } catch (RuntimeException e) {
+                    throw new CmdLineException(parser,
+                                               "Invalid traffic mix " + m);
+                }
+            }
+            if (total == 0)
+                throw new CmdLineException(parser,
+                                           "Invalid traffic mix " + m);
+            return w;
+        }
+    }
+
+    protected BenchmarkSettings settings;
+    protected PrintStream out = System.out;
+
+    protected ClientBootstrap bootstrap;
+    protected ScheduledExecutorService ticker;
+    protected List<SimulatedSwitch> switches =
+            new ArrayList<SimulatedSwitch>();
+
+    public ControllerBenchmark(BenchmarkSettings settings) {
+        this.settings = settings;
+    }
+
+    /**
+     * Connect the simulated switches and wait for their handshakes
+     * @return the number of switches that completed the handshake
+     */
+    protected int connect() throws InterruptedException {
+        bootstrap = new ClientBootstrap(
+                new NioClientSocketChannelFactory(
+                        Executors.newCachedThreadPool(),
+                        Executors.newCachedThreadPool()));
+        bootstrap.setOption("tcpNoDelay", true);
+        bootstrap.setOption("keepAlive", true);
+        bootstrap.setOption("connectTimeoutMillis",
+                            (int)settings.connectTimeout);
+
+        OFFactory factory = OFFactories.getFactory(settings.ofVersion);
+        int window = settings.latency ? 1 : settings.window;
+        long rate = settings.latency ? 0 : settings.rate;
+        CountDownLatch ready = new CountDownLatch(settings.switches);
+        InetSocketAddress address =
+                new InetSocketAddress(settings.hostname, settings.port);
+
+        for (int i = 0; i < settings.switches; i++) {
+            final SimulatedSwitch sw =
+                    new SimulatedSwitch(DatapathId.of(i + 1), factory,
+                                        settings.hosts, settings.weights,
+                                        window, rate, settings.timeout,
+                                        settings.countPacketOuts, ready);
+            switches.add(sw);
+            // the pipeline is created within connect()
+            bootstrap.setPipelineFactory(new ChannelPipelineFactory() {
+                @Override
+                public ChannelPipeline getPipeline() throws Exception {
+                    return Channels.pipeline(new OFMessageDecoder(),
+                                             new OFMessageEncoder(),
+                                             sw);
+                }
+            });
+            bootstrap.connect(address);
+        }
+
+        ready.await(settings.connectTimeout, TimeUnit.MILLISECONDS);
+        int complete = 0;
+        for (SimulatedSwitch sw : switches) {
+            if (sw.isHandshakeComplete())
+                complete += 1;
+        }
+        return complete;
+    }
+
+    private long totalResponses() {
+        long r = 0;
+        for (SimulatedSwitch sw : switches)
+            r += sw.getResponses();
+        return r;
+    }
+
+    private long totalSent() {
+        long r = 0;
+        for (SimulatedSwitch sw : switches)
+            r += sw.getSent();
+        return r;
+    }
+
+    private long totalUnanswered() {
+        long r = 0;
+        for (SimulatedSwitch sw : switches)
+            r += sw.getUnanswered();
+        return r;
+    }
+
+    /**
+     * Run the warmup and test loops and print the results
+     */
+    protected void run() throws InterruptedException {
+        for (SimulatedSwitch sw : switches) {
+            if (sw.isHandshakeComplete())
+                sw.start();
+        }
+        ticker = Executors.newSingleThreadScheduledExecutor();
+        ticker.scheduleAtFixedRate(new Runnable() {
+            @Override
+            public void run() {
+                for (SimulatedSwitch sw : switches) {
+                    sw.tick();
+                }
+            }
+        }, 1, 1, TimeUnit.MILLISECONDS);
+
+        if (settings.warmup > 0) {
+            Thread.sleep(settings.warmup * settings.duration);
+            out.println("Warmup done");
+        }
+        for (SimulatedSwitch sw : switches) {
+            sw.getHistogram().reset();
+        }
+        long unansweredStart = totalUnanswered();
+
+        double[] results = new double[settings.loops];
+        for (int loop = 0; loop < settings.loops; loop++) {
+            long responses = totalResponses();
+            long sent = totalSent();
+            long start = System.nanoTime();
+            Thread.sleep(settings.duration);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            results[loop] = (totalResponses() - responses) / seconds;
+            out.printf("loop %d: %.0f responses/s, %.0f packet-ins/s%n",
+                       loop + 1, results[loop],
+                       (totalSent() - sent) / seconds);
+        }
+
+        for (SimulatedSwitch sw : switches) {
+            sw.stop();
+        }
+        ticker.shutdown();
+        printSummary(results, totalUnanswered() - unansweredStart);
+    }
+
+    private void printSummary(double[] results, long unanswered) {
+        if (results.length == 0)
+            return;
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        double sum = 0;
+        for (double r : results) {
+            min = Math.min(min, r);
+            max = Math.max(max, r);
+            sum += r;
+        }
+        double avg = sum / results.length;
+        double var = 0;
+        for (double r : results) {
+            var += (r - avg) * (r - avg);
+        }
+        double stdev = Math.sqrt(var / results.length);
+        LatencyHistogram histogram = new LatencyHistogram();
+        for (SimulatedSwitch sw : switches) {
+            histogram.add(sw.getHistogram());
+        }
+
+        out.printf("%s mode, %d switches, %d loops of %d ms%n",
+                   settings.latency ? "Latency" : "Throughput",
+                   switches.size(), results.length, settings.duration);
+        out.printf("responses/s: min %.0f, max %.0f, avg %.0f, stdev %.0f%n",
+                   min, max, avg, stdev);
+        out.printf("latency us: p50 %d, p90 %d, p99 %d, p99.9 %d, " +
+                   "max %d, mean %d%n",
+                   micros(histogram.getValueAtPercentile(50)),
+                   micros(histogram.getValueAtPercentile(90)),
+                   micros(histogram.getValueAtPercentile(99)),
+                   micros(histogram.getValueAtPercentile(99.9)),
+                   micros(histogram.getMaxValue()),
+                   micros(histogram.getMean()));
+        out.printf("unanswered packet-ins: %d%n", unanswered);
+    }
+
+    private static long micros(long nanos) {
+        return TimeUnit.NANOSECONDS.toMicros(nanos);
+    }
+
+    /**
+     * Disconnect the switches and release all resources
+     */
+    protected void cleanup() {
+        if (ticker != null)
+            ticker.shutdownNow();
+        for (SimulatedSwitch sw : switches) {
+            Channel c = sw.getChannel();
+            if (c != null)
+                c.close().awaitUninterruptibly();
+        }
+        if (bootstrap != null)
+            bootstrap.releaseExternalResources();
+    }
+
+    // ****
+    // Main
+    // ****
+
+    public static void main(String[] args) throws Exception {
+        BenchmarkSettings settings = new BenchmarkSettings();
+        settings.init(args);
+
+        ControllerBenchmark benchmark = new ControllerBenchmark(settings);
+        try {
+            int connected = benchmark.connect();
+            benchmark.out.printf("%d of %d switches completed the " +
+                                 "handshake%n", connected, settings.switches);
+            if (connected > 0)
+                benchmark.run();
+        } finally {
+            benchmark.cleanup();
+        }
+    }
+}
@@ -0,0 +1,714 @@
+package net.floodlightcontroller.benchmark;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.LLDP;
+import net.floodlightcontroller.packet.LLDPTLV;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.perfmon.LatencyHistogram;
+
+import org.jboss.netty.channel.Channel;
+import org.jboss.netty.channel.ChannelHandlerContext;
+import org.jboss.netty.channel.ChannelStateEvent;
+import org.jboss.netty.channel.ExceptionEvent;
+import org.jboss.netty.channel.MessageEvent;
+import org.jboss.netty.channel.SimpleChannelHandler;
+import org.projectfloodlight.openflow.protocol.OFActionType;
+import org.projectfloodlight.openflow.protocol.OFCapabilities;
+import org.projectfloodlight.openflow.protocol.OFEchoRequest;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
+import org.projectfloodlight.openflow.protocol.OFFlowDelete;
+import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFNiciraControllerRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFPacketIn;
+import org.projectfloodlight.openflow.protocol.OFPacketInReason;
+import org.projectfloodlight.openflow.protocol.OFPacketOut;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFAuxId;
+import org.projectfloodlight.openflow.types.OFBufferId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A simulated OpenFlow switch on one connection to the controller.  It
+ * answers the controller's handshake and keep-alive requests and, once
+ * started, sends packet-ins from a set of simulated hosts attached to its
+ * ports.
+ *
+ * Every packet-in that can be answered is queued as outstanding until a
+ * response (a flow-mod, and optionally a packet-out) for its packet
+ * arrives. A flow-mod answers the oldest outstanding packet-in whose
+ * packet its match applies to, and a packet-out the oldest one with the
+ * same packet.  Responses that apply to no outstanding packet-in, such as
+ * the reverse flow some applications push along with the forward one, are
+ * not counted, so each packet-in is counted once. Since the switch never
+ * installs the flows it is sent, the same flows keep coming back as
+ * packet-ins.
+ */
+public class SimulatedSwitch extends SimpleChannelHandler {
+    protected static final Logger log =
+            LoggerFactory.getLogger(SimulatedSwitch.class);
+
+    /** The kinds of packets that can be sent in packet-ins */
+    public enum PacketType {
+        /** A TCP SYN from one host to another */
+        TCP,
+        /** A broadcast ARP request from one host for another */
+        ARP,
+        /** An LLDP frame from a device other than a controller */
+        LLDP
+    }
+
+    /** The number of different packets each switch cycles through */
+    private static final int PACKET_POOL = 256;
+    /** The most packet-ins sent at once */
+    private static final int MAX_BATCH = 256;
+    private static final MacAddress LLDP_DST =
+            MacAddress.of("01:80:c2:00:00:0e");
+    /** The most flow-mod matches whose packets are remembered */
+    private static final int MATCH_CACHE_SIZE = 4 * PACKET_POOL;
+    /** The fields set in the matches of the packets */
+    private static final Set<MatchField<?>> PACKET_FIELDS =
+            new HashSet<MatchField<?>>(Arrays.<MatchField<?>>asList(
+                    MatchField.IN_PORT, MatchField.ETH_SRC,
+                    MatchField.ETH_DST, MatchField.ETH_TYPE,
+                    MatchField.IP_PROTO, MatchField.IPV4_SRC,
+                    MatchField.IPV4_DST, MatchField.TCP_SRC,
+                    MatchField.TCP_DST));
+
+    private final DatapathId dpid;
+    private final OFFactory factory;
+    private final int hosts;
+    private final int window;
+    private final long ratePerSecond;
+    private final long timeoutNs;
+    private final boolean countPacketOuts;
+    private final CountDownLatch ready;
+    /** The latencies of the responses in nanoseconds */
+    private final LatencyHistogram histogram = new LatencyHistogram();
+
+    /** The packets sent, in the order of the traffic mix */
+    private final byte[][] packets = new byte[PACKET_POOL][];
+    private final boolean[] answerable = new boolean[PACKET_POOL];
+    private final OFPort[] inPorts = new OFPort[PACKET_POOL];
+    /** The fields of each packet a flow-mod for it can match on */
+    private final Match[] packetMatches = new Match[PACKET_POOL];
+    /** The indices of the packets with the given contents */
+    private final Map<ByteBuffer, int[]> packetsByData =
+            new HashMap<ByteBuffer, int[]>();
+    /** The indices of the packets the given flow-mod matches apply to */
+    private final Map<Match, int[]> packetsByMatch =
+            new HashMap<Match, int[]>();
+
+    private volatile Channel channel;
+    private volatile boolean connected;
+    private volatile boolean handshakeComplete;
+    private volatile boolean running;
+
+    /** For each packet, the send times of its packet-ins waiting for a
+     * response */
+    private final List<ArrayDeque<Long>> outstanding =
+            new ArrayList<ArrayDeque<Long>>(PACKET_POOL);
+    private int outstandingCount;
+    private int next;
+    private long nextXid = 1;
+    private long lastTickNs;
+    private double credit;
+
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong responses = new AtomicLong();
+    private final AtomicLong unanswered = new AtomicLong();
+
+    /**
+     * @param dpid the datapath ID of the switch
+     * @param factory the factory for the OpenFlow version to use
+     * @param hosts the number of hosts, one on each port
+     * @param mix the traffic mix as weights for each packet type
+     * @param window the most packet-ins waiting for a response at a time
+     * @param ratePerSecond the packet-ins to send per second, or 0 to
+     * send whenever the window allows
+     * @param timeoutMs the time after which a packet-in is given up on
+     * @param countPacketOuts whether packet-outs count as responses
+     * @param ready counted down once the handshake completed or the
+     * connection failed
+     */
+    public SimulatedSwitch(DatapathId dpid, OFFactory factory, int hosts,
+                           int[] mix, int window, long ratePerSecond,
+                           long timeoutMs, boolean countPacketOuts,
+                           CountDownLatch ready) {
+        this.dpid = dpid;
+        this.factory = factory;
+        this.hosts = hosts;
+        this.window = window;
+        this.ratePerSecond = ratePerSecond;
+        this.timeoutNs = TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        this.countPacketOuts = countPacketOuts;
+        this.ready = ready;
+        buildPackets(mix);
+    }
+
+    // ******************
+    // Traffic generation
+    // ******************
+
+    private MacAddress hostMac(int host) {
+        return MacAddress.of((0x02L << 40) |
+                             ((dpid.getLong() & 0xffffff) << 16) | host);
+    }
+
+    private int hostIp(int host) {
+        return (10 << 24) | (((int)dpid.getLong() & 0xffff) << 8) |
+                (host + 1);
+    }
+
+    private static OFPort hostPort(int host) {
+        return OFPort.of(host + 1);
+    }
+
+    private void buildPackets(int[] mix) {
+        int total = 0;
+        for (int w : mix)
+            total += w;
+        PacketType[] types = PacketType.values();
+        for (int i = 0; i < PACKET_POOL; i++) {
+            // spread the packet types evenly by their weights
+            int slot = i % total;
+            PacketType type = types[0];
+            for (int t = 0; t < mix.length; t++) {
+                if (slot < mix[t]) {
+                    type = types[t];
+                    break;
+                }
+                slot -= mix[t];
+            }
+            int src = i % hosts;
+            int dst = (i + 1) % hosts;
+            inPorts[i] = hostPort(src);
+            // a broadcast ARP is usually only answered with a packet-out
+            answerable[i] = (type == PacketType.TCP) ||
+                    (type == PacketType.ARP && countPacketOuts);
+            packets[i] = buildPacket(type, src, dst, i).serialize();
+            packetMatches[i] = buildMatch(type, src, dst, i);
+            outstanding.add(new ArrayDeque<Long>());
+
+            ByteBuffer data = ByteBuffer.wrap(packets[i]);
+            int[] same = packetsByData.get(data);
+            same = (same == null) ? new int[1] :
+                    Arrays.copyOf(same, same.length + 1);
+            same[same.length - 1] = i;
+            packetsByData.put(data, same);
+        }
+    }
+
+    private Ethernet buildPacket(PacketType type, int src, int dst, int i) {
+        Ethernet eth = new Ethernet().setSourceMACAddress(hostMac(src));
+        switch (type) {
+            case ARP:
+                eth.setDestinationMACAddress(MacAddress.BROADCAST)
+                   .setEtherType(Ethernet.TYPE_ARP)
+                   .setPayload(new ARP()
+                        .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                        .setProtocolType(ARP.PROTO_TYPE_IP)
+                        .setHardwareAddressLength((byte)6)
+                        .setProtocolAddressLength((byte)4)
+                        .setOpCode(ARP.OP_REQUEST)
+                        .setSenderHardwareAddress(hostMac(src).getBytes())
+                        .setSenderProtocolAddress(hostIp(src))
+                        .setTargetHardwareAddress(new byte[6])
+                        .setTargetProtocolAddress(hostIp(dst)));
+                break;
+            case LLDP:
+                byte[] portId = new byte[] {2, 0, (byte)(src + 1)};
+                LLDP lldp = new LLDP();
+                lldp.setChassisId(new LLDPTLV().setType((byte)1)
+                        .setLength((short)7)
+                        .setValue(concat(new byte[] {4},
+                                         hostMac(src).getBytes())));
+                lldp.setPortId(new LLDPTLV().setType((byte)2)
+                        .setLength((short)portId.length)
+                        .setValue(portId));
+                lldp.setTtl(new LLDPTLV().setType((byte)3)
+                        .setLength((short)2)
+                        .setValue(new byte[] {0, 120}));
+                eth.setDestinationMACAddress(LLDP_DST)
+                   .setEtherType(Ethernet.TYPE_LLDP)
+                   .setPayload(lldp);
+                break;
+            case TCP:
+            default:
+                eth.setDestinationMACAddress(hostMac(dst))
+                   .setEtherType(Ethernet.TYPE_IPv4)
+                   .setPayload(new IPv4()
+                        .setTtl((byte)64)
+                        .setProtocol(IpProtocol.TCP)
+                        .setSourceAddress(hostIp(src))
+                        .setDestinationAddress(hostIp(dst))
+                        .setPayload(new TCP()
+                            .setSourcePort(1024 + i)
+                            .setDestinationPort(80)
+                            .setFlags((short)0x02)
+                            .setWindowSize((short)8192)
+                            .setPayload(new Data(new byte[0]))));
+                break;
+        }
+        return eth;
+    }
+
+    private Match buildMatch(PacketType type, int src, int dst, int i) {
+        Match.Builder mb = factory.buildMatch()
+                .setExact(MatchField.IN_PORT, hostPort(src))
+                .setExact(MatchField.ETH_SRC, hostMac(src));
+        switch (type) {
+            case ARP:
+                mb.setExact(MatchField.ETH_DST, MacAddress.BROADCAST)
+                  .setExact(MatchField.ETH_TYPE, EthType.ARP);
+                break;
+            case LLDP:
+                mb.setExact(MatchField.ETH_DST, LLDP_DST)
+                  .setExact(MatchField.ETH_TYPE, EthType.LLDP);
+                break;
+            case TCP:
+            default:
+                mb.setExact(MatchField.ETH_DST, hostMac(dst))
+                  .setExact(MatchField.ETH_TYPE, EthType.IPv4)
+                  .setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+                  .setExact(MatchField.IPV4_SRC, IPv4Address.of(hostIp(src)))
+                  .setExact(MatchField.IPV4_DST, IPv4Address.of(hostIp(dst)))
+                  .setExact(MatchField.TCP_SRC, TransportPort.of(1024 + i))
+                  .setExact(MatchField.TCP_DST, TransportPort.of(80));
+                break;
+        }
+        return mb.build();
+    }
+
+    private static byte[] concat(byte[] a, byte[] b) {
+        byte[] r = new byte[a.length + b.length];
+        System.arraycopy(a, 0, r, 0, a.length);
+        System.arraycopy(b, 0, r, a.length, b.length);
+        return r;
+    }
+
+    private OFPacketIn buildPacketIn(int i) {
+        OFPacketIn.Builder pib = factory.buildPacketIn()
+                .setXid(nextXid++)
+                .setBufferId(OFBufferId.NO_BUFFER)
+                .setTotalLen(packets[i].length)
+                .setReason(OFPacketInReason.NO_MATCH)
+                .setData(packets[i]);
+        if (factory.getVersion().compareTo(OFVersion.OF_12) < 0) {
+            pib.setInPort(inPorts[i]);
+        } else {
+            pib.setMatch(factory.buildMatch()
+                         .setExact(MatchField.IN_PORT, inPorts[i])
+                         .build());
+        }
+        return pib.build();
+    }
+
+    /**
+     * Start sending packet-ins
+     */
+    public synchronized void start() {
+        running = true;
+        lastTickNs = System.nanoTime();
+        credit = 0;
+        send(lastTickNs);
+    }
+
+    /**
+     * Stop sending packet-ins
+     */
+    public synchronized void stop() {
+        running = false;
+    }
+
+    /**
+     * Give up on packet-ins that have been waiting too long and send more
+     * if the rate and the window allow.  Should be called periodically
+     * while the switch is running.
+     */
+    public synchronized void tick() {
+        long now = System.nanoTime();
+        for (ArrayDeque<Long> q : outstanding) {
+            Long head;
+            while ((head = q.peek()) != null && now - head > timeoutNs) {
+                q.poll();
+                outstandingCount -= 1;
+                unanswered.incrementAndGet();
+            }
+        }
+        if (ratePerSecond > 0) {
+            credit = Math.min(credit + (now - lastTickNs) *
+                              ratePerSecond / 1e9, MAX_BATCH);
+        }
+        lastTickNs = now;
+        send(now);
+    }
+
+    private void send(long now) {
+        Channel c = channel;
+        if (!running || !connected || c == null || !c.isWritable())
+            return;
+        List<OFMessage> msgs = new ArrayList<OFMessage>();
+        while (msgs.size() < MAX_BATCH) {
+            if (ratePerSecond > 0 && credit < 1)
+                break;
+            if (answerable[next] && outstandingCount >= window)
+                break;
+            if (answerable[next]) {
+                outstanding.get(next).add(now);
+                outstandingCount += 1;
+            }
+            msgs.add(buildPacketIn(next));
+            next = (next + 1) % PACKET_POOL;
+            if (ratePerSecond > 0)
+                credit -= 1;
+        }
+        if (!msgs.isEmpty()) {
+            sent.addAndGet(msgs.size());
+            c.write(msgs);
+        }
+    }
+
+    /**
+     * @return whether a flow with the given match applies to the packet
+     * with the given match.  Only the fields we set for the packets are
+     * compared, and masked fields are taken to apply.
+     */
+    @SuppressWarnings({ "rawtypes", "unchecked" })
+    private static boolean applies(Match flow, Match packet) {
+        for (MatchField f : flow.getMatchFields()) {
+            if (!PACKET_FIELDS.contains(f) || !flow.isExact(f))
+                continue;
+            if (!packet.isExact(f) || !flow.get(f).equals(packet.get(f)))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * @return the indices of the packets a flow with the given match
+     * applies to
+     */
+    private int[] packetsMatching(Match match) {
+        int[] r = packetsByMatch.get(match);
+        if (r != null)
+            return r;
+        r = new int[PACKET_POOL];
+        int n = 0;
+        for (int i = 0; i < PACKET_POOL; i++) {
+            if (applies(match, packetMatches[i]))
+                r[n++] = i;
+        }
+        r = Arrays.copyOf(r, n);
+        // the same flows keep coming back, so this rarely fills up
+        if (packetsByMatch.size() >= MATCH_CACHE_SIZE)
+            packetsByMatch.clear();
+        packetsByMatch.put(match, r);
+        return r;
+    }
+
+    /**
+     * Take the oldest outstanding packet-in for any of the given packets
+     * as answered
+     * @param candidates the indices of the packets the response is for
+     */
+    private synchronized void response(int[] candidates) {
+        ArrayDeque<Long> oldest = null;
+        for (int i : candidates) {
+            ArrayDeque<Long> q = outstanding.get(i);
+            Long head = q.peek();
+            if (head != null &&
+                (oldest == null || head - oldest.peek() < 0))
+                oldest = q;
+        }
+        if (oldest == null) {
+            // not for a packet-in of ours, e.g. a flow-mod sent as part
+            // of the handshake or a second flow-mod for a packet-in
+            return;
+        }
+        long sentAt = oldest.poll();
+        outstandingCount -= 1;
+        long now = System.nanoTime();
+        responses.incrementAndGet();
+        histogram.recordValue(now - sentAt);
+        send(now);
+    }
+
+    private synchronized void flowModReceived(OFFlowMod fm) {
+        if (fm instanceof OFFlowDelete || fm instanceof OFFlowDeleteStrict)
+            return;
+        response(packetsMatching(fm.getMatch()));
+    }
+
+    private void packetOutReceived(OFPacketOut po) {
+        byte[] data = po.getData();
+        if (data == null || data.length == 0)
+            return;
+        int[] candidates = packetsByData.get(ByteBuffer.wrap(data));
+        if (candidates != null)
+            response(candidates);
+    }
+
+    // ********************
+    // Handshake processing
+    // ********************
+
+    private List<OFPortDesc> getPorts() {
+        List<OFPortDesc> ports = new ArrayList<OFPortDesc>();
+        for (int h = 0; h < hosts; h++) {
+            ports.add(factory.buildPortDesc()
+                      .setPortNo(hostPort(h))
+                      .setName("eth" + (h + 1))
+                      .setHwAddr(hostMac(h))
+                      .build());
+        }
+        return ports;
+    }
+
+    private OFFeaturesReply getFeaturesReply(long xid) {
+        OFFeaturesReply.Builder frb = factory.buildFeaturesReply()
+                .setXid(xid)
+                .setDatapathId(dpid)
+                .setNBuffers(0)
+                .setNTables((short)1)
+                .setCapabilities(EnumSet.<OFCapabilities>of(
+                        OFCapabilities.FLOW_STATS,
+                        OFCapabilities.TABLE_STATS,
+                        OFCapabilities.PORT_STATS));
+        if (factory.getVersion() == OFVersion.OF_10) {
+            frb.setActions(EnumSet.<OFActionType>of(OFActionType.OUTPUT))
+               .setPorts(getPorts());
+        } else {
+            frb.setAuxiliaryId(OFAuxId.MAIN);
+        }
+        return frb.build();
+    }
+
+    private void processStatsRequest(OFStatsRequest<?> m,
+                                     List<OFMessage> out) {
+        switch (m.getStatsType()) {
+            case DESC:
+                out.add(factory.buildDescStatsReply()
+                        .setXid(m.getXid())
+                        .setMfrDesc("Floodlight")
+                        .setHwDesc("Simulated switch")
+                        .setSwDesc("ControllerBenchmark")
+                        .setSerialNum(dpid.toString())
+                        .setDpDesc("Simulated switch " + dpid)
+                        .build());
+                break;
+            case PORT_DESC:
+                out.add(factory.buildPortDescStatsReply()
+                        .setXid(m.getXid())
+                        .setEntries(getPorts())
+                        .build());
+                break;
+            default:
+                log.debug("Ignoring {} stats request", m.getStatsType());
+                break;
+        }
+    }
+
+    private void handshakeComplete() {
+        if (!handshakeComplete) {
+            handshakeComplete = true;
+            ready.countDown();
+        }
+    }
+
+    private void processMessage(OFMessage m, List<OFMessage> out) {
+        switch (m.getType()) {
+            case HELLO:
+            case SET_CONFIG:
+                break;
+            case ECHO_REQUEST:
+                out.add(factory.buildEchoReply()
+                        .setXid(m.getXid())
+                        .setData(((OFEchoRequest)m).getData())
+                        .build());
+                break;
+            case FEATURES_REQUEST:
+                out.add(getFeaturesReply(m.getXid()));
+                break;
+            case GET_CONFIG_REQUEST:
+                out.add(factory.buildGetConfigReply()
+                        .setXid(m.getXid())
+                        .setMissSendLen(0xffff)
+                        .build());
+                break;
+            case BARRIER_REQUEST:
+                out.add(factory.buildBarrierReply()
+                        .setXid(m.getXid())
+                        .build());
+                break;
+            case STATS_REQUEST:
+                processStatsRequest((OFStatsRequest<?>)m, out);
+                break;
+            case ROLE_REQUEST:
+                OFRoleRequest rr = (OFRoleRequest)m;
+                out.add(factory.buildRoleReply()
+                        .setXid(rr.getXid())
+                        .setRole(rr.getRole())
+                        .setGenerationId(rr.getGenerationId())
+                        .build());
+                handshakeComplete();
+                break;
+            case EXPERIMENTER:
+                if (m instanceof OFNiciraControllerRoleRequest) {
+                    OFNiciraControllerRoleRequest nrr =
+                            (OFNiciraControllerRoleRequest)m;
+                    out.add(factory.buildNiciraControllerRoleReply()
+                            .setXid(nrr.getXid())
+                            .setRole(nrr.getRole())
+                            .build());
+                    handshakeComplete();
+                }
+                break;
+            case FLOW_MOD:
+                flowModReceived((OFFlowMod)m);
+                break;
+            case PACKET_OUT:
+                if (countPacketOuts)
+                    packetOutReceived((OFPacketOut)m);
+                break;
+            default:
+                log.debug("Ignoring {} from the controller", m.getType());
+                break;
+        }
+    }
+
+    // *****************
+    // Channel callbacks
+    // *****************
+
+    @Override
+    public void channelConnected(ChannelHandlerContext ctx,
+                                 ChannelStateEvent e) throws Exception {
+        channel = e.getChannel();
+        connected = true;
+        List<OFMessage> hello = new ArrayList<OFMessage>();
+        hello.add(factory.buildHello().setXid(0).build());
+        channel.write(hello);
+    }
+
+    @Override
+    public void channelClosed(ChannelHandlerContext ctx,
+                              ChannelStateEvent e) throws Exception {
+        connected = false;
+        if (!handshakeComplete) {
+            log.warn("Switch {} disconnected during the handshake", dpid);
+            // don't keep the benchmark waiting for this switch
+            ready.countDown();
+        } else if (running) {
+            log.warn("Switch {} disconnected", dpid);
+        }
+    }
+
+    @Override
+    public void channelInterestChanged(ChannelHandlerContext ctx,
+                                       ChannelStateEvent e)
+                                               throws Exception {
+        // the channel may have become writable again
+        synchronized (this) {
+            send(System.nanoTime());
+        }
+    }
+
+    @Override
+    public void messageReceived(ChannelHandlerContext ctx, MessageEvent e)
+            throws Exception {
+        if (!(e.getMessage() instanceof List))
+            return;
+        @SuppressWarnings("unchecked")
+        List<OFMessage> msgs = (List<OFMessage>)e.getMessage();
+        List<OFMessage> out = new ArrayList<OFMessage>();
+        for (OFMessage m : msgs) {
+            processMessage(m, out);
+        }
+        if (!out.isEmpty())
+            e.getChannel().write(out);
+    }
+
+    @Override
+    public void exceptionCaught(ChannelHandlerContext ctx, ExceptionEvent e)
+            throws Exception {
+        log.error("Error on the connection of switch " + dpid,
+                  e.getCause());
+        e.getChannel().close();
+    }
+
+    // *******
+    // Getters
+    // *******
+
+    public DatapathId getId() {
+        return dpid;
+    }
+
+    public Channel getChannel() {
+        return channel;
+    }
+
+    public boolean isHandshakeComplete() {
+        return handshakeComplete;
+    }
+
+    public boolean isConnected() {
+        return connected;
+    }
+
+    /** @return the number of packet-ins sent */
+    public long getSent() {
+        return sent.get();
+    }
+
+    /** @return the number of packet-ins answered */
+    public long getResponses() {
+        return responses.get();
+    }
+
+    /** @return the number of packet-ins given up on */
+    public long getUnanswered() {
+        return unanswered.get();
+    }
+
+    /**
+     * @return the latencies of the responses in nanoseconds. It is only
+     * written by the switch, but can be merged and read by any thread.
+     */
+    public LatencyHistogram getHistogram() {
+        return histogram;
+    }
+}
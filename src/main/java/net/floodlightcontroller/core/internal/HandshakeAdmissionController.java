@@ -0,0 +1,185 @@
+package net.floodlightcontroller.core.internal;
+
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Limits the number of switch handshakes that run at the same time. When
+ * many switches connect at once, e.g. after a controller restart or
+ * failover, the handshakes over the limit wait in a queue in which
+ * switches we knew before go ahead of new ones. A handshake is started as
+ * soon as it is admitted; handshakes that had to wait are started through
+ * the given executor, never from the thread that released the slot.
+ *
+ * The time from the first handshake of a backlog until the last one of
+ * it completed is logged and exported as the time to full control.
+ */
+public class HandshakeAdmissionController {
+    private static final Logger log =
+            LoggerFactory.getLogger(HandshakeAdmissionController.class);
+
+    private static class Waiting implements Comparable<Waiting> {
+        final Object token;
+        final boolean known;
+        final long seq;
+        final Runnable start;
+
+        Waiting(Object token, boolean known, long seq, Runnable start) {
+            this.token = token;
+            this.known = known;
+            this.seq = seq;
+            this.start = start;
+        }
+
+        @Override
+        public int compareTo(Waiting o) {
+            if (known != o.known)
+                return known ? -1 : 1;
+            return (seq < o.seq) ? -1 : ((seq == o.seq) ? 0 : 1);
+        }
+    }
+
+    private final int maxConcurrent;
+    private final Executor executor;
+    private final IDebugCounter ctrDeferred;
+    private final IDebugCounter ctrFullControlMs;
+
+    private final Set<Object> admitted = new HashSet<Object>();
+    private final PriorityQueue<Waiting> waiting = new PriorityQueue<Waiting>();
+    private final Map<Object, Waiting> waitingByToken =
+            new HashMap<Object, Waiting>();
+    private long seq;
+
+    /** When the current busy period started, or -1 if idle */
+    private long busySince = -1;
+    /** Handshakes admitted and deferred in the current busy period */
+    private int periodAdmitted;
+    private int periodDeferred;
+    private volatile long lastFullControlNs = -1;
+
+    /**
+     * @param maxConcurrent the maximum number of concurrent handshakes, or
+     * 0 for no limit
+     * @param executor runs the handshakes that had to wait
+     * @param ctrDeferred counts the handshakes that had to wait, may be null
+     * @param ctrFullControlMs holds the last time to full control, may be
+     * null
+     */
+    public HandshakeAdmissionController(int maxConcurrent, Executor executor,
+                                        IDebugCounter ctrDeferred,
+                                        IDebugCounter ctrFullControlMs) {
+        this.maxConcurrent = maxConcurrent;
+        this.executor = executor;
+        this.ctrDeferred = ctrDeferred;
+        this.ctrFullControlMs = ctrFullControlMs;
+    }
+
+    /**
+     * Start a handshake now if there is room, or queue it
+     * @param token identifies the handshake in {@link #release(Object)}
+     * @param known whether the switch was known before; known switches
+     * are admitted first
+     * @param start starts the handshake
+     * @return true if the handshake was started, false if it was queued
+     */
+    public boolean submit(Object token, boolean known, Runnable start) {
+        synchronized (this) {
+            if (busySince == -1) {
+                busySince = System.nanoTime();
+                periodAdmitted = 0;
+                periodDeferred = 0;
+            }
+            if (maxConcurrent > 0 && admitted.size() >= maxConcurrent) {
+                Waiting w = new Waiting(token, known, seq++, start);
+                Waiting old = waitingByToken.put(token, w);
+                if (old != null)
+                    waiting.remove(old);
+                waiting.add(w);
+                periodDeferred += 1;
+                if (ctrDeferred != null)
+                    ctrDeferred.increment();
+                return false;
+            }
+            admitted.add(token);
+            periodAdmitted += 1;
+        }
+        start.run();
+        return true;
+    }
+
+    /**
+     * Release the slot of a handshake that completed or failed, or drop it
+     * from the queue if it was still waiting
+     * @param token the token passed to {@link #submit(Object, boolean, Runnable)}
+     */
+    public void release(Object token) {
+        Waiting next = null;
+        synchronized (this) {
+            Waiting w = waitingByToken.remove(token);
+            if (w != null) {
+                waiting.remove(w);
+            } else if (admitted.remove(token)) {
+                next = waiting.poll();
+                if (next != null) {
+                    waitingByToken.remove(next.token);
+                    admitted.add(next.token);
+                    periodAdmitted += 1;
+                }
+            }
+            if (busySince != -1 && admitted.isEmpty() && waiting.isEmpty())
+                endBusyPeriod();
+        }
+        if (next != null)
+            executor.execute(next.start);
+    }
+
+    private void endBusyPeriod() {
+        long elapsed = System.nanoTime() - busySince;
+        busySince = -1;
+        if (periodDeferred == 0)
+            return;
+        lastFullControlNs = elapsed;
+        if (ctrFullControlMs != null) {
+            ctrFullControlMs.reset();
+            ctrFullControlMs.add(TimeUnit.NANOSECONDS.toMillis(elapsed));
+        }
+        log.info("Completed {} switch handshakes in {} ms, {} of them " +
+                 "waited for admission",
+                 new Object[] { periodAdmitted,
+                                TimeUnit.NANOSECONDS.toMillis(elapsed),
+                                periodDeferred });
+    }
+
+    /**
+     * @return true if handshakes are waiting for admission
+     */
+    public synchronized boolean isBackpressured() {
+        return !waiting.isEmpty();
+    }
+
+    public synchronized int getActiveCount() {
+        return admitted.size();
+    }
+
+    public synchronized int getWaitingCount() {
+        return waiting.size();
+    }
+
+    /**
+     * @return the time from the first to the last handshake of the last
+     * backlog, in nanoseconds, or -1 if there was no backlog yet
+     */
+    public long getLastFullControlNs() {
+        return lastFullControlNs;
+    }
+}
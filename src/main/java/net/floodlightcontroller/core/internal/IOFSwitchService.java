@@ -117,4 +117,12 @@ public interface IOFSwitchService extends IFloodlightService {
      */
     List<OFSwitchHandshakeHandler> getSwitchHandshakeHandlers();
 
+    /**
+     * Check whether switch handshakes are waiting for admission because
+     * too many switches connected at once. Modules can use this to defer
+     * work that every new switch triggers until the backlog is gone.
+     * @return true if switch handshakes are waiting
+     */
+    boolean isHandshakeBackpressured();
+
 }
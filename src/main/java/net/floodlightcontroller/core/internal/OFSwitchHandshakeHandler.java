@@ -105,6 +105,11 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 */
 	private long handshakeTransactionIds = 0x00FFFFFFFFL;
 
+	/** Whether to send the handshake requests in one write, see
+	 * {@link WaitPipelinedRepliesState}
+	 */
+	private boolean pipelinedHandshake = false;
+
 	/* Exponential backoff of master role assertion */
 	private final long MAX_ASSERT_TIME_INTERVAL_NS = TimeUnit.SECONDS.toNanos(120);
 	private final long DEFAULT_ROLE_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
@@ -811,30 +816,8 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		}
 
 		@Override
-		@LogMessageDocs({
-			@LogMessageDoc(level="WARN",
-					message="Config Reply from {switch} has " +
-							"miss length set to {length}",
-							explanation="The controller requires that the switch " +
-									"use a miss length of 0xffff for correct " +
-									"function",
-									recommendation="Use a different switch to ensure " +
-					"correct function")
-		})
 		void processOFGetConfigReply(OFGetConfigReply m) {
-			if (m.getMissSendLen() == 0xffff) {
-				log.trace("Config Reply from switch {} confirms "
-						+ "miss length set to 0xffff",
-						getSwitchInfoString());
-			} else {
-				// FIXME: we can't really deal with switches that don't send
-				// full packets. Shouldn't we drop the connection here?
-				// FIXME: count??
-				log.warn("Config Reply from switch {} has"
-						+ "miss length set to {}",
-						getSwitchInfoString(),
-						m.getMissSendLen());
-			}
+			checkConfigReply(m);
 			setState(new WaitDescriptionStatReplyState());
 		}
 
@@ -926,6 +909,84 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		}
 	}
 
+	/**
+	 * We sent the port description request (OF1.3+), the set config and
+	 * get config requests and the description stats request in a single
+	 * write, and are waiting for all the replies. Replies are matched by
+	 * their xid and may arrive in any order. Once we have all of them we
+	 * bind the switch as in {@link WaitDescriptionStatReplyState}.
+	 *
+	 * Next state: WaitInitialRoleState or WaitSwitchDriverSubHandshake
+	 */
+	public class WaitPipelinedRepliesState extends WaitDescriptionStatReplyState {
+		private long portDescXid = -1;
+		private long getConfigXid;
+		private long descXid;
+
+		private boolean configReplyReceived;
+		private OFDescStatsReply descStatsReply;
+
+		WaitPipelinedRepliesState() {
+			super();
+		}
+
+		@Override
+		void enterState() {
+			List<OFMessage> msgList = new ArrayList<OFMessage>();
+			if (factory.getVersion().compareTo(OFVersion.OF_13) >= 0) {
+				portDescXid = handshakeTransactionIds--;
+				msgList.add(factory.buildPortDescStatsRequest()
+						.setXid(portDescXid)
+						.build());
+			}
+			List<OFMessage> config = buildHandshakeSetConfig();
+			getConfigXid = config.get(config.size() - 1).getXid();
+			msgList.addAll(config);
+			OFDescStatsRequest descStatsRequest = buildHandshakeDescriptionStatsRequest();
+			descXid = descStatsRequest.getXid();
+			msgList.add(descStatsRequest);
+			mainConnection.write(msgList);
+		}
+
+		@Override
+		void processOFGetConfigReply(OFGetConfigReply m) {
+			if (m.getXid() != getConfigXid || configReplyReceived) {
+				illegalMessageReceived(m);
+				return;
+			}
+			checkConfigReply(m);
+			configReplyReceived = true;
+			bindIfComplete();
+		}
+
+		@Override
+		void processOFStatsReply(OFStatsReply m) {
+			if (m.getStatsType() == OFStatsType.PORT_DESC &&
+					m.getXid() == portDescXid && portDescStats == null) {
+				portDescStats = (OFPortDescStatsReply) m;
+			} else if (m.getStatsType() == OFStatsType.DESC &&
+					m.getXid() == descXid && descStatsReply == null) {
+				descStatsReply = (OFDescStatsReply) m;
+			} else {
+				illegalMessageReceived(m);
+				return;
+			}
+			bindIfComplete();
+		}
+
+		@Override
+		void processOFExperimenter(OFExperimenter m) {
+			unhandledMessageReceived(m);
+		}
+
+		private void bindIfComplete() {
+			if (!configReplyReceived || descStatsReply == null ||
+					(portDescXid != -1 && portDescStats == null))
+				return;
+			super.processOFStatsReply(descStatsReply);
+		}
+	}
+
 	public class WaitSwitchDriverSubHandshakeState extends OFSwitchHandshakeState {
 
 		WaitSwitchDriverSubHandshakeState() {
@@ -1333,7 +1394,9 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 					getSwitchInfoString());
 		}
 
-		if (this.featuresReply.getVersion().compareTo(OFVersion.OF_13) < 0) {
+		if (pipelinedHandshake) {
+			setState(new WaitPipelinedRepliesState());
+		} else if (this.featuresReply.getVersion().compareTo(OFVersion.OF_13) < 0) {
 			setState(new WaitConfigReplyState());
 		} else {
 			// OF 1.3. Ask for Port Descriptions
@@ -1437,6 +1500,13 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 * @throws IOException
 	 */
 	private void sendHandshakeSetConfig() {
+		mainConnection.write(buildHandshakeSetConfig());
+	}
+
+	/**
+	 * Build the set config, barrier and get config requests, in that order
+	 */
+	private List<OFMessage> buildHandshakeSetConfig() {
 		// Ensure we receive the full packet via PacketIn
 		// FIXME: We don't set the reassembly flags.
 		OFSetConfig configSet = factory.buildSetConfig()
@@ -1453,8 +1523,36 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		OFGetConfigRequest configReq = factory.buildGetConfigRequest()
 				.setXid(handshakeTransactionIds--)
 				.build();
-		List<OFMessage> msgList = ImmutableList.<OFMessage>of(configSet, barrier, configReq);
-		mainConnection.write(msgList);
+		return ImmutableList.<OFMessage>of(configSet, barrier, configReq);
+	}
+
+	/**
+	 * Check that the switch will send us full packets
+	 */
+	@LogMessageDocs({
+		@LogMessageDoc(level="WARN",
+				message="Config Reply from {switch} has " +
+						"miss length set to {length}",
+						explanation="The controller requires that the switch " +
+								"use a miss length of 0xffff for correct " +
+								"function",
+								recommendation="Use a different switch to ensure " +
+				"correct function")
+	})
+	private void checkConfigReply(OFGetConfigReply m) {
+		if (m.getMissSendLen() == 0xffff) {
+			log.trace("Config Reply from switch {} confirms "
+					+ "miss length set to 0xffff",
+					getSwitchInfoString());
+		} else {
+			// FIXME: we can't really deal with switches that don't send
+			// full packets. Shouldn't we drop the connection here?
+			// FIXME: count??
+			log.warn("Config Reply from switch {} has"
+					+ "miss length set to {}",
+					getSwitchInfoString(),
+					m.getMissSendLen());
+		}
 	}
 
 	protected void sendPortDescRequest() {
@@ -1466,10 +1564,13 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 	 */
 	private void sendHandshakeDescriptionStatsRequest() {
 		// Send description stats request to set switch-specific flags
-		OFDescStatsRequest descStatsRequest = factory.buildDescStatsRequest()
+		mainConnection.write(buildHandshakeDescriptionStatsRequest());
+	}
+
+	private OFDescStatsRequest buildHandshakeDescriptionStatsRequest() {
+		return factory.buildDescStatsRequest()
 				.setXid(handshakeTransactionIds--)
 				.build();
-		mainConnection.write(descStatsRequest);
 	}
 
 	OFSwitchHandshakeState getStateForTesting() {
@@ -1480,6 +1581,16 @@ public class OFSwitchHandshakeHandler implements IOFConnectionListener {
 		this.roleManager.reassertRole(this, HARole.ofOFRole(role));
 	}
 
+	/**
+	 * Send the handshake requests that don't depend on each other in a
+	 * single write instead of one round trip each. Must be called before
+	 * {@link #beginHandshake()}.
+	 * @param pipelined whether to pipeline the handshake
+	 */
+	void setPipelinedHandshake(boolean pipelined) {
+		this.pipelinedHandshake = pipelined;
+	}
+
 	void useRoleChangerWithOtherTimeoutForTesting(long roleTimeoutMs) {
 		roleChanger = new RoleChanger(TimeUnit.MILLISECONDS.toNanos(roleTimeoutMs));
 	}
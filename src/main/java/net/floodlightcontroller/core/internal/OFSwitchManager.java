@@ -3,6 +3,7 @@ package net.floodlightcontroller.core.internal;
 import java.net.InetSocketAddress;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
@@ -12,13 +13,17 @@ import java.util.TreeSet;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.Executor;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
 
 import org.jboss.netty.bootstrap.ServerBootstrap;
 import org.jboss.netty.channel.ChannelPipelineFactory;
 import org.jboss.netty.channel.group.ChannelGroup;
 import org.jboss.netty.channel.group.DefaultChannelGroup;
 import org.jboss.netty.channel.socket.nio.NioServerSocketChannelFactory;
+import org.jboss.netty.util.Timeout;
+import org.jboss.netty.util.TimerTask;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.HAListenerTypeMarker;
@@ -57,9 +62,11 @@ import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
+import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.IStoreClient;
 import org.sdnplatform.sync.IStoreListener;
 import org.sdnplatform.sync.ISyncService;
+import org.sdnplatform.sync.ISyncService.Scope;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.error.SyncException;
 import org.slf4j.Logger;
@@ -101,6 +108,25 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	private Set<LogicalOFMessageCategory> logicalOFMessageCategories = new CopyOnWriteArraySet<LogicalOFMessageCategory>();
 	private final List<IAppHandshakePluginFactory> handshakePlugins = new CopyOnWriteArrayList<IAppHandshakePluginFactory>();
 	private int numRequiredConnections = -1;
+	/** Whether new switches get a pipelined handshake, see
+	 * {@link OFSwitchHandshakeHandler#setPipelinedHandshake(boolean)}
+	 */
+	private boolean pipelinedHandshake = false;
+
+	/** Default for the maximum number of concurrent switch handshakes */
+	public static final int DEFAULT_MAX_CONCURRENT_HANDSHAKES = 256;
+	private HandshakeAdmissionController admissionController;
+	/** Switches that completed a handshake with us before, including
+	 * before a restart, see {@link #KNOWN_SWITCH_STORE_NAME}
+	 */
+	private Set<DatapathId> knownSwitches;
+	/** Persistent local store of the switches that completed a handshake,
+	 * mapping each DPID to the time it was first seen. It is loaded into
+	 * knownSwitches at startup so switches known before a restart get
+	 * admission priority.
+	 */
+	public static final String KNOWN_SWITCH_STORE_NAME = OFSwitchManager.class.getCanonicalName() + ".knownSwitches";
+	private IStoreClient<String, Long> knownSwitchStore;
 	// Event IDs for debug events
 	protected IEventCategory<SwitchEvent> evSwitch;
 
@@ -136,6 +162,8 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	@Override
 	public synchronized void switchAdded(IOFSwitchBackend sw) {
 		DatapathId dpid = sw.getId();
+		if (knownSwitches.add(dpid))
+			storeKnownSwitch(dpid);
 		IOFSwitchBackend oldSw = this.switches.put(dpid, sw);
 		// Update event history
 		evSwitch.newEventWithFlush(new SwitchEvent(dpid, "connected"));
@@ -201,6 +229,13 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 						oldStatus,
 						newStatus)));
 
+		if (newStatus != SwitchStatus.HANDSHAKE) {
+			// the handshake is over, let the next switch in
+			OFSwitchHandshakeHandler handler = switchHandlers.get(dpid);
+			if (handler != null)
+				admissionController.release(handler);
+		}
+
 		if(newStatus == SwitchStatus.MASTER  && role != OFControllerRole.ROLE_MASTER) {
 			counters.invalidSwitchActivatedWhileSlave.increment();
 			log.error("Switch {} activated but controller not MASTER", sw);
@@ -244,7 +279,9 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 	}
 
 	@Override public void handshakeDisconnected(DatapathId dpid) {
-		this.switchHandlers.remove(dpid);
+		OFSwitchHandshakeHandler handler = this.switchHandlers.remove(dpid);
+		if (handler != null)
+			admissionController.release(handler);
 	}
 
 	public Iterable<IOFSwitch> getActiveSwitches() {
@@ -403,19 +440,29 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		if(auxId.equals(OFAuxId.MAIN)) {
 
 			// Create a new switch handshake handler
-			OFSwitchHandshakeHandler handler =
+			final OFSwitchHandshakeHandler handler =
 					new OFSwitchHandshakeHandler(connection, featuresReply, this,
 							floodlightProvider.getRoleManager(), floodlightProvider.getTimer());
+			handler.setPipelinedHandshake(pipelinedHandshake);
 
 			OFSwitchHandshakeHandler oldHandler = switchHandlers.put(dpid, handler);
 
 			// Disconnect all the handler's connections
 			if(oldHandler != null){
 				log.debug("{} is a new main connection, killing old handler connections", connection);
+				admissionController.release(oldHandler);
 				oldHandler.cleanup();
 			}
 
-			handler.beginHandshake();
+			boolean known = knownSwitches.contains(dpid);
+			if (!admissionController.submit(handler, known, new Runnable() {
+				@Override
+				public void run() {
+					handler.beginHandshake();
+				}
+			})) {
+				log.debug("{} waits for handshake admission", connection);
+			}
 
 		} else {
 			OFSwitchHandshakeHandler handler = switchHandlers.get(dpid);
@@ -489,6 +536,11 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		return ImmutableList.copyOf(this.switchHandlers.values());
 	}
 
+	@Override
+	public boolean isHandshakeBackpressured() {
+		return admissionController.isBackpressured();
+	}
+
 	@Override
 	public int getNumRequiredConnections() {
 		Preconditions.checkState(numRequiredConnections >= 0, "numRequiredConnections not calculated");
@@ -634,10 +686,35 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
         syncedSwitches = new ConcurrentHashMap<DatapathId, IOFSwitch>();
 		floodlightProvider.getTimer();
 		counters = new SwitchManagerCounters(debugCounterService);
+		knownSwitches = Collections.newSetFromMap(new ConcurrentHashMap<DatapathId, Boolean>());
 		driverRegistry = new NaiveSwitchDriverRegistry(this);
 
 		this.switchListeners = new CopyOnWriteArraySet<IOFSwitchListener>();
 
+		Map<String, String> configParams = context.getConfigParams(this);
+		String pipelined = configParams.get("pipelined-handshake");
+		if (pipelined != null)
+			pipelinedHandshake = Boolean.parseBoolean(pipelined);
+		int maxHandshakes = DEFAULT_MAX_CONCURRENT_HANDSHAKES;
+		String maxHandshakesString = configParams.get("max-concurrent-handshakes");
+		if (maxHandshakesString != null)
+			maxHandshakes = Integer.parseInt(maxHandshakesString);
+		// Handshakes that had to wait are started from the timer thread
+		// rather than from the thread of the switch that finished its
+		// handshake
+		admissionController = new HandshakeAdmissionController(maxHandshakes,
+				new Executor() {
+					@Override
+					public void execute(final Runnable command) {
+						floodlightProvider.getTimer().newTimeout(new TimerTask() {
+							@Override
+							public void run(Timeout timeout) {
+								command.run();
+							}
+						}, 0, TimeUnit.MILLISECONDS);
+					}
+				}, counters.handshakeDeferred, counters.handshakeFullControlMs);
+
 		/* TODO @Ryan
 		try {
 			this.storeClient = this.syncService.getStoreClient(
@@ -673,6 +750,55 @@ public class OFSwitchManager implements IOFSwitchManager, INewOFConnectionListen
 		loadLogicalCategories();
 
 		registerDebugEvents();
+
+		loadKnownSwitches();
+	}
+
+	/**
+	 * Load the switches known before a restart from the persistent known
+	 * switch store
+	 */
+	void loadKnownSwitches() {
+		IClosableIterator<Map.Entry<String, Versioned<Long>>> iter = null;
+		try {
+			syncService.registerPersistentStore(KNOWN_SWITCH_STORE_NAME, Scope.LOCAL);
+			knownSwitchStore = syncService.getStoreClient(KNOWN_SWITCH_STORE_NAME,
+					String.class, Long.class);
+			iter = knownSwitchStore.entries();
+			while (iter.hasNext()) {
+				Map.Entry<String, Versioned<Long>> e = iter.next();
+				if (e.getValue().getValue() != null)
+					knownSwitches.add(DatapathId.of(e.getKey()));
+			}
+			log.debug("Loaded {} known switches", knownSwitches.size());
+		} catch (SyncException e) {
+			log.error("Failed to load the known switches, no switch gets " +
+					"handshake admission priority until it connects", e);
+		} finally {
+			if (iter != null)
+				iter.close();
+		}
+	}
+
+	/**
+	 * Persist that a switch completed a handshake, so it gets handshake
+	 * admission priority after a restart
+	 */
+	private void storeKnownSwitch(DatapathId dpid) {
+		if (knownSwitchStore == null)
+			return;
+		try {
+			knownSwitchStore.put(dpid.toString(), System.currentTimeMillis());
+		} catch (SyncException e) {
+			log.warn("Failed to store known switch " + dpid, e);
+		}
+	}
+
+	/**
+	 * For testing: whether a switch gets handshake admission priority
+	 */
+	boolean isKnownSwitch(DatapathId dpid) {
+		return knownSwitches.contains(dpid);
 	}
 
 	/**
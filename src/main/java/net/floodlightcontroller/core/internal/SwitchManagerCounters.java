@@ -31,6 +31,8 @@ public class SwitchManagerCounters {
     public final IDebugCounter roleReplyTimeout;
     public final IDebugCounter roleReplyReceived;
     public final IDebugCounter roleReplyErrorUnsupported;
+    public final IDebugCounter handshakeDeferred;
+    public final IDebugCounter handshakeFullControlMs;
 
     public SwitchManagerCounters(IDebugCounterService debugCounters) {
         debugCounters.registerModule(prefix);
@@ -199,6 +201,21 @@ public class SwitchManagerCounters {
                                     "error from a switch in response to a role " +
                                     "request indicating that the switch does not " +
                                     "support roles.");
+
+                    handshakeDeferred =
+                        debugCounters.registerCounter(
+                                    prefix, "handshake-deferred",
+                                    "Number of switch handshakes that waited for " +
+                                    "admission because the maximum number of " +
+                                    "concurrent handshakes was reached.",
+                                    MetaData.WARN);
+
+                    handshakeFullControlMs =
+                        debugCounters.registerCounter(
+                                    prefix, "handshake-full-control-ms",
+                                    "Time from the first to the last switch " +
+                                    "handshake of the last handshake backlog, in " +
+                                    "milliseconds.");
     }
 
     public String getPrefix(){
@@ -22,6 +22,9 @@ import java.util.Map;
 
 /**
  * The service registry for an IFloodlightProvider.
+ * Modules may be initialized concurrently, so the configuration parameters
+ * are synchronized; all services must be added before any module is
+ * initialized.
  * @author alexreimers
  */
 public class FloodlightModuleContext implements IFloodlightModuleContext {
@@ -73,7 +76,7 @@ public class FloodlightModuleContext implements IFloodlightModuleContext {
     }
 
     @Override
-    public Map<String, String> getConfigParams(Class<? extends IFloodlightModule> clazz) {
+    public synchronized Map<String, String> getConfigParams(Class<? extends IFloodlightModule> clazz) {
         Map<String, String> retMap = configParams.get(clazz);
         if (retMap == null) {
             // Return an empty map if none exists so the module does not
@@ -107,7 +110,7 @@ public class FloodlightModuleContext implements IFloodlightModuleContext {
      * @param key The configuration parameter key
      * @param value The configuration parameter value
      */
-    public void addConfigParam(IFloodlightModule mod, String key, String value) {
+    public synchronized void addConfigParam(IFloodlightModule mod, String key, String value) {
         Map<String, String> moduleParams = configParams.get(mod.getClass());
         if (moduleParams == null) {
             moduleParams = new HashMap<String, String>();
@@ -28,9 +28,11 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.Enumeration;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -39,6 +41,17 @@ import java.util.Properties;
 import java.util.ServiceConfigurationError;
 import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
 import net.floodlightcontroller.core.annotations.LogMessageDocs;
@@ -70,17 +83,30 @@ public class FloodlightModuleLoader {
 
     protected boolean startupModules;
 
+    /**
+     * Number of threads modules are initialized on. Modules are always
+     * started up one at a time since many of the registries they add
+     * themselves to while starting up (REST routables, listeners, info
+     * providers) are not thread-safe.
+     */
+    protected int initThreads;
+    private final ConcurrentMap<String, ModuleTiming> moduleTimings =
+            new ConcurrentHashMap<>();
+
     private static URI configFile;
 
     public static final String COMPILED_CONF_FILE =
             "floodlightdefault.properties";
     public static final String FLOODLIGHT_MODULES_KEY =
             "floodlight.modules";
+    public static final String FLOODLIGHT_INIT_THREADS_KEY =
+            "floodlight.init-threads";
 
     public FloodlightModuleLoader() {
         loadedModuleList = Collections.emptyList();
         floodlightModuleContext = new FloodlightModuleContext(this);
         startupModules = true;
+        initThreads = Runtime.getRuntime().availableProcessors();
     }
 
     /**
@@ -279,6 +305,18 @@ public class FloodlightModuleLoader {
                 configMods.addAll(Arrays.asList(moduleList.split(",")));
             }
             fprop.remove(FLOODLIGHT_MODULES_KEY);
+            String initThreadsValue =
+                    fprop.getProperty(FLOODLIGHT_INIT_THREADS_KEY);
+            if (initThreadsValue != null) {
+                try {
+                    initThreads = Integer.parseInt(initThreadsValue.trim());
+                } catch (NumberFormatException e) {
+                    throw new FloodlightModuleException("Invalid " +
+                            FLOODLIGHT_INIT_THREADS_KEY + ": " +
+                            initThreadsValue, e);
+                }
+            }
+            fprop.remove(FLOODLIGHT_INIT_THREADS_KEY);
 
             prop.putAll(fprop);
         } catch (IOException e) {
@@ -475,14 +513,7 @@ public class FloodlightModuleLoader {
             }
         }
 
-        for (IFloodlightModule module : moduleSet) {
-            // init the module
-            if (logger.isDebugEnabled()) {
-                logger.debug("Initializing " +
-                             module.getClass().getCanonicalName());
-            }
-            module.init(floodlightModuleContext);
-        }
+        runPhase(moduleSet, Phase.INIT);
     }
 
     /**
@@ -492,14 +523,255 @@ public class FloodlightModuleLoader {
      */
     protected void startupModules(Collection<IFloodlightModule> moduleSet)
             throws FloodlightModuleException {
-        for (IFloodlightModule m : moduleSet) {
-            if (logger.isDebugEnabled()) {
-                logger.debug("Starting " + m.getClass().getCanonicalName());
+        runPhase(moduleSet, Phase.STARTUP);
+        logModuleTimings(moduleSet);
+    }
+
+    /** A step of bringing up the modules */
+    protected enum Phase {
+        INIT("Initializing", true) {
+            @Override
+            void run(IFloodlightModule module,
+                     FloodlightModuleContext context)
+                             throws FloodlightModuleException {
+                module.init(context);
+            }
+        },
+        STARTUP("Starting", false) {
+            @Override
+            void run(IFloodlightModule module,
+                     FloodlightModuleContext context)
+                             throws FloodlightModuleException {
+                module.startUp(context);
+            }
+        };
+
+        private final String verb;
+        /** Whether independent modules may run this phase concurrently */
+        private final boolean concurrent;
+
+        private Phase(String verb, boolean concurrent) {
+            this.verb = verb;
+            this.concurrent = concurrent;
+        }
+
+        abstract void run(IFloodlightModule module,
+                          FloodlightModuleContext context)
+                                  throws FloodlightModuleException;
+    }
+
+    /**
+     * Run a phase on every module. A module only runs once every module it
+     * depends on that comes before it in the set has finished the phase;
+     * independent modules run concurrently on up to {@link #initThreads}
+     * threads if the phase allows it. Otherwise, or with a single thread,
+     * the modules run in set order.
+     * @param moduleSet the modules, in dependency order
+     * @param phase the phase to run
+     * @throws FloodlightModuleException
+     */
+    protected void runPhase(Collection<IFloodlightModule> moduleSet,
+                            final Phase phase)
+                                    throws FloodlightModuleException {
+        if (!phase.concurrent || initThreads <= 1 || moduleSet.size() <= 1) {
+            for (IFloodlightModule module : moduleSet) {
+                runTimed(module, phase);
+            }
+            return;
+        }
+
+        // Build the dependency DAG. Only dependencies that come earlier in
+        // the set are edges, which drops the back edges of dependency
+        // cycles just like the serial order does.
+        List<IFloodlightModule> modules = new ArrayList<>(moduleSet);
+        Map<Class<? extends IFloodlightService>, IFloodlightModule> providers =
+                new HashMap<>();
+        Map<IFloodlightModule, Integer> position = new IdentityHashMap<>();
+        Map<IFloodlightModule, Integer> pending = new IdentityHashMap<>();
+        Map<IFloodlightModule, List<IFloodlightModule>> dependents =
+                new IdentityHashMap<>();
+        for (IFloodlightModule module : modules) {
+            position.put(module, position.size());
+            Collection<Class<? extends IFloodlightService>> servs =
+                    module.getModuleServices();
+            if (servs != null) {
+                for (Class<? extends IFloodlightService> c : servs)
+                    providers.put(c, module);
+            }
+        }
+        for (IFloodlightModule module : modules) {
+            Set<IFloodlightModule> deps =
+                    Collections.newSetFromMap(
+                            new IdentityHashMap<IFloodlightModule, Boolean>());
+            Collection<Class<? extends IFloodlightService>> depServs =
+                    module.getModuleDependencies();
+            if (depServs != null) {
+                for (Class<? extends IFloodlightService> c : depServs) {
+                    IFloodlightModule dep = providers.get(c);
+                    if (dep != null &&
+                        position.get(dep) < position.get(module))
+                        deps.add(dep);
+                }
+            }
+            pending.put(module, deps.size());
+            for (IFloodlightModule dep : deps) {
+                List<IFloodlightModule> l = dependents.get(dep);
+                if (l == null) {
+                    l = new ArrayList<>();
+                    dependents.put(dep, l);
+                }
+                l.add(module);
+            }
+        }
+
+        ExecutorService executor =
+                Executors.newFixedThreadPool(initThreads,
+                                             new ModuleThreadFactory(phase));
+        CompletionService<IFloodlightModule> completion =
+                new ExecutorCompletionService<>(executor);
+        try {
+            int running = 0;
+            for (IFloodlightModule module : modules) {
+                if (pending.get(module) == 0) {
+                    submit(completion, module, phase);
+                    running++;
+                }
+            }
+            while (running > 0) {
+                IFloodlightModule done;
+                try {
+                    done = completion.take().get();
+                } catch (ExecutionException e) {
+                    Throwable cause = e.getCause();
+                    if (cause instanceof FloodlightModuleException)
+                        throw (FloodlightModuleException) cause;
+                    if (cause instanceof RuntimeException)
+                        throw (RuntimeException) cause;
+                    if (cause instanceof Error)
+                        throw (Error) cause;
+                    throw new FloodlightModuleException(cause);
+                }
+                running--;
+                List<IFloodlightModule> l = dependents.get(done);
+                if (l == null) continue;
+                for (IFloodlightModule module : l) {
+                    int left = pending.get(module) - 1;
+                    pending.put(module, left);
+                    if (left == 0) {
+                        submit(completion, module, phase);
+                        running++;
+                    }
+                }
             }
-            m.startUp(floodlightModuleContext);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new FloodlightModuleException("Interrupted while " +
+                    phase.verb.toLowerCase() + " modules", e);
+        } finally {
+            executor.shutdownNow();
         }
     }
 
+    private void submit(CompletionService<IFloodlightModule> completion,
+                        final IFloodlightModule module,
+                        final Phase phase) {
+        completion.submit(new Callable<IFloodlightModule>() {
+            @Override
+            public IFloodlightModule call() throws Exception {
+                runTimed(module, phase);
+                return module;
+            }
+        });
+    }
+
+    private void runTimed(IFloodlightModule module, Phase phase)
+            throws FloodlightModuleException {
+        if (logger.isDebugEnabled()) {
+            logger.debug(phase.verb + " " +
+                         module.getClass().getCanonicalName());
+        }
+        long start = System.nanoTime();
+        phase.run(module, floodlightModuleContext);
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        String name = module.getClass().getCanonicalName();
+        ModuleTiming timing = moduleTimings.get(name);
+        if (timing == null) {
+            moduleTimings.putIfAbsent(name, new ModuleTiming());
+            timing = moduleTimings.get(name);
+        }
+        if (phase == Phase.INIT)
+            timing.initMs = elapsed;
+        else
+            timing.startUpMs = elapsed;
+    }
+
+    private static class ModuleThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+        private final Phase phase;
+
+        ModuleThreadFactory(Phase phase) {
+            this.phase = phase;
+        }
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread t = new Thread(r, "ModuleLoader-" +
+                    phase.name().toLowerCase() + "-" +
+                    count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        }
+    }
+
+    /** How long a module took to init and start up */
+    public static class ModuleTiming {
+        private volatile long initMs;
+        private volatile long startUpMs;
+
+        public long getInitMs() {
+            return initMs;
+        }
+
+        public long getStartUpMs() {
+            return startUpMs;
+        }
+    }
+
+    /**
+     * Gets how long each loaded module took to init and start up
+     * @return An UNMODIFIABLE map from module name to its timing
+     */
+    public Map<String, ModuleTiming> getModuleTimings() {
+        return Collections.unmodifiableMap(moduleTimings);
+    }
+
+    /**
+     * Log the modules that took the longest to come up
+     */
+    private void logModuleTimings(Collection<IFloodlightModule> moduleSet) {
+        if (!logger.isInfoEnabled()) return;
+        List<Entry<String, ModuleTiming>> l =
+                new ArrayList<>(moduleTimings.entrySet());
+        Collections.sort(l, new Comparator<Entry<String, ModuleTiming>>() {
+            @Override
+            public int compare(Entry<String, ModuleTiming> o1,
+                               Entry<String, ModuleTiming> o2) {
+                long t1 = o1.getValue().initMs + o1.getValue().startUpMs;
+                long t2 = o2.getValue().initMs + o2.getValue().startUpMs;
+                return (t1 < t2) ? 1 : ((t1 == t2) ? 0 : -1);
+            }
+        });
+        StringBuilder sb = new StringBuilder();
+        for (Entry<String, ModuleTiming> e : l) {
+            sb.append("\n  ").append(e.getKey())
+              .append(": init ").append(e.getValue().initMs)
+              .append(" ms, startUp ").append(e.getValue().startUpMs)
+              .append(" ms");
+        }
+        logger.info("Started {} modules, initialized on {} thread(s), slowest first:{}",
+                    new Object[] { moduleSet.size(), initThreads, sb });
+    }
+
     /** Tuple of floodlight module and run method */
     private static class RunMethod {
         private final IFloodlightModule module;
@@ -602,4 +874,16 @@ public class FloodlightModuleLoader {
     public void setStartupModules(boolean startupModules) {
         this.startupModules = startupModules;
     }
+
+    public int getInitThreads() {
+        return initThreads;
+    }
+
+    /**
+     * Set the number of threads modules are initialized on. 1 initializes
+     * them one at a time in dependency order.
+     */
+    public void setInitThreads(int initThreads) {
+        this.initThreads = initThreads;
+    }
 }
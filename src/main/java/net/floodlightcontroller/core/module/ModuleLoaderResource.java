@@ -112,6 +112,13 @@ public class ModuleLoaderResource extends ServerResource {
         		}
         	}
 
+        	FloodlightModuleLoader.ModuleTiming timing =
+        			floodlightModuleLoader.getModuleTimings().get(moduleName);
+        	if (timing != null) {
+        		moduleInfo.put("init-time-ms", timing.getInitMs());
+        		moduleInfo.put("startup-time-ms", timing.getStartUpMs());
+        	}
+
         	if ((Boolean)moduleInfo.get("loaded")|| !loadedOnly )
         		model.put(moduleName, moduleInfo);
         }            
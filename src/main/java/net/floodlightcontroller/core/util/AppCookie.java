@@ -97,6 +97,16 @@ public class AppCookie {
         return (int)((cookie.getValue() >>> APP_ID_SHIFT) & APP_ID_MASK);
     }
 
+    /**
+     * A mask selecting the application id bits of a cookie. Use it as the
+     * cookie mask of a flow-mod to restrict it to the flows of one
+     * application.
+     * @return the mask
+     */
+    static public U64 getAppFieldMask() {
+        return U64.of(APP_ID_MASK << APP_ID_SHIFT);
+    }
+
     static public int extractUser(U64 cookie) {
         return (int)(cookie.getValue() & USER_MASK);
     }
@@ -21,6 +21,8 @@ import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
+import net.floodlightcontroller.threadpool.InstrumentedScheduledExecutor;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -42,6 +44,10 @@ public class SingletonTask {
     protected static class SingletonTaskContext  {
         protected boolean taskShouldRun = false;
         protected boolean taskRunning = false;
+        // the thread running the task, and the delay the task rescheduled
+        // itself with during that run, if it did
+        protected Thread runner = null;
+        protected long repeatNanos = 0;
 
         protected SingletonTaskWorker waitingTask = null;
     }
@@ -67,8 +73,11 @@ public class SingletonTask {
 
                 parent.context.taskRunning = true;
                 parent.context.taskShouldRun = false;
+                parent.context.runner = Thread.currentThread();
+                parent.context.repeatNanos = 0;
             }
 
+            long start = System.nanoTime();
             try {
                 parent.task.run();
             } catch (Exception e) {
@@ -79,8 +88,13 @@ public class SingletonTask {
                 throw e;
             }
 
+            long runNanos = System.nanoTime() - start;
+            long periodNanos;
+
             synchronized (parent.context) {
                 parent.context.taskRunning = false;
+                parent.context.runner = null;
+                periodNanos = parent.context.repeatNanos;
 
                 if (parent.context.taskShouldRun) {
                     long now = System.nanoTime();
@@ -93,6 +107,8 @@ public class SingletonTask {
                     }
                 }
             }
+
+            parent.checkOverrun(runNanos, periodNanos);
         }
     }
 
@@ -132,6 +148,11 @@ public class SingletonTask {
         synchronized (context) {
             if (context.taskRunning || context.taskShouldRun) {
                 if (context.taskRunning) {
+                    if (context.runner == Thread.currentThread()) {
+                        // the task repeats itself with this period
+                        context.repeatNanos = (delay > 0) ?
+                            TimeUnit.NANOSECONDS.convert(delay, unit) : 0;
+                    }
                     // schedule to restart at the right time
                     if (delay > 0) {
                         long now = System.nanoTime();
@@ -164,4 +185,26 @@ public class SingletonTask {
                 ses.schedule(stw, delay, unit);
         }
     }
+
+    /**
+     * Flag a run of a repeating task that took longer than the delay the
+     * task rescheduled itself with, which means the next run is late.
+     * Overruns are counted by instrumented executors.
+     * @param runNanos how long the run took
+     * @param period the delay the task rescheduled itself with during the
+     * run, or 0 if it didn't
+     */
+    protected void checkOverrun(long runNanos, long period) {
+        if (period <= 0 || runNanos <= period)
+            return;
+        if (ses instanceof InstrumentedScheduledExecutor) {
+            ((InstrumentedScheduledExecutor) ses).recordOverrun();
+        }
+        if (logger.isDebugEnabled()) {
+            logger.debug("Task {} ran for {}ms, longer than its period of {}ms",
+                         new Object[] { task,
+                                        TimeUnit.NANOSECONDS.toMillis(runNanos),
+                                        TimeUnit.NANOSECONDS.toMillis(period) });
+        }
+    }
 }
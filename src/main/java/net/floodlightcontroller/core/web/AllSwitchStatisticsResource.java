@@ -17,41 +17,76 @@
 
 package net.floodlightcontroller.core.web;
 
-import java.lang.Thread.State;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Set;
+import java.util.TreeSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.restserver.RestPage;
+import net.floodlightcontroller.restserver.StreamingJsonRepresentation;
 
-import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
-import org.projectfloodlight.openflow.protocol.OFStatsReply;
 import org.projectfloodlight.openflow.protocol.OFStatsType;
 import org.projectfloodlight.openflow.types.DatapathId;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.google.common.collect.Iterators;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+
 /**
- * Return switch statistics information for all switches
+ * Return switch statistics information for all switches. The statistics
+ * are streamed in the order of the switch DPIDs, asking a batch of
+ * switches at a time, so only one batch of replies is held in memory.
+ * The switches can be paged through with the query parameters of
+ * {@link RestPage}.
  * @author readams
  */
 public class AllSwitchStatisticsResource extends SwitchResourceBase {
 	protected static Logger log =
 			LoggerFactory.getLogger(AllSwitchStatisticsResource.class);
 
+	/** The most switches asked for their statistics at once */
+	protected static final int BATCH_SIZE = 64;
+	/** The time to wait for all the replies of one request */
+	protected static final long REPLY_TIMEOUT_MS = 12000;
+
 	@Get("json")
-	public Map<String, StatsReply> retrieve() {
+	public Representation retrieve() {
 		String statType = (String) getRequestAttributes().get(CoreWebRoutable.STR_STAT_TYPE);
 
-		return retrieveInternal(statType);
-	}
+		RestPage page;
+		DatapathId after = null;
+		try {
+			page = RestPage.fromQuery(getQuery());
+		} catch (IllegalArgumentException e) {
+			setStatus(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+			return null;
+		}
+		if (page.getAfter() != null) {
+			try {
+				after = DatapathId.of(page.getAfter());
+			} catch (Exception e) {
+				setStatus(Status.CLIENT_ERROR_BAD_REQUEST,
+						ControllerSwitchesResource.DPID_ERROR);
+				return null;
+			}
+		}
 
-	private Map<String, StatsReply> retrieveInternal(String statType) {
-		HashMap<String, StatsReply> model = new HashMap<String, StatsReply>();
+		return retrieveInternal(statType, page, after);
+	}
 
+	private Representation retrieveInternal(String statType, RestPage page,
+			DatapathId after) {
 		OFStatsType type = null;
 		REQUESTTYPE rType = null;
 
@@ -117,95 +152,94 @@ public class AllSwitchStatisticsResource extends SwitchResourceBase {
 			rType = REQUESTTYPE.OFFEATURES;
 			break;
 		default:
-			return model;
+			return writeReplies(Iterators.<DatapathId>emptyIterator(), null, null);
 		}
 
 		IOFSwitchService switchService = (IOFSwitchService) getContext().getAttributes().
 				get(IOFSwitchService.class.getCanonicalName());
 
-		Set<DatapathId> switchDpids = switchService.getAllSwitchDpids();
-		List<GetConcurrentStatsThread> activeThreads = new ArrayList<GetConcurrentStatsThread>(switchDpids.size());
-		List<GetConcurrentStatsThread> pendingRemovalThreads = new ArrayList<GetConcurrentStatsThread>();
-		GetConcurrentStatsThread t;
-		for (DatapathId l : switchDpids) {
-			t = new GetConcurrentStatsThread(l, rType, type);
-			activeThreads.add(t);
-			t.start();
+		TreeSet<DatapathId> switchDpids =
+				new TreeSet<DatapathId>(switchService.getAllSwitchDpids());
+		Iterator<DatapathId> dpids = (after == null) ?
+				switchDpids.iterator() :
+				switchDpids.tailSet(after, false).iterator();
+		if (page.getLimit() > 0) {
+			dpids = Iterators.limit(dpids, page.getLimit());
 		}
 
-		// Join all the threads after the timeout. Set a hard timeout
-		// of 12 seconds for the threads to finish. If the thread has not
-		// finished the switch has not replied yet and therefore we won't
-		// add the switch's stats to the reply.
-		for (int iSleepCycles = 0; iSleepCycles < 12; iSleepCycles++) {
-			for (GetConcurrentStatsThread curThread : activeThreads) {
-				if (curThread.getState() == State.TERMINATED) {
-					if (rType == REQUESTTYPE.OFSTATS) {
-						model.put(curThread.getSwitchId().toString(), new StatsReply(curThread.getSwitchId(), curThread.getStatisticsReply(), type));
-					} else if (rType == REQUESTTYPE.OFFEATURES) {
-						model.put(curThread.getSwitchId().toString(), new StatsReply(curThread.getSwitchId(), curThread.getFeaturesReply(), type));
+		return writeReplies(dpids, type, rType);
+	}
+
+	private Representation writeReplies(final Iterator<DatapathId> selected,
+			final OFStatsType statsType, final REQUESTTYPE requestType) {
+		return new StreamingJsonRepresentation() {
+			@Override
+			protected void writeJson(JsonGenerator gen) throws IOException {
+				// One hard timeout for the whole response. Switches that have
+				// not replied by then are left out of it.
+				long deadline = System.nanoTime() +
+						TimeUnit.MILLISECONDS.toNanos(REPLY_TIMEOUT_MS);
+				gen.writeStartObject();
+				while (selected.hasNext()) {
+					if (deadline - System.nanoTime() <= 0) {
+						log.debug("Statistics request timed out; not asking " +
+								"the remaining switches");
+						break;
 					}
-					pendingRemovalThreads.add(curThread);
+					writeBatch(gen, selected, statsType, requestType, deadline);
+					gen.flush();
 				}
+				gen.writeEndObject();
 			}
-
-			// remove the threads that have completed the queries to the switches
-			for (GetConcurrentStatsThread curThread : pendingRemovalThreads) {
-				activeThreads.remove(curThread);
-			}
-			// clear the list so we don't try to double remove them
-			pendingRemovalThreads.clear();
-
-			// if we are done finish early so we don't always get the worst case
-			if (activeThreads.isEmpty()) {
-				break;
-			}
-
-			// sleep for 1 s here
-			try {
-				Thread.sleep(1000);
-			} catch (InterruptedException e) {
-				log.error("Interrupted while waiting for statistics", e);
-			}
-		}
-
-		return model;
+		};
 	}
 
-	protected class GetConcurrentStatsThread extends Thread {
-		private List<OFStatsReply> switchReply;
-		private DatapathId switchId;
-		private OFStatsType statType;
-		private REQUESTTYPE requestType;
-		private OFFeaturesReply featuresReply;
-
-		public GetConcurrentStatsThread(DatapathId switchId, REQUESTTYPE requestType, OFStatsType statType) {
-			this.switchId = switchId;
-			this.requestType = requestType;
-			this.statType = statType;
-			this.switchReply = null;
-			this.featuresReply = null;
-		}
-
-		public List<OFStatsReply> getStatisticsReply() {
-			return switchReply;
-		}
-
-		public OFFeaturesReply getFeaturesReply() {
-			return featuresReply;
+	/**
+	 * Ask the next batch of switches for their statistics and write the
+	 * replies received by the given deadline
+	 * @param deadline the deadline in System.nanoTime()
+	 */
+	private void writeBatch(JsonGenerator gen, Iterator<DatapathId> dpids,
+			OFStatsType type, REQUESTTYPE rType, long deadline)
+					throws IOException {
+		Map<DatapathId, ListenableFuture<?>> futures =
+				new LinkedHashMap<DatapathId, ListenableFuture<?>>(BATCH_SIZE);
+		while (dpids.hasNext() && futures.size() < BATCH_SIZE) {
+			DatapathId l = dpids.next();
+			if (rType == REQUESTTYPE.OFSTATS) {
+				futures.put(l, getSwitchStatisticsFuture(l, type));
+			} else if (rType == REQUESTTYPE.OFFEATURES) {
+				futures.put(l, getSwitchFeaturesReplyFuture(l));
+			}
 		}
 
-		public DatapathId getSwitchId() {
-			return switchId;
+		// Wait for the replies until the deadline. If a switch has not
+		// replied by then we won't add the switch's stats to the reply.
+		try {
+			Futures.successfulAsList(futures.values()).get(
+					Math.max(0, deadline - System.nanoTime()),
+					TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			log.debug("Not all switches replied to the statistics request in time");
+		} catch (InterruptedException e) {
+			log.error("Interrupted while waiting for statistics", e);
+			Thread.currentThread().interrupt();
+		} catch (ExecutionException e) {
+			// cannot happen, failed futures are reported as null
 		}
 
-		@Override
-		public void run() {
-			if ((requestType == REQUESTTYPE.OFSTATS) && (statType != null)) {
-				switchReply = getSwitchStatistics(switchId, statType);
-			} else if (requestType == REQUESTTYPE.OFFEATURES) {
-				featuresReply = getSwitchFeaturesReply(switchId);
+		for (Map.Entry<DatapathId, ListenableFuture<?>> e : futures.entrySet()) {
+			if (!e.getValue().isDone()) {
+				continue;
+			}
+			Object values = null;
+			try {
+				values = e.getValue().get();
+			} catch (Exception ex) {
+				log.error("Failure retrieving statistics from switch " + e.getKey(), ex);
 			}
+			gen.writeFieldName(e.getKey().toString());
+			gen.writeObject(new StatsReply(e.getKey(), values, type));
 		}
 	}
 }
@@ -17,20 +17,28 @@
 
 package net.floodlightcontroller.core.web;
 
-import java.util.Set;
-import java.util.HashSet;
+import java.util.Iterator;
+import java.util.TreeMap;
 
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.restserver.RestPage;
+import net.floodlightcontroller.restserver.StreamingJsonRepresentation;
 
 import org.projectfloodlight.openflow.types.DatapathId;
+import org.restlet.data.Status;
+import org.restlet.representation.Representation;
 import org.restlet.resource.Get;
 import org.restlet.resource.ServerResource;
 import net.floodlightcontroller.core.web.serializers.DPIDSerializer;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.base.Function;
+import com.google.common.collect.Iterators;
 
 /**
- * Get a list of switches connected to the controller
+ * Get a list of switches connected to the controller, in the order of
+ * their DPIDs. The list can be paged through with the query parameters
+ * of {@link RestPage}.
  * @author readams
  */
 public class ControllerSwitchesResource extends ServerResource {
@@ -62,15 +70,42 @@ public class ControllerSwitchesResource extends ServerResource {
     }
 
     @Get("json")
-    public Set<DatapathIDJsonSerializerWrapper> retrieve(){
+    public Representation retrieve(){
+        RestPage page;
+        DatapathId after = null;
+        try {
+            page = RestPage.fromQuery(getQuery());
+        } catch (IllegalArgumentException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+        if (page.getAfter() != null) {
+            try {
+                after = DatapathId.of(page.getAfter());
+            } catch (Exception e) {
+                setStatus(Status.CLIENT_ERROR_BAD_REQUEST, DPID_ERROR);
+                return null;
+            }
+        }
+
         IOFSwitchService switchService = 
             (IOFSwitchService) getContext().getAttributes().
                 get(IOFSwitchService.class.getCanonicalName());
-        Set<DatapathIDJsonSerializerWrapper> dpidSets = new HashSet<DatapathIDJsonSerializerWrapper>();
-        for(IOFSwitch sw: switchService.getAllSwitchMap().values()) {
-            dpidSets.add(new DatapathIDJsonSerializerWrapper(sw.getId(), sw.getInetAddress().toString(),  sw.getConnectedSince().getTime()));
-
+        TreeMap<DatapathId, IOFSwitch> switches =
+                new TreeMap<DatapathId, IOFSwitch>(switchService.getAllSwitchMap());
+        Iterator<IOFSwitch> selected = (after == null) ?
+                switches.values().iterator() :
+                switches.tailMap(after, false).values().iterator();
+        if (page.getLimit() > 0) {
+            selected = Iterators.limit(selected, page.getLimit());
         }
-        return dpidSets;
+        return StreamingJsonRepresentation.ofIterator(
+                Iterators.transform(selected,
+                        new Function<IOFSwitch, DatapathIDJsonSerializerWrapper>() {
+            @Override
+            public DatapathIDJsonSerializerWrapper apply(IOFSwitch sw) {
+                return new DatapathIDJsonSerializerWrapper(sw.getId(), sw.getInetAddress().toString(),  sw.getConnectedSince().getTime());
+            }
+        }));
     }
 }
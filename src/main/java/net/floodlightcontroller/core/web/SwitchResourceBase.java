@@ -18,30 +18,29 @@
 package net.floodlightcontroller.core.web;
 
 import java.util.List;
-import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 
+import net.floodlightcontroller.statistics.IStatisticsService;
+import net.floodlightcontroller.statistics.StatisticsCollector;
+import net.floodlightcontroller.statistics.SwitchStatistics;
+
 import org.projectfloodlight.openflow.protocol.OFFeaturesReply;
-import org.projectfloodlight.openflow.protocol.match.Match;
-import org.projectfloodlight.openflow.protocol.ver13.OFMeterSerializerVer13;
 import org.projectfloodlight.openflow.types.DatapathId;
-import org.projectfloodlight.openflow.types.OFPort;
-import org.projectfloodlight.openflow.types.TableId;
 import org.projectfloodlight.openflow.protocol.OFFeaturesRequest;
 import org.projectfloodlight.openflow.protocol.OFStatsReply;
 import org.projectfloodlight.openflow.protocol.OFStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFStatsType;
-import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.restlet.resource.ResourceException;
 import org.restlet.resource.ServerResource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.google.common.primitives.UnsignedLong;
+import com.google.common.base.Function;
+import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
 
 /**
@@ -63,6 +62,47 @@ public class SwitchResourceBase extends ServerResource {
 
 	}
 
+	/**
+	 * Start retrieving statistics from a switch. If the statistics service
+	 * is loaded the request is answered from its cache or shared with other
+	 * outstanding requests for the same switch and type.
+	 * @param switchId
+	 * @param statType
+	 * @return a future for the replies, completed with null if the switch
+	 * is not connected or the type is not supported
+	 */
+	protected ListenableFuture<List<OFStatsReply>>
+			getSwitchStatisticsFuture(DatapathId switchId, OFStatsType statType) {
+		IStatisticsService statisticsService = (IStatisticsService) getContext().getAttributes().get(IStatisticsService.class.getCanonicalName());
+		if (statisticsService != null) {
+			return Futures.transform(statisticsService.getStatistics(switchId, statType),
+					new Function<SwitchStatistics, List<OFStatsReply>>() {
+				@Override
+				public List<OFStatsReply> apply(SwitchStatistics stats) {
+					return (stats == null) ? null : stats.getReplies();
+				}
+			});
+		}
+
+		IOFSwitchService switchService = (IOFSwitchService) getContext().getAttributes().get(IOFSwitchService.class.getCanonicalName());
+		IOFSwitch sw = switchService.getSwitch(switchId);
+		OFStatsRequest<?> req = null;
+		if (sw != null) {
+			req = StatisticsCollector.buildStatsRequest(sw.getOFFactory(), statType);
+		}
+		if (req == null) {
+			return Futures.immediateFuture(null);
+		}
+		return writeStatsRequest(sw, req);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static <R extends OFStatsReply> ListenableFuture<List<OFStatsReply>>
+			writeStatsRequest(IOFSwitch sw, OFStatsRequest<R> req) {
+		ListenableFuture<?> future = sw.writeStatsRequest(req);
+		return (ListenableFuture<List<OFStatsReply>>) future;
+	}
+
 	/**
 	 * Use for requests that originate from the REST server that use their context to get a
 	 * reference to the switch service.
@@ -70,7 +110,6 @@ public class SwitchResourceBase extends ServerResource {
 	 * @param statType
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
 	@LogMessageDoc(level="ERROR",
 	message="Failure retrieving statistics from switch {switch}",
 	explanation="An error occurred while retrieving statistics" +
@@ -79,150 +118,44 @@ public class SwitchResourceBase extends ServerResource {
 					LogMessageDoc.GENERIC_ACTION)
 	protected List<OFStatsReply> getSwitchStatistics(DatapathId switchId,
 			OFStatsType statType) {
-		IOFSwitchService switchService = (IOFSwitchService) getContext().getAttributes().get(IOFSwitchService.class.getCanonicalName());
-
-		IOFSwitch sw = switchService.getSwitch(switchId);
-		ListenableFuture<?> future;
-		List<OFStatsReply> values = null;
-		Match match;
-		if (sw != null) {
-			OFStatsRequest<?> req = null;
-			switch (statType) {
-			case FLOW:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildFlowStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
-						.build();
-				break;
-			case AGGREGATE:
-				match = sw.getOFFactory().buildMatch().build();
-				req = sw.getOFFactory().buildAggregateStatsRequest()
-						.setMatch(match)
-						.setOutPort(OFPort.ANY)
-						.setTableId(TableId.ALL)
-						.build();
-				break;
-			case PORT:
-				req = sw.getOFFactory().buildPortStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.build();
-				break;
-			case QUEUE:
-				req = sw.getOFFactory().buildQueueStatsRequest()
-				.setPortNo(OFPort.ANY)
-				.setQueueId(UnsignedLong.MAX_VALUE.longValue())
-				.build();
-				break;
-			case DESC:
-				// pass - nothing todo besides set the type above
-				req = sw.getOFFactory().buildDescStatsRequest()
-				.build();
-				break;
-			case GROUP:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupStatsRequest()				
-							.build();
-				}
-				break;
-
-			case METER:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterStatsRequest()
-							.setMeterId(OFMeterSerializerVer13.ALL_VAL)
-							.build();
-				}
-				break;
-
-			case GROUP_DESC:			
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupDescStatsRequest()			
-							.build();
-				}
-				break;
-
-			case GROUP_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildGroupFeaturesStatsRequest()
-							.build();
-				}
-				break;
-
-			case METER_CONFIG:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterConfigStatsRequest()
-							.build();
-				}
-				break;
-
-			case METER_FEATURES:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildMeterFeaturesStatsRequest()
-							.build();
-				}
-				break;
-
-			case TABLE:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableStatsRequest()
-							.build();
-				}
-				break;
-
-			case TABLE_FEATURES:	
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
-					req = sw.getOFFactory().buildTableFeaturesStatsRequest()
-							.build();		
-				}
-				break;
-			case PORT_DESC:
-				if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_13) >= 0) {
-					req = sw.getOFFactory().buildPortDescStatsRequest()
-							.build();
-				}
-				break;
-			case EXPERIMENTER: //TODO @Ryan support new OF1.1+ stats types			
-			default:
-				log.error("Stats Request Type {} not implemented yet", statType.name());
-				break;
-			}
-
-			try {
-				if (req != null) {
-					future = sw.writeStatsRequest(req);
-					values = (List<OFStatsReply>) future.get(10, TimeUnit.SECONDS);
-				}
-			} catch (Exception e) {
-				log.error("Failure retrieving statistics from switch " + sw, e);
-			}
+		try {
+			return getSwitchStatisticsFuture(switchId, statType).get(10, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			log.error("Failure retrieving statistics from switch " + switchId, e);
+			return null;
 		}
-		return values;
 	}
 
 	protected List<OFStatsReply> getSwitchStatistics(String switchId, OFStatsType statType) {
 		return getSwitchStatistics(DatapathId.of(switchId), statType);
 	}
 
-	protected OFFeaturesReply getSwitchFeaturesReply(DatapathId switchId) {
+	/**
+	 * Start retrieving the features reply of a switch
+	 * @param switchId
+	 * @return a future for the reply, completed with null if the switch is
+	 * not connected
+	 */
+	protected ListenableFuture<OFFeaturesReply> getSwitchFeaturesReplyFuture(DatapathId switchId) {
 		IOFSwitchService switchService =
 				(IOFSwitchService) getContext().getAttributes().
 				get(IOFSwitchService.class.getCanonicalName());
 
 		IOFSwitch sw = switchService.getSwitch(switchId);
-		Future<OFFeaturesReply> future;
-		OFFeaturesReply featuresReply = null;
-		OFFeaturesRequest featuresRequest = sw.getOFFactory().buildFeaturesRequest().build();
-		if (sw != null) {
-			try {
-				future = sw.writeRequest(featuresRequest);
-				featuresReply = future.get(10, TimeUnit.SECONDS);
-			} catch (Exception e) {
-				log.error("Failure getting features reply from switch" + sw, e);
-			}
+		if (sw == null) {
+			return Futures.immediateFuture(null);
 		}
+		OFFeaturesRequest featuresRequest = sw.getOFFactory().buildFeaturesRequest().build();
+		return sw.writeRequest(featuresRequest);
+	}
 
-		return featuresReply;
+	protected OFFeaturesReply getSwitchFeaturesReply(DatapathId switchId) {
+		try {
+			return getSwitchFeaturesReplyFuture(switchId).get(10, TimeUnit.SECONDS);
+		} catch (Exception e) {
+			log.error("Failure getting features reply from switch " + switchId, e);
+			return null;
+		}
 	}
 
 	protected OFFeaturesReply getSwitchFeaturesReply(String switchId) {
@@ -1,8 +1,6 @@
 package net.floodlightcontroller.debugcounter;
 
 import java.util.Collection;
-import java.util.Date;
-import java.util.concurrent.atomic.AtomicLong;
 
 import javax.annotation.Nonnull;
 
@@ -18,9 +16,12 @@ class DebugCounterImpl implements IDebugCounter {
     private final String description;
     private final ImmutableSet<IDebugCounterService.MetaData> metaData;
 
-    private final AtomicLong value = new AtomicLong();
-
-    private final Date lastModified = new Date(); // should return long ms to ensure immutability
+    /**
+     * Hot counters are updated from every Netty worker thread, so the value
+     * (and its last-modified time) is striped across padded cells rather
+     * than kept in a single AtomicLong.
+     */
+    private final StripedLong value = new StripedLong();
 
     DebugCounterImpl(@Nonnull String moduleName,
                      @Nonnull String counterHierarchy,
@@ -30,7 +31,6 @@ class DebugCounterImpl implements IDebugCounter {
         this.counterHierarchy = counterHierarchy;
         this.description = description;
         this.metaData = Sets.immutableEnumSet(metaData);
-        this.lastModified.setTime(System.currentTimeMillis());
     }
 
     @Nonnull
@@ -57,14 +57,12 @@ class DebugCounterImpl implements IDebugCounter {
 
     @Override
     public void reset() {
-        value.set(0);
-        lastModified.setTime(System.currentTimeMillis());
+        value.reset();
     }
 
     @Override
     public void increment() {
-        value.incrementAndGet();
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(1);
     }
 
     @Override
@@ -73,18 +71,17 @@ class DebugCounterImpl implements IDebugCounter {
             throw new IllegalArgumentException("increment must be > 0. Was "
                     + increment);
         }
-        value.addAndGet(increment);
-        lastModified.setTime(System.currentTimeMillis());
+        value.add(increment);
     }
 
     @Override
     public long getCounterValue() {
-        return value.get();
+        return value.sum();
     }
     
 	@Override
 	public long getLastModified() {
-		return lastModified.getTime();
+		return value.lastModified();
 	}
 
     @Override
@@ -124,9 +121,7 @@ class DebugCounterImpl implements IDebugCounter {
         if (moduleName == null) {
             if (other.moduleName != null) return false;
         } else if (!moduleName.equals(other.moduleName)) return false;
-        if (value == null) {
-            if (other.value != null) return false;
-        } else if (value.get() != other.value.get()) return false;
+        if (value.sum() != other.value.sum()) return false;
         return true;
     }
 
@@ -0,0 +1,170 @@
+package net.floodlightcontroller.debugcounter;
+
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
+
+/**
+ * A striped, contention-free long sum, in the spirit of JDK 8's LongAdder.
+ *
+ * Updates CAS a single base value until two threads collide on it. The
+ * first collision inflates the counter into an array of cache-line padded
+ * cells, one per (power of two rounded) CPU, and from then on every
+ * thread adds into the cell selected by its own probe, moving to another
+ * cell whenever it loses a CAS. Reads sum the base and all cells, so
+ * {@link #sum()} is not an atomic snapshot if updates happen concurrently.
+ * Uncontended counters never allocate cells.
+ *
+ * Each cell also records the wall clock time of its last update, so that
+ * the last-modified time can be tracked without a shared write either.
+ */
+class StripedLong {
+    private static final int NCELLS;
+    static {
+        int n = 1;
+        int cpus = Runtime.getRuntime().availableProcessors();
+        while (n < cpus) n <<= 1;
+        NCELLS = n;
+    }
+
+    /** Per-thread probe used to pick a cell, rehashed on collisions */
+    private static final ThreadLocal<int[]> probe = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            // non-zero seed for the xorshift rehash
+            int h = (int) Thread.currentThread().getId() * 0x9E3779B9;
+            return new int[] { h == 0 ? 1 : h };
+        }
+    };
+
+    /*
+     * Padding keeps the value of each cell on its own cache line.
+     * Superclass fields are laid out first, so the padding cannot be
+     * reordered around the value.
+     */
+    static class CellLhsPadding {
+        long p1, p2, p3, p4, p5, p6, p7;
+    }
+
+    static class CellValue extends CellLhsPadding {
+        volatile long value;
+        volatile long lastModified;
+    }
+
+    static final class Cell extends CellValue {
+        long q1, q2, q3, q4, q5, q6, q7;
+
+        private static final AtomicLongFieldUpdater<CellValue> VALUE =
+                AtomicLongFieldUpdater.newUpdater(CellValue.class, "value");
+
+        boolean cas(long expect, long update) {
+            return VALUE.compareAndSet(this, expect, update);
+        }
+    }
+
+    private static final AtomicLongFieldUpdater<StripedLong> BASE =
+            AtomicLongFieldUpdater.newUpdater(StripedLong.class, "base");
+    private static final AtomicReferenceFieldUpdater<StripedLong, Cell[]> CELLS =
+            AtomicReferenceFieldUpdater.newUpdater(StripedLong.class,
+                                                   Cell[].class, "cells");
+
+    private volatile long base;
+    private volatile long baseLastModified;
+    private volatile Cell[] cells;
+
+    StripedLong() {
+        baseLastModified = System.currentTimeMillis();
+    }
+
+    /**
+     * Add x to the sum
+     */
+    void add(long x) {
+        long now = System.currentTimeMillis();
+        Cell[] cs = cells;
+        if (cs == null) {
+            long b = base;
+            if (BASE.compareAndSet(this, b, b + x)) {
+                baseLastModified = now;
+                return;
+            }
+            cs = inflate();
+        }
+        int[] h = probe.get();
+        for (;;) {
+            Cell c = cs[h[0] & (cs.length - 1)];
+            long v = c.value;
+            if (c.cas(v, v + x)) {
+                c.lastModified = now;
+                return;
+            }
+            // collided with another thread: move to another cell
+            int r = h[0];
+            r ^= r << 13;
+            r ^= r >>> 17;
+            r ^= r << 5;
+            h[0] = r;
+        }
+    }
+
+    private Cell[] inflate() {
+        Cell[] cs = new Cell[NCELLS];
+        for (int i = 0; i < cs.length; i++) {
+            cs[i] = new Cell();
+        }
+        if (!CELLS.compareAndSet(this, null, cs)) {
+            cs = cells;
+        }
+        return cs;
+    }
+
+    /**
+     * @return the current sum. Concurrent updates may or may not be
+     * included.
+     */
+    long sum() {
+        long sum = base;
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                sum += c.value;
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * @return the wall clock time in ms of the most recent update or reset
+     */
+    long lastModified() {
+        long last = baseLastModified;
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                last = Math.max(last, c.lastModified);
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Reset the sum to zero. Updates that happen concurrently with the
+     * reset may be lost or retained.
+     */
+    void reset() {
+        long now = System.currentTimeMillis();
+        Cell[] cs = cells;
+        if (cs != null) {
+            for (Cell c : cs) {
+                c.value = 0;
+                c.lastModified = 0;
+            }
+        }
+        base = 0;
+        baseLastModified = now;
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(sum());
+    }
+}
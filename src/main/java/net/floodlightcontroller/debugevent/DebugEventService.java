@@ -1,16 +1,16 @@
 package net.floodlightcontroller.debugevent;
 
+import java.lang.ref.WeakReference;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -25,7 +25,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import com.google.common.collect.ImmutableMap;
-import com.google.common.collect.Sets;
 
 /**
  * This class implements a central store for all events used for debugging the
@@ -49,9 +48,6 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
      */
     private final AtomicLong eventInstanceId = new AtomicLong(Long.MAX_VALUE);
 
-    private static final int PCT_LOCAL_CAP = 10; // % of global capacity
-    private static final int MIN_LOCAL_CAPACITY = 10; // elements
-
     /**
      * EnumMap from {@link EventFieldType} to {@link CustomFormatter}
      */
@@ -149,16 +145,89 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
     // ******************
 
     /**
-     * Event history for a particular event-id is stored in a circular buffer
+     * Event history for a particular event-id. Every thread that records
+     * the event owns a preallocated {@link EventRing} of the configured
+     * capacity; readers merge the per-thread rings without blocking the
+     * writers. The rings are only held strongly by the thread local store of
+     * their owner, so they are collected once the owning thread exits.
      */
     protected static class DebugEventHistory {
         EventInfo einfo;
-        LinkedBlockingDeque<Event> circularEventBuffer;
+        final int capacity;
+        final List<WeakReference<EventRing>> rings =
+                new CopyOnWriteArrayList<WeakReference<EventRing>>();
 
         public DebugEventHistory(EventInfo einfo, int capacity) {
             this.einfo = einfo;
-            this.circularEventBuffer = new LinkedBlockingDeque<Event>(
-                                                                      capacity);
+            this.capacity = capacity;
+        }
+
+        EventRing newRing(Thread owner) {
+            EventRing ring = new EventRing(capacity, owner);
+            liveRings();
+            rings.add(new WeakReference<EventRing>(ring));
+            return ring;
+        }
+
+        /**
+         * Get the rings whose owning threads are still around, dropping
+         * the references to rings that have been collected
+         */
+        List<EventRing> liveRings() {
+            List<EventRing> live = new ArrayList<EventRing>(rings.size());
+            for (WeakReference<EventRing> ref : rings) {
+                EventRing ring = ref.get();
+                if (ring == null) {
+                    rings.remove(ref);
+                } else {
+                    live.add(ring);
+                }
+            }
+            return live;
+        }
+
+        /**
+         * Take a snapshot of the most recent events across all threads
+         * @return up to capacity events, most recent first
+         */
+        List<Event> snapshot() {
+            List<Event> events = new ArrayList<Event>();
+            for (EventRing ring : liveRings()) {
+                ring.snapshot(events);
+            }
+            // instance ids are handed out in decreasing order
+            Collections.sort(events, new Comparator<Event>() {
+                @Override
+                public int compare(Event e1, Event e2) {
+                    long id1 = e1.getEventInstanceId();
+                    long id2 = e2.getEventInstanceId();
+                    return id1 < id2 ? -1 : (id1 == id2 ? 0 : 1);
+                }
+            });
+            if (events.size() > capacity) {
+                return events.subList(0, capacity);
+            }
+            return events;
+        }
+
+        int size() {
+            int size = 0;
+            for (EventRing ring : liveRings()) {
+                size += ring.size();
+            }
+            return Math.min(size, capacity);
+        }
+
+        void reset() {
+            for (EventRing ring : liveRings()) {
+                ring.reset();
+            }
+        }
+
+        void setAck(long eventInstanceId, boolean ack) {
+            for (EventRing ring : liveRings()) {
+                if (ring.setAck(eventInstanceId, ack)) return;
+            }
         }
     }
 
@@ -192,69 +261,16 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
     // ******************
 
     /**
-     * Thread local storage for events
-     */
-    protected static class LocalEventHistory {
-        private boolean enabled;
-        private final int capacity;
-        private ArrayList<Event> eventList;
-
-        public LocalEventHistory(boolean enabled, int maxCapacity) {
-            this.enabled = enabled;
-            this.eventList = new ArrayList<Event>(maxCapacity);
-            this.capacity = maxCapacity;
-        }
-
-        public boolean add(Event e) {
-            if (this.eventList.size() < capacity) {
-                this.eventList.add(e);
-                return true;
-            }
-            return false;
-        }
-
-        public int drainTo(List<Event> eventList) {
-            int size = this.eventList.size();
-            Iterator<Event> iter = this.eventList.iterator();
-            while (iter.hasNext()) {
-                eventList.add(iter.next());
-            }
-            this.eventList.clear();
-            return size;
-        }
-
-        public boolean isFull() {
-            if (eventList.size() == capacity) return true;
-            return false;
-        }
-
-        public boolean isEmpty() {
-            return this.eventList.isEmpty();
-        }
-    }
-
-    /**
-     * Thread local event buffers used for maintaining event history local to a
-     * thread. Eventually this locally maintained information is flushed into
-     * the global event buffers. <br/>
+     * The event rings owned by the current thread, written without any
+     * synchronization. A null value marks an event that is disabled. <br/>
      * It is a <b>Map</b> with <br/>
      * <b>Key</b> Integer eventId <br/>
-     * <b>Value</b> LocalEventHistory
-     */
-    protected final ThreadLocal<Map<Integer, LocalEventHistory>> threadlocalEvents = new ThreadLocal<Map<Integer, LocalEventHistory>>() {
-        @Override
-        protected Map<Integer, LocalEventHistory> initialValue() {
-            return new HashMap<Integer, LocalEventHistory>();
-        }
-    };
-
-    /**
-     * Thread local cache for event-ids that are currently active.
+     * <b>Value</b> EventRing
      */
-    protected final ThreadLocal<Set<Integer>> threadlocalCurrentEvents = new ThreadLocal<Set<Integer>>() {
+    protected final ThreadLocal<Map<Integer, EventRing>> threadlocalEvents = new ThreadLocal<Map<Integer, EventRing>>() {
         @Override
-        protected Set<Integer> initialValue() {
-            return new HashSet<Integer>();
+        protected Map<Integer, EventRing> initialValue() {
+            return new HashMap<Integer, EventRing>();
         }
     };
 
@@ -395,106 +411,48 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         return new EventCategoryBuilder<T>(evClass);
     }
 
-    private void flushLocalToGlobal(int eventId, LocalEventHistory le) {
-        DebugEventHistory de = allEvents.get(eventId);
-        if (de.einfo.enabled) {
-            List<Event> transferEvents = new ArrayList<Event>();
-            // drain local buffer to Collection
-            int size = le.drainTo(transferEvents);
-            // if global buffer doesn't have enough space, clear
-            // some space
-            int requiredSpace = size
-                                - de.circularEventBuffer.remainingCapacity();
-            if (requiredSpace > 0) {
-                for (int i = 0; i < requiredSpace; i++) {
-                    de.circularEventBuffer.removeFirst();
-                }
-            }
-            de.circularEventBuffer.addAll(transferEvents);
-        } else {
-            le.enabled = false;
-            this.threadlocalCurrentEvents.get().remove(eventId);
-        }
-    }
-
     private void newEvent(int eventId, boolean flushNow, Object eventData) {
         if (eventId < 0) {
             throw new IllegalStateException("Invalid eventId");
         }
 
-        Map<Integer, LocalEventHistory> thishist = this.threadlocalEvents.get();
-        if (!thishist.containsKey(eventId)) {
+        Map<Integer, EventRing> thishist = this.threadlocalEvents.get();
+        EventRing ring = thishist.get(eventId);
+        if (ring == null) {
+            if (thishist.containsKey(eventId)) {
+                // disabled event
+                return;
+            }
             // seeing this event for the first time in this thread - create
-            // local
-            // store by consulting global store
-            if (allEvents.containsKey(eventId)) {
-                DebugEventHistory de = allEvents.get(eventId);
-                boolean enabled = de.einfo.enabled;
-                int localCapacity = de.einfo.bufferCapacity * PCT_LOCAL_CAP
-                                    / 100;
-                if (localCapacity < 10) localCapacity = MIN_LOCAL_CAPACITY;
-                thishist.put(eventId, new LocalEventHistory(enabled,
-                                                            localCapacity));
-                if (enabled) {
-                    Set<Integer> thisset = this.threadlocalCurrentEvents.get();
-                    thisset.add(eventId);
-                }
-            } else {
+            // local ring by consulting global store
+            DebugEventHistory de = allEvents.get(eventId);
+            if (de == null) {
                 log.error("updateEvent seen locally for event {} but no global"
                                   + "storage exists for it yet .. not updating",
                           eventId);
                 return;
             }
-        }
-
-        // update local store if enabled locally for updating
-        LocalEventHistory le = thishist.get(eventId);
-        if (le.enabled) {
-            try {
-                le.add(new Event(System.currentTimeMillis(),
-                                 Thread.currentThread().getId(),
-                                 Thread.currentThread().getName(),
-                                 eventData,
-                                 /*
-                                  * the eventInstanceId is started in reverse
-                                  * order so BigDB gets the values in ascending
-                                  * order Initialization in startUp()
-                                  */
-                                 eventInstanceId.decrementAndGet()));
-
-                if (le.isFull() || flushNow) {
-                    flushLocalToGlobal(eventId, le);
-                }
-            } catch (IllegalStateException ise) {
-                log.debug("Exception while adding event locally: "
-                          + ise.getMessage());
+            if (de.einfo.enabled) {
+                ring = de.newRing(Thread.currentThread());
             }
+            thishist.put(eventId, ring);
+            if (ring == null) return;
         }
+
+        /*
+         * the eventInstanceId is started in reverse order so BigDB gets the
+         * values in ascending order Initialization in startUp()
+         */
+        ring.add(System.currentTimeMillis(), eventData,
+                 eventInstanceId.decrementAndGet());
     }
 
+    /**
+     * Events are published to readers as soon as they are recorded, so
+     * there is nothing to flush.
+     */
     @Override
     public void flushEvents() {
-        Map<Integer, LocalEventHistory> thishist = this.threadlocalEvents.get();
-        Set<Integer> thisset = this.threadlocalCurrentEvents.get();
-
-        for (int eventId : thisset) {
-            if (thishist.containsKey(eventId)) {
-                LocalEventHistory le = thishist.get(eventId);
-                if (!le.isEmpty()) {
-                    flushLocalToGlobal(eventId, le);
-                }
-            }
-        }
-
-        // sync thread local currently enabled set of eventIds with global set.
-        Sets.SetView<Integer> sv = Sets.difference(currentEvents, thisset);
-        for (int eventId : sv) {
-            if (thishist.containsKey(eventId)) {
-                thishist.get(eventId).enabled = true;
-                thisset.add(eventId);
-            }
-        }
-
     }
 
     @Override
@@ -521,9 +479,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
                     List<EventResource> eventData = new ArrayList<EventResource>();
                     // take snapshot and iterate
-                    Iterator<Event> iter = de.circularEventBuffer.descendingIterator();
-                    while (iter.hasNext()) {
-                        Event e = iter.next();
+                    for (Event e : de.snapshot()) {
                         eventData.add(e.getFormattedEvent(de.einfo.eventClass,
                                                           de.einfo.moduleEventName));
                     }
@@ -547,9 +503,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
 
                 List<EventResource> eventData = new ArrayList<EventResource>();
                 // take snapshot and iterate
-                Iterator<Event> iter = de.circularEventBuffer.descendingIterator();
-                while (iter.hasNext()) {
-                    Event e = iter.next();
+                for (Event e : de.snapshot()) {
                     eventData.add(e.getFormattedEvent(de.einfo.eventClass,
                                                       de.einfo.moduleEventName));
                 }
@@ -578,9 +532,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         int num = 1;
         List<EventResource> eventData = new ArrayList<EventResource>();
         // take snapshot and iterate
-        Iterator<Event> iter = de.circularEventBuffer.descendingIterator();
-        while (iter.hasNext()) {
-            Event e = iter.next();
+        for (Event e : de.snapshot()) {
             if (num > numOfEvents) break;
             eventData.add(e.getFormattedEvent(de.einfo.eventClass,
                                               de.einfo.moduleEventName));
@@ -595,7 +547,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
     public void resetAllEvents() {
         for (Map<String, Integer> eventMap : moduleEvents.values()) {
             for (Integer evId : eventMap.values()) {
-                allEvents.get(evId).circularEventBuffer.clear();
+                allEvents.get(evId).reset();
             }
         }
     }
@@ -605,7 +557,7 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         if (!moduleEvents.containsKey(moduleName)) return;
         Map<String, Integer> modEvents = moduleEvents.get(moduleName);
         for (Integer evId : modEvents.values()) {
-            allEvents.get(evId).circularEventBuffer.clear();
+            allEvents.get(evId).reset();
         }
     }
 
@@ -616,18 +568,15 @@ public class DebugEventService implements IFloodlightModule, IDebugEventService
         if (eventId == null) return;
 
         if (allEvents.containsKey(eventId)) {
-            allEvents.get(eventId).circularEventBuffer.clear();
+            allEvents.get(eventId).reset();
         }
     }
 
     @Override
     public void setAck(int eventId, long eventInstanceId, boolean ack) {
-        if (allEvents.containsKey(eventId)) {
-            for (Event e : allEvents.get(eventId).circularEventBuffer) {
-                if (e.getEventInstanceId() == eventInstanceId) {
-                    e.setAcked(ack);
-                }
-            }
+        DebugEventHistory de = allEvents.get(eventId);
+        if (de != null) {
+            de.setAck(eventInstanceId, ack);
         }
     }
 
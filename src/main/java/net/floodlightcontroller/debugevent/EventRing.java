@@ -0,0 +1,132 @@
+package net.floodlightcontroller.debugevent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A preallocated, single-writer ring buffer holding the history of one
+ * event type as recorded by one thread.
+ *
+ * Events are stored field by field into reusable slots, so recording an
+ * event neither allocates nor takes a lock. Each slot carries a stamp with
+ * the sequence number of the event it holds, cleared while the writer is
+ * filling the slot. Readers never block the writer: they copy a slot and
+ * keep it only if its stamp was the expected sequence number both before
+ * and after the copy, which yields a consistent snapshot of all events
+ * that were not overwritten in the meantime.
+ */
+class EventRing {
+    private final int capacity;
+    private final long threadId;
+    private final String threadName;
+
+    private final AtomicLongArray timeMs;
+    private final AtomicLongArray instanceId;
+    private final AtomicReferenceArray<Object> eventData;
+    private final AtomicIntegerArray acked;
+    // sequence number of the event held by each slot, -1 while writing
+    private final AtomicLongArray stamp;
+
+    private static final AtomicLongFieldUpdater<EventRing> HEAD =
+            AtomicLongFieldUpdater.newUpdater(EventRing.class, "head");
+
+    /** Number of events ever written; the next slot is head % capacity */
+    private volatile long head = 0;
+    /** Events with a sequence below this have been reset */
+    private volatile long floor = 0;
+
+    EventRing(int capacity, Thread owner) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be > 0. Was "
+                    + capacity);
+        }
+        this.capacity = capacity;
+        this.threadId = owner.getId();
+        this.threadName = owner.getName();
+        this.timeMs = new AtomicLongArray(capacity);
+        this.instanceId = new AtomicLongArray(capacity);
+        this.eventData = new AtomicReferenceArray<Object>(capacity);
+        this.acked = new AtomicIntegerArray(capacity);
+        this.stamp = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) {
+            stamp.set(i, -1);
+        }
+    }
+
+    /**
+     * Record an event. Must only be called by the owning thread.
+     */
+    void add(long time, Object data, long eventInstanceId) {
+        long h = head;
+        int slot = (int) (h % capacity);
+        stamp.lazySet(slot, -1);
+        timeMs.lazySet(slot, time);
+        instanceId.lazySet(slot, eventInstanceId);
+        eventData.lazySet(slot, data);
+        acked.lazySet(slot, 0);
+        stamp.lazySet(slot, h);
+        HEAD.lazySet(this, h + 1);
+    }
+
+    /**
+     * Append a consistent snapshot of the events currently held, oldest
+     * first, to the given list. Safe to call from any thread.
+     * @return the number of events appended
+     */
+    int snapshot(List<Event> into) {
+        long end = head;
+        long start = Math.max(Math.max(end - capacity, 0), floor);
+        int added = 0;
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) (seq % capacity);
+            if (stamp.get(slot) != seq) continue;
+            long time = timeMs.get(slot);
+            long id = instanceId.get(slot);
+            Object data = eventData.get(slot);
+            boolean ack = acked.get(slot) != 0;
+            // overwritten while we were copying
+            if (stamp.get(slot) != seq) continue;
+            Event e = new Event(time, threadId, threadName, data, id);
+            e.setAcked(ack);
+            into.add(e);
+            added++;
+        }
+        return added;
+    }
+
+    /**
+     * Set the ack flag of the event with the given instance id, if it is
+     * still held. Safe to call from any thread.
+     */
+    boolean setAck(long eventInstanceId, boolean ack) {
+        long end = head;
+        long start = Math.max(Math.max(end - capacity, 0), floor);
+        for (long seq = start; seq < end; seq++) {
+            int slot = (int) (seq % capacity);
+            if (stamp.get(slot) == seq &&
+                    instanceId.get(slot) == eventInstanceId) {
+                acked.set(slot, ack ? 1 : 0);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Drop all events recorded so far without touching the writer's state.
+     */
+    void reset() {
+        floor = head;
+    }
+
+    /**
+     * @return the number of events currently held
+     */
+    int size() {
+        long end = head;
+        return (int) (end - Math.max(Math.max(end - capacity, 0), floor));
+    }
+}
@@ -676,8 +676,8 @@ public class Device implements IDevice {
     public VlanVid[] getSwitchPortVlanIds(SwitchPort swp) {
         TreeSet<VlanVid> vals = new TreeSet<VlanVid>();
         for (Entity e : entities) {
-            if (e.switchDPID.equals(swp.getSwitchDPID())
-                    && e.switchPort.equals(swp.getPort())) {
+            if (swp.getSwitchDPID().equals(e.getSwitchDPID())
+                    && swp.getPort().equals(e.getSwitchPort())) {
                 if (e.getVlan() == null)
                     vals.add(VlanVid.ofVlan(-1)); //TODO Update all -1 VLANs (untagged) to the new VlanVid.ZERO
                 else
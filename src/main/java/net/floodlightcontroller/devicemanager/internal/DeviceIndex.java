@@ -32,6 +32,12 @@ public abstract class DeviceIndex {
      */
     protected EnumSet<DeviceField> keyFields;
 
+    /**
+     * Whether keys are packed into longs where they fit.  Only turned off
+     * to test the {@link IndexedEntity} keys against the packed ones.
+     */
+    protected boolean packKeys = true;
+
     /**
      * Construct a new device index using the provided key fields
      * @param keyFields the key fields to use
@@ -41,6 +47,18 @@ public abstract class DeviceIndex {
         this.keyFields = keyFields;
     }
 
+    /**
+     * Pack the key fields of an entity for this index
+     * @param entity the entity
+     * @return the packed key, or {@link IndexedEntity#NO_PACKED_KEY} if
+     * the entity is to be kept as an {@link IndexedEntity}
+     */
+    protected long packKey(Entity entity) {
+        if (!packKeys)
+            return IndexedEntity.NO_PACKED_KEY;
+        return IndexedEntity.packKey(keyFields, entity);
+    }
+
     /**
      * Find all device keys in the index that match the given entity
      * on all the key fields for this index
@@ -48,6 +66,14 @@ public abstract class DeviceIndex {
      * @return an iterator over device keys
      */
     public abstract Iterator<Long> queryByEntity(Entity entity);
+
+    /**
+     * Find all device keys in the index that match the given entity
+     * on all the key fields for this index
+     * @param e the entity to search for
+     * @return the device keys, which must not be modified
+     */
+    public abstract Collection<Long> getDeviceKeys(Entity entity);
     
     /**
      * Get all device keys in the index.  If certain devices exist
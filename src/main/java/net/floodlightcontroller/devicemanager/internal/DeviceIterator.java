@@ -72,6 +72,8 @@ public class DeviceIterator extends FilterIterator<Device> {
 
     @Override
     protected boolean matches(Device value) {
+        // an index may still refer to a device that was just removed
+        if (value == null) return false;
         boolean match;
         if (entityClasses != null) {
             IEntityClass clazz = value.getEntityClass();
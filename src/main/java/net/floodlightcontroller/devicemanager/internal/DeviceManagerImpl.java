@@ -19,7 +19,6 @@ package net.floodlightcontroller.devicemanager.internal;
 
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Calendar;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
@@ -33,6 +32,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Queue;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
@@ -83,7 +83,9 @@ import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.util.ConcurrentLongLongMap;
 import net.floodlightcontroller.util.MultiIterator;
+import net.floodlightcontroller.util.TimingWheel;
 import static net.floodlightcontroller.devicemanager.internal.
 DeviceManagerImpl.DeviceUpdate.Change.*;
 
@@ -99,14 +101,19 @@ import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.sdnplatform.sync.IClosableIterator;
 import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncCodec;
 import org.sdnplatform.sync.ISyncService;
 import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.SyncCodecs;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.error.ObsoleteVersionException;
 import org.sdnplatform.sync.error.SyncException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
 /**
  * DeviceManager creates Devices based upon MAC addresses seen in the network.
  * It tracks any network addresses mapped to the Device, and its location
@@ -115,6 +122,8 @@ import org.slf4j.LoggerFactory;
  */
 public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, ITopologyListener, IFloodlightModule, IEntityClassListener, IInfoProvider {
 	protected static Logger logger = LoggerFactory.getLogger(DeviceManagerImpl.class);
+	/** Name of the executor running entity cleanup and store consolidation */
+	public static final String EXECUTOR_NAME = "devicemanager";
 	protected IFloodlightProviderService floodlightProvider;
 	protected ITopologyService topology;
 	protected IStorageSourceService storageSource;
@@ -177,6 +186,31 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	static final int DEFAULT_SYNC_STORE_WRITE_INTERVAL_MS = 5*60*1000; // 5 min
 	private int syncStoreWriteIntervalMs = DEFAULT_SYNC_STORE_WRITE_INTERVAL_MS;
 
+	/**
+	 * Time from the first queued device update until the queued updates
+	 * are written to the sync store. Updates to a device that arrive in
+	 * the meantime are written once.
+	 */
+	static final int SYNC_STORE_WRITE_DELAY_MS = 100;
+
+	/**
+	 * Maximum number of devices written to the sync store in one batch
+	 */
+	static final int SYNC_STORE_WRITE_BATCH_SIZE = 1000;
+
+	/**
+	 * Maximum number of devices whose last write time is kept to throttle
+	 * writes. Forgetting a device only costs an extra write.
+	 */
+	static final int SYNC_STORE_MAX_THROTTLED_DEVICES = 100000;
+
+	/**
+	 * Codec for the values written to the sync store, or null for the
+	 * default encoding. Only set this once every controller in the domain
+	 * knows the codec.
+	 */
+	private ISyncCodec syncStoreCodec;
+
 	/**
 	 * Time after SLAVE->MASTER until we run the consolidate store
 	 * code.
@@ -200,9 +234,9 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	protected static final int ENTITY_TIMEOUT = 60*60*1000;
 
 	/**
-	 * Time in seconds between cleaning up old entities/devices
+	 * Time in seconds between ticks of the entity expiry wheel
 	 */
-	protected static final int ENTITY_CLEANUP_INTERVAL = 60*60;
+	protected static final int ENTITY_CLEANUP_INTERVAL = 10;
 
 	/**
 	 * This is the master device map that maps device IDs to {@link Device}
@@ -225,6 +259,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	protected Map<EnumSet<DeviceField>, DeviceIndex> secondaryIndexMap;
 
+	/**
+	 * Keeps the always-on indices over single fields and chooses the
+	 * indices to answer queries with
+	 */
+	protected DeviceQueryPlanner queryPlanner;
+
 	/**
 	 * This map contains state for each of the {@ref IEntityClass}
 	 * that exist
@@ -417,6 +457,17 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	public SingletonTask entityCleanupTask;
 
+	/**
+	 * The keys of the devices that have entities to expire, each due at
+	 * the earliest time one of its entities can expire
+	 */
+	protected TimingWheel entityExpiryWheel;
+
+	/**
+	 * The earliest time each device is due in {@link #entityExpiryWheel}
+	 */
+	protected ConcurrentLongLongMap entityExpiryDeadlines;
+
 
 	/**
 	 * Periodic task to consolidate entries in the store. I.e., delete
@@ -424,6 +475,11 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 	 */
 	private SingletonTask storeConsolidateTask;
 
+	/**
+	 * Task that writes the queued device updates to the sync store
+	 */
+	private SingletonTask storeWriteTask;
+
 	/**
 	 * Listens for HA notifications
 	 */
@@ -498,39 +554,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			IPv4Address ipv4Address,
 			DatapathId switchDPID,
 			OFPort switchPort) {
-		DeviceIndex index = null;
-		if (secondaryIndexMap.size() > 0) {
-			EnumSet<DeviceField> keys =
-					getEntityKeys(macAddress, vlan, ipv4Address,
-							switchDPID, switchPort);
-			index = secondaryIndexMap.get(keys);
-		}
-
-		Iterator<Device> deviceIterator = null;
-		if (index == null) {
-			// Do a full table scan
-			deviceIterator = deviceMap.values().iterator();
-		} else {
-			// index lookup
-			Entity entity = new Entity(macAddress,
-					vlan,
-					ipv4Address,
-					switchDPID,
-					switchPort,
-					null);
-			deviceIterator =
-					new DeviceIndexInterator(this, index.queryByEntity(entity));
-		}
-
-		DeviceIterator di =
-				new DeviceIterator(deviceIterator,
-						null,
-						macAddress,
-						vlan,
-						ipv4Address,
-						switchDPID,
-						switchPort);
-		return di;
+		return getDeviceIteratorForQuery(macAddress, vlan, ipv4Address,
+				switchDPID, switchPort);
 	}
 
 	@Override
@@ -556,8 +581,16 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		if (index == null) {
 			index = classState.classIndex;
 			if (index == null) {
+				// look up the devices in the query planner's indices, or
 				// scan all devices
-				return new DeviceIterator(deviceMap.values().iterator(),
+				Iterator<Long> deviceKeys =
+						queryPlanner.plan(secondaryIndexMap.values(),
+								macAddress, vlan, ipv4Address,
+								switchDPID, switchPort);
+				Iterator<Device> devices = deviceKeys == null
+						? deviceMap.values().iterator()
+						: new DeviceIndexInterator(this, deviceKeys);
+				return new DeviceIterator(devices,
 						new IEntityClass[] { entityClass },
 						macAddress, vlan, ipv4Address,
 						switchDPID, switchPort);
@@ -587,28 +620,17 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			IPv4Address ipv4Address,
 			DatapathId switchDPID,
 			OFPort switchPort) {
-		DeviceIndex index = null;
-		if (secondaryIndexMap.size() > 0) {
-			EnumSet<DeviceField> keys =
-					getEntityKeys(macAddress, vlan, ipv4Address,
-							switchDPID, switchPort);
-			index = secondaryIndexMap.get(keys);
-		}
+		Iterator<Long> deviceKeys =
+				queryPlanner.plan(secondaryIndexMap.values(), macAddress,
+						vlan, ipv4Address, switchDPID, switchPort);
 
 		Iterator<Device> deviceIterator = null;
-		if (index == null) {
+		if (deviceKeys == null) {
 			// Do a full table scan
 			deviceIterator = deviceMap.values().iterator();
 		} else {
 			// index lookup
-			Entity entity = new Entity(macAddress,
-					vlan,
-					ipv4Address,
-					switchDPID,
-					switchPort,
-					null);
-			deviceIterator =
-					new DeviceIndexInterator(this, index.queryByEntity(entity));
+			deviceIterator = new DeviceIndexInterator(this, deviceKeys);
 		}
 
 		DeviceIterator di =
@@ -825,6 +847,13 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		this.debugCounters = fmc.getServiceImpl(IDebugCounterService.class);
 		this.debugEventService = fmc.getServiceImpl(IDebugEventService.class);
 		this.syncService = fmc.getServiceImpl(ISyncService.class);
+		String codec = fmc.getConfigParams(this).get("sync-store-codec");
+		if (codec != null) {
+			syncStoreCodec = SyncCodecs.getCodec(codec);
+			if (syncStoreCodec == null)
+				throw new FloodlightModuleException("Unknown sync store codec " +
+						codec);
+		}
 		this.deviceSyncManager = new DeviceSyncManager();
 		this.haListenerDelegate = new HAListenerDelegate();
 		registerDeviceManagerDebugCounters();
@@ -852,8 +881,12 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		isMaster = (floodlightProvider.getRole() == HARole.ACTIVE);
 		primaryIndex = new DeviceUniqueIndex(entityClassifier.getKeyFields());
 		secondaryIndexMap = new HashMap<EnumSet<DeviceField>, DeviceIndex>();
+		queryPlanner = new DeviceQueryPlanner();
 
 		deviceMap = new ConcurrentHashMap<Long, Device>();
+		entityExpiryWheel = new TimingWheel(ENTITY_CLEANUP_INTERVAL * 1000L,
+				System.currentTimeMillis());
+		entityExpiryDeadlines = new ConcurrentLongLongMap();
 		classStateMap =
 				new ConcurrentHashMap<String, ClassState>();
 		apComparator = new AttachmentPointComparator();
@@ -864,7 +897,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			topology.addListener(this);
 		entityClassifier.addListener(this);
 
-		ScheduledExecutorService ses = threadPool.getScheduledExecutor();
+		ScheduledExecutorService ses = threadPool.getScheduledExecutor(EXECUTOR_NAME);
 		Runnable ecr = new Runnable() {
 			@Override
 			public void run() {
@@ -886,6 +919,14 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			}
 		};
 		storeConsolidateTask = new SingletonTask(ses, consolidateStoreRunner);
+
+		Runnable storeWriteRunner = new Runnable() {
+			@Override
+			public void run() {
+				deviceSyncManager.writePendingDevices();
+			}
+		};
+		storeWriteTask = new SingletonTask(ses, storeWriteRunner);
 		if (isMaster)
 			storeConsolidateTask.reschedule(syncStoreConsolidateIntervalMs,
 					TimeUnit.MILLISECONDS);
@@ -898,7 +939,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		}
 
 		try {
-			this.syncService.registerStore(DEVICE_SYNC_STORE_NAME, Scope.LOCAL);
+			this.syncService.registerStore(DEVICE_SYNC_STORE_NAME, Scope.LOCAL,
+					syncStoreCodec);
 			this.storeClient = this.syncService
 					.getStoreClient(DEVICE_SYNC_STORE_NAME,
 							String.class,
@@ -1472,6 +1514,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				// hit a concurrent modification and restart the dev creation
 				// and potentially count the device twice.
 				cntNewDevice.increment();
+				scheduleEntityExpiry(deviceKey, entity);
 				if (logger.isDebugEnabled()) {
 					logger.debug("New device created: {} deviceKey={}, entity={}",
 							new Object[]{device, deviceKey, entity});
@@ -1538,6 +1581,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				// We need to count here after all the possible "continue"
 				// statements in this branch
 				cntNewEntity.increment();
+				scheduleEntityExpiry(deviceKey, entity);
 				if (changedFields.size() > 0) {
 					cntDeviceChanged.increment();
 					deviceUpdates =
@@ -1703,18 +1747,18 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 				 // MAC address is always present
 				 break;
 			 case IPV4:
-				 if (e.ipv4Address == null) return false;
+				 if (e.getIpv4Address() == null) return false;
 				 break;
 			 case SWITCH:
-				 if (e.switchDPID == null) return false;
+				 if (e.getSwitchDPID() == null) return false;
 				 break;
 			 case PORT:
-				 if (e.switchPort == null) return false;
+				 if (e.getSwitchPort() == null) return false;
 				 break;
 			 case VLAN:
 				 // FIXME: vlan==null is ambiguous: it can mean: not present
 				 // or untagged
-				 //if (e.vlan == null) return false;
+				 //if (e.getVlan() == null) return false;
 				 break;
 			 default:
 				 // we should never get here. unless somebody extended
@@ -1792,104 +1836,151 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 for (DeviceIndex index : state.secondaryIndexMap.values()) {
 			 index.updateIndex(entity, deviceKey);
 		 }
+		 queryPlanner.addEntity(entity, deviceKey);
 	 }
 
 	 /**
-	  * Clean up expired entities/devices
+	  * Clean up expired entities/devices.  Only the devices that are due in
+	  * {@link #entityExpiryWheel} are looked at, and the updates for all of
+	  * them are sent together.
 	  */
 	 protected void cleanupEntities () {
 		 cntCleanupEntitiesRuns.increment();
 
-		 Calendar c = Calendar.getInstance();
-		 c.add(Calendar.MILLISECOND, -ENTITY_TIMEOUT);
-		 Date cutoff = c.getTime();
+		 long now = System.currentTimeMillis();
+		 long cutoff = now - ENTITY_TIMEOUT;
+		 LinkedList<DeviceUpdate> deviceUpdates =
+				 new LinkedList<DeviceUpdate>();
+		 for (long deviceKey : entityExpiryWheel.advance(now)) {
+			 entityExpiryDeadlines.remove(deviceKey);
+			 expireEntities(deviceKey, cutoff, deviceUpdates);
+		 }
+		 processUpdates(deviceUpdates);
+		 // Since cleanupEntities() is not called in the packet-in pipeline,
+		 // debugEvents need to be flushed explicitly
+		 debugEventService.flushEvents();
+	 }
 
+	 /**
+	  * Remove the entities of a device last seen before the cutoff, and
+	  * schedule the device again for its remaining entities
+	  * @param deviceKey the key of the device
+	  * @param cutoff the time in milliseconds before which entities expire
+	  * @param deviceUpdates the list to add the resulting updates to
+	  */
+	 protected void expireEntities(long deviceKey, long cutoff,
+			 List<DeviceUpdate> deviceUpdates) {
 		 ArrayList<Entity> toRemove = new ArrayList<Entity>();
 		 ArrayList<Entity> toKeep = new ArrayList<Entity>();
 
-		 Iterator<Device> diter = deviceMap.values().iterator();
-		 LinkedList<DeviceUpdate> deviceUpdates =
-				 new LinkedList<DeviceUpdate>();
+		 Device d = deviceMap.get(deviceKey);
+		 while (d != null) {
+			 toRemove.clear();
+			 toKeep.clear();
+			 long earliest = Long.MAX_VALUE;
+			 for (Entity e : d.getEntities()) {
+				 if (e.has(Entity.HAS_LAST_SEEN) &&
+						 e.lastSeenTimestamp < cutoff) {
+					 // individual entity needs to be removed
+					 toRemove.add(e);
+				 } else {
+					 toKeep.add(e);
+					 if (e.has(Entity.HAS_LAST_SEEN))
+						 earliest = Math.min(earliest, e.lastSeenTimestamp);
+				 }
+			 }
+			 if (toRemove.size() == 0) {
+				 scheduleExpiry(deviceKey, earliest);
+				 return;
+			 }
 
-		 while (diter.hasNext()) {
-			 Device d = diter.next();
+			 cntEntityRemovedTimeout.increment();
+			 for (Entity e : toRemove) {
+				 removeEntity(e, d.getEntityClass(), d.getDeviceKey(), toKeep);
+			 }
 
-			 while (true) {
-				 deviceUpdates.clear();
-				 toRemove.clear();
-				 toKeep.clear();
-				 for (Entity e : d.getEntities()) {
-					 if (e.getLastSeenTimestamp() != null &&
-							 0 > e.getLastSeenTimestamp().compareTo(cutoff)) {
-						 // individual entity needs to be removed
-						 toRemove.add(e);
-					 } else {
-						 toKeep.add(e);
-					 }
-				 }
-				 if (toRemove.size() == 0) {
-					 break;
-				 }
+			 if (toKeep.size() > 0) {
+				 Device newDevice = allocateDevice(d.getDeviceKey(),
+						 d.getDHCPClientName(),
+						 d.oldAPs,
+						 d.attachmentPoints,
+						 toKeep,
+						 d.getEntityClass());
 
-				 cntEntityRemovedTimeout.increment();
+				 EnumSet<DeviceField> changedFields =
+						 EnumSet.noneOf(DeviceField.class);
 				 for (Entity e : toRemove) {
-					 removeEntity(e, d.getEntityClass(), d.getDeviceKey(), toKeep);
+					 changedFields.addAll(findChangedFields(newDevice, e));
+				 }
+				 DeviceUpdate update = null;
+				 if (changedFields.size() > 0) {
+					 update = new DeviceUpdate(d, CHANGE, changedFields);
 				 }
 
-				 if (toKeep.size() > 0) {
-					 Device newDevice = allocateDevice(d.getDeviceKey(),
-							 d.getDHCPClientName(),
-							 d.oldAPs,
-							 d.attachmentPoints,
-							 toKeep,
-							 d.getEntityClass());
-
-					 EnumSet<DeviceField> changedFields =
-							 EnumSet.noneOf(DeviceField.class);
-					 for (Entity e : toRemove) {
-						 changedFields.addAll(findChangedFields(newDevice, e));
-					 }
-					 DeviceUpdate update = null;
-					 if (changedFields.size() > 0) {
-						 update = new DeviceUpdate(d, CHANGE, changedFields);
-					 }
-
-					 if (!deviceMap.replace(newDevice.getDeviceKey(),
-							 d,
-							 newDevice)) {
-						 // concurrent modification; try again
-						 // need to use device that is the map now for the next
-						 // iteration
-						 d = deviceMap.get(d.getDeviceKey());
-								 if (null != d)
-									 continue;
-					 }
-					 if (update != null) {
-						 // need to count after all possibly continue stmts in
-						 // this branch
-						 cntDeviceChanged.increment();
-						 deviceUpdates.add(update);
-					 }
-				 } else {
-					 DeviceUpdate update = new DeviceUpdate(d, DELETE, null);
-					 if (!deviceMap.remove(d.getDeviceKey(), d)) {
-						 // concurrent modification; try again
-						 // need to use device that is the map now for the next
-						 // iteration
-						 d = deviceMap.get(d.getDeviceKey());
-						 if (null != d)
-							 continue;
-						 cntDeviceDeleted.increment();
-					 }
+				 if (!deviceMap.replace(newDevice.getDeviceKey(),
+						 d,
+						 newDevice)) {
+					 // concurrent modification; try again
+					 // need to use device that is the map now for the next
+					 // iteration
+					 d = deviceMap.get(d.getDeviceKey());
+					 continue;
+				 }
+				 queryPlanner.removeAttachmentPoints(toRemove, newDevice,
+						 toKeep);
+				 scheduleExpiry(deviceKey, earliest);
+				 if (update != null) {
+					 // need to count after all possibly continue stmts in
+					 // this branch
+					 cntDeviceChanged.increment();
 					 deviceUpdates.add(update);
 				 }
-				 processUpdates(deviceUpdates);
-				 break;
+			 } else {
+				 DeviceUpdate update = new DeviceUpdate(d, DELETE, null);
+				 if (!deviceMap.remove(d.getDeviceKey(), d)) {
+					 // concurrent modification; try again
+					 // need to use device that is the map now for the next
+					 // iteration
+					 d = deviceMap.get(d.getDeviceKey());
+					 if (null != d)
+						 continue;
+					 cntDeviceDeleted.increment();
+				 } else {
+					 queryPlanner.removeDevice(d);
+				 }
+				 deviceUpdates.add(update);
 			 }
+			 return;
 		 }
-		 // Since cleanupEntities() is not called in the packet-in pipeline,
-		 // debugEvents need to be flushed explicitly
-		 debugEventService.flushEvents();
+	 }
+
+	 /**
+	  * Schedule a device in the entity expiry wheel for an entity that was
+	  * added to it
+	  * @param deviceKey the key of the device
+	  * @param entity the new entity
+	  */
+	 protected void scheduleEntityExpiry(long deviceKey, Entity entity) {
+		 if (entity.has(Entity.HAS_LAST_SEEN))
+			 scheduleExpiry(deviceKey, entity.lastSeenTimestamp);
+	 }
+
+	 /**
+	  * Schedule a device in the entity expiry wheel unless it is already
+	  * due no later
+	  * @param deviceKey the key of the device
+	  * @param lastSeen the earliest last seen time of the entities of the
+	  * device, or Long.MAX_VALUE if none can expire
+	  */
+	 private void scheduleExpiry(long deviceKey, long lastSeen) {
+		 if (lastSeen == Long.MAX_VALUE)
+			 return;
+		 long deadline = lastSeen + ENTITY_TIMEOUT;
+		 long current = entityExpiryDeadlines.get(deviceKey);
+		 if (current != ConcurrentLongLongMap.NO_VALUE && current <= deadline)
+			 return;
+		 entityExpiryDeadlines.put(deviceKey, deadline);
+		 entityExpiryWheel.schedule(deviceKey, deadline);
 	 }
 
 	 protected void removeEntity(Entity removed,
@@ -1908,6 +1999,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 }
 
 		 primaryIndex.removeEntityIfNeeded(removed, deviceKey, others);
+		 queryPlanner.removeEntity(removed, deviceKey, others);
 
 		 if (classState.classIndex != null) {
 			 classState.classIndex.removeEntityIfNeeded(removed,
@@ -1930,6 +2022,7 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			 this.removeEntity(entity, device.getEntityClass(),
 					 device.getDeviceKey(), emptyToKeep);
 		 }
+		 queryPlanner.removeDevice(device);
 		 if (!deviceMap.remove(device.getDeviceKey(), device)) {
 			 if (logger.isDebugEnabled())
 				 logger.debug("device map does not have this device -" +
@@ -1993,10 +2086,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 List <AttachmentPoint> newAPs =
 				 new ArrayList<AttachmentPoint>();
 		 for (Entity entity : entities) {
-			 if (entity.switchDPID != null && entity.switchPort != null) {
+			 if (entity.getSwitchDPID() != null && entity.getSwitchPort() != null) {
 				 AttachmentPoint aP =
-						 new AttachmentPoint(entity.switchDPID,
-								 entity.switchPort, new Date(0));
+						 new AttachmentPoint(entity.getSwitchDPID(),
+								 entity.getSwitchPort(), new Date(0));
 				 newPossibleAPs.add(aP);
 			 }
 		 }
@@ -2148,6 +2241,21 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 this.initialSyncStoreConsolidateMs = intervalMs;
 	 }
 
+	 /**
+	  * For testing: write the queued device updates to the store NOW
+	  */
+	 void writePendingDevicesToStore() {
+		 deviceSyncManager.writePendingDevices();
+	 }
+
+	 /**
+	  * For testing: replace the task that writes the queued device updates
+	  * to the store
+	  */
+	 void setStoreWriteTask(SingletonTask task) {
+		 this.storeWriteTask = task;
+	 }
+
 	 /**
 	  * For testing: consolidate the store NOW
 	  */
@@ -2157,13 +2265,27 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 
 	 private class DeviceSyncManager  {
 		 // maps (opaque) deviceKey to the time in System.nanoTime() when we
-		 // last wrote the device to the sync store
-		 private final ConcurrentMap<Long, Long> lastWriteTimes = new ConcurrentHashMap<Long, Long>();
+		 // last wrote the device to the sync store. Bounded so devices that
+		 // go quiet don't stay in it forever.
+		 private final Cache<Long, Long> lastWriteTimes =
+				 CacheBuilder.newBuilder()
+				 .maximumSize(SYNC_STORE_MAX_THROTTLED_DEVICES)
+				 .build();
+
+		 // maps deviceKey to the latest version of the device that has
+		 // yet to be written to the sync store
+		 private final ConcurrentMap<Long, Device> pendingWrites =
+				 new ConcurrentHashMap<Long, Device>();
+
+		 // true while storeWriteTask is scheduled and has not yet started
+		 // to take the pending writes
+		 private final AtomicBoolean writeScheduled = new AtomicBoolean();
 
 		 /**
 		  * Write the given device to storage if we are MASTER.
 		  * Use this method if the device has significantly changed (e.g.,
 		  * new AP, new IP, entities removed).
+		  * The write is queued and performed by storeWriteTask.
 		  * @param d the device to store
 		  */
 		 public void storeDevice(Device d) {
@@ -2172,8 +2294,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			 if (d == null)
 				 return;
 			 long now = System.nanoTime();
-			 writeUpdatedDeviceToStorage(d);
 			 lastWriteTimes.put(d.getDeviceKey(), now);
+			 queueWrite(d);
 		 }
 
 		 /**
@@ -2190,15 +2312,59 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 			 if (d == null)
 				 return;
 			 long now = System.nanoTime();
-			 Long last = lastWriteTimes.get(d.getDeviceKey());
+			 Long last = lastWriteTimes.getIfPresent(d.getDeviceKey());
 			 if (last == null || (now - last) > intervalNs) {
-				 writeUpdatedDeviceToStorage(d);
+				 // two threads may both get here for the same device;
+				 // their writes are merged in pendingWrites
 				 lastWriteTimes.put(d.getDeviceKey(), now);
+				 queueWrite(d);
 			 } else {
 				 cntDeviceStoreThrottled.increment();
 			 }
 		 }
 
+		 /**
+		  * Queue the device to be written to the store. A device that is
+		  * already queued is replaced, so it is only written once.
+		  * @param d the device to store
+		  */
+		 private void queueWrite(Device d) {
+			 pendingWrites.put(d.getDeviceKey(), d);
+			 // don't reschedule a scheduled task, or a steady stream of
+			 // updates would keep postponing the write
+			 if (writeScheduled.compareAndSet(false, true))
+				 storeWriteTask.reschedule(SYNC_STORE_WRITE_DELAY_MS,
+						 TimeUnit.MILLISECONDS);
+		 }
+
+		 /**
+		  * Write the queued devices to the store in batches
+		  */
+		 private void writePendingDevices() {
+			 writeScheduled.set(false);
+			 if (!isMaster) {
+				 // we lost MASTER since the writes were queued
+				 pendingWrites.clear();
+				 return;
+			 }
+			 Map<String, DeviceSyncRepresentation> batch =
+					 new HashMap<String, DeviceSyncRepresentation>();
+			 for (Long deviceKey : pendingWrites.keySet()) {
+				 Device d = pendingWrites.remove(deviceKey);
+				 if (d == null)
+					 continue;
+				 DeviceSyncRepresentation storeDevice =
+						 new DeviceSyncRepresentation(d);
+				 batch.put(storeDevice.getKey(), storeDevice);
+				 if (batch.size() >= SYNC_STORE_WRITE_BATCH_SIZE) {
+					 writeDevicesToStorage(batch);
+					 batch.clear();
+				 }
+			 }
+			 if (!batch.isEmpty())
+				 writeDevicesToStorage(batch);
+		 }
+
 		 /**
 		  * Remove the given device from the store. If only some entities have
 		  * been removed the updated device should be written using
@@ -2208,10 +2374,10 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 public void removeDevice(Device d) {
 			 if (!isMaster)
 				 return;
-			 // FIXME: could we have a problem with concurrent put to the
-			 // hashMap? I.e., we write a stale entry to the map after the
-			 // delete and now are left with an entry we'll never clean up
-			 lastWriteTimes.remove(d.getDeviceKey());
+			 // A write of the device that is in progress may still land
+			 // after the delete; consolidateStore will remove it.
+			 pendingWrites.remove(d.getDeviceKey());
+			 lastWriteTimes.invalidate(d.getDeviceKey());
 			 try {
 				 // TODO: should probably do versioned delete. OTOH, even
 				 // if we accidentally delete, we'll write it again after
@@ -2286,25 +2452,25 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 }
 
 		 /**
-		  * Actually perform the write of the device to the store
+		  * Actually perform the write of a batch of devices to the store
 		  * FIXME: concurrent modification behavior
-		  * @param device The device to write
+		  * @param devices The devices to write, by store key
 		  */
-		 private void writeUpdatedDeviceToStorage(Device device) {
+		 private void writeDevicesToStorage(
+				 Map<String, DeviceSyncRepresentation> devices) {
 			 try {
-				 cntDeviceStrored.increment();
+				 cntDeviceStrored.add(devices.size());
 				 // FIXME: use a versioned put
-				 DeviceSyncRepresentation storeDevice = new DeviceSyncRepresentation(device);
-				 storeClient.put(storeDevice.getKey(), storeDevice);
+				 storeClient.putAll(devices);
 			 } catch (ObsoleteVersionException e) {
 				 // FIXME: what's the right behavior here. Can the store client
 				 // even throw this error?
 			 } catch (SyncException e) {
 				 cntSyncException.increment();
-				 logger.error("Could not write device " + device +
-						 " to sync store:", e);
+				 logger.error("Could not write " + devices.size() +
+						 " devices to sync store:", e);
 			 } catch (Exception e) {
-				 logger.error("Count not write device to sync storage " + e.getMessage());
+				 logger.error("Count not write devices to sync storage " + e.getMessage());
 			 }
 		 }
 
@@ -2326,6 +2492,8 @@ public class DeviceManagerImpl implements IDeviceService, IOFMessageListener, IT
 		 private void consolidateStore() {
 			 if (!isMaster)
 				 return;
+			 // the store should reflect the live devices before we compare
+			 writePendingDevices();
 			 cntConsolidateStoreRuns.increment();
 			 if (logger.isDebugEnabled()) {
 				 logger.debug("Running consolidateStore.");
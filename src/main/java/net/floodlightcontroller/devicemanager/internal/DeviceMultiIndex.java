@@ -14,35 +14,60 @@
 *    License for the specific language governing permissions and limitations
 *    under the License.
 **/
-
 package net.floodlightcontroller.devicemanager.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.common.collect.Iterators;
+import com.google.common.primitives.Longs;
+
 import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+import net.floodlightcontroller.util.ConcurrentLongObjectMap;
 import net.floodlightcontroller.util.IterableIterator;
 
 /**
  * An index that maps key fields of an entity to device keys, with multiple
- * device keys allowed per entity
+ * device keys allowed per entity.  Keys that can be packed into a long
+ * (see {@link IndexedEntity#packKey(EnumSet, Entity)}) are kept in a
+ * primitive map, each with a sorted array of its device keys that is
+ * replaced rather than changed, or a set once there are more than
+ * {@link #MAX_ARRAY_SIZE} of them.  A packed key is removed once its last
+ * device key is removed, whether it holds an array or a set.  Other keys
+ * are kept as {@link IndexedEntity} objects with a set of device keys.
  */
 public class DeviceMultiIndex extends DeviceIndex {
     /**
-     * The index
+     * The most device keys of a packed key that are kept in an array
+     */
+    protected static final int MAX_ARRAY_SIZE = 32;
+
+    /**
+     * The index of the keys that cannot be packed
      */
     private ConcurrentHashMap<IndexedEntity, Collection<Long>> index;
 
+    /**
+     * The index of the packed keys; each value is a long[] or a
+     * Set&lt;Long&gt;
+     */
+    private ConcurrentLongObjectMap<Object> packedIndex;
+
     /**
      * @param keyFields
      */
     public DeviceMultiIndex(EnumSet<DeviceField> keyFields) {
         super(keyFields);
         index = new ConcurrentHashMap<IndexedEntity, Collection<Long>>();
+        packedIndex = new ConcurrentLongObjectMap<Object>();
     }
 
     // ***********
@@ -51,18 +76,31 @@ public class DeviceMultiIndex extends DeviceIndex {
 
     @Override
     public Iterator<Long> queryByEntity(Entity entity) {
+        return getDeviceKeys(entity).iterator();
+    }
+
+    @Override
+    public Collection<Long> getDeviceKeys(Entity entity) {
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY)
+            return asCollection(packedIndex.get(packed));
+
         IndexedEntity ie = new IndexedEntity(keyFields, entity);
         Collection<Long> devices = index.get(ie);
         if (devices != null)
-            return devices.iterator();
+            return devices;
         
-        return Collections.<Long>emptySet().iterator();
+        return Collections.<Long>emptySet();
     }
     
     @Override
     public Iterator<Long> getAll() {
         Iterator<Collection<Long>> iter = index.values().iterator();
-        return new IterableIterator<Long>(iter);
+        List<Collection<Long>> packed = new ArrayList<Collection<Long>>();
+        for (Object devices : packedIndex.values())
+            packed.add(asCollection(devices));
+        return Iterators.concat(new IterableIterator<Long>(packed.iterator()),
+                                new IterableIterator<Long>(iter));
     }
     
     @Override
@@ -75,15 +113,21 @@ public class DeviceMultiIndex extends DeviceIndex {
     
     @Override
     public boolean updateIndex(Entity entity, Long deviceKey) {
+        if (!IndexedEntity.hasNonNullKeys(keyFields, entity)) return false;
+
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY) {
+            addPacked(packed, deviceKey);
+            return true;
+        }
+
         Collection<Long> devices = null;
 
         IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        if (!ie.hasNonNullKeys()) return false;
 
         devices = index.get(ie);
         if (devices == null) {
-            Map<Long,Boolean> chm = new ConcurrentHashMap<Long,Boolean>();
-            devices = Collections.newSetFromMap(chm);
+            devices = newDeviceSet();
             Collection<Long> r = index.putIfAbsent(ie, devices);
             if (r != null)
                 devices = r;
@@ -95,15 +139,120 @@ public class DeviceMultiIndex extends DeviceIndex {
 
     @Override
     public void removeEntity(Entity entity) {
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY) {
+            packedIndex.remove(packed);
+            return;
+        }
         IndexedEntity ie = new IndexedEntity(keyFields, entity);
         index.remove(ie);        
     }
 
     @Override
     public void removeEntity(Entity entity, Long deviceKey) {
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY) {
+            removePacked(packed, deviceKey);
+            return;
+        }
         IndexedEntity ie = new IndexedEntity(keyFields, entity);
         Collection<Long> devices = index.get(ie);
         if (devices != null)
             devices.remove(deviceKey);
     }
+
+    /**
+     * For testing: the number of packed keys in the index
+     */
+    int getPackedKeyCount() {
+        return packedIndex.size();
+    }
+
+    private static Set<Long> newDeviceSet() {
+        Map<Long,Boolean> chm = new ConcurrentHashMap<Long,Boolean>();
+        return Collections.newSetFromMap(chm);
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Collection<Long> asCollection(Object devices) {
+        if (devices == null)
+            return Collections.<Long>emptySet();
+        if (devices instanceof long[])
+            return Longs.asList((long[])devices);
+        return (Collection<Long>)devices;
+    }
+
+    @SuppressWarnings("unchecked")
+    private void addPacked(long packed, long deviceKey) {
+        while (true) {
+            Object current = packedIndex.get(packed);
+            if (current == null) {
+                if (packedIndex.putIfAbsent(packed,
+                                            new long[] { deviceKey }) == null)
+                    return;
+                continue;
+            }
+            if (current instanceof Set) {
+                ((Set<Long>)current).add(deviceKey);
+                // the set may have been removed as empty before the add
+                if (packedIndex.get(packed) == current)
+                    return;
+                continue;
+            }
+            long[] devices = (long[])current;
+            int i = Arrays.binarySearch(devices, deviceKey);
+            if (i >= 0)
+                return;
+            Object updated;
+            if (devices.length >= MAX_ARRAY_SIZE) {
+                Set<Long> set = newDeviceSet();
+                set.addAll(Longs.asList(devices));
+                set.add(deviceKey);
+                updated = set;
+            } else {
+                i = -i - 1;
+                long[] array = new long[devices.length + 1];
+                System.arraycopy(devices, 0, array, 0, i);
+                array[i] = deviceKey;
+                System.arraycopy(devices, i, array, i + 1,
+                                 devices.length - i);
+                updated = array;
+            }
+            if (packedIndex.replace(packed, devices, updated))
+                return;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void removePacked(long packed, long deviceKey) {
+        while (true) {
+            Object current = packedIndex.get(packed);
+            if (current == null)
+                return;
+            if (current instanceof Set) {
+                Set<Long> set = (Set<Long>)current;
+                set.remove(deviceKey);
+                if (set.isEmpty() && packedIndex.remove(packed, set)) {
+                    // put back device keys added after the isEmpty check
+                    for (Long key : set)
+                        addPacked(packed, key);
+                }
+                return;
+            }
+            long[] devices = (long[])current;
+            int i = Arrays.binarySearch(devices, deviceKey);
+            if (i < 0)
+                return;
+            if (devices.length == 1) {
+                if (packedIndex.remove(packed, devices))
+                    return;
+                continue;
+            }
+            long[] updated = new long[devices.length - 1];
+            System.arraycopy(devices, 0, updated, 0, i);
+            System.arraycopy(devices, i + 1, updated, i, updated.length - i);
+            if (packedIndex.replace(packed, devices, updated))
+                return;
+        }
+    }
 }
@@ -0,0 +1,251 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+
+/**
+ * Chooses the device indices to answer a device query with.  The planner
+ * keeps an index on each of MAC, IPv4 address, VLAN, switch and switch and
+ * port, so that any query on one of these fields can be answered without
+ * scanning all devices.  For a query it looks up every index whose key
+ * fields are all given, and intersects the device keys of the most
+ * selective ones.
+ *
+ * The result is the device keys that may match; the devices still have to
+ * be checked against the query, e.g. with a {@link DeviceIterator}.
+ */
+public class DeviceQueryPlanner {
+    /**
+     * A lookup is intersected with the candidates only if it has at most
+     * this many times as many device keys; otherwise checking the
+     * candidate devices directly is cheaper
+     */
+    protected static final int INTERSECT_RATIO = 8;
+
+    /**
+     * Packet-in learning gives untagged hosts VLAN 0 (Ethernet.VLAN_UNTAGGED);
+     * some callers use -1
+     */
+    protected static final VlanVid UNTAGGED = VlanVid.ofVlan(-1);
+
+    /**
+     * The indices that follow the entities of the devices
+     */
+    protected final List<DeviceIndex> fieldIndices;
+
+    /**
+     * The indices on switch and port.  When an entity expires its entry is
+     * kept as long as the device is still attached there, since the
+     * attachment points of a device outlive the entities they were learned
+     * from.
+     */
+    protected final List<DeviceIndex> attachmentPointIndices;
+
+    public DeviceQueryPlanner() {
+        fieldIndices = new ArrayList<DeviceIndex>();
+        fieldIndices.add(new DeviceMultiIndex(EnumSet.of(DeviceField.MAC)));
+        fieldIndices.add(new DeviceMultiIndex(EnumSet.of(DeviceField.IPV4)));
+        fieldIndices.add(new DeviceMultiIndex(EnumSet.of(DeviceField.VLAN)));
+        attachmentPointIndices = new ArrayList<DeviceIndex>();
+        attachmentPointIndices.add(
+                new DeviceMultiIndex(EnumSet.of(DeviceField.SWITCH)));
+        attachmentPointIndices.add(
+                new DeviceMultiIndex(EnumSet.of(DeviceField.SWITCH,
+                                                DeviceField.PORT)));
+    }
+
+    /**
+     * Add an entity of a device to the indices
+     * @param entity the entity
+     * @param deviceKey the key of the device
+     */
+    public void addEntity(Entity entity, Long deviceKey) {
+        for (DeviceIndex index : fieldIndices) {
+            // nearly every device is untagged, so an untagged entry would
+            // only cost memory; untagged queries do not use the index
+            if (index.keyFields.contains(DeviceField.VLAN) &&
+                    isUntagged(entity.getVlan()))
+                continue;
+            index.updateIndex(entity, deviceKey);
+        }
+        if (entity.hasSwitchPort()) {
+            for (DeviceIndex index : attachmentPointIndices)
+                index.updateIndex(entity, deviceKey);
+        }
+    }
+
+    /**
+     * Remove an entity of a device from the indices
+     * @param entity the entity
+     * @param deviceKey the key of the device
+     * @param others the entities the device keeps
+     */
+    public void removeEntity(Entity entity, Long deviceKey,
+                             Collection<Entity> others) {
+        for (DeviceIndex index : fieldIndices)
+            index.removeEntityIfNeeded(entity, deviceKey, others);
+    }
+
+    /**
+     * Remove the attachment point entries of expired entities of a device,
+     * unless a remaining entity or an attachment point of the device is
+     * still at the same switch and port
+     * @param removed the expired entities
+     * @param device the device with its current attachment points
+     * @param others the entities the device keeps
+     */
+    public void removeAttachmentPoints(Collection<Entity> removed,
+                                       Device device,
+                                       Collection<Entity> others) {
+        List<Entity> remaining = new ArrayList<Entity>(others);
+        for (AttachmentPoint ap : attachmentPointsOf(device)) {
+            remaining.add(new Entity(null, null, null, ap.getSw(),
+                                     ap.getPort(), null));
+        }
+        Long deviceKey = device.getDeviceKey();
+        for (Entity entity : removed) {
+            if (!entity.hasSwitchPort())
+                continue;
+            for (DeviceIndex index : attachmentPointIndices)
+                index.removeEntityIfNeeded(entity, deviceKey, remaining);
+        }
+    }
+
+    /**
+     * Remove all entries of a deleted device from the indices
+     * @param device the device
+     */
+    public void removeDevice(Device device) {
+        Long deviceKey = device.getDeviceKey();
+        for (Entity entity : device.getEntities()) {
+            for (DeviceIndex index : fieldIndices)
+                index.removeEntity(entity, deviceKey);
+            for (DeviceIndex index : attachmentPointIndices)
+                index.removeEntity(entity, deviceKey);
+        }
+        // entries kept for attachment points whose entities expired
+        for (AttachmentPoint ap : attachmentPointsOf(device)) {
+            Entity entity = new Entity(null, null, null, ap.getSw(),
+                                       ap.getPort(), null);
+            for (DeviceIndex index : attachmentPointIndices)
+                index.removeEntity(entity, deviceKey);
+        }
+    }
+
+    /**
+     * Find the keys of the devices that may match a query
+     * @param otherIndices other indices that may be used
+     * @param macAddress the MAC address, or null
+     * @param vlan the VLAN, or null
+     * @param ipv4Address the IPv4 address, or null
+     * @param switchDPID the switch DPID, or null
+     * @param switchPort the switch port, or null
+     * @return the device keys, or null if no index applies and all devices
+     * must be scanned
+     */
+    public Iterator<Long> plan(Collection<DeviceIndex> otherIndices,
+                               MacAddress macAddress,
+                               VlanVid vlan,
+                               IPv4Address ipv4Address,
+                               DatapathId switchDPID,
+                               OFPort switchPort) {
+        EnumSet<DeviceField> fields = EnumSet.noneOf(DeviceField.class);
+        if (macAddress != null) fields.add(DeviceField.MAC);
+        // devices with untagged entities may have no VLAN in the index
+        if (vlan != null && !isUntagged(vlan)) fields.add(DeviceField.VLAN);
+        if (ipv4Address != null) fields.add(DeviceField.IPV4);
+        if (switchDPID != null) fields.add(DeviceField.SWITCH);
+        if (switchPort != null) fields.add(DeviceField.PORT);
+        if (fields.isEmpty())
+            return null;
+
+        Entity entity = new Entity(macAddress, vlan, ipv4Address,
+                                   switchDPID, switchPort, null);
+        List<Collection<Long>> lookups = new ArrayList<Collection<Long>>();
+        if (!lookup(fieldIndices, fields, entity, lookups) ||
+                !lookup(attachmentPointIndices, fields, entity, lookups) ||
+                (otherIndices != null &&
+                 !lookup(otherIndices, fields, entity, lookups)))
+            return Collections.<Long>emptySet().iterator();
+        if (lookups.isEmpty())
+            return null;
+
+        Collections.sort(lookups, new Comparator<Collection<Long>>() {
+            @Override
+            public int compare(Collection<Long> a, Collection<Long> b) {
+                return Integer.compare(a.size(), b.size());
+            }
+        });
+        Collection<Long> candidates = lookups.get(0);
+        for (int i = 1; i < lookups.size(); i++) {
+            Collection<Long> next = lookups.get(i);
+            if (candidates.isEmpty() ||
+                    next.size() > INTERSECT_RATIO * candidates.size())
+                break;
+            Set<Long> nextSet = next instanceof Set
+                    ? (Set<Long>)next : new HashSet<Long>(next);
+            List<Long> both = new ArrayList<Long>(candidates.size());
+            for (Long key : candidates) {
+                if (nextSet.contains(key))
+                    both.add(key);
+            }
+            candidates = both;
+        }
+        return candidates.iterator();
+    }
+
+    /**
+     * Look up the entity in the indices whose key fields are all given
+     * @param indices the indices
+     * @param fields the fields given in the query
+     * @param entity the query
+     * @param lookups the list to add the device keys of each lookup to
+     * @return false if a lookup found no devices, so nothing can match
+     */
+    private static boolean lookup(Collection<DeviceIndex> indices,
+                                  EnumSet<DeviceField> fields,
+                                  Entity entity,
+                                  List<Collection<Long>> lookups) {
+        for (DeviceIndex index : indices) {
+            if (index.keyFields.isEmpty() ||
+                    !fields.containsAll(index.keyFields))
+                continue;
+            Collection<Long> keys = index.getDeviceKeys(entity);
+            if (keys.isEmpty())
+                return false;
+            lookups.add(keys);
+        }
+        return true;
+    }
+
+    private static List<AttachmentPoint> attachmentPointsOf(Device device) {
+        List<AttachmentPoint> aps = new ArrayList<AttachmentPoint>();
+        List<AttachmentPoint> current = device.attachmentPoints;
+        if (current != null)
+            aps.addAll(current);
+        List<AttachmentPoint> old = device.oldAPs;
+        if (old != null)
+            aps.addAll(old);
+        return aps;
+    }
+
+    private static boolean isUntagged(VlanVid vlan) {
+        return vlan == null || VlanVid.ZERO.equals(vlan) ||
+                UNTAGGED.equals(vlan);
+    }
+}
@@ -17,22 +17,34 @@
 
 package net.floodlightcontroller.devicemanager.internal;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.EnumSet;
 import java.util.Iterator;
 import java.util.concurrent.ConcurrentHashMap;
 
+import com.google.common.collect.Iterators;
+import com.google.common.primitives.Longs;
+
 import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+import net.floodlightcontroller.util.ConcurrentLongLongMap;
 
 /**
- * An index that maps key fields of an entity uniquely to a device key
+ * An index that maps key fields of an entity uniquely to a device key.
+ * Keys that can be packed into a long (see {@link IndexedEntity#packKey(EnumSet, Entity)}) are kept
+ * in a primitive map; other keys are kept as {@link IndexedEntity} objects.
  */
 public class DeviceUniqueIndex extends DeviceIndex {
     /**
-     * The index
+     * The index of the keys that cannot be packed
      */
     private final ConcurrentHashMap<IndexedEntity, Long> index;
 
+    /**
+     * The index of the packed keys
+     */
+    private final ConcurrentLongLongMap packedIndex;
+
     /**
      * Construct a new device index using the provided key fields
      * @param keyFields the key fields to use
@@ -40,6 +52,7 @@ public class DeviceUniqueIndex extends DeviceIndex {
     public DeviceUniqueIndex(EnumSet<DeviceField> keyFields) {
         super(keyFields);
         index = new ConcurrentHashMap<IndexedEntity, Long>();
+        packedIndex = new ConcurrentLongLongMap();
     }
 
     // ***********
@@ -55,18 +68,35 @@ public class DeviceUniqueIndex extends DeviceIndex {
         return Collections.<Long>emptySet().iterator();
     }
 
+    @Override
+    public Collection<Long> getDeviceKeys(Entity entity) {
+        final Long deviceKey = findByEntity(entity);
+        if (deviceKey != null)
+            return Collections.<Long>singleton(deviceKey);
+
+        return Collections.<Long>emptySet();
+    }
+
     @Override
     public Iterator<Long> getAll() {
-        return index.values().iterator();
+        return Iterators.concat(Longs.asList(packedIndex.values()).iterator(),
+                                index.values().iterator());
     }
 
     @Override
     public boolean updateIndex(Device device, Long deviceKey) {
         for (Entity e : device.entities) {
-            IndexedEntity ie = new IndexedEntity(keyFields, e);
-            if (!ie.hasNonNullKeys()) continue;
-
-            Long ret = index.putIfAbsent(ie, deviceKey);
+            if (!IndexedEntity.hasNonNullKeys(keyFields, e)) continue;
+
+            long packed = packKey(e);
+            Long ret;
+            if (packed != IndexedEntity.NO_PACKED_KEY) {
+                long r = packedIndex.putIfAbsent(packed, deviceKey);
+                ret = r == ConcurrentLongLongMap.NO_VALUE ? null : r;
+            } else {
+                ret = index.putIfAbsent(new IndexedEntity(keyFields, e),
+                                        deviceKey);
+            }
             if (ret != null && !ret.equals(deviceKey)) {
                 // If the return value is non-null, then fail the insert
                 // (this implies that a device using this entity has
@@ -79,22 +109,31 @@ public class DeviceUniqueIndex extends DeviceIndex {
 
     @Override
     public boolean updateIndex(Entity entity, Long deviceKey) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        if (!ie.hasNonNullKeys()) return false;
-        index.put(ie, deviceKey);
+        if (!IndexedEntity.hasNonNullKeys(keyFields, entity)) return false;
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY)
+            packedIndex.put(packed, deviceKey);
+        else
+            index.put(new IndexedEntity(keyFields, entity), deviceKey);
         return true;
     }
 
     @Override
     public void removeEntity(Entity entity) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        index.remove(ie);
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY)
+            packedIndex.remove(packed);
+        else
+            index.remove(new IndexedEntity(keyFields, entity));
     }
 
     @Override
     public void removeEntity(Entity entity, Long deviceKey) {
-        IndexedEntity ie = new IndexedEntity(keyFields, entity);
-        index.remove(ie, deviceKey);
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY)
+            packedIndex.remove(packed, deviceKey);
+        else
+            index.remove(new IndexedEntity(keyFields, entity), deviceKey);
     }
 
     // **************
@@ -107,6 +146,13 @@ public class DeviceUniqueIndex extends DeviceIndex {
      * @return The key for the {@link Device} object if found
      */
     public Long findByEntity(Entity entity) {
+        long packed = packKey(entity);
+        if (packed != IndexedEntity.NO_PACKED_KEY) {
+            long deviceKey = packedIndex.get(packed);
+            if (deviceKey == ConcurrentLongLongMap.NO_VALUE)
+                return null;
+            return deviceKey;
+        }
         IndexedEntity ie = new IndexedEntity(keyFields, entity);
         Long deviceKey = index.get(ie);
         if (deviceKey == null)
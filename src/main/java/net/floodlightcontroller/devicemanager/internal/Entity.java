@@ -14,7 +14,6 @@
 *    License for the specific language governing permissions and limitations
 *    under the License.
 **/
-
 package net.floodlightcontroller.devicemanager.internal;
 
 import java.util.Date;
@@ -27,6 +26,8 @@ import net.floodlightcontroller.core.web.serializers.MacSerializer;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
+import com.google.common.primitives.UnsignedInts;
+import com.google.common.primitives.UnsignedLongs;
 
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.IPv4Address;
@@ -44,6 +45,11 @@ import org.projectfloodlight.openflow.types.VlanVid;
  * Entities are the most basic element of devices; devices consist of one or
  * more entities.  Entities are immutable once created, except for the last
  * seen timestamp.
+ * 
+ * There is an entity for every host the controller has seen, so an entity
+ * keeps its fields as primitives rather than as boxed OpenFlow types and
+ * dates.  The getters build the OpenFlow types on demand; a field that is
+ * not present is marked in {@link Entity#present} and reads as null.
  *  
  * @author readams
  *
@@ -54,39 +60,48 @@ public class Entity implements Comparable<Entity> {
      * @see {@link Entity#activeSince}
      */
     protected static int ACTIVITY_TIMEOUT = 30000;
+
+    // Bits of {@link Entity#present}
+    protected static final int HAS_MAC = 1;
+    protected static final int HAS_IPV4 = 1 << 1;
+    protected static final int HAS_VLAN = 1 << 2;
+    protected static final int HAS_SWITCH = 1 << 3;
+    protected static final int HAS_PORT = 1 << 4;
+    protected static final int HAS_LAST_SEEN = 1 << 5;
+    protected static final int HAS_ACTIVE_SINCE = 1 << 6;
     
     /**
      * The MAC address associated with this entity
      */
-    protected MacAddress macAddress;
+    protected final long macAddress;
     
     /**
-     * The IP address associated with this entity, or null if no IP learned
+     * The IP address associated with this entity, if one was learned
      * from the network observation associated with this entity
      */
-    protected IPv4Address ipv4Address;
+    protected final int ipv4Address;
     
     /**
-     * The VLAN tag on this entity, or null if untagged
+     * The VLAN tag on this entity, if tagged
      */
-    protected VlanVid vlan;
+    protected final short vlan;
     
     /**
      * The DPID of the switch for the ingress point for this entity,
-     * or null if not present
+     * if present
      */
-    protected DatapathId switchDPID;
+    protected final long switchDPID;
     
     /**
      * The port number of the switch for the ingress point for this entity,
-     * or null if not present
+     * if present
      */
-    protected OFPort switchPort;
+    protected final int switchPort;
     
     /**
-     * The last time we observed this entity on the network
+     * The last time in milliseconds we observed this entity on the network
      */
-    protected Date lastSeenTimestamp;
+    protected long lastSeenTimestamp;
 
     /**
      * The time between {@link Entity#activeSince} and 
@@ -96,7 +111,13 @@ public class Entity implements Comparable<Entity> {
      * {@link Entity#lastSeenTimestamp} and {@link Entity#activeSince} will 
      * be set to the current time.
      */
-    protected Date activeSince;
+    protected long activeSince;
+
+    /**
+     * The HAS_* bits of the fields that are present.  A field that is not
+     * present is 0.
+     */
+    protected byte present;
     
     // ************
     // Constructors
@@ -115,51 +136,70 @@ public class Entity implements Comparable<Entity> {
     public Entity(MacAddress macAddress, VlanVid vlan, 
                   IPv4Address ipv4Address, DatapathId switchDPID, OFPort switchPort, 
                   Date lastSeenTimestamp) {
-        this.macAddress = macAddress;
-        this.ipv4Address = ipv4Address;
-        this.vlan = vlan;
-        this.switchDPID = switchDPID;
-        this.switchPort = switchPort;
-        this.lastSeenTimestamp = lastSeenTimestamp;
-        this.activeSince = lastSeenTimestamp;
+        int p = 0;
+        if (macAddress != null) p |= HAS_MAC;
+        if (ipv4Address != null) p |= HAS_IPV4;
+        if (vlan != null) p |= HAS_VLAN;
+        if (switchDPID != null) p |= HAS_SWITCH;
+        if (switchPort != null) p |= HAS_PORT;
+        if (lastSeenTimestamp != null) p |= HAS_LAST_SEEN | HAS_ACTIVE_SINCE;
+        this.present = (byte)p;
+        this.macAddress = macAddress != null ? macAddress.getLong() : 0;
+        this.ipv4Address = ipv4Address != null ? ipv4Address.getInt() : 0;
+        this.vlan = vlan != null ? vlan.getVlan() : 0;
+        this.switchDPID = switchDPID != null ? switchDPID.getLong() : 0;
+        this.switchPort = switchPort != null ? switchPort.getPortNumber() : 0;
+        this.lastSeenTimestamp = lastSeenTimestamp != null ?
+                lastSeenTimestamp.getTime() : 0;
+        this.activeSince = this.lastSeenTimestamp;
     }
 
     // ***************
     // Getters/Setters
     // ***************
 
+    /**
+     * Check whether a field is present
+     * @param field the HAS_* bit of the field
+     * @return true if the field is not null
+     */
+    protected boolean has(int field) {
+        return (present & field) != 0;
+    }
+
     @JsonSerialize(using=MacSerializer.class)
     public MacAddress getMacAddress() {
-        return macAddress;
+        return has(HAS_MAC) ? MacAddress.of(macAddress) : null;
     }
 
     @JsonSerialize(using=IPv4Serializer.class)
     public IPv4Address getIpv4Address() {
-        return ipv4Address;
+        return has(HAS_IPV4) ? IPv4Address.of(ipv4Address) : null;
     }
 
     @JsonSerialize(using=VlanVidSerializer.class)
     public VlanVid getVlan() {
-        return vlan;
+        return has(HAS_VLAN) ? VlanVid.ofVlan(vlan) : null;
     }
 
     @JsonSerialize(using=DPIDSerializer.class)
     public DatapathId getSwitchDPID() {
-        return switchDPID;
+        return has(HAS_SWITCH) ? DatapathId.of(switchDPID) : null;
     }
 
     @JsonSerialize(using=OFPortSerializer.class)
     public OFPort getSwitchPort() {
-        return switchPort;
+        return has(HAS_PORT) ? OFPort.of(switchPort) : null;
     }
     
     @JsonIgnore
     public boolean hasSwitchPort() {
-        return (switchDPID != null && !switchDPID.equals(DatapathId.NONE) && switchPort != null && !switchPort.equals(OFPort.ZERO));
+        return (has(HAS_SWITCH) && switchDPID != DatapathId.NONE.getLong() &&
+                has(HAS_PORT) && switchPort != OFPort.ZERO.getPortNumber());
     }
 
     public Date getLastSeenTimestamp() {
-        return lastSeenTimestamp;
+        return has(HAS_LAST_SEEN) ? new Date(lastSeenTimestamp) : null;
     }
 
     /**
@@ -169,116 +209,116 @@ public class Entity implements Comparable<Entity> {
      * @see {@link Entity#activeSince}
      */
     public void setLastSeenTimestamp(Date lastSeenTimestamp) {
-        if (activeSince == null || (activeSince.getTime() + ACTIVITY_TIMEOUT) < lastSeenTimestamp.getTime())
-            this.activeSince = lastSeenTimestamp;
-        this.lastSeenTimestamp = lastSeenTimestamp;
+        if (lastSeenTimestamp == null) {
+            present &= ~HAS_LAST_SEEN;
+            this.lastSeenTimestamp = 0;
+            return;
+        }
+        long time = lastSeenTimestamp.getTime();
+        if (!has(HAS_ACTIVE_SINCE) || (activeSince + ACTIVITY_TIMEOUT) < time) {
+            this.activeSince = time;
+            present |= HAS_ACTIVE_SINCE;
+        }
+        this.lastSeenTimestamp = time;
+        present |= HAS_LAST_SEEN;
     }
 
     public Date getActiveSince() {
-        return activeSince;
+        return has(HAS_ACTIVE_SINCE) ? new Date(activeSince) : null;
     }
 
     public void setActiveSince(Date activeSince) {
-        this.activeSince = activeSince;
+        if (activeSince == null) {
+            present &= ~HAS_ACTIVE_SINCE;
+            this.activeSince = 0;
+        } else {
+            present |= HAS_ACTIVE_SINCE;
+            this.activeSince = activeSince.getTime();
+        }
     }
     
     @Override
-	public int hashCode() {
-		final int prime = 31;
-		int result = 1;
-		result = prime * result
-				+ ((ipv4Address == null) ? 0 : ipv4Address.hashCode());
-		result = prime * result
-				+ ((macAddress == null) ? 0 : macAddress.hashCode());
-		result = prime * result
-				+ ((switchDPID == null) ? 0 : switchDPID.hashCode());
-		result = prime * result
-				+ ((switchPort == null) ? 0 : switchPort.hashCode());
-		result = prime * result + ((vlan == null) ? 0 : vlan.hashCode());
-		return result;
-	}
+    public int hashCode() {
+        final int prime = 31;
+        int result = 1;
+        result = prime * result + ipv4Address;
+        result = prime * result + (int)(macAddress ^ (macAddress >>> 32));
+        result = prime * result + (int)(switchDPID ^ (switchDPID >>> 32));
+        result = prime * result + switchPort;
+        result = prime * result + vlan;
+        result = prime * result +
+                (present & (HAS_MAC | HAS_IPV4 | HAS_VLAN |
+                            HAS_SWITCH | HAS_PORT));
+        return result;
+    }
 
     @Override
-	public boolean equals(Object obj) {
-		if (this == obj)
-			return true;
-		if (obj == null)
-			return false;
-		if (getClass() != obj.getClass())
-			return false;
-		Entity other = (Entity) obj;
-		if (ipv4Address == null) {
-			if (other.ipv4Address != null)
-				return false;
-		} else if (!ipv4Address.equals(other.ipv4Address))
-			return false;
-		if (macAddress == null) {
-			if (other.macAddress != null)
-				return false;
-		} else if (!macAddress.equals(other.macAddress))
-			return false;
-		if (switchDPID == null) {
-			if (other.switchDPID != null)
-				return false;
-		} else if (!switchDPID.equals(other.switchDPID))
-			return false;
-		if (switchPort == null) {
-			if (other.switchPort != null)
-				return false;
-		} else if (!switchPort.equals(other.switchPort))
-			return false;
-		if (vlan == null) {
-			if (other.vlan != null)
-				return false;
-		} else if (!vlan.equals(other.vlan))
-			return false;
-		return true;
-	}
+    public boolean equals(Object obj) {
+        if (this == obj)
+            return true;
+        if (obj == null)
+            return false;
+        if (getClass() != obj.getClass())
+            return false;
+        Entity other = (Entity) obj;
+        final int keys = HAS_MAC | HAS_IPV4 | HAS_VLAN | HAS_SWITCH | HAS_PORT;
+        if ((present & keys) != (other.present & keys))
+            return false;
+        if (ipv4Address != other.ipv4Address)
+            return false;
+        if (macAddress != other.macAddress)
+            return false;
+        if (switchDPID != other.switchDPID)
+            return false;
+        if (switchPort != other.switchPort)
+            return false;
+        if (vlan != other.vlan)
+            return false;
+        return true;
+    }
 
-    
-    
     @Override
     public String toString() {
         StringBuilder builder = new StringBuilder();
         builder.append("Entity [macAddress=");
-        if (macAddress != null) {
-            builder.append(macAddress.toString());
+        if (has(HAS_MAC)) {
+            builder.append(getMacAddress().toString());
         } else {
             builder.append("null");
         }
         builder.append(", ipv4Address=");
-        if (ipv4Address != null) {
-            builder.append(ipv4Address.toString());
+        if (has(HAS_IPV4)) {
+            builder.append(getIpv4Address().toString());
         } else {
             builder.append("null");
         }
         builder.append(", vlan=");
-        if (vlan != null) {
-            builder.append(vlan.getVlan());
+        if (has(HAS_VLAN)) {
+            builder.append(vlan);
         } else {
             builder.append("null");
         }
         builder.append(", switchDPID=");
-        if (switchDPID != null) {
-            builder.append(switchDPID.toString());
+        if (has(HAS_SWITCH)) {
+            builder.append(getSwitchDPID().toString());
         } else {
             builder.append("null");
         }
         builder.append(", switchPort=");
-        if (switchPort != null) {
-            builder.append(switchPort.getPortNumber());
+        if (has(HAS_PORT)) {
+            builder.append(switchPort);
         } else {
             builder.append("null");
         }
         builder.append(", lastSeenTimestamp=");
-        if (lastSeenTimestamp != null) {
-            builder.append(lastSeenTimestamp == null? "null" : lastSeenTimestamp.getTime());
+        if (has(HAS_LAST_SEEN)) {
+            builder.append(lastSeenTimestamp);
         } else {
             builder.append("null");
         }
         builder.append(", activeSince=");
-        if (activeSince != null) {
-            builder.append(activeSince == null? "null" : activeSince.getTime());
+        if (has(HAS_ACTIVE_SINCE)) {
+            builder.append(activeSince);
         } else {
             builder.append("null");
         }
@@ -288,40 +328,40 @@ public class Entity implements Comparable<Entity> {
 
     @Override
     public int compareTo(Entity o) {
-        if (macAddress.getLong() < o.macAddress.getLong()) return -1;
-        if (macAddress.getLong() > o.macAddress.getLong()) return 1;
+        if (macAddress < o.macAddress) return -1;
+        if (macAddress > o.macAddress) return 1;
 
         int r;
-        if (switchDPID == null)
-            r = o.switchDPID == null ? 0 : -1;
-        else if (o.switchDPID == null)
+        if (!has(HAS_SWITCH))
+            r = !o.has(HAS_SWITCH) ? 0 : -1;
+        else if (!o.has(HAS_SWITCH))
             r = 1;
         else
-            r = switchDPID.compareTo(o.switchDPID);
+            r = UnsignedLongs.compare(switchDPID, o.switchDPID);
         if (r != 0) return r;
 
-        if (switchPort == null)
-            r = o.switchPort == null ? 0 : -1;
-        else if (o.switchPort == null)
+        if (!has(HAS_PORT))
+            r = !o.has(HAS_PORT) ? 0 : -1;
+        else if (!o.has(HAS_PORT))
             r = 1;
         else
-            r = switchPort.compareTo(o.switchPort);
+            r = UnsignedInts.compare(switchPort, o.switchPort);
         if (r != 0) return r;
 
-        if (ipv4Address == null)
-            r = o.ipv4Address == null ? 0 : -1;
-        else if (o.ipv4Address == null)
+        if (!has(HAS_IPV4))
+            r = !o.has(HAS_IPV4) ? 0 : -1;
+        else if (!o.has(HAS_IPV4))
             r = 1;
         else
-            r = ipv4Address.compareTo(o.ipv4Address);
+            r = UnsignedInts.compare(ipv4Address, o.ipv4Address);
         if (r != 0) return r;
 
-        if (vlan == null)
-            r = o.vlan == null ? 0 : -1;
-        else if (o.vlan == null)
+        if (!has(HAS_VLAN))
+            r = !o.has(HAS_VLAN) ? 0 : -1;
+        else if (!o.has(HAS_VLAN))
             r = 1;
         else
-            r = vlan.compareTo(o.vlan);
+            r = vlan - o.vlan;
         if (r != 0) return r;
 
         return 0;
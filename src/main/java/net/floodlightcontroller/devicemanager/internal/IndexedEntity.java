@@ -32,6 +32,12 @@ import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
  * @author readams
  */
 public class IndexedEntity {
+    /**
+     * Returned by {@link #packKey(EnumSet, Entity)} for a key that does not
+     * fit in a long
+     */
+    public static final long NO_PACKED_KEY = -1L;
+
     protected EnumSet<DeviceField> keyFields;
     protected Entity entity;
     private int hashCode = 0;
@@ -55,26 +61,118 @@ public class IndexedEntity {
      * @return true if any key fields have a non-null value
      */
     public boolean hasNonNullKeys() {
+        return hasNonNullKeys(keyFields, entity);
+    }
+
+    /**
+     * Check whether an entity has non-null values in any of the given key
+     * fields
+     * @param keyFields the key fields
+     * @param entity the entity
+     * @return true if any key fields have a non-null value
+     */
+    public static boolean hasNonNullKeys(EnumSet<DeviceField> keyFields,
+                                         Entity entity) {
         for (DeviceField f : keyFields) {
             switch (f) {
                 case MAC:
                     return true;
                 case IPV4:
-                    if (entity.ipv4Address != null) return true;
+                    if (entity.has(Entity.HAS_IPV4)) return true;
                     break;
                 case SWITCH:
-                    if (entity.switchDPID != null) return true;
+                    if (entity.has(Entity.HAS_SWITCH)) return true;
                     break;
                 case PORT:
-                    if (entity.switchPort != null) return true;
+                    if (entity.has(Entity.HAS_PORT)) return true;
                     break;
                 case VLAN:
-                    if (entity.vlan != null) return true;
+                    if (entity.has(Entity.HAS_VLAN)) return true;
                     break;
             }
         }
         return false;
     }
+
+    private static int packedBits(DeviceField f) {
+        switch (f) {
+            case MAC:
+                return 48;
+            case IPV4:
+            case PORT:
+                // the value and whether it is present
+                return 33;
+            case VLAN:
+                // untagged, 0-4095 or not present
+                return 13;
+            default:
+                return 64;
+        }
+    }
+
+    /**
+     * Check whether keys on the given fields can be packed into a long with
+     * {@link #packKey(EnumSet, Entity)}.  This is the case for MAC, IPV4,
+     * VLAN and PORT alone, and for MAC, IPV4 or PORT together with VLAN.
+     * @param keyFields the key fields
+     * @return true if the keys can be packed
+     */
+    public static boolean canPack(EnumSet<DeviceField> keyFields) {
+        int bits = 0;
+        for (DeviceField f : keyFields)
+            bits += packedBits(f);
+        return bits < 64;
+    }
+
+    /**
+     * Pack the key fields of an entity into a non-negative long.  Two
+     * entities have the same packed key exactly when they are equal in the
+     * key fields, so the packed key can stand in for an
+     * {@link IndexedEntity} as the key of an index without keeping a
+     * reference to the entity.
+     * @param keyFields the key fields
+     * @param entity the entity
+     * @return the packed key or {@link #NO_PACKED_KEY} if the key fields
+     * cannot be packed, or this entity's values for them cannot
+     */
+    public static long packKey(EnumSet<DeviceField> keyFields,
+                               Entity entity) {
+        if (!canPack(keyFields))
+            return NO_PACKED_KEY;
+        long key = 0;
+        for (DeviceField f : keyFields) {
+            switch (f) {
+                case MAC:
+                    if (!entity.has(Entity.HAS_MAC) ||
+                            (entity.macAddress >>> 48) != 0)
+                        return NO_PACKED_KEY;
+                    key = (key << 48) | entity.macAddress;
+                    break;
+                case IPV4:
+                    key = (key << 33) | (entity.has(Entity.HAS_IPV4)
+                            ? (1L << 32) | (entity.ipv4Address & 0xffffffffL)
+                            : 0);
+                    break;
+                case PORT:
+                    key = (key << 33) | (entity.has(Entity.HAS_PORT)
+                            ? (1L << 32) | (entity.switchPort & 0xffffffffL)
+                            : 0);
+                    break;
+                case VLAN:
+                    long vlan = 0;
+                    if (entity.has(Entity.HAS_VLAN)) {
+                        if (entity.vlan < -1 || entity.vlan > 4095)
+                            return NO_PACKED_KEY;
+                        vlan = entity.vlan + 2;
+                    }
+                    key = (key << 13) | vlan;
+                    break;
+                default:
+                    return NO_PACKED_KEY;
+            }
+        }
+        return key;
+    }
     
     @Override
     public int hashCode() {
@@ -89,32 +187,23 @@ public class IndexedEntity {
             switch (f) {
                 case MAC:
                     hashCode = prime * hashCode
-                        + (int) (entity.macAddress.getLong() ^ 
-                                (entity.macAddress.getLong() >>> 32));
+                        + (int) (entity.macAddress ^ 
+                                (entity.macAddress >>> 32));
                     break;
                 case IPV4:
-                    hashCode = prime * hashCode
-                        + ((entity.ipv4Address == null) 
-                            ? 0 
-                            : entity.ipv4Address.hashCode());
+                    hashCode = prime * hashCode + entity.ipv4Address;
                     break;
                 case SWITCH:
                     hashCode = prime * hashCode
-                        + ((entity.switchDPID == null) 
-                            ? 0 
-                            : entity.switchDPID.hashCode());
+                        + (int) (entity.switchDPID ^
+                                (entity.switchDPID >>> 32));
                     break;
                 case PORT:
-                    hashCode = prime * hashCode
-                        + ((entity.switchPort == null) 
-                            ? 0 
-                            : entity.switchPort.hashCode());
+                    hashCode = prime * hashCode + entity.switchPort;
                     break;
                 case VLAN:
                     hashCode = prime * hashCode 
-                        + ((entity.vlan == null) 
-                            ? 0 
-                            : entity.vlan.hashCode());
+                        + (entity.has(Entity.HAS_VLAN) ? entity.vlan : 0);
                     break;
             }
         }
@@ -131,31 +220,28 @@ public class IndexedEntity {
         if (!keyFields.equals(other.keyFields))
             return false;
 
+        Entity o = other.entity;
         for (IDeviceService.DeviceField f : keyFields) {
             switch (f) {
                 case MAC:
-                    if (!entity.macAddress.equals(other.entity.macAddress))
+                    if (entity.macAddress != o.macAddress)
                         return false;
                     break;
                 case IPV4:
-                    if (entity.ipv4Address == null) {
-                        if (other.entity.ipv4Address != null) return false;
-                    } else if (!entity.ipv4Address.equals(other.entity.ipv4Address)) return false;
+                    if (entity.has(Entity.HAS_IPV4) != o.has(Entity.HAS_IPV4) ||
+                            entity.ipv4Address != o.ipv4Address) return false;
                     break;
                 case SWITCH:
-                    if (entity.switchDPID == null) {
-                        if (other.entity.switchDPID != null) return false;
-                    } else if (!entity.switchDPID.equals(other.entity.switchDPID)) return false;
+                    if (entity.has(Entity.HAS_SWITCH) != o.has(Entity.HAS_SWITCH) ||
+                            entity.switchDPID != o.switchDPID) return false;
                     break;
                 case PORT:
-                    if (entity.switchPort == null) {
-                        if (other.entity.switchPort != null) return false;
-                    } else if (!entity.switchPort.equals(other.entity.switchPort)) return false;
+                    if (entity.has(Entity.HAS_PORT) != o.has(Entity.HAS_PORT) ||
+                            entity.switchPort != o.switchPort) return false;
                     break;
                 case VLAN:
-                    if (entity.vlan == null) {
-                        if (other.entity.vlan != null) return false;
-                    } else if (!entity.vlan.equals(other.entity.vlan)) return false;
+                    if (entity.has(Entity.HAS_VLAN) != o.has(Entity.HAS_VLAN) ||
+                            entity.vlan != o.vlan) return false;
                     break;
             }
         }
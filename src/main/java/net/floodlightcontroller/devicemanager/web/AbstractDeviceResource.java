@@ -23,6 +23,7 @@ import net.floodlightcontroller.devicemanager.IDevice;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.devicemanager.internal.Device;
+import net.floodlightcontroller.restserver.RestPage;
 import net.floodlightcontroller.util.FilterIterator;
 
 import org.projectfloodlight.openflow.types.DatapathId;
@@ -34,8 +35,12 @@ import org.restlet.data.Form;
 import org.restlet.data.Status;
 import org.restlet.resource.ServerResource;
 
+import com.google.common.base.Function;
+
 /**
- * Resource for querying and displaying devices that exist in the system
+ * Resource for querying and displaying devices that exist in the system.
+ * The devices can be paged through with the query parameters of
+ * {@link RestPage}, using the device key as the cursor.
  */
 public abstract class AbstractDeviceResource extends ServerResource {
     public static final String MAC_ERROR = 
@@ -51,6 +56,16 @@ public abstract class AbstractDeviceResource extends ServerResource {
             "hex as AA:BB:CC:DD:EE:FF:00:11";
     public static final String PORT_ERROR = 
             "Invalid Port: must be a positive integer";
+    public static final String CURSOR_ERROR = 
+            "Invalid cursor: must be a device key";
+
+    private static final Function<Device, Long> DEVICE_KEY =
+            new Function<Device, Long>() {
+        @Override
+        public Long apply(Device device) {
+            return device.getDeviceKey();
+        }
+    };
     
     public Iterator<? extends IDevice> getDevices() {
         IDeviceService deviceManager = 
@@ -69,6 +84,23 @@ public abstract class AbstractDeviceResource extends ServerResource {
         String ipv4Str = form.getFirstValue("ipv4", true);
         String dpid = form.getFirstValue("dpid", true);
         String port = form.getFirstValue("port", true);
+
+        RestPage page;
+        Long afterKey = null;
+        try {
+            page = RestPage.fromQuery(form);
+        } catch (IllegalArgumentException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST, e.getMessage());
+            return null;
+        }
+        if (page.getAfter() != null) {
+            try {
+                afterKey = Long.valueOf(page.getAfter());
+            } catch (NumberFormatException e) {
+                setStatus(Status.CLIENT_ERROR_BAD_REQUEST, CURSOR_ERROR);
+                return null;
+            }
+        }
         
         if (macAddrStr != null) {
             try {
@@ -138,7 +170,7 @@ public abstract class AbstractDeviceResource extends ServerResource {
         final String portStartsWith = 
                 form.getFirstValue("port__startswith", true);
         
-        return new FilterIterator<Device>(diter) {
+        Iterator<Device> matching = new FilterIterator<Device>(diter) {
             @Override
             protected boolean matches(Device value) {
                 if (macStartsWith != null) {
@@ -198,5 +230,6 @@ public abstract class AbstractDeviceResource extends ServerResource {
                 return true;
             }
         };
+        return page.select(matching, DEVICE_KEY, afterKey);
     }
 }
@@ -42,6 +42,7 @@ public class DeviceSerializer extends JsonSerializer<Device> {
         jGen.writeStartObject();
         
         jGen.writeStringField("entityClass", device.getEntityClass().getName());
+        jGen.writeNumberField("deviceKey", device.getDeviceKey());
         
         jGen.writeArrayFieldStart("mac");
         jGen.writeString(device.getMACAddress().toString());
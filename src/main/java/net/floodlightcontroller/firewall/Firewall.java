@@ -23,6 +23,7 @@ import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFPacketIn;
@@ -46,6 +47,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 
@@ -61,6 +63,7 @@ import net.floodlightcontroller.routing.RoutingDecision;
 import net.floodlightcontroller.storage.IResultSet;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.storage.StorageException;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.util.MatchUtils;
 
 import org.slf4j.Logger;
@@ -81,9 +84,18 @@ public class Firewall implements IFirewallService, IOFMessageListener,
     protected IFloodlightProviderService floodlightProvider;
     protected IStorageSourceService storageSource;
     protected IRestApiService restApi;
+    protected IThreadPoolService threadPoolService;
     protected static Logger logger;
 
-    protected List<FirewallRule> rules; // protected by synchronized
+    /*
+     * The rule list is copy-on-write: it is never modified once published,
+     * so packet-in processing can use it without locking. Updates are
+     * serialized by synchronizing on this.
+     */
+    protected volatile List<FirewallRule> rules;
+    // compiled from the rules, rebuilt in the background on every update
+    protected volatile FirewallRuleClassifier classifier;
+    protected SingletonTask classifierTask;
     protected boolean enabled;
     protected IPv4Address subnet_mask = IPv4Address.of("255.255.255.0");
 
@@ -161,6 +173,7 @@ public class Firewall implements IFirewallService, IOFMessageListener,
         l.add(IFloodlightProviderService.class);
         l.add(IStorageSourceService.class);
         l.add(IRestApiService.class);
+        l.add(IThreadPoolService.class);
         return l;
     }
 
@@ -279,6 +292,7 @@ public class Firewall implements IFirewallService, IOFMessageListener,
         floodlightProvider = context.getServiceImpl(IFloodlightProviderService.class);
         storageSource = context.getServiceImpl(IStorageSourceService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+        threadPoolService = context.getServiceImpl(IThreadPoolService.class);
         rules = new ArrayList<FirewallRule>();
         logger = LoggerFactory.getLogger(Firewall.class);
 
@@ -297,7 +311,39 @@ public class Firewall implements IFirewallService, IOFMessageListener,
         // storage, create table and read rules
         storageSource.createTable(TABLE_NAME, null);
         storageSource.setTablePrimaryKeyName(TABLE_NAME, COLUMN_RULEID);
+        classifierTask = new SingletonTask(threadPoolService.getScheduledExecutor(),
+                new Runnable() {
+            @Override
+            public void run() {
+                compileRules();
+            }
+        });
         this.rules = readRulesFromStorage();
+        classifierTask.reschedule(0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Compile the current rule list into the classifier used for packet-in
+     * processing. Until this completes after an update, packet-ins fall back
+     * to scanning the rule list.
+     */
+    protected void compileRules() {
+        List<FirewallRule> current = this.rules;
+        FirewallRuleClassifier c = FirewallRuleClassifier.compile(current);
+        this.classifier = c;
+        if (logger.isDebugEnabled()) {
+            logger.debug("Compiled {} firewall rules", current.size());
+        }
+    }
+
+    /**
+     * Publish a new rule list and schedule its compilation
+     */
+    private void publishRules(List<FirewallRule> newRules) {
+        this.rules = newRules;
+        if (classifierTask != null) {
+            classifierTask.reschedule(0, TimeUnit.MILLISECONDS);
+        }
     }
 
     @Override
@@ -372,18 +418,20 @@ public class Firewall implements IFirewallService, IOFMessageListener,
         // may want to check conflict
         rule.ruleid = rule.genID();
         
+        List<FirewallRule> newRules = new ArrayList<FirewallRule>(this.rules);
         int i = 0;
         // locate the position of the new rule in the sorted arraylist
-        for (i = 0; i < this.rules.size(); i++) {
-            if (this.rules.get(i).priority >= rule.priority)
+        for (i = 0; i < newRules.size(); i++) {
+            if (newRules.get(i).priority >= rule.priority)
                 break;
         }
         // now, add rule to the list
-        if (i <= this.rules.size()) {
-            this.rules.add(i, rule);
+        if (i <= newRules.size()) {
+            newRules.add(i, rule);
         } else {
-            this.rules.add(rule);
+            newRules.add(rule);
         }
+        publishRules(newRules);
         // add rule to database
         Map<String, Object> entry = new HashMap<String, Object>();
         entry.put(COLUMN_RULEID, Integer.toString(rule.ruleid));
@@ -416,7 +464,8 @@ public class Firewall implements IFirewallService, IOFMessageListener,
 
     @Override
     public synchronized void deleteRule(int ruleid) {
-        Iterator<FirewallRule> iter = this.rules.iterator();
+        List<FirewallRule> newRules = new ArrayList<FirewallRule>(this.rules);
+        Iterator<FirewallRule> iter = newRules.iterator();
         while (iter.hasNext()) {
             FirewallRule r = iter.next();
             if (r.ruleid == ruleid) {
@@ -425,6 +474,7 @@ public class Firewall implements IFirewallService, IOFMessageListener,
                 break;
             }
         }
+        publishRules(newRules);
         // delete from database
         storageSource.deleteRow(TABLE_NAME, Integer.toString(ruleid));
     }
@@ -451,6 +501,11 @@ public class Firewall implements IFirewallService, IOFMessageListener,
      * wildcards are maintained. Iteration is performed on the sorted list of
      * rules (sorted in decreasing order of priority).
      * 
+     * The matching rule is looked up in the compiled classifier if it is up
+     * to date with the rule list. Since the wildcards depend on the higher
+     * priority rules of the same action, those are only replayed if the
+     * classifier found they may affect the result.
+     * 
      * @param sw
      *            the switch instance
      * @param pi
@@ -464,9 +519,37 @@ public class Firewall implements IFirewallService, IOFMessageListener,
         FirewallRule matched_rule = null;
         Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
         AllowDropPair adp = new AllowDropPair(sw.getOFFactory());
+        OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
+
+        List<FirewallRule> current = this.rules;
+        FirewallRuleClassifier c = this.classifier;
+        boolean classified = false;
+        if (c != null && c.getRules() == current) {
+            int index = c.classify(sw.getId(), inPort, eth);
+            if (index < 0) {
+                classified = true;
+            } else {
+                FirewallRule rule = current.get(index);
+                if (c.needsReplay(index)) {
+                    for (int i = 0; i < index; i++) {
+                        FirewallRule r = current.get(i);
+                        if (r.action == rule.action) {
+                            r.matchesThisPacket(sw.getId(), inPort, eth, adp);
+                        }
+                    }
+                }
+                if (rule.matchesThisPacket(sw.getId(), inPort, eth, adp)) {
+                    matched_rule = rule;
+                    classified = true;
+                } else {
+                    logger.warn("Classifier mismatch for rule {}", rule.ruleid);
+                    adp = new AllowDropPair(sw.getOFFactory());
+                }
+            }
+        }
 
-        synchronized (rules) {
-            Iterator<FirewallRule> iter = this.rules.iterator();
+        if (!classified) {
+            Iterator<FirewallRule> iter = current.iterator();
             FirewallRule rule = null;
             // iterate through list to find a matching firewall rule
             while (iter.hasNext()) {
@@ -475,7 +558,7 @@ public class Firewall implements IFirewallService, IOFMessageListener,
 
                 // check if rule matches
                 // AllowDropPair adp's allow and drop matches will modified with what matches
-                if (rule.matchesThisPacket(sw.getId(), (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT)), eth, adp) == true) {
+                if (rule.matchesThisPacket(sw.getId(), inPort, eth, adp) == true) {
                     matched_rule = rule;
                     break;
                 }
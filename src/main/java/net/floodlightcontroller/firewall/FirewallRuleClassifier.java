@@ -0,0 +1,408 @@
+/**
+ *    Copyright 2011, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.firewall;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4AddressWithMask;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.packet.UDP;
+
+/**
+ * An immutable multi-field packet classifier compiled from a priority sorted
+ * list of firewall rules, using tuple space search.
+ *
+ * Rules are grouped into tuples by the set of header fields they actually
+ * constrain (and by their IPv4 prefix lengths). Within a tuple every rule
+ * is reduced to a key of its masked field values, mapped to the index of
+ * the highest priority rule with that key. Classifying a packet then costs
+ * one hash lookup per tuple, independent of the number of rules, instead of
+ * calling {@link FirewallRule#matchesThisPacket} for each rule in turn.
+ *
+ * The fields constrained by a rule mirror the checks done by
+ * matchesThisPacket exactly, e.g. IPv4 addresses are only compared for
+ * rules on dl_type IPv4 and transport ports only for TCP/UDP rules.
+ *
+ * Because matchesThisPacket also records in the {@link AllowDropPair} the
+ * fields of every higher priority rule it gets past, the classifier also
+ * precomputes for each rule whether it sets every field that a higher
+ * priority rule of the same action could have set. Only if it does not
+ * must the caller replay the higher priority rules to derive the match.
+ */
+public class FirewallRuleClassifier {
+    // constrained packet fields, forming the tuple of a rule
+    private static final int F_DPID = 1 << 0;
+    private static final int F_IN_PORT = 1 << 1;
+    private static final int F_DL_SRC = 1 << 2;
+    private static final int F_DL_DST = 1 << 3;
+    private static final int F_DL_TYPE = 1 << 4;
+    private static final int F_NW_SRC = 1 << 5;
+    private static final int F_NW_DST = 1 << 6;
+    private static final int F_NW_PROTO = 1 << 7;
+    private static final int F_TP_SRC = 1 << 8;
+    private static final int F_TP_DST = 1 << 9;
+
+    // match fields written into an AllowDropPair
+    private static final int S_IN_PORT = 1 << 0;
+    private static final int S_ETH_SRC = 1 << 1;
+    private static final int S_ETH_DST = 1 << 2;
+    private static final int S_ETH_TYPE = 1 << 3;
+    private static final int S_IP_PROTO = 1 << 4;
+    private static final int S_IPV4_SRC = 1 << 5;
+    private static final int S_IPV4_DST = 1 << 6;
+    private static final int S_TCP_SRC = 1 << 7;
+    private static final int S_TCP_DST = 1 << 8;
+    private static final int S_UDP_SRC = 1 << 9;
+    private static final int S_UDP_DST = 1 << 10;
+
+    /**
+     * Header values of a rule or a packet, restricted to the fields of one
+     * tuple. Unconstrained fields are left zero.
+     */
+    private static final class Key {
+        long dpid;
+        int inPort;
+        long dlSrc;
+        long dlDst;
+        int dlType;
+        int nwSrc;
+        int nwDst;
+        int nwProto;
+        int tpSrc;
+        int tpDst;
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + (int) (dpid ^ (dpid >>> 32));
+            result = prime * result + inPort;
+            result = prime * result + (int) (dlSrc ^ (dlSrc >>> 32));
+            result = prime * result + (int) (dlDst ^ (dlDst >>> 32));
+            result = prime * result + dlType;
+            result = prime * result + nwSrc;
+            result = prime * result + nwDst;
+            result = prime * result + nwProto;
+            result = prime * result + tpSrc;
+            result = prime * result + tpDst;
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return dpid == other.dpid && inPort == other.inPort
+                    && dlSrc == other.dlSrc && dlDst == other.dlDst
+                    && dlType == other.dlType && nwSrc == other.nwSrc
+                    && nwDst == other.nwDst && nwProto == other.nwProto
+                    && tpSrc == other.tpSrc && tpDst == other.tpDst;
+        }
+    }
+
+    /**
+     * Header values of a packet being classified
+     */
+    private static final class PacketHeaders {
+        long dpid;
+        int inPort;
+        long dlSrc;
+        long dlDst;
+        int dlType;
+        int nwSrc;
+        int nwDst;
+        int nwProto;
+        int tpSrc;
+        int tpDst;
+    }
+
+    private static final class Tuple {
+        final int fields;
+        final int nwSrcMask;
+        final int nwDstMask;
+        final Map<Key, Integer> firstRule = new HashMap<Key, Integer>();
+
+        Tuple(int fields, int nwSrcMask, int nwDstMask) {
+            this.fields = fields;
+            this.nwSrcMask = nwSrcMask;
+            this.nwDstMask = nwDstMask;
+        }
+
+        Key keyOf(PacketHeaders h) {
+            Key k = new Key();
+            if ((fields & F_DPID) != 0) k.dpid = h.dpid;
+            if ((fields & F_IN_PORT) != 0) k.inPort = h.inPort;
+            if ((fields & F_DL_SRC) != 0) k.dlSrc = h.dlSrc;
+            if ((fields & F_DL_DST) != 0) k.dlDst = h.dlDst;
+            if ((fields & F_DL_TYPE) != 0) k.dlType = h.dlType;
+            if ((fields & F_NW_SRC) != 0) k.nwSrc = h.nwSrc & nwSrcMask;
+            if ((fields & F_NW_DST) != 0) k.nwDst = h.nwDst & nwDstMask;
+            if ((fields & F_NW_PROTO) != 0) k.nwProto = h.nwProto;
+            if ((fields & F_TP_SRC) != 0) k.tpSrc = h.tpSrc;
+            if ((fields & F_TP_DST) != 0) k.tpDst = h.tpDst;
+            return k;
+        }
+    }
+
+    private final List<FirewallRule> rules;
+    private final Tuple[] tuples;
+    private final boolean[] needsReplay;
+
+    private FirewallRuleClassifier(List<FirewallRule> rules, Tuple[] tuples,
+                                   boolean[] needsReplay) {
+        this.rules = rules;
+        this.tuples = tuples;
+        this.needsReplay = needsReplay;
+    }
+
+    /**
+     * @return the rule list this classifier was compiled from
+     */
+    public List<FirewallRule> getRules() {
+        return rules;
+    }
+
+    /**
+     * Compile a classifier for the given rules. The list must not be
+     * modified afterwards.
+     * @param rules the rules, sorted by priority
+     * @return the classifier
+     */
+    public static FirewallRuleClassifier compile(List<FirewallRule> rules) {
+        Map<List<Integer>, Tuple> tupleMap = new HashMap<List<Integer>, Tuple>();
+        List<Tuple> tupleList = new ArrayList<Tuple>();
+        boolean[] needsReplay = new boolean[rules.size()];
+        int[] maySetByAction = new int[FirewallRule.FirewallAction.values().length];
+
+        for (int i = 0; i < rules.size(); i++) {
+            FirewallRule r = rules.get(i);
+
+            int action = r.action.ordinal();
+            needsReplay[i] = (maySetByAction[action] & ~willSet(r)) != 0;
+            maySetByAction[action] |= maySet(r);
+
+            Key k = new Key();
+            int fields = constrainedFields(r, k);
+            if (fields < 0) continue; // can never match
+            int srcMask = (fields & F_NW_SRC) != 0 ?
+                    r.nw_src_prefix_and_mask.getMask().getInt() : 0;
+            int dstMask = (fields & F_NW_DST) != 0 ?
+                    r.nw_dst_prefix_and_mask.getMask().getInt() : 0;
+            k.nwSrc &= srcMask;
+            k.nwDst &= dstMask;
+
+            List<Integer> tupleId = new ArrayList<Integer>(3);
+            tupleId.add(fields);
+            tupleId.add(srcMask);
+            tupleId.add(dstMask);
+            Tuple t = tupleMap.get(tupleId);
+            if (t == null) {
+                t = new Tuple(fields, srcMask, dstMask);
+                tupleMap.put(tupleId, t);
+                tupleList.add(t);
+            }
+            // keep the highest priority (lowest index) rule per key
+            if (!t.firstRule.containsKey(k)) {
+                t.firstRule.put(k, i);
+            }
+        }
+        return new FirewallRuleClassifier(rules,
+                tupleList.toArray(new Tuple[tupleList.size()]), needsReplay);
+    }
+
+    /**
+     * Find the highest priority rule matching a packet
+     * @param switchDpid the switch the packet was received on
+     * @param inPort the ingress port
+     * @param eth the packet
+     * @return the index of the matching rule in {@link #getRules()}, or -1
+     */
+    public int classify(DatapathId switchDpid, OFPort inPort, Ethernet eth) {
+        PacketHeaders h = new PacketHeaders();
+        h.dpid = switchDpid.getLong();
+        h.inPort = inPort == null ? 0 : inPort.getPortNumber();
+        h.dlSrc = eth.getSourceMACAddress().getLong();
+        h.dlDst = eth.getDestinationMACAddress().getLong();
+        h.dlType = eth.getEtherType() & 0xffff;
+        if (h.dlType == EthType.IPv4.getValue()
+                && eth.getPayload() instanceof IPv4) {
+            IPv4 ip = (IPv4) eth.getPayload();
+            h.nwSrc = ip.getSourceAddress().getInt();
+            h.nwDst = ip.getDestinationAddress().getInt();
+            h.nwProto = ip.getProtocol().getIpProtocolNumber();
+            if (ip.getPayload() instanceof TCP) {
+                TCP tcp = (TCP) ip.getPayload();
+                h.tpSrc = tcp.getSourcePort().getPort();
+                h.tpDst = tcp.getDestinationPort().getPort();
+            } else if (ip.getPayload() instanceof UDP) {
+                UDP udp = (UDP) ip.getPayload();
+                h.tpSrc = udp.getSourcePort().getPort();
+                h.tpDst = udp.getDestinationPort().getPort();
+            }
+        }
+
+        int best = -1;
+        for (Tuple t : tuples) {
+            Integer i = t.firstRule.get(t.keyOf(h));
+            if (i != null && (best < 0 || i < best)) {
+                best = i;
+            }
+        }
+        return best;
+    }
+
+    /**
+     * @return true if a higher priority rule of the same action as the rule
+     * at the given index may have recorded a field in the AllowDropPair that
+     * this rule does not overwrite when it matches. The higher priority rules
+     * must then be replayed to derive the match.
+     */
+    public boolean needsReplay(int index) {
+        return needsReplay[index];
+    }
+
+    /**
+     * Determine the packet fields a rule constrains, as checked by
+     * {@link FirewallRule#matchesThisPacket}, and store their values in the
+     * given key
+     * @return the constrained fields, or -1 if the rule can never match
+     */
+    private static int constrainedFields(FirewallRule r, Key k) {
+        int fields = 0;
+        if (!r.any_dpid) {
+            fields |= F_DPID;
+            k.dpid = r.dpid.getLong();
+        }
+        if (!r.any_in_port) {
+            fields |= F_IN_PORT;
+            k.inPort = r.in_port.getPortNumber();
+        }
+        if (!r.any_dl_src) {
+            fields |= F_DL_SRC;
+            k.dlSrc = r.dl_src.getLong();
+        }
+        if (!r.any_dl_dst) {
+            fields |= F_DL_DST;
+            k.dlDst = r.dl_dst.getLong();
+        }
+        if (r.any_dl_type) {
+            return fields;
+        }
+        if (r.dl_type.equals(EthType.ARP)) {
+            fields |= F_DL_TYPE;
+            k.dlType = EthType.ARP.getValue();
+            return fields;
+        }
+        if (!r.dl_type.equals(EthType.IPv4)) {
+            // non-IP rules are not supported and never match
+            return -1;
+        }
+        fields |= F_DL_TYPE;
+        k.dlType = EthType.IPv4.getValue();
+        if (!r.any_nw_src) {
+            fields |= F_NW_SRC;
+            k.nwSrc = r.nw_src_prefix_and_mask.getValue().getInt();
+        }
+        if (!r.any_nw_dst) {
+            fields |= F_NW_DST;
+            k.nwDst = r.nw_dst_prefix_and_mask.getValue().getInt();
+        }
+        if (!r.any_nw_proto) {
+            if (r.nw_proto.equals(IpProtocol.TCP)
+                    || r.nw_proto.equals(IpProtocol.UDP)) {
+                fields |= F_NW_PROTO;
+                k.nwProto = r.nw_proto.getIpProtocolNumber();
+                if (r.tp_src.getPort() != 0) {
+                    fields |= F_TP_SRC;
+                    k.tpSrc = r.tp_src.getPort();
+                }
+                if (r.tp_dst.getPort() != 0) {
+                    fields |= F_TP_DST;
+                    k.tpDst = r.tp_dst.getPort();
+                }
+            } else if (r.nw_proto.equals(IpProtocol.ICMP)) {
+                fields |= F_NW_PROTO;
+                k.nwProto = r.nw_proto.getIpProtocolNumber();
+            }
+            // any other protocol is not checked
+        }
+        return fields;
+    }
+
+    /**
+     * @return the AllowDropPair fields a rule may set, whether it matches
+     * or not
+     */
+    private static int maySet(FirewallRule r) {
+        int set = 0;
+        if (!OFPort.ANY.equals(r.in_port)) set |= S_IN_PORT;
+        if (!MacAddress.NONE.equals(r.dl_src)) set |= S_ETH_SRC;
+        if (!MacAddress.NONE.equals(r.dl_dst)) set |= S_ETH_DST;
+        if (!EthType.NONE.equals(r.dl_type)) set |= S_ETH_TYPE;
+        if (!r.any_dl_type && r.dl_type.equals(EthType.IPv4)) {
+            if (!IpProtocol.NONE.equals(r.nw_proto)) set |= S_IP_PROTO;
+            if (!IPv4AddressWithMask.NONE.equals(r.nw_src_prefix_and_mask))
+                set |= S_IPV4_SRC;
+            if (!IPv4AddressWithMask.NONE.equals(r.nw_dst_prefix_and_mask))
+                set |= S_IPV4_DST;
+            if (!r.any_nw_proto) {
+                if (!TransportPort.NONE.equals(r.tp_src))
+                    set |= S_TCP_SRC | S_UDP_SRC;
+                if (!TransportPort.NONE.equals(r.tp_dst))
+                    set |= S_TCP_DST | S_UDP_DST;
+            }
+        }
+        return set;
+    }
+
+    /**
+     * @return the AllowDropPair fields a rule always sets when it matches
+     */
+    private static int willSet(FirewallRule r) {
+        int set = maySet(r) & (S_IN_PORT | S_ETH_SRC | S_ETH_DST | S_ETH_TYPE);
+        if (!r.any_dl_type && r.dl_type.equals(EthType.IPv4)) {
+            if (!IpProtocol.NONE.equals(r.nw_proto)) set |= S_IP_PROTO;
+            if (!IPv4AddressWithMask.NONE.equals(r.nw_src_prefix_and_mask))
+                set |= S_IPV4_SRC;
+            if (!IPv4AddressWithMask.NONE.equals(r.nw_dst_prefix_and_mask))
+                set |= S_IPV4_DST;
+            if (!r.any_nw_proto) {
+                if (r.nw_proto.equals(IpProtocol.TCP)) {
+                    if (!TransportPort.NONE.equals(r.tp_src)) set |= S_TCP_SRC;
+                    if (!TransportPort.NONE.equals(r.tp_dst)) set |= S_TCP_DST;
+                } else if (r.nw_proto.equals(IpProtocol.UDP)) {
+                    if (!TransportPort.NONE.equals(r.tp_src)) set |= S_UDP_SRC;
+                    if (!TransportPort.NONE.equals(r.tp_dst)) set |= S_UDP_DST;
+                }
+            }
+        }
+        return set;
+    }
+}
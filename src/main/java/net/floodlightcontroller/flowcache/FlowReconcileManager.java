@@ -18,13 +18,18 @@ package net.floodlightcontroller.flowcache;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.internal.Controller;
@@ -51,6 +56,9 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 	/** The logger. */
 	private static Logger logger =  LoggerFactory.getLogger(FlowReconcileManager.class);
 
+	/** Name of the executor running flow reconciliation */
+	public static final String EXECUTOR_NAME = "flowreconcile";
+
 	/** Reference to dependent modules */
 	protected IThreadPoolService threadPoolService;
 	protected IDebugCounterService debugCounterService;
@@ -67,6 +75,18 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 	/** A FIFO queue to keep all outstanding flows for reconciliation */
 	PriorityPendingQueue <OFMatchReconcile> flowQueue;
 
+	/**
+	 * The requests currently in flowQueue. A request equal to one that is
+	 * still queued is merged into it instead of being queued again.
+	 */
+	protected Set<OFMatchReconcile> queuedRequests;
+
+	/** Whether flowReconcileTask is scheduled and has not started yet */
+	protected final AtomicBoolean reconcileScheduled = new AtomicBoolean(false);
+
+	/** When the current backlog of requests started, or 0 if there is none */
+	protected final AtomicLong backlogStartTime = new AtomicLong(0);
+
 	/** Asynchronous task to feed the flowReconcile pipeline */
 	protected SingletonTask flowReconcileTask;
 
@@ -91,6 +111,10 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 	public static final String PACKAGE = FlowReconcileManager.class.getPackage().getName();
 	private IDebugCounter ctrFlowReconcileRequest;
 	private IDebugCounter ctrReconciledFlows;
+	private IDebugCounter ctrCoalescedRequests;
+	private IDebugCounter ctrReconcileRounds;
+	private IDebugCounter ctrConvergences;
+	private IDebugCounter ctrConvergenceTime;
 	protected boolean flowReconcileEnabled;
 	private DebugCounterResource ctrPacketInRsrc = null;
 
@@ -135,10 +159,27 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 
 		// Make a copy before putting on the queue.
 		OFMatchReconcile myOfmRc = new OFMatchReconcile(ofmRcIn);
-
-		flowQueue.offer(myOfmRc, priority);
 		ctrFlowReconcileRequest.increment();
 
+		// The same switch/port/match is already waiting to be reconciled
+		if (!queuedRequests.add(myOfmRc)) {
+			ctrCoalescedRequests.increment();
+			return;
+		}
+		if (!flowQueue.offer(myOfmRc, priority)) {
+			// The queue is full; forget the request so that a later
+			// identical one is not coalesced into it
+			queuedRequests.remove(myOfmRc);
+			logger.warn("Flow reconcile queue is full, dropping {}", myOfmRc);
+			return;
+		}
+		backlogStartTime.compareAndSet(0, System.currentTimeMillis());
+
+		// A scheduled run will pick the request up
+		if (!reconcileScheduled.compareAndSet(false, true)) {
+			return;
+		}
+
 		Date currTime = new Date();
 		long delay = 0;
 
@@ -197,6 +238,8 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 		threadPoolService = context.getServiceImpl(IThreadPoolService.class);
 		debugCounterService = context.getServiceImpl(IDebugCounterService.class);
 		flowQueue = new PriorityPendingQueue<OFMatchReconcile>();
+		queuedRequests = Collections.newSetFromMap(
+				new ConcurrentHashMap<OFMatchReconcile, Boolean>());
 		flowReconcileListeners = new ListenerDispatcher<OFType, IFlowReconcileListener>();
 
 		Map<String, String> configParam = context.getConfigParams(this);
@@ -223,6 +266,14 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 					"All flow reconcile requests received by this module");
 			ctrReconciledFlows = debugCounterService.registerCounter(PACKAGE, "reconciled-flows",
 					"All flows reconciled successfully by this module");
+			ctrCoalescedRequests = debugCounterService.registerCounter(PACKAGE, "flow-reconcile-request-coalesced",
+					"Flow reconcile requests merged into an identical queued request");
+			ctrReconcileRounds = debugCounterService.registerCounter(PACKAGE, "flow-reconcile-rounds",
+					"Batches of queued requests passed to the flow reconcile listeners");
+			ctrConvergences = debugCounterService.registerCounter(PACKAGE, "flow-reconcile-convergences",
+					"Times the flow reconcile queue was drained");
+			ctrConvergenceTime = debugCounterService.registerCounter(PACKAGE, "flow-reconcile-convergence-ms",
+					"Total time from the first queued request to the queue being drained, in milliseconds");
 		} catch (Exception e) {
 			throw new FloodlightModuleException(e.getMessage());
 		}
@@ -232,12 +283,15 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 	@Override
 	public void startUp(FloodlightModuleContext context) {
 		// thread to do flow reconcile
-		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
+		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor(EXECUTOR_NAME);
 		flowReconcileTask = new SingletonTask(ses, new Runnable() {
 			@Override
 			public void run() {
+				// requests arriving from now on need another run
+				reconcileScheduled.set(false);
 				try {
-					if (doReconcile()) {
+					if (doReconcile() &&
+							reconcileScheduled.compareAndSet(false, true)) {
 						flowReconcileTask.reschedule(
 								FLOW_RECONCILE_DELAY_MILLISEC,
 								TimeUnit.MILLISECONDS);
@@ -280,6 +334,7 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 			OFMatchReconcile ofmRc = flowQueue.poll();
 			reconcileCapacity--;
 			if (ofmRc != null) {
+				queuedRequests.remove(ofmRc);
 				ofmRcList.add(ofmRc);
 				ctrReconciledFlows.increment();
 				if (logger.isTraceEnabled()) {
@@ -326,6 +381,7 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 			// Flush the flowCache counters.
 			updateFlush();
 			flowReconcileThreadRunCount.incrementAndGet();
+			ctrReconcileRounds.increment();
 		} else {
 			if (logger.isTraceEnabled()) {
 				logger.trace("No flow to be reconciled.");
@@ -334,6 +390,11 @@ public class FlowReconcileManager implements IFloodlightModule, IFlowReconcileSe
 
 		// Return true if there are more flows to be reconciled
 		if (flowQueue.isEmpty()) {
+			long start = backlogStartTime.getAndSet(0);
+			if (start != 0) {
+				ctrConvergences.increment();
+				ctrConvergenceTime.add(System.currentTimeMillis() - start);
+			}
 			return false;
 		} else {
 			if (logger.isTraceEnabled()) {
@@ -122,7 +122,8 @@ public class OFMatchReconcile  {
                  + ((newAppInstName == null) ? 0 : newAppInstName.hashCode());
         result = prime * result
                  + ((ofmWithSwDpid == null) ? 0 : ofmWithSwDpid.hashCode());
-        result = prime * result + outPort.getPortNumber();
+        result = prime * result
+                 + ((outPort == null) ? 0 : outPort.hashCode());
         result = prime * result + priority;
         result = prime * result
                  + ((rcAction == null) ? 0 : rcAction.hashCode());
@@ -168,7 +169,11 @@ public class OFMatchReconcile  {
         } else if (!ofmWithSwDpid.equals(other.ofmWithSwDpid)) {
             return false;
         }
-        if (outPort != other.outPort) {
+        if (outPort == null) {
+            if (other.outPort != null) {
+                return false;
+            }
+        } else if (!outPort.equals(other.outPort)) {
             return false;
         }
         if (priority != other.priority) {
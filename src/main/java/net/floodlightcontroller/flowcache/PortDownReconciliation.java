@@ -18,9 +18,12 @@ package net.floodlightcontroller.flowcache;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.Set;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 
@@ -31,19 +34,32 @@ import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
 import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
 import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.action.OFActionOutput;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionApplyActions;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstructionWriteActions;
+import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFPort;
 import org.projectfloodlight.openflow.types.TableId;
+import org.projectfloodlight.openflow.types.U64;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.flowcache.IFlowReconcileListener;
 import net.floodlightcontroller.flowcache.IFlowReconcileService;
 import net.floodlightcontroller.flowcache.OFMatchReconcile;
@@ -81,6 +97,16 @@ public class PortDownReconciliation implements IFloodlightModule,
     protected static boolean waiting = false;
     protected int statsQueryXId;
     protected static List<OFFlowStatsReply> statsReply;
+    protected IDebugCounterService debugCounterService;
+
+    /** Flows of the switches queried in the current reconciliation round */
+    protected Map<DatapathId, List<OFFlowStatsEntry>> roundFlows;
+    /** Flow-mods to write at the end of the current round, per switch */
+    protected Map<IOFSwitch, Set<OFMessage>> roundDeletes;
+
+    private IDebugCounter ctrStatsRequests;
+    private IDebugCounter ctrFlowDeletes;
+    private IDebugCounter ctrFlowDeleteBatches;
 
     // ITopologyListener
     @Override
@@ -139,6 +165,7 @@ public class PortDownReconciliation implements IFloodlightModule,
         l.add(ITopologyService.class);
         l.add(IFlowReconcileService.class);
         l.add(ILinkDiscoveryService.class);
+        l.add(IDebugCounterService.class);
         return l;
     }
 
@@ -151,6 +178,7 @@ public class PortDownReconciliation implements IFloodlightModule,
         topology = context.getServiceImpl(ITopologyService.class);
         frm = context.getServiceImpl(IFlowReconcileService.class);
         lds = context.getServiceImpl(ILinkDiscoveryService.class);
+        debugCounterService = context.getServiceImpl(IDebugCounterService.class);
         cntx = new FloodlightContext();
     }
 
@@ -158,6 +186,15 @@ public class PortDownReconciliation implements IFloodlightModule,
     public void startUp(FloodlightModuleContext context) {
         topology.addListener(this);
         frm.addFlowReconcileListener(this);
+        if (debugCounterService != null) {
+            debugCounterService.registerModule(getName());
+            ctrStatsRequests = debugCounterService.registerCounter(getName(), "flow-stats-requests",
+                    "Flow statistics requests sent to find invalid flows");
+            ctrFlowDeletes = debugCounterService.registerCounter(getName(), "flow-deletes",
+                    "Flow deletes written to remove invalid flows");
+            ctrFlowDeleteBatches = debugCounterService.registerCounter(getName(), "flow-delete-batches",
+                    "Batches of flow deletes written at the end of a reconciliation round");
+        }
     }
 
     @Override
@@ -179,98 +216,56 @@ public class PortDownReconciliation implements IFloodlightModule,
      * Base case for the reconciliation of flows. This is triggered at the
      * switch which is immediately affected by the PORT_DOWN event
      *
+     * All requests of a batch are handled in one round: requests for the
+     * same switch and port are merged, the flows of every switch are
+     * fetched at most once, and the flow deletes for a switch are written
+     * together at the end of the round.
+     *
      * @return the Command whether to STOP or Continue
      */
     @Override
-    public net.floodlightcontroller.core.IListener.Command reconcileFlows(ArrayList<OFMatchReconcile> ofmRcList) {
+    public Command reconcileFlows(ArrayList<OFMatchReconcile> ofmRcList) {
         if (lds != null) {
             links = new HashMap<Link, LinkInfo>();
             // Get all the switch links from the topology
             if (lds.getLinks() != null) links.putAll(lds.getLinks());
 
+            // Merge the requests for the same switch and port. We only care
+            // about OFMatchReconcile objects that wish to update the path to
+            // a switch
+            Map<DatapathId, Set<OFPort>> downPorts = new HashMap<DatapathId, Set<OFPort>>();
             for (OFMatchReconcile ofmr : ofmRcList) {
-                // We only care about OFMatchReconcile objects that wish to
-                // update the path to a switch
                 if (ofmr.rcAction.equals(OFMatchReconcile.ReconcileAction.UPDATE_PATH)) {
-                    // Get the switch object from the OFMatchReconcile
-                    IOFSwitch sw = switchService.getSwitch(ofmr.ofmWithSwDpid.getDpid());
-
-                    // Map data structure that holds the invalid matches and the
-                    // ingress ports of those matches
-                    Map<OFPort, List<Match>> invalidBaseIngressAndMatches = new HashMap<OFPort, List<Match>>();
-
-                    // Get the invalid flows
-                    List<OFFlowStatsReply> flows = getFlows(sw, ofmr.outPort);
-
-                    // Analyze all the flows with outPorts equaling the downed
-                    // port and extract OFMatch's to trace back to neighbors
-                    for (OFFlowStatsReply flow : flows) {
-                    	// Create a reference to the match for ease
-                    	for (OFFlowStatsEntry entry : flow.getEntries()) {
-                    		Match match = entry.getMatch();
-
-                    		// Here we utilize an index of input ports which point
-                    		// to multiple invalid matches
-                    		if (invalidBaseIngressAndMatches.containsKey(match.get(MatchField.IN_PORT)))
-                    			// If the input port is already in the index, add
-                    			// the match to it's list
-                    			invalidBaseIngressAndMatches.get(match.get(MatchField.IN_PORT))
-                    			.add(match);
-                    		else {
-                    			// Otherwise create a new list and add it to the
-                    			// index
-                    			List<Match> matches = new ArrayList<Match>();
-                    			matches.add(match);
-                    			invalidBaseIngressAndMatches.put(match.get(MatchField.IN_PORT), matches);
-                    		}
-                    	}
-                    }
-
-                    // Remove invalid flows from the base switch, if they exist
-                    if (!flows.isEmpty()) {
-                        log.debug("Removing flows on switch : " + sw.getId()
-                                  + " with outport: " + ofmr.outPort);
-                        clearFlowMods(sw, ofmr.outPort);
+                    DatapathId dpid = ofmr.ofmWithSwDpid.getDpid();
+                    Set<OFPort> ports = downPorts.get(dpid);
+                    if (ports == null) {
+                        ports = new HashSet<OFPort>();
+                        downPorts.put(dpid, ports);
                     }
+                    ports.add(ofmr.outPort);
+                }
+            }
+            if (downPorts.isEmpty()) {
+                return Command.CONTINUE;
+            }
 
-                    // Create a list of neighboring switches we need to remove
-                    // invalid flows from
-                    Map<IOFSwitch, Map<OFPort, List<Match>>> neighborSwitches = new HashMap<IOFSwitch, Map<OFPort, List<Match>>>();
-
-                    // Loop through all the links
-                    for (Link link : links.keySet()) {
-                        // Filter out links we care about
-                        if (link.getDst() == sw.getId()) {
-                            // Loop through the links to neighboring switches
-                            // which have invalid flows
-                            for (Entry<OFPort, List<Match>> invalidBaseIngressAndMatch : invalidBaseIngressAndMatches.entrySet()) {
-                                // Find links on the network which link to the
-                                // ingress ports that have invalidly routed
-                                // flows
-                                if (link.getDstPort() == invalidBaseIngressAndMatch.getKey()) {
-                                    Map<OFPort, List<Match>> invalidNeighborOutportAndMatch = new HashMap<OFPort, List<Match>>();
-                                    // Insert the neighbor's outPort to the base
-                                    // switch and the invalid match
-                                    invalidNeighborOutportAndMatch.put(link.getSrcPort(),
-                                                                       invalidBaseIngressAndMatch.getValue());
-                                    // Link a neighbor switch's invalid match
-                                    // and outport to their Switch object
-                                    neighborSwitches.put(switchService.getSwitch(link.getSrc()), invalidNeighborOutportAndMatch);
-                                }
-                            }
-                        }
+            roundFlows = new HashMap<DatapathId, List<OFFlowStatsEntry>>();
+            roundDeletes = new HashMap<IOFSwitch, Set<OFMessage>>();
+            try {
+                for (Entry<DatapathId, Set<OFPort>> e : downPorts.entrySet()) {
+                    // Get the switch object from the OFMatchReconcile
+                    IOFSwitch sw = switchService.getSwitch(e.getKey());
+                    if (sw == null) {
+                        continue;
                     }
-                    log.debug("We have " + neighborSwitches.size()
-                              + " neighboring switches to deal with!");
-                    // Loop through all the switches we found to have potential
-                    // issues
-                    for (IOFSwitch neighborSwitch : neighborSwitches.keySet()) {
-                        log.debug("NeighborSwitch ID : " + neighborSwitch.getId());
-                        if (neighborSwitches.get(neighborSwitch) != null)
-                             deleteInvalidFlows(neighborSwitch, neighborSwitches.get(neighborSwitch));
+                    for (OFPort outPort : e.getValue()) {
+                        reconcilePortDown(sw, outPort);
                     }
                 }
-                return Command.CONTINUE;
+                flushFlowMods();
+            } finally {
+                roundFlows = null;
+                roundDeletes = null;
             }
         } else {
             log.error("Link Discovery Service Is Null");
@@ -279,39 +274,173 @@ public class PortDownReconciliation implements IFloodlightModule,
     }
 
     /**
+     * Remove the flows on a switch that output to a port that went down, and
+     * trace them back to the neighbors
+     */
+    protected void reconcilePortDown(IOFSwitch sw, OFPort outPort) {
+        // Map data structure that holds the invalid matches and the
+        // ingress ports of those matches
+        Map<OFPort, List<Match>> invalidBaseIngressAndMatches = new HashMap<OFPort, List<Match>>();
+
+        // Get the invalid flows
+        List<OFFlowStatsEntry> flows = getFlows(sw, outPort);
+
+        // Analyze all the flows with outPorts equaling the downed
+        // port and extract OFMatch's to trace back to neighbors
+        for (OFFlowStatsEntry entry : flows) {
+            // Create a reference to the match for ease
+            Match match = entry.getMatch();
+
+            // Here we utilize an index of input ports which point
+            // to multiple invalid matches
+            if (invalidBaseIngressAndMatches.containsKey(match.get(MatchField.IN_PORT)))
+                // If the input port is already in the index, add
+                // the match to it's list
+                invalidBaseIngressAndMatches.get(match.get(MatchField.IN_PORT))
+                .add(match);
+            else {
+                // Otherwise create a new list and add it to the
+                // index
+                List<Match> matches = new ArrayList<Match>();
+                matches.add(match);
+                invalidBaseIngressAndMatches.put(match.get(MatchField.IN_PORT), matches);
+            }
+        }
+
+        // Remove invalid flows from the base switch, if they exist
+        if (!flows.isEmpty()) {
+            log.debug("Removing flows on switch : " + sw.getId()
+                      + " with outport: " + outPort);
+            clearFlowMods(sw, outPort);
+        }
+
+        // Create a list of neighboring switches we need to remove
+        // invalid flows from
+        Map<IOFSwitch, Map<OFPort, List<Match>>> neighborSwitches = new HashMap<IOFSwitch, Map<OFPort, List<Match>>>();
+
+        // Loop through all the links
+        for (Link link : links.keySet()) {
+            // Filter out links we care about
+            if (link.getDst().equals(sw.getId())) {
+                // Loop through the links to neighboring switches
+                // which have invalid flows
+                for (Entry<OFPort, List<Match>> invalidBaseIngressAndMatch : invalidBaseIngressAndMatches.entrySet()) {
+                    // Find links on the network which link to the
+                    // ingress ports that have invalidly routed
+                    // flows
+                    if (link.getDstPort().equals(invalidBaseIngressAndMatch.getKey())) {
+                        Map<OFPort, List<Match>> invalidNeighborOutportAndMatch = new HashMap<OFPort, List<Match>>();
+                        // Insert the neighbor's outPort to the base
+                        // switch and the invalid match
+                        invalidNeighborOutportAndMatch.put(link.getSrcPort(),
+                                                           invalidBaseIngressAndMatch.getValue());
+                        // Link a neighbor switch's invalid match
+                        // and outport to their Switch object
+                        neighborSwitches.put(switchService.getSwitch(link.getSrc()), invalidNeighborOutportAndMatch);
+                    }
+                }
+            }
+        }
+        log.debug("We have " + neighborSwitches.size()
+                  + " neighboring switches to deal with!");
+        // Loop through all the switches we found to have potential
+        // issues
+        for (IOFSwitch neighborSwitch : neighborSwitches.keySet()) {
+            if (neighborSwitch == null)
+                continue;
+            log.debug("NeighborSwitch ID : " + neighborSwitch.getId());
+            if (neighborSwitches.get(neighborSwitch) != null)
+                 deleteInvalidFlows(neighborSwitch, neighborSwitches.get(neighborSwitch));
+        }
+    }
+
+    /**
+     * Get all flows of a switch. Within a reconciliation round the flows of
+     * a switch are only requested once.
+     *
      * @param sw
      *            the switch object that we wish to get flows from
-     * @param outPort
-     *            the output action port we wish to find flows with
-     * @return a list of OFFlowStatisticsReply objects or essentially flows
+     * @return the flow entries of the switch
      */
-    public List<OFFlowStatsReply> getFlows(IOFSwitch sw, OFPort outPort) {
+    protected List<OFFlowStatsEntry> getAllFlows(IOFSwitch sw) {
+        if (roundFlows != null) {
+            List<OFFlowStatsEntry> flows = roundFlows.get(sw.getId());
+            if (flows != null) {
+                return flows;
+            }
+        }
 
-        statsReply = new ArrayList<OFFlowStatsReply>();
-        List<OFFlowStatsReply> values = null;
+        List<OFFlowStatsEntry> flows = new ArrayList<OFFlowStatsEntry>();
         Future<List<OFFlowStatsReply>> future;
 
         // Statistics request object for getting flows
         OFFlowStatsRequest req = sw.getOFFactory().buildFlowStatsRequest()
         		.setMatch(sw.getOFFactory().buildMatch().build())
-        		.setOutPort(outPort)
+        		.setOutPort(OFPort.ANY)
         		.setTableId(TableId.ALL)
         		.build();
 
         try {
-            // System.out.println(sw.getStatistics(req));
             future = sw.writeStatsRequest(req);
-            values = future.get(10, TimeUnit.SECONDS);
+            if (ctrStatsRequests != null) {
+                ctrStatsRequests.increment();
+            }
+            List<OFFlowStatsReply> values = future.get(10, TimeUnit.SECONDS);
             if (values != null) {
                 for (OFFlowStatsReply stat : values) {
-                    statsReply.add(stat);
+                    flows.addAll(stat.getEntries());
                 }
             }
         } catch (Exception e) {
             log.error("Failure retrieving statistics from switch " + sw, e);
         }
 
-        return statsReply;
+        if (roundFlows != null) {
+            roundFlows.put(sw.getId(), flows);
+        }
+        return flows;
+    }
+
+    /**
+     * @param sw
+     *            the switch object that we wish to get flows from
+     * @param outPort
+     *            the output action port we wish to find flows with
+     * @return the flow entries with an output action to the port
+     */
+    public List<OFFlowStatsEntry> getFlows(IOFSwitch sw, OFPort outPort) {
+        List<OFFlowStatsEntry> flows = new ArrayList<OFFlowStatsEntry>();
+        for (OFFlowStatsEntry entry : getAllFlows(sw)) {
+            if (outputsTo(entry, outPort)) {
+                flows.add(entry);
+            }
+        }
+        return flows;
+    }
+
+    /**
+     * @return true if the flow has an output action to the given port
+     */
+    protected static boolean outputsTo(OFFlowStatsEntry entry, OFPort outPort) {
+        List<OFAction> actions = new ArrayList<OFAction>();
+        if (entry.getVersion().compareTo(OFVersion.OF_10) == 0) {
+            actions.addAll(entry.getActions());
+        } else {
+            for (OFInstruction instruction : entry.getInstructions()) {
+                if (instruction instanceof OFInstructionApplyActions) {
+                    actions.addAll(((OFInstructionApplyActions) instruction).getActions());
+                } else if (instruction instanceof OFInstructionWriteActions) {
+                    actions.addAll(((OFInstructionWriteActions) instruction).getActions());
+                }
+            }
+        }
+        for (OFAction action : actions) {
+            if (action instanceof OFActionOutput &&
+                    ((OFActionOutput) action).getPort().equals(outPort)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     /**
@@ -329,11 +458,7 @@ public class PortDownReconciliation implements IFloodlightModule,
     			.setMatch(match)
     			.setOutPort(outPort)
     			.build();
-    	try {
-    		sw.write(fm);
-    	} catch (Exception e) {
-    		log.error("Failed to clear flows on switch {} - {}", this, e);
-    	}
+    	writeFlowMod(sw, fm);
     }
 
     /**
@@ -353,11 +478,77 @@ public class PortDownReconciliation implements IFloodlightModule,
         		.setMatch(match)
         		.setOutPort(outPort)
         		.build();
+        writeFlowMod(sw, fm);
+    }
+
+    /**
+     * Delete the flows with the same match, output action port and owning
+     * application as the given flow. On switches that support cookie masks
+     * the delete is restricted to the application id bits of the flow's
+     * cookie, so flows of other applications are left alone.
+     *
+     * @param sw
+     *            The switch we wish to remove flows from
+     * @param entry
+     *            The flow whose match and cookie select the flows to delete
+     * @param outPort
+     *            The specific Output Action OutPort of specific flows we wish
+     *            to delete
+     */
+    public void clearFlowMods(IOFSwitch sw, OFFlowStatsEntry entry, OFPort outPort) {
+        OFFlowDelete.Builder fmb = sw.getOFFactory().buildFlowDelete()
+                .setMatch(entry.getMatch())
+                .setOutPort(outPort);
+        if (sw.getOFFactory().getVersion().compareTo(OFVersion.OF_10) > 0) {
+            U64 appMask = AppCookie.getAppFieldMask();
+            fmb.setCookie(U64.of(entry.getCookie().getValue() & appMask.getValue()))
+               .setCookieMask(appMask);
+        }
+        writeFlowMod(sw, fmb.build());
+    }
+
+    /**
+     * Queue a flow-mod for the end of the round, or write it right away
+     * outside of a round
+     */
+    protected void writeFlowMod(IOFSwitch sw, OFMessage fm) {
+        if (roundDeletes != null) {
+            Set<OFMessage> deletes = roundDeletes.get(sw);
+            if (deletes == null) {
+                deletes = new LinkedHashSet<OFMessage>();
+                roundDeletes.put(sw, deletes);
+            }
+            deletes.add(fm);
+            return;
+        }
         try {
             sw.write(fm);
+            if (ctrFlowDeletes != null) {
+                ctrFlowDeletes.increment();
+            }
         } catch (Exception e) {
-            log.error("Failed to clear flows on switch {} - {}", this, e);
+            log.error("Failed to clear flows on switch {} - {}", sw, e);
+        }
+    }
+
+    /**
+     * Write the flow-mods queued during the round, one batch per switch
+     */
+    protected void flushFlowMods() {
+        for (Entry<IOFSwitch, Set<OFMessage>> e : roundDeletes.entrySet()) {
+            IOFSwitch sw = e.getKey();
+            try {
+                sw.write(new ArrayList<OFMessage>(e.getValue()));
+                sw.flush();
+                if (ctrFlowDeletes != null) {
+                    ctrFlowDeletes.add(e.getValue().size());
+                    ctrFlowDeleteBatches.increment();
+                }
+            } catch (Exception ex) {
+                log.error("Failed to clear flows on switch {} - {}", sw, ex);
+            }
         }
+        roundDeletes.clear();
     }
 
     /**
@@ -381,44 +572,42 @@ public class PortDownReconciliation implements IFloodlightModule,
 
         for (OFPort outPort : invalidOutportAndMatch.keySet()) {
             // Get the flows on the switch
-            List<OFFlowStatsReply> flows = getFlows(sw, outPort);
+            List<OFFlowStatsEntry> flows = getFlows(sw, outPort);
 
             // Analyze all the flows with outPorts pointing to problematic route
-            for (OFFlowStatsReply flow : flows) {
-            	for (OFFlowStatsEntry entry : flow.getEntries()) {
-            		// Loop through all the problematic matches
-            		for (Match match : invalidOutportAndMatch.get(outPort)) {
-            			// Compare the problematic matches with the match of the
-            			// flow on the switch
-            			if (entry.getMatch().get(MatchField.ETH_DST).equals(match.get(MatchField.ETH_DST))
-            				&& entry.getMatch().get(MatchField.ETH_SRC).equals(match.get(MatchField.ETH_SRC))
-            				&& entry.getMatch().get(MatchField.ETH_TYPE).equals(match.get(MatchField.ETH_TYPE))
-            				&& entry.getMatch().get(MatchField.VLAN_VID).equals(match.get(MatchField.VLAN_VID))
-            				&& entry.getMatch().get(MatchField.IPV4_DST).equals(match.get(MatchField.IPV4_DST))
-            				&& entry.getMatch().get(MatchField.IP_PROTO).equals(match.get(MatchField.IP_PROTO))
-            				&& entry.getMatch().get(MatchField.IPV4_SRC).equals(match.get(MatchField.IPV4_SRC))
-            				&& entry.getMatch().get(MatchField.IP_DSCP).equals(match.get(MatchField.IP_DSCP)) // dscp and ecn replace tos
-            				&& entry.getMatch().get(MatchField.IP_ECN).equals(match.get(MatchField.IP_ECN))) {
-
-            					// Here we utilize an index of input ports which point
-            					// to multiple invalid matches
-            					if (invalidNeighborIngressAndMatches.containsKey(match.get(MatchField.IN_PORT)))
-            						// If the input port is already in the index, add
-            						// the match to it's list
-            						invalidNeighborIngressAndMatches.get(match.get(MatchField.IN_PORT))
-            						.add(match);
-            					else {
-            						// Otherwise create a new list and add it to the
-            						// index
-            						List<Match> matches = new ArrayList<Match>();
-            						matches.add(match);
-            						invalidNeighborIngressAndMatches.put(match.get(MatchField.IN_PORT), matches);
-            					}
-            					// Remove flows from the switch with the invalid match
-            					// and outPort
-            					clearFlowMods(sw, entry.getMatch(), outPort);
+            for (OFFlowStatsEntry entry : flows) {
+            	// Loop through all the problematic matches
+            	for (Match match : invalidOutportAndMatch.get(outPort)) {
+            		// Compare the problematic matches with the match of the
+            		// flow on the switch
+            		if (entry.getMatch().get(MatchField.ETH_DST).equals(match.get(MatchField.ETH_DST))
+            			&& entry.getMatch().get(MatchField.ETH_SRC).equals(match.get(MatchField.ETH_SRC))
+            			&& entry.getMatch().get(MatchField.ETH_TYPE).equals(match.get(MatchField.ETH_TYPE))
+            			&& entry.getMatch().get(MatchField.VLAN_VID).equals(match.get(MatchField.VLAN_VID))
+            			&& entry.getMatch().get(MatchField.IPV4_DST).equals(match.get(MatchField.IPV4_DST))
+            			&& entry.getMatch().get(MatchField.IP_PROTO).equals(match.get(MatchField.IP_PROTO))
+            			&& entry.getMatch().get(MatchField.IPV4_SRC).equals(match.get(MatchField.IPV4_SRC))
+            			&& entry.getMatch().get(MatchField.IP_DSCP).equals(match.get(MatchField.IP_DSCP)) // dscp and ecn replace tos
+            			&& entry.getMatch().get(MatchField.IP_ECN).equals(match.get(MatchField.IP_ECN))) {
+
+            				// Here we utilize an index of input ports which point
+            				// to multiple invalid matches
+            				if (invalidNeighborIngressAndMatches.containsKey(match.get(MatchField.IN_PORT)))
+            					// If the input port is already in the index, add
+            					// the match to it's list
+            					invalidNeighborIngressAndMatches.get(match.get(MatchField.IN_PORT))
+            					.add(match);
+            				else {
+            					// Otherwise create a new list and add it to the
+            					// index
+            					List<Match> matches = new ArrayList<Match>();
+            					matches.add(match);
+            					invalidNeighborIngressAndMatches.put(match.get(MatchField.IN_PORT), matches);
             				}
-            		}
+            				// Remove flows from the switch with the invalid match
+            				// and outPort
+            				clearFlowMods(sw, entry, outPort);
+            			}
             	}
             }
 
@@ -28,6 +28,7 @@ import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.devicemanager.IDevice;
+import net.floodlightcontroller.devicemanager.IDeviceListener;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.SwitchPort;
 import net.floodlightcontroller.core.annotations.LogMessageCategory;
@@ -39,7 +40,10 @@ import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
 import net.floodlightcontroller.core.util.AppCookie;
+import net.floodlightcontroller.forwarding.ForwardingDecisionCache.Hop;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPv4;
 import net.floodlightcontroller.packet.TCP;
@@ -48,7 +52,9 @@ import net.floodlightcontroller.routing.ForwardingBase;
 import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Route;
+import net.floodlightcontroller.topology.ITopologyListener;
 import net.floodlightcontroller.topology.ITopologyService;
+import net.floodlightcontroller.topology.NodePortTuple;
 
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
 import org.projectfloodlight.openflow.protocol.match.Match;
@@ -72,9 +78,22 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @LogMessageCategory("Flow Programming")
-public class Forwarding extends ForwardingBase implements IFloodlightModule {
+public class Forwarding extends ForwardingBase implements IFloodlightModule, ITopologyListener {
 	protected static Logger log = LoggerFactory.getLogger(Forwarding.class);
 
+	protected static final int DEFAULT_DECISION_CACHE_SIZE = 10000;
+
+	/**
+	 * Decisions for flows we recently pushed, so that packet-ins that
+	 * arrive before the flows are installed don't need a route lookup.
+	 * Null if the cache is disabled.
+	 */
+	protected ForwardingDecisionCache decisionCache;
+	protected DeviceListener deviceListener = new DeviceListener();
+
+	private IDebugCounter ctrDecisionCacheHit;
+	private IDebugCounter ctrDecisionCacheMiss;
+
 	@Override
 	@LogMessageDoc(level="ERROR",
 	message="Unexpected decision made for this packet-in={}",
@@ -173,6 +192,37 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 
 	protected void doForwardFlow(IOFSwitch sw, OFPacketIn pi, FloodlightContext cntx, boolean requestFlowRemovedNotifn) {
 		OFPort inPort = (pi.getVersion().compareTo(OFVersion.OF_12) < 0 ? pi.getInPort() : pi.getMatch().get(MatchField.IN_PORT));
+		U64 cookie = AppCookie.makeCookie(FORWARDING_APP_ID, 0);
+
+		// if there is prior routing decision use route's match
+		Match routeMatch = null;
+		IRoutingDecision decision = null;
+		if (cntx != null) {
+			decision = IRoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
+		}
+		if (decision != null) {
+			routeMatch = decision.getMatch();
+		} else {
+			routeMatch = createMatchFromPacket(sw, inPort, cntx);
+		}
+
+		// Only our own decisions are cached, since we can't tell when the
+		// policy behind a prior routing decision changes
+		boolean cacheable = (decisionCache != null && decision == null);
+		long generation = 0;
+		if (cacheable) {
+			List<Hop> hops = decisionCache.get(sw.getId(), routeMatch);
+			if (hops != null) {
+				if (pushDecision(hops, pi, sw.getId(), cookie, cntx)) {
+					ctrDecisionCacheHit.increment();
+					return;
+				}
+				decisionCache.invalidate(sw.getId(), routeMatch);
+			}
+			ctrDecisionCacheMiss.increment();
+			generation = decisionCache.getGeneration();
+		}
+
 		// Check if we have the location of the destination
 		IDevice dstDevice = IDeviceService.fcStore.get(cntx, IDeviceService.CONTEXT_DST_DEVICE);
 
@@ -234,6 +284,8 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 			Arrays.sort(dstDaps, clusterIdComparator);
 
 			int iSrcDaps = 0, iDstDaps = 0;
+			List<Hop> hops = new ArrayList<Hop>();
+			boolean complete = true;
 
 			while ((iSrcDaps < srcDaps.length) && (iDstDaps < dstDaps.length)) {
 				SwitchPort srcDap = srcDaps[iSrcDaps];
@@ -252,76 +304,18 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 										srcDap.getPort(),
 										dstDap.getSwitchDPID(),
 										dstDap.getPort(), U64.of(0)); //cookie = 0, i.e., default route
-										if (route != null) {
-											if (log.isTraceEnabled()) {
-												log.trace("pushRoute inPort={} route={} " +
-														"destination={}:{}",
-														new Object[] { inPort, route,
-														dstDap.getSwitchDPID(),
-														dstDap.getPort()});
-											}
-											U64 cookie = AppCookie.makeCookie(FORWARDING_APP_ID, 0);
-
-											// if there is prior routing decision use route's match
-											Match routeMatch = null;
-											IRoutingDecision decision = null;
-											if (cntx != null) {
-												decision = IRoutingDecision.rtStore.get(cntx, IRoutingDecision.CONTEXT_DECISION);
-											}
-											if (decision != null) {
-												routeMatch = decision.getMatch();
-											} else {
-												// The packet in match will only contain the port number.
-												// We need to add in specifics for the hosts we're routing between.
-												Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
-												VlanVid vlan = VlanVid.ofVlan(eth.getVlanID());
-												MacAddress srcMac = eth.getSourceMACAddress();
-												MacAddress dstMac = eth.getDestinationMACAddress();
-												
-												// A retentive builder will remember all MatchFields of the parent the builder was generated from
-												// With a normal builder, all parent MatchFields will be lost if any MatchFields are added, mod, del
-												// TODO (This is a bug in Loxigen and the retentive builder is a workaround.)
-												Match.Builder mb = sw.getOFFactory().buildMatch();
-												mb.setExact(MatchField.IN_PORT, inPort)
-												.setExact(MatchField.ETH_SRC, srcMac)
-												.setExact(MatchField.ETH_DST, dstMac);
-												
-												if (!vlan.equals(VlanVid.ZERO)) {
-													mb.setExact(MatchField.VLAN_VID, OFVlanVidMatch.ofVlanVid(vlan));
-												}
-												
-												// TODO Detect switch type and match to create hardware-implemented flow
-												// TODO Set option in config file to support specific or MAC-only matches
-												if (eth.getEtherType() == Ethernet.TYPE_IPv4) {
-													IPv4 ip = (IPv4) eth.getPayload();
-													IPv4Address srcIp = ip.getSourceAddress();
-													IPv4Address dstIp = ip.getDestinationAddress();
-													mb.setExact(MatchField.IPV4_SRC, srcIp)
-													.setExact(MatchField.IPV4_DST, dstIp)
-													.setExact(MatchField.ETH_TYPE, EthType.IPv4);
-													
-													if (ip.getProtocol().equals(IpProtocol.TCP)) {
-														TCP tcp = (TCP) ip.getPayload();
-														mb.setExact(MatchField.IP_PROTO, IpProtocol.TCP)
-														.setExact(MatchField.TCP_SRC, tcp.getSourcePort())
-														.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
-													} else if (ip.getProtocol().equals(IpProtocol.UDP)) {
-														UDP udp = (UDP) ip.getPayload();
-														mb.setExact(MatchField.IP_PROTO, IpProtocol.UDP)
-														.setExact(MatchField.UDP_SRC, udp.getSourcePort())
-														.setExact(MatchField.UDP_DST, udp.getDestinationPort());
-													}	
-												} else if (eth.getEtherType() == Ethernet.TYPE_ARP) {
-													mb.setExact(MatchField.ETH_TYPE, EthType.ARP);
-												} 
-												
-												routeMatch = mb.build();
-											}
-
-											pushRoute(route, routeMatch, pi, sw.getId(), cookie,
-													cntx, requestFlowRemovedNotifn, false,
-													OFFlowModCommand.ADD);
-										}
+						if (route != null) {
+							if (log.isTraceEnabled()) {
+								log.trace("pushRoute inPort={} route={} " +
+										"destination={}:{}",
+										new Object[] { inPort, route,
+										dstDap.getSwitchDPID(),
+										dstDap.getPort()});
+							}
+							if (!addRouteHops(route, routeMatch, cookie, hops)) {
+								complete = false;
+							}
+						}
 					}
 					iSrcDaps++;
 					iDstDaps++;
@@ -331,12 +325,152 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 					iDstDaps++;
 				}
 			}
+
+			if (!hops.isEmpty() &&
+					pushDecision(hops, pi, sw.getId(), cookie, cntx) &&
+					complete && cacheable) {
+				decisionCache.put(sw.getId(), routeMatch, hops, generation);
+			}
 		} else {
 			// Flood since we don't know the dst device
 			doFlood(sw, pi, cntx);
 		}
 	}
 
+	/**
+	 * Builds the match of the flow-mods for a packet-in from the packet's
+	 * headers
+	 * @param sw The switch that received the packet
+	 * @param inPort The port the packet was received on
+	 * @param cntx The FloodlightContext holding the packet-in payload
+	 * @return the match
+	 */
+	protected Match createMatchFromPacket(IOFSwitch sw, OFPort inPort, FloodlightContext cntx) {
+		// The packet in match will only contain the port number.
+		// We need to add in specifics for the hosts we're routing between.
+		Ethernet eth = IFloodlightProviderService.bcStore.get(cntx, IFloodlightProviderService.CONTEXT_PI_PAYLOAD);
+		VlanVid vlan = VlanVid.ofVlan(eth.getVlanID());
+		MacAddress srcMac = eth.getSourceMACAddress();
+		MacAddress dstMac = eth.getDestinationMACAddress();
+
+		// A retentive builder will remember all MatchFields of the parent the builder was generated from
+		// With a normal builder, all parent MatchFields will be lost if any MatchFields are added, mod, del
+		// TODO (This is a bug in Loxigen and the retentive builder is a workaround.)
+		Match.Builder mb = sw.getOFFactory().buildMatch();
+		mb.setExact(MatchField.IN_PORT, inPort)
+		.setExact(MatchField.ETH_SRC, srcMac)
+		.setExact(MatchField.ETH_DST, dstMac);
+
+		if (!vlan.equals(VlanVid.ZERO)) {
+			mb.setExact(MatchField.VLAN_VID, OFVlanVidMatch.ofVlanVid(vlan));
+		}
+
+		// TODO Detect switch type and match to create hardware-implemented flow
+		// TODO Set option in config file to support specific or MAC-only matches
+		if (eth.getEtherType() == Ethernet.TYPE_IPv4) {
+			IPv4 ip = (IPv4) eth.getPayload();
+			IPv4Address srcIp = ip.getSourceAddress();
+			IPv4Address dstIp = ip.getDestinationAddress();
+			mb.setExact(MatchField.IPV4_SRC, srcIp)
+			.setExact(MatchField.IPV4_DST, dstIp)
+			.setExact(MatchField.ETH_TYPE, EthType.IPv4);
+
+			if (ip.getProtocol().equals(IpProtocol.TCP)) {
+				TCP tcp = (TCP) ip.getPayload();
+				mb.setExact(MatchField.IP_PROTO, IpProtocol.TCP)
+				.setExact(MatchField.TCP_SRC, tcp.getSourcePort())
+				.setExact(MatchField.TCP_DST, tcp.getDestinationPort());
+			} else if (ip.getProtocol().equals(IpProtocol.UDP)) {
+				UDP udp = (UDP) ip.getPayload();
+				mb.setExact(MatchField.IP_PROTO, IpProtocol.UDP)
+				.setExact(MatchField.UDP_SRC, udp.getSourcePort())
+				.setExact(MatchField.UDP_DST, udp.getDestinationPort());
+			}	
+		} else if (eth.getEtherType() == Ethernet.TYPE_ARP) {
+			mb.setExact(MatchField.ETH_TYPE, EthType.ARP);
+		} 
+
+		return mb.build();
+	}
+
+	/**
+	 * Builds the flow-mods of a route, from the destination back to the
+	 * source, and appends them to a decision
+	 * @param route Route to push
+	 * @param match OpenFlow fields to match on
+	 * @param cookie The cookie to set in each flow_mod
+	 * @param hops The decision to add the flow-mods to
+	 * @return false if a switch of the route is not available, in which
+	 * case only the hops after it were added
+	 */
+	protected boolean addRouteHops(Route route, Match match, U64 cookie,
+			List<Hop> hops) {
+		List<NodePortTuple> switchPortList = route.getPath();
+
+		for (int indx = switchPortList.size() - 1; indx > 0; indx -= 2) {
+			// indx and indx-1 will always have the same switch DPID.
+			DatapathId switchDPID = switchPortList.get(indx).getNodeId();
+			IOFSwitch sw = switchService.getSwitch(switchDPID);
+
+			if (sw == null) {
+				if (log.isWarnEnabled()) {
+					log.warn("Unable to push route, switch at DPID {} " + "not available", switchDPID);
+				}
+				return false;
+			}
+
+			OFPort outPort = switchPortList.get(indx).getPortId();
+			OFPort inPort = switchPortList.get(indx - 1).getPortId();
+			hops.add(new Hop(switchDPID, outPort,
+					buildRouteFlowMod(sw, match, inPort, outPort, cookie,
+							OFFlowModCommand.ADD)));
+		}
+		return true;
+	}
+
+	/**
+	 * Pushes the flow-mods of a decision in order, and the packet out of
+	 * the switch that sent the packet-in.
+	 * @param hops The flow-mods to push
+	 * @param pi The packet-in the decision was made for
+	 * @param pinSwitch The switch that sent the packet-in
+	 * @param cookie The cookie to set in each flow_mod
+	 * @param cntx The FloodlightContext associated with this OFPacketIn
+	 * @return false if a switch of the decision is no longer available
+	 */
+	protected boolean pushDecision(List<Hop> hops, OFPacketIn pi,
+			DatapathId pinSwitch, U64 cookie, FloodlightContext cntx) {
+		for (Hop hop : hops) {
+			IOFSwitch sw = switchService.getSwitch(hop.getSwitchId());
+			if (sw == null) {
+				if (log.isWarnEnabled()) {
+					log.warn("Unable to push route, switch at DPID {} " + "not available", hop.getSwitchId());
+				}
+				return false;
+			}
+
+			OFFlowMod fm = hop.getFlowMod();
+			if (!fm.getCookie().equals(cookie)) {
+				fm = fm.createBuilder().setCookie(cookie).build();
+			}
+			try {
+				if (log.isTraceEnabled()) {
+					log.trace("Pushing Route flowmod sw={} outPort={}",
+							sw, hop.getOutPort());
+				}
+				messageDamper.write(sw, fm);
+
+				// Push the packet out the source switch
+				if (sw.getId().equals(pinSwitch)) {
+					pushPacket(sw, pi, false, hop.getOutPort(), cntx);
+				}
+			} catch (IOException e) {
+				log.error("Failure writing flow mod", e);
+			}
+		}
+		return true;
+	}
+
 	/**
 	 * Creates a OFPacketOut with the OFPacketIn data that is flooded on all ports unless
 	 * the port is blocked, in which case the packet will be dropped.
@@ -391,6 +525,69 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 		return;
 	}
 
+	// ITopologyListener
+
+	@Override
+	public void topologyChanged(List<LDUpdate> linkUpdates) {
+		// routes may have changed anywhere
+		if (decisionCache != null) {
+			decisionCache.clear();
+		}
+	}
+
+	// IDeviceListener
+
+	/**
+	 * Drops the cached decisions of hosts that moved or went away
+	 */
+	protected class DeviceListener implements IDeviceListener {
+		@Override
+		public String getName() {
+			return Forwarding.this.getName();
+		}
+
+		@Override
+		public boolean isCallbackOrderingPrereq(String type, String name) {
+			return false;
+		}
+
+		@Override
+		public boolean isCallbackOrderingPostreq(String type, String name) {
+			return false;
+		}
+
+		@Override
+		public void deviceAdded(IDevice device) {
+			// nothing to do
+		}
+
+		@Override
+		public void deviceRemoved(IDevice device) {
+			invalidateDevice(device);
+		}
+
+		@Override
+		public void deviceMoved(IDevice device) {
+			invalidateDevice(device);
+		}
+
+		@Override
+		public void deviceIPV4AddrChanged(IDevice device) {
+			// decisions are keyed by the packet, not the device's addresses
+		}
+
+		@Override
+		public void deviceVlanChanged(IDevice device) {
+			// nothing to do
+		}
+
+		private void invalidateDevice(IDevice device) {
+			if (decisionCache != null) {
+				decisionCache.invalidateHost(device.getMACAddress());
+			}
+		}
+	}
+
 	// IFloodlightModule methods
 
 	@Override
@@ -466,10 +663,30 @@ public class Forwarding extends ForwardingBase implements IFloodlightModule {
 		} else {
 			log.info("Default priority not configured. Using {}.", FLOWMOD_DEFAULT_PRIORITY);
 		}
+		int decisionCacheSize = DEFAULT_DECISION_CACHE_SIZE;
+		tmp = configParameters.get("decision-cache-size");
+		if (tmp != null) {
+			decisionCacheSize = Integer.parseInt(tmp);
+		}
+		if (decisionCacheSize > 0) {
+			decisionCache = new ForwardingDecisionCache(decisionCacheSize);
+			log.info("Caching up to {} forwarding decisions.", decisionCacheSize);
+		} else {
+			log.info("Forwarding decision cache disabled.");
+		}
+
+		debugCounterService.registerModule(this.getName());
+		ctrDecisionCacheHit = debugCounterService.registerCounter(this.getName(),
+				"decision-cache-hit", "Packet-ins forwarded using a cached decision");
+		ctrDecisionCacheMiss = debugCounterService.registerCounter(this.getName(),
+				"decision-cache-miss", "Packet-ins that needed a route lookup");
+		registerDamperCounters(this.getName());
 	}
 
 	@Override
 	public void startUp(FloodlightModuleContext context) {
 		super.startUp();
+		topologyService.addListener(this);
+		deviceManagerService.addListener(deviceListener);
 	}
 }
\ No newline at end of file
@@ -0,0 +1,159 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.forwarding;
+
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import net.floodlightcontroller.util.LRUHashMap;
+
+import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * A bounded, least recently used cache of forwarding decisions. A decision
+ * is keyed by the switch that sent the packet-in and the match built from
+ * the packet, which includes the ingress port, and holds the flow-mods
+ * that were pushed along the route(s) to the destination.
+ *
+ * Every invalidation bumps a generation number so that a decision computed
+ * concurrently with a topology or device change is not cached.
+ */
+public class ForwardingDecisionCache {
+    /**
+     * A flow-mod to push to one switch of a route
+     */
+    public static class Hop {
+        private final DatapathId switchId;
+        private final OFPort outPort;
+        private final OFFlowMod flowMod;
+
+        public Hop(DatapathId switchId, OFPort outPort, OFFlowMod flowMod) {
+            this.switchId = switchId;
+            this.outPort = outPort;
+            this.flowMod = flowMod;
+        }
+
+        public DatapathId getSwitchId() {
+            return switchId;
+        }
+
+        public OFPort getOutPort() {
+            return outPort;
+        }
+
+        public OFFlowMod getFlowMod() {
+            return flowMod;
+        }
+    }
+
+    protected static class Key {
+        private final DatapathId switchId;
+        private final Match match;
+
+        public Key(DatapathId switchId, Match match) {
+            this.switchId = switchId;
+            this.match = match;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * switchId.hashCode() + match.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return switchId.equals(other.switchId) &&
+                    match.equals(other.match);
+        }
+
+        private boolean involves(MacAddress mac) {
+            return mac.equals(match.get(MatchField.ETH_SRC)) ||
+                    mac.equals(match.get(MatchField.ETH_DST));
+        }
+    }
+
+    private final LRUHashMap<Key, List<Hop>> decisions;
+    private long generation;
+
+    public ForwardingDecisionCache(int capacity) {
+        decisions = new LRUHashMap<Key, List<Hop>>(capacity);
+    }
+
+    /**
+     * @return the cached decision for a packet-in, or null if there is none
+     */
+    public synchronized List<Hop> get(DatapathId switchId, Match match) {
+        return decisions.get(new Key(switchId, match));
+    }
+
+    /**
+     * @return the current generation, to pass to
+     * {@link #put(DatapathId, Match, List, long)} once the decision is made
+     */
+    public synchronized long getGeneration() {
+        return generation;
+    }
+
+    /**
+     * Cache a decision unless the cache was invalidated since the decision
+     * was started
+     * @return true if the decision was cached
+     */
+    public synchronized boolean put(DatapathId switchId, Match match,
+                                    List<Hop> hops, long startGeneration) {
+        if (startGeneration != generation)
+            return false;
+        decisions.put(new Key(switchId, match),
+                      Collections.unmodifiableList(hops));
+        return true;
+    }
+
+    public synchronized void invalidate(DatapathId switchId, Match match) {
+        decisions.remove(new Key(switchId, match));
+        generation++;
+    }
+
+    /**
+     * Drop the decisions for traffic to or from the given host
+     */
+    public synchronized void invalidateHost(MacAddress mac) {
+        Iterator<Key> it = decisions.keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().involves(mac))
+                it.remove();
+        }
+        generation++;
+    }
+
+    public synchronized void clear() {
+        decisions.clear();
+        generation++;
+    }
+
+    public synchronized int size() {
+        return decisions.size();
+    }
+}
@@ -135,6 +135,8 @@ IFloodlightModule, IInfoProvider {
 			NotificationManagerFactory.getNotificationManager(LinkDiscoveryManager.class);
 
 	public static final String MODULE_NAME = "linkdiscovery";
+	/** Name of the executor running the discovery tasks */
+	public static final String EXECUTOR_NAME = MODULE_NAME;
 
 	// Names of table/fields for links in the storage API
 	private static final String TOPOLOGY_TABLE_NAME = "controller_topologyconfig";
@@ -827,7 +829,12 @@ IFloodlightModule, IInfoProvider {
 		}
 
 		NodePortTuple npt = new NodePortTuple(sw, p);
-		discover(sw, p);
+		// While switches are waiting to complete their handshakes, leave
+		// the new port to the quarantine and the periodic discovery
+		// instead of adding to the load with an LLDP right away.
+		if (!switchService.isHandshakeBackpressured()) {
+			discover(sw, p);
+		}
 		addToQuarantineQueue(npt);
 	}
 
@@ -1989,7 +1996,8 @@ IFloodlightModule, IInfoProvider {
 					+ "switch table {}", SWITCH_CONFIG_TABLE_NAME);
 		}
 
-		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
+		// LLDP sends must not wait behind long tasks of other modules
+		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor(EXECUTOR_NAME);
 
 		// To be started by the first switch connection
 		discoveryTask = new SingletonTask(ses, new Runnable() {
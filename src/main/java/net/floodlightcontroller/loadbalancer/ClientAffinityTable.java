@@ -0,0 +1,171 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.loadbalancer;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.projectfloodlight.openflow.types.U64;
+
+import net.floodlightcontroller.loadbalancer.LoadBalancer.IPClient;
+import net.floodlightcontroller.staticflowentry.StaticFlowEntries;
+
+/**
+ * Concurrent table of client connections bound to pool members.
+ *
+ * A client is bound to a member on its first packet-in and keeps it for as
+ * long as the binding is in the table. Bindings are removed when one of the
+ * static flow entries pushed for the client is reported removed by a switch
+ * (see {@link #removeByCookie(U64)}), when its member is deleted, or, for
+ * bindings that never got any flows installed, after being idle for the
+ * idle timeout.
+ */
+public class ClientAffinityTable {
+    /**
+     * A client's binding to a member and the static flow entries that
+     * were pushed for it
+     */
+    public static class Affinity {
+        protected final IPClient client;
+        protected final String memberId;
+        protected volatile long lastSeen;
+        protected final Set<String> flowNames = Collections.newSetFromMap(
+                new ConcurrentHashMap<String, Boolean>());
+
+        Affinity(IPClient client, String memberId, long now) {
+            this.client = client;
+            this.memberId = memberId;
+            this.lastSeen = now;
+        }
+
+        public IPClient getClient() {
+            return client;
+        }
+
+        public String getMemberId() {
+            return memberId;
+        }
+
+        public Set<String> getFlowNames() {
+            return flowNames;
+        }
+    }
+
+    private final ConcurrentMap<IPClient, Affinity> affinities =
+            new ConcurrentHashMap<IPClient, Affinity>();
+    private final ConcurrentMap<U64, Affinity> byCookie =
+            new ConcurrentHashMap<U64, Affinity>();
+    private final long idleTimeoutMs;
+
+    public ClientAffinityTable(long idleTimeoutMs) {
+        this.idleTimeoutMs = idleTimeoutMs;
+    }
+
+    /**
+     * Look up the member a client is bound to and mark the binding as used
+     * @return the member id, or null if the client is not bound
+     */
+    public String lookup(IPClient client, long now) {
+        Affinity a = affinities.get(client);
+        if (a == null)
+            return null;
+        a.lastSeen = now;
+        return a.memberId;
+    }
+
+    /**
+     * Bind a client to a member unless another thread bound it first
+     * @return the member id the client is bound to
+     */
+    public String bind(IPClient client, String memberId, long now) {
+        Affinity a = new Affinity(client, memberId, now);
+        Affinity existing = affinities.putIfAbsent(client, a);
+        if (existing != null) {
+            existing.lastSeen = now;
+            return existing.memberId;
+        }
+        return memberId;
+    }
+
+    /**
+     * Record a static flow entry pushed for a bound client
+     */
+    public void addFlow(IPClient client, String entryName) {
+        Affinity a = affinities.get(client);
+        if (a == null)
+            return;
+        a.flowNames.add(entryName);
+        byCookie.put(StaticFlowEntries.computeEntryCookie(0, entryName), a);
+    }
+
+    /**
+     * Unbind the client owning the static flow entry with the given cookie
+     * @return the removed binding, or null if no client owns the cookie
+     */
+    public Affinity removeByCookie(U64 cookie) {
+        Affinity a = byCookie.get(cookie);
+        if (a == null || !remove(a))
+            return null;
+        return a;
+    }
+
+    /**
+     * Unbind all clients of a member
+     * @return the removed bindings
+     */
+    public List<Affinity> removeMember(String memberId) {
+        List<Affinity> removed = new ArrayList<Affinity>();
+        for (Affinity a : affinities.values()) {
+            if (a.memberId.equals(memberId) && remove(a))
+                removed.add(a);
+        }
+        return removed;
+    }
+
+    /**
+     * Unbind clients without any flow entries that have been idle for longer
+     * than the idle timeout. Clients with flow entries are unbound when their
+     * flows expire instead.
+     * @return the removed bindings
+     */
+    public List<Affinity> expireIdle(long now) {
+        List<Affinity> removed = new ArrayList<Affinity>();
+        for (Affinity a : affinities.values()) {
+            if (a.flowNames.isEmpty() && now - a.lastSeen > idleTimeoutMs
+                    && remove(a))
+                removed.add(a);
+        }
+        return removed;
+    }
+
+    public int size() {
+        return affinities.size();
+    }
+
+    private boolean remove(Affinity a) {
+        if (!affinities.remove(a.client, a))
+            return false;
+        for (String name : a.flowNames) {
+            byCookie.remove(StaticFlowEntries.computeEntryCookie(0, name), a);
+        }
+        return true;
+    }
+}
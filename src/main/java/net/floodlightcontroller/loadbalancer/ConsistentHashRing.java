@@ -0,0 +1,97 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.loadbalancer;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.TreeMap;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import net.floodlightcontroller.loadbalancer.LoadBalancer.IPClient;
+
+/**
+ * An immutable consistent hash ring over the members of a pool.
+ *
+ * Every member is placed on the ring at {@link #VIRTUAL_NODES} points
+ * derived from its id, and a client is mapped to the member owning the
+ * first point at or after the client's hash. Adding or removing a member
+ * therefore only moves the clients that hash next to that member's points;
+ * all other clients keep their member.
+ */
+class ConsistentHashRing {
+    static final int VIRTUAL_NODES = 100;
+    static final ConsistentHashRing EMPTY =
+            new ConsistentHashRing(Arrays.<String>asList());
+
+    private static final HashFunction hashFunction = Hashing.murmur3_32();
+
+    private final int[] points;
+    private final String[] owners;
+
+    ConsistentHashRing(Collection<String> memberIds) {
+        TreeMap<Integer, String> ring = new TreeMap<Integer, String>();
+        for (String id : memberIds) {
+            for (int i = 0; i < VIRTUAL_NODES; i++) {
+                int point = hashFunction.newHasher()
+                        .putString(id).putInt(i).hash().asInt();
+                String owner = ring.get(point);
+                // resolve collisions independently of the member order
+                if (owner == null || id.compareTo(owner) < 0) {
+                    ring.put(point, id);
+                }
+            }
+        }
+        points = new int[ring.size()];
+        owners = new String[ring.size()];
+        int i = 0;
+        for (Map.Entry<Integer, String> e : ring.entrySet()) {
+            points[i] = e.getKey();
+            owners[i] = e.getValue();
+            i++;
+        }
+    }
+
+    /**
+     * @return the hash of a client's connection
+     */
+    static int hash(IPClient client) {
+        return hashFunction.newHasher()
+                .putInt(client.ipAddress.getInt())
+                .putShort(client.nw_proto.getIpProtocolNumber())
+                .putInt(client.srcPort.getPort())
+                .hash().asInt();
+    }
+
+    /**
+     * @return the id of the member owning the given client, or null if the
+     * ring is empty
+     */
+    String get(IPClient client) {
+        if (points.length == 0)
+            return null;
+        int i = Arrays.binarySearch(points, hash(client));
+        if (i < 0) {
+            i = -(i + 1);
+            if (i == points.length)
+                i = 0;
+        }
+        return owners[i];
+    }
+}
@@ -17,6 +17,8 @@
 package net.floodlightcontroller.loadbalancer;
 
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import com.fasterxml.jackson.databind.annotation.JsonSerialize;
 
@@ -38,14 +40,14 @@ public class LBPool {
     protected String netId;
     protected short lbMethod;
     protected byte protocol;
-    protected ArrayList<String> members;
+    protected List<String> members; // modified through add/removeMember
     protected ArrayList<String> monitors;
     protected short adminState;
     protected short status;
     
     protected String vipId;
     
-    protected int previousMemberIndex;
+    protected volatile ConsistentHashRing ring;
     
     public LBPool() {
         id = String.valueOf((int) (Math.random()*10000));
@@ -54,21 +56,41 @@ public class LBPool {
         netId = null;
         lbMethod = 0;
         protocol = 0;
-        members = new ArrayList<String>();
+        members = new CopyOnWriteArrayList<String>();
         monitors = new ArrayList<String>();
         adminState = 0;
         status = 0;
-        previousMemberIndex = -1;
+        ring = ConsistentHashRing.EMPTY;
     }
     
-    public String pickMember(IPClient client) {
-        // simple round robin for now; add different lbmethod later
-        if (members.size() > 0) {
-            previousMemberIndex = (previousMemberIndex + 1) % members.size();
-            return members.get(previousMemberIndex);
-        } else {
-            return null;
+    /**
+     * Add a member to the pool, rebalancing only the clients that now
+     * hash to it
+     */
+    public synchronized void addMember(String memberId) {
+        if (!members.contains(memberId)) {
+            members.add(memberId);
+            ring = new ConsistentHashRing(members);
+        }
+    }
+
+    /**
+     * Remove a member from the pool, moving only its own clients
+     */
+    public synchronized void removeMember(String memberId) {
+        if (members.remove(memberId)) {
+            ring = new ConsistentHashRing(members);
         }
     }
 
+    /**
+     * Pick a member for a client by consistent hashing on the client's
+     * connection, so that the same connection keeps its member while other
+     * members come and go.
+     * @return the member id, or null if the pool is empty
+     */
+    public String pickMember(IPClient client) {
+        return ring.get(client);
+    }
+
 }
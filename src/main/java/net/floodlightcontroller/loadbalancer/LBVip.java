@@ -16,7 +16,8 @@
 
 package net.floodlightcontroller.loadbalancer;
 
-import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.projectfloodlight.openflow.types.MacAddress;
 
@@ -41,7 +42,7 @@ public class LBVip {
     protected byte protocol;
     protected short lbMethod;
     protected short port;
-    protected ArrayList<String> pools;
+    protected List<String> pools;
     protected boolean sessionPersistence;
     protected int connectionLimit;
     protected short adminState;
@@ -60,7 +61,7 @@ public class LBVip {
         this.protocol = 0;
         this.lbMethod = 0;
         this.port = 0;
-        this.pools = new ArrayList<String>();
+        this.pools = new CopyOnWriteArrayList<String>();
         this.sessionPersistence = false;
         this.connectionLimit = 0;
         this.address = 0;
@@ -71,10 +72,9 @@ public class LBVip {
     
     public String pickPool(IPClient client) {
         // for now, return the first pool; consider different pool choice policy later
-        if (pools.size() > 0)
-            return pools.get(0);
-        else
-            return null;
+        for (String poolId : pools)
+            return poolId;
+        return null;
     }
 
 }
@@ -24,8 +24,11 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowRemoved;
 import org.projectfloodlight.openflow.protocol.match.Match;
 import org.projectfloodlight.openflow.protocol.match.MatchField;
 import org.projectfloodlight.openflow.protocol.OFMessage;
@@ -49,6 +52,7 @@ import org.slf4j.LoggerFactory;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.IListener.Command;
 import net.floodlightcontroller.core.IOFMessageListener;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
@@ -56,6 +60,7 @@ import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounter;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
@@ -73,6 +78,7 @@ import net.floodlightcontroller.restserver.IRestApiService;
 import net.floodlightcontroller.routing.IRoutingService;
 import net.floodlightcontroller.routing.Route;
 import net.floodlightcontroller.staticflowentry.IStaticFlowEntryPusherService;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.ITopologyService;
 import net.floodlightcontroller.topology.NodePortTuple;
 import net.floodlightcontroller.util.FlowModUtils;
@@ -84,8 +90,7 @@ import net.floodlightcontroller.util.FlowModUtils;
  * made to confirm compatibility at this time. 
  * 
  * Limitations:
- * - client records and static flows not purged after use, will exhaust switch flow tables over time
- * - round robin policy among servers based on connections, not traffic volume
+ * - consistent hashing among servers based on connections, not traffic volume
  * - health monitoring feature not implemented yet
  *  
  * @author kcwang
@@ -107,20 +112,23 @@ public class LoadBalancer implements IFloodlightModule,
     protected ITopologyService topologyService;
     protected IStaticFlowEntryPusherService sfpService;
     protected IOFSwitchService switchService;
+    protected IThreadPoolService threadPoolService;
     
-    protected HashMap<String, LBVip> vips;
-    protected HashMap<String, LBPool> pools;
-    protected HashMap<String, LBMember> members;
-    protected HashMap<Integer, String> vipIpToId;
-    protected HashMap<Integer, MacAddress> vipIpToMac;
-    protected HashMap<Integer, String> memberIpToId;
-    protected HashMap<IPClient, LBMember> clientToMember;
+    protected Map<String, LBVip> vips;
+    protected Map<String, LBPool> pools;
+    protected Map<String, LBMember> members;
+    protected Map<Integer, String> vipIpToId;
+    protected Map<Integer, MacAddress> vipIpToMac;
+    protected Map<Integer, String> memberIpToId;
+    protected ClientAffinityTable clientAffinity;
+    protected SingletonTask affinityExpiryTask;
     
     //Copied from Forwarding with message damper routine for pushing proxy Arp 
     protected static int OFMESSAGE_DAMPER_CAPACITY = 10000; // ms. 
     protected static int OFMESSAGE_DAMPER_TIMEOUT = 250; // ms 
     protected static String LB_ETHER_TYPE = "0x800";
     protected static int LB_PRIORITY = 32768;
+    protected static int LB_IDLE_TIMEOUT = 60; // seconds
     
     // Comparator for sorting by SwitchCluster
     public Comparator<SwitchPort> clusterIdComparator =
@@ -146,6 +154,28 @@ public class LoadBalancer implements IFloodlightModule,
             srcPort = TransportPort.NONE;
             targetPort = TransportPort.NONE;
         }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ipAddress.hashCode();
+            result = prime * result + nw_proto.hashCode();
+            result = prime * result + srcPort.hashCode();
+            result = prime * result + targetPort.hashCode();
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof IPClient)) return false;
+            IPClient other = (IPClient) obj;
+            return ipAddress.equals(other.ipAddress)
+                    && nw_proto.equals(other.nw_proto)
+                    && srcPort.equals(other.srcPort)
+                    && targetPort.equals(other.targetPort);
+        }
     }
     
     @Override
@@ -172,6 +202,8 @@ public class LoadBalancer implements IFloodlightModule,
         switch (msg.getType()) {
             case PACKET_IN:
                 return processPacketIn(sw, (OFPacketIn)msg, cntx);
+            case FLOW_REMOVED:
+                return processFlowRemoved(sw, (OFFlowRemoved)msg);
             default:
                 break;
         }
@@ -193,8 +225,8 @@ public class LoadBalancer implements IFloodlightModule,
                 int targetProtocolAddress = IPv4.toIPv4Address(arpRequest
                                                                .getTargetProtocolAddress());
 
-                if (vipIpToId.containsKey(targetProtocolAddress)) {
-                    String vipId = vipIpToId.get(targetProtocolAddress);
+                String vipId = vipIpToId.get(targetProtocolAddress);
+                if (vipId != null && vips.containsKey(vipId)) {
                     vipProxyArpReply(sw, pi, cntx, vipId);
                     return Command.STOP;
                 }
@@ -207,7 +239,8 @@ public class LoadBalancer implements IFloodlightModule,
                 // If match Vip and port, check pool and choose member
                 int destIpAddress = ip_pkt.getDestinationAddress().getInt();
                 
-                if (vipIpToId.containsKey(destIpAddress)){
+                String vipId = vipIpToId.get(destIpAddress);
+                if (vipId != null) {
                     IPClient client = new IPClient();
                     client.ipAddress = ip_pkt.getSourceAddress();
                     client.nw_proto = ip_pkt.getProtocol();
@@ -226,9 +259,10 @@ public class LoadBalancer implements IFloodlightModule,
                         client.targetPort = TransportPort.of(0); 
                     }
                     
-                    LBVip vip = vips.get(vipIpToId.get(destIpAddress));
-                    LBPool pool = pools.get(vip.pickPool(client));
-                    LBMember member = members.get(pool.pickMember(client));
+                    LBMember member = pickMember(vipId, client);
+                    if (member == null) {
+                        return Command.CONTINUE;
+                    }
 
                     // for chosen member, check device manager and find and push routes, in both directions                    
                     pushBidirectionalVipRoutes(sw, pi, cntx, client, member);
@@ -245,6 +279,57 @@ public class LoadBalancer implements IFloodlightModule,
         return Command.CONTINUE;
     }
 
+    /**
+     * Find the member serving a client, reusing the client's existing
+     * binding if it has one and binding it by consistent hashing otherwise
+     * @param vipId the vip the client connects to
+     * @param client the client
+     * @return the member, or null if the vip has no member to serve it
+     */
+    protected LBMember pickMember(String vipId, IPClient client) {
+        long now = System.currentTimeMillis();
+        String memberId = clientAffinity.lookup(client, now);
+        if (memberId != null) {
+            LBMember member = members.get(memberId);
+            if (member != null)
+                return member;
+        }
+
+        LBVip vip = vips.get(vipId);
+        if (vip == null)
+            return null;
+        String poolId = vip.pickPool(client);
+        LBPool pool = (poolId == null) ? null : pools.get(poolId);
+        if (pool == null)
+            return null;
+        memberId = pool.pickMember(client);
+        if (memberId == null || !members.containsKey(memberId))
+            return null;
+        return members.get(clientAffinity.bind(client, memberId, now));
+    }
+
+    /**
+     * Unbind the client owning a removed VIP flow and delete the rest of
+     * its flows, so that its next packet is load balanced afresh
+     */
+    private Command processFlowRemoved(IOFSwitch sw, OFFlowRemoved fr) {
+        ClientAffinityTable.Affinity a = clientAffinity.removeByCookie(fr.getCookie());
+        if (a != null) {
+            if (log.isDebugEnabled()) {
+                log.debug("VIP flow removed from switch {}, unbinding client {} from member {}",
+                          new Object[] {sw, a.getClient().ipAddress, a.getMemberId()});
+            }
+            deleteFlows(a);
+        }
+        return Command.CONTINUE;
+    }
+
+    private void deleteFlows(ClientAffinityTable.Affinity a) {
+        for (String name : a.getFlowNames()) {
+            sfpService.deleteFlow(name);
+        }
+    }
+
     /**
      * used to send proxy Arp for load balanced service requests
      * @param IOFSwitch sw
@@ -503,7 +588,7 @@ public class LoadBalancer implements IFloodlightModule,
                
                OFFlowMod.Builder fmb = pinSwitch.getOFFactory().buildFlowAdd();
 
-               fmb.setIdleTimeout(FlowModUtils.INFINITE_TIMEOUT);
+               fmb.setIdleTimeout(LB_IDLE_TIMEOUT);
                fmb.setHardTimeout(FlowModUtils.INFINITE_TIMEOUT);
                fmb.setBufferId(OFBufferId.NO_BUFFER);
                fmb.setOutPort(OFPort.ANY);
@@ -577,6 +662,7 @@ public class LoadBalancer implements IFloodlightModule,
                fmb.setPriority(U16.t(LB_PRIORITY));
                fmb.setMatch(mb.build());
                sfpService.addFlow(entryName, fmb.build(), sw);
+               clientAffinity.addFlow(client, entryName);
            }
         }
         return;
@@ -615,8 +701,10 @@ public class LoadBalancer implements IFloodlightModule,
 
     @Override
     public int removeVip(String vipId) {
-        if(vips.containsKey(vipId)){
-            vips.remove(vipId);
+        LBVip vip = vips.remove(vipId);
+        if (vip != null) {
+            vipIpToId.remove(vip.address);
+            vipIpToMac.remove(vip.address);
             return 0;
         } else {
             return -1;
@@ -688,9 +776,8 @@ public class LoadBalancer implements IFloodlightModule,
         Collection<LBMember> result = new HashSet<LBMember>();
         
         if(pools.containsKey(poolId)) {
-            ArrayList<String> memberIds = pools.get(poolId).members;
-            for (int i = 0; i<memberIds.size(); i++)
-                result.add(members.get(memberIds.get(i)));
+            for (String memberId : pools.get(poolId).members)
+                result.add(members.get(memberId));
         }
         return result;
     }
@@ -703,10 +790,10 @@ public class LoadBalancer implements IFloodlightModule,
         members.put(member.id, member);
         memberIpToId.put(member.address, member.id);
 
-        if (member.poolId != null && pools.get(member.poolId) != null) {
-            member.vipId = pools.get(member.poolId).vipId;
-            if (!pools.get(member.poolId).members.contains(member.id))
-                pools.get(member.poolId).members.add(member.id);
+        LBPool pool = (member.poolId == null) ? null : pools.get(member.poolId);
+        if (pool != null) {
+            member.vipId = pool.vipId;
+            pool.addMember(member.id);
         } else
             log.error("member must be specified with non-null pool_id");
         
@@ -725,9 +812,13 @@ public class LoadBalancer implements IFloodlightModule,
         member = members.get(memberId);
         
         if(member != null){
-            if (member.poolId != null)
-                pools.get(member.poolId).members.remove(memberId);
+            LBPool pool = (member.poolId == null) ? null : pools.get(member.poolId);
+            if (pool != null)
+                pool.removeMember(memberId);
             members.remove(memberId);
+            for (ClientAffinityTable.Affinity a : clientAffinity.removeMember(memberId)) {
+                deleteFlows(a);
+            }
             return 0;
         } else {
             return -1;
@@ -791,6 +882,7 @@ public class LoadBalancer implements IFloodlightModule,
         l.add(ITopologyService.class);
         l.add(IRoutingService.class);
         l.add(IStaticFlowEntryPusherService.class);
+        l.add(IThreadPoolService.class);
 
         return l;
     }
@@ -806,20 +898,49 @@ public class LoadBalancer implements IFloodlightModule,
         topologyService = context.getServiceImpl(ITopologyService.class);
         sfpService = context.getServiceImpl(IStaticFlowEntryPusherService.class);
         switchService = context.getServiceImpl(IOFSwitchService.class);
+        threadPoolService = context.getServiceImpl(IThreadPoolService.class);
         
-        vips = new HashMap<String, LBVip>();
-        pools = new HashMap<String, LBPool>();
-        members = new HashMap<String, LBMember>();
-        vipIpToId = new HashMap<Integer, String>();
-        vipIpToMac = new HashMap<Integer, MacAddress>();
-        memberIpToId = new HashMap<Integer, String>();
+        vips = new ConcurrentHashMap<String, LBVip>();
+        pools = new ConcurrentHashMap<String, LBPool>();
+        members = new ConcurrentHashMap<String, LBMember>();
+        vipIpToId = new ConcurrentHashMap<Integer, String>();
+        vipIpToMac = new ConcurrentHashMap<Integer, MacAddress>();
+        memberIpToId = new ConcurrentHashMap<Integer, String>();
+
+        Map<String, String> configParameters = context.getConfigParams(this);
+        String tmp = configParameters.get("idle-timeout");
+        if (tmp != null) {
+            LB_IDLE_TIMEOUT = Integer.parseInt(tmp);
+            log.info("VIP flow idle timeout set to {}.", LB_IDLE_TIMEOUT);
+        }
+        clientAffinity = new ClientAffinityTable(TimeUnit.SECONDS.toMillis(LB_IDLE_TIMEOUT));
     }
 
     @Override
     public void startUp(FloodlightModuleContext context) {
         floodlightProviderService.addOFMessageListener(OFType.PACKET_IN, this);
+        floodlightProviderService.addOFMessageListener(OFType.FLOW_REMOVED, this);
         restApiService.addRestletRoutable(new LoadBalancerWebRoutable());
         debugCounterService.registerModule(this.getName());
         counterPacketOut = debugCounterService.registerCounter(this.getName(), "packet-outs-written", "Packet outs written by the LoadBalancer", MetaData.WARN);
+
+        // unbind clients that never got flows installed once they go idle
+        affinityExpiryTask = new SingletonTask(threadPoolService.getScheduledExecutor(),
+                new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (ClientAffinityTable.Affinity a :
+                            clientAffinity.expireIdle(System.currentTimeMillis())) {
+                        deleteFlows(a);
+                    }
+                } catch (Exception e) {
+                    log.error("Exception in client affinity expiry", e);
+                } finally {
+                    affinityExpiryTask.reschedule(LB_IDLE_TIMEOUT, TimeUnit.SECONDS);
+                }
+            }
+        });
+        affinityExpiryTask.reschedule(LB_IDLE_TIMEOUT, TimeUnit.SECONDS);
     }
 }
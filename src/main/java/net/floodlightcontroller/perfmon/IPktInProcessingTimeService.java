@@ -28,8 +28,9 @@ import net.floodlightcontroller.core.module.IFloodlightService;
 public interface IPktInProcessingTimeService extends IFloodlightService {
 
     /**
-     * Creates time buckets for a set of modules to measure their performance
-     * @param listeners The message listeners to create time buckets for
+     * Registers the set of modules whose performance is measured, so that
+     * modules without any sample yet are still reported
+     * @param listeners The packet-in message listeners
      */
     public void bootstrap(List<IOFMessageListener> listeners);
     
@@ -49,5 +50,15 @@ public interface IPktInProcessingTimeService extends IFloodlightService {
     
     public void setEnabled(boolean enabled);
     
-    public CumulativeTimeBucket getCtb();
+    /**
+     * Computes per-module latency percentiles over the rolling window by
+     * merging the histograms recorded by all packet-in processing threads
+     * @return the latency summary
+     */
+    public LatencySummary getLatencySummary();
+
+    /**
+     * Discards all latency samples recorded so far
+     */
+    public void reset();
 }
@@ -0,0 +1,212 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A log-linear latency histogram in the style of HdrHistogram.
+ *
+ * Values are bucketed by their power of two magnitude and, within each
+ * magnitude, linearly into 2^(subBucketBits-1) sub-buckets, so the relative
+ * error of any reported value is bounded by 2^-(subBucketBits-1) regardless
+ * of the magnitude. Values larger than 2^maxValueBits - 1 are clamped.
+ *
+ * A histogram is meant to be written by a single thread. Counts are
+ * published with lazySet so that other threads can merge (see
+ * {@link #add(LatencyHistogram)}) or query it without taking any lock;
+ * a reader may miss the most recent few values but never sees a torn count.
+ */
+public class LatencyHistogram {
+    public static final int DEFAULT_SUB_BUCKET_BITS = 6;
+    public static final int DEFAULT_MAX_VALUE_BITS = 36; // ~68s in ns
+
+    private final int subBucketBits;
+    private final int subBucketCount;
+    private final int subBucketHalfCount;
+    private final int maxValueBits;
+    private final long maxTrackableValue;
+    private final AtomicLongArray counts;
+
+    public LatencyHistogram() {
+        this(DEFAULT_SUB_BUCKET_BITS, DEFAULT_MAX_VALUE_BITS);
+    }
+
+    public LatencyHistogram(int subBucketBits, int maxValueBits) {
+        if (subBucketBits < 2 || maxValueBits <= subBucketBits
+                || maxValueBits > 62) {
+            throw new IllegalArgumentException("Invalid histogram layout: "
+                    + subBucketBits + "/" + maxValueBits);
+        }
+        this.subBucketBits = subBucketBits;
+        this.subBucketCount = 1 << subBucketBits;
+        this.subBucketHalfCount = subBucketCount >> 1;
+        this.maxValueBits = maxValueBits;
+        this.maxTrackableValue = (1L << maxValueBits) - 1;
+        int exponents = maxValueBits - subBucketBits;
+        this.counts = new AtomicLongArray(subBucketCount
+                                          + exponents * subBucketHalfCount);
+    }
+
+    /**
+     * Index of the bucket holding the given (non-negative, clamped) value
+     */
+    int bucketIndex(long value) {
+        if (value < subBucketCount)
+            return (int) value;
+        // shift such that (value >>> shift) is in [half, count)
+        int shift = (63 - Long.numberOfLeadingZeros(value))
+                    - (subBucketBits - 1);
+        int sub = (int) (value >>> shift);
+        return subBucketCount + (shift - 1) * subBucketHalfCount
+               + (sub - subBucketHalfCount);
+    }
+
+    /**
+     * Smallest value that falls into the bucket at the given index
+     */
+    long lowestValueAt(int index) {
+        if (index < subBucketCount)
+            return index;
+        int rel = index - subBucketCount;
+        int shift = rel / subBucketHalfCount + 1;
+        long sub = (rel % subBucketHalfCount) + subBucketHalfCount;
+        return sub << shift;
+    }
+
+    /**
+     * Largest value that falls into the bucket at the given index
+     */
+    long highestValueAt(int index) {
+        if (index < subBucketCount)
+            return index;
+        int shift = (index - subBucketCount) / subBucketHalfCount + 1;
+        return lowestValueAt(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * Record one value. Negative values are recorded as zero and values
+     * beyond the trackable range are clamped to the top bucket.
+     * @param value the value, typically a latency in nanoseconds
+     */
+    public void recordValue(long value) {
+        if (value < 0) value = 0;
+        if (value > maxTrackableValue) value = maxTrackableValue;
+        int i = bucketIndex(value);
+        counts.lazySet(i, counts.get(i) + 1);
+    }
+
+    /**
+     * Add the counts of another histogram of the same layout into this one.
+     * Unlike {@link #recordValue(long)}, this may be called by any thread as
+     * long as no other thread concurrently adds into this histogram.
+     * @param other the histogram to merge
+     */
+    public void add(LatencyHistogram other) {
+        if (other.subBucketBits != subBucketBits ||
+                other.maxValueBits != maxValueBits) {
+            throw new IllegalArgumentException("Histogram layouts differ");
+        }
+        for (int i = 0; i < counts.length(); i++) {
+            long c = other.counts.get(i);
+            if (c != 0) counts.lazySet(i, counts.get(i) + c);
+        }
+    }
+
+    /**
+     * Clear all counts. Values recorded concurrently may be lost.
+     */
+    public void reset() {
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) != 0) counts.lazySet(i, 0);
+        }
+    }
+
+    public long getTotalCount() {
+        long total = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * @return the highest value equivalent to the largest recorded value,
+     * or 0 if the histogram is empty
+     */
+    public long getMaxValue() {
+        for (int i = counts.length() - 1; i >= 0; i--) {
+            if (counts.get(i) != 0) return highestValueAt(i);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the lowest value equivalent to the smallest recorded value,
+     * or 0 if the histogram is empty
+     */
+    public long getMinValue() {
+        for (int i = 0; i < counts.length(); i++) {
+            if (counts.get(i) != 0) return lowestValueAt(i);
+        }
+        return 0;
+    }
+
+    /**
+     * @return the mean of all recorded values using bucket midpoints
+     */
+    public long getMean() {
+        long total = 0;
+        double sum = 0;
+        for (int i = 0; i < counts.length(); i++) {
+            long c = counts.get(i);
+            if (c == 0) continue;
+            total += c;
+            sum += c * ((lowestValueAt(i) + highestValueAt(i)) / 2.0);
+        }
+        return total == 0 ? 0 : (long) (sum / total);
+    }
+
+    /**
+     * Get the value at a given percentile, i.e. the highest value equivalent
+     * of the bucket that the requested fraction of recorded values falls in
+     * or below.
+     * @param percentile a percentile in [0, 100]
+     * @return the value, or 0 if the histogram is empty
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (percentile < 0 || percentile > 100) {
+            throw new IllegalArgumentException("percentile must be in " +
+                    "[0, 100]. Was " + percentile);
+        }
+        long[] snapshot = new long[counts.length()];
+        long total = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) return 0;
+        long target = (long) Math.ceil((percentile / 100.0) * total);
+        if (target < 1) target = 1;
+        long seen = 0;
+        for (int i = 0; i < snapshot.length; i++) {
+            seen += snapshot[i];
+            if (seen >= target) return highestValueAt(i);
+        }
+        return getMaxValue();
+    }
+}
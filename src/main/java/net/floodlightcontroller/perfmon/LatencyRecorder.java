@@ -0,0 +1,157 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.lang.ref.WeakReference;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Per-thread packet-in latency recorder.
+ *
+ * Each thread that processes packet-ins owns one recorder, holding the
+ * start timestamps of the measurement in progress and a ring of
+ * {@code numWindows} time windows. Each window has one histogram per
+ * module plus one for the end-to-end time. Only the owning thread writes;
+ * {@link PktInProcessingTime} merges the windows of all recorders on read,
+ * and drops the recorders of threads that have died once their windows
+ * have expired.
+ */
+class LatencyRecorder {
+    /** Key under which end-to-end processing time is recorded */
+    static final String TOTAL = "total";
+    // slot epoch of a slot that holds no window
+    private static final long NO_EPOCH = Long.MIN_VALUE;
+
+    private final long windowNs;
+    private final int numWindows;
+    // epoch (see epochOf) the slot currently holds, NO_EPOCH if unused
+    private final AtomicLongArray slotEpoch;
+    // the thread recording, held weakly so it can be collected once dead
+    private final WeakReference<Thread> owner;
+    private final Map<String, LatencyHistogram[]> histograms =
+            new ConcurrentHashMap<String, LatencyHistogram[]>();
+
+    long startTimePktNs;
+    long startTimeCompNs;
+
+    /**
+     * Create a recorder owned by the calling thread
+     */
+    LatencyRecorder(long windowNs, int numWindows) {
+        this.windowNs = windowNs;
+        this.numWindows = numWindows;
+        this.slotEpoch = new AtomicLongArray(numWindows);
+        for (int i = 0; i < numWindows; i++) {
+            slotEpoch.set(i, NO_EPOCH);
+        }
+        this.owner = new WeakReference<Thread>(Thread.currentThread());
+    }
+
+    /**
+     * Get the window a time falls into. nanoTime may be negative, so this
+     * rounds down rather than towards zero.
+     * @param nowNs a System.nanoTime() value
+     * @param windowNs the window length
+     * @return the window epoch
+     */
+    static long epochOf(long nowNs, long windowNs) {
+        long epoch = nowNs / windowNs;
+        return (nowNs % windowNs < 0) ? epoch - 1 : epoch;
+    }
+
+    /**
+     * @return true while the thread that created this recorder is alive
+     */
+    boolean isOwnerAlive() {
+        Thread t = owner.get();
+        return t != null && t.isAlive();
+    }
+
+    /**
+     * @return true if any window not older than {@code minEpoch} is held
+     */
+    boolean hasWindowsSince(long minEpoch) {
+        for (int slot = 0; slot < numWindows; slot++) {
+            if (slotEpoch.get(slot) >= minEpoch) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Record a latency for the given module in the current window,
+     * recycling the slot if it still holds an expired window.
+     */
+    void record(String name, long nowNs, long latencyNs) {
+        long epoch = epochOf(nowNs, windowNs);
+        // the remainder is negative for negative epochs
+        int slot = (int) (((epoch % numWindows) + numWindows) % numWindows);
+        if (slotEpoch.get(slot) != epoch) {
+            for (LatencyHistogram[] h : histograms.values()) {
+                h[slot].reset();
+            }
+            slotEpoch.set(slot, epoch);
+        }
+        LatencyHistogram[] h = histograms.get(name);
+        if (h == null) {
+            h = new LatencyHistogram[numWindows];
+            for (int i = 0; i < numWindows; i++) {
+                h[i] = new LatencyHistogram();
+            }
+            histograms.put(name, h);
+        }
+        h[slot].recordValue(latencyNs);
+    }
+
+    /**
+     * Merge all windows that are not older than {@code minEpoch} into the
+     * given per-module accumulators.
+     * @param minEpoch the oldest window epoch to include
+     * @param into map from module name to accumulator, filled as needed
+     */
+    void mergeInto(long minEpoch, Map<String, LatencyHistogram> into) {
+        for (Map.Entry<String, LatencyHistogram[]> e : histograms.entrySet()) {
+            LatencyHistogram acc = into.get(e.getKey());
+            if (acc == null) {
+                acc = new LatencyHistogram();
+                into.put(e.getKey(), acc);
+            }
+            for (int slot = 0; slot < numWindows; slot++) {
+                if (slotEpoch.get(slot) >= minEpoch) {
+                    acc.add(e.getValue()[slot]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Discard everything recorded so far
+     */
+    void reset() {
+        for (int slot = 0; slot < numWindows; slot++) {
+            slotEpoch.set(slot, NO_EPOCH);
+        }
+        for (LatencyHistogram[] h : histograms.values()) {
+            for (LatencyHistogram hist : h) {
+                hist.reset();
+            }
+        }
+    }
+}
@@ -0,0 +1,61 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import java.sql.Timestamp;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Snapshot of packet-in processing time over the rolling window, as
+ * returned by the REST API.
+ */
+public class LatencySummary {
+    private final long windowSeconds;
+    private final long currentTimeMs;
+    private final ModuleLatency total;
+    private final List<ModuleLatency> modules;
+
+    public LatencySummary(long windowSeconds, ModuleLatency total,
+                          List<ModuleLatency> modules) {
+        this.windowSeconds = windowSeconds;
+        this.currentTimeMs = System.currentTimeMillis();
+        this.total = total;
+        this.modules = modules;
+    }
+
+    @JsonProperty("window-seconds")
+    public long getWindowSeconds() {
+        return windowSeconds;
+    }
+
+    @JsonProperty("current-time")
+    public String getCurrentTime() {
+        return new Timestamp(currentTimeMs).toString();
+    }
+
+    @JsonProperty("total")
+    public ModuleLatency getTotal() {
+        return total;
+    }
+
+    @JsonProperty("modules")
+    public List<ModuleLatency> getModules() {
+        return modules;
+    }
+}
@@ -0,0 +1,85 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import com.fasterxml.jackson.annotation.JsonProperty;
+
+/**
+ * Packet-in processing time percentiles of one module (or of the whole
+ * processing chain) over a rolling window. All times in nanoseconds.
+ */
+public class ModuleLatency {
+    private final String moduleName;
+    private final long pktCnt;
+    private final long minProcTimeNs;
+    private final long avgProcTimeNs;
+    private final long p50ProcTimeNs;
+    private final long p99ProcTimeNs;
+    private final long p999ProcTimeNs;
+    private final long maxProcTimeNs;
+
+    public ModuleLatency(String moduleName, LatencyHistogram h) {
+        this.moduleName = moduleName;
+        this.pktCnt = h.getTotalCount();
+        this.minProcTimeNs = h.getMinValue();
+        this.avgProcTimeNs = h.getMean();
+        this.p50ProcTimeNs = h.getValueAtPercentile(50.0);
+        this.p99ProcTimeNs = h.getValueAtPercentile(99.0);
+        this.p999ProcTimeNs = h.getValueAtPercentile(99.9);
+        this.maxProcTimeNs = h.getMaxValue();
+    }
+
+    @JsonProperty("module-name")
+    public String getModuleName() {
+        return moduleName;
+    }
+
+    @JsonProperty("num-packets")
+    public long getPktCnt() {
+        return pktCnt;
+    }
+
+    @JsonProperty("min")
+    public long getMinProcTimeNs() {
+        return minProcTimeNs;
+    }
+
+    @JsonProperty("average")
+    public long getAvgProcTimeNs() {
+        return avgProcTimeNs;
+    }
+
+    @JsonProperty("p50")
+    public long getP50ProcTimeNs() {
+        return p50ProcTimeNs;
+    }
+
+    @JsonProperty("p99")
+    public long getP99ProcTimeNs() {
+        return p99ProcTimeNs;
+    }
+
+    @JsonProperty("p99.9")
+    public long getP999ProcTimeNs() {
+        return p999ProcTimeNs;
+    }
+
+    @JsonProperty("max")
+    public long getMaxProcTimeNs() {
+        return maxProcTimeNs;
+    }
+}
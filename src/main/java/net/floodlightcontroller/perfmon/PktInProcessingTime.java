@@ -21,9 +21,12 @@ package net.floodlightcontroller.perfmon;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -43,13 +46,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 /**
- * This class contains a set of buckets (called time buckets as the
- * primarily contain 'times' that are used in a circular way to 
- * store information on packet in processing time.
- * Each bucket is meant to store the various processing time 
- * related data for a fixed duration.
- * Buckets are reused to reduce garbage generation! Once the
- * last bucket is used up the LRU bucket is reused.
+ * This class records packet-in processing time, per module and end-to-end,
+ * into log-linear latency histograms (see {@link LatencyHistogram}).
+ *
+ * Every packet-in processing thread records into its own
+ * {@link LatencyRecorder}, so measurements taken concurrently on different
+ * Netty threads neither share start timestamps nor contend on any lock.
+ * Each recorder keeps a ring of NUM_WINDOWS windows of WINDOW_SECONDS each;
+ * windows are reused once they expire to avoid generating garbage. The REST
+ * API merges the recorders of all threads on demand and reports
+ * percentiles over the rolling window.
  * 
  * Naming convention for variable or constants
  * variable_s : value in seconds
@@ -58,8 +64,8 @@ import org.slf4j.LoggerFactory;
  * variable_ns: value in nanoseconds
  * 
  * Key Constants:
- * ONE_BUCKET_DURATION_SECONDS_INT:  time duration of each bucket
- * BUCKET_SET_SIZE: Number of buckets
+ * ONE_BUCKET_DURATION_SECONDS:  default time duration of each window
+ * BUCKET_SET_SIZE: default number of windows
  * TOT_PROC_TIME_WARN_THRESHOLD_US: if processing time for a packet
  *    exceeds this threshold then a warning LOG message is generated
  * TOT_PROC_TIME_ALERT_THRESHOLD_US: same as above but an alert level
@@ -85,24 +91,63 @@ public class PktInProcessingTime
     protected static  Logger  logger = 
         LoggerFactory.getLogger(PktInProcessingTime.class);
     
-    protected boolean isEnabled = false;
-    protected boolean isInited = false;
-    // Maintains the time when the last packet was processed
-    protected long lastPktTime_ns;
-    private CumulativeTimeBucket ctb = null;
+    protected volatile boolean isEnabled = false;
+    // The packet-in listeners last bootstrapped, reported even without samples
+    private volatile List<IOFMessageListener> listeners =
+            Collections.emptyList();
 
-    
     /***
-     * BUCKET_SET_SIZE buckets each holding 10s of processing time data, a total
-     * of 30*10s = 5mins of processing time data is maintained
+     * BUCKET_SET_SIZE windows each holding 10s of processing time data, a
+     * total of 6*10s = 1min of processing time data is maintained
      */
     protected static final int ONE_BUCKET_DURATION_SECONDS = 10;// seconds
-    protected static final long ONE_BUCKET_DURATION_NANOSECONDS  =
-                                ONE_BUCKET_DURATION_SECONDS * 1000000000;
-    
+    protected static final int BUCKET_SET_SIZE = 6;
+    protected long windowDuration_ns =
+            TimeUnit.SECONDS.toNanos(ONE_BUCKET_DURATION_SECONDS);
+    protected int numWindows = BUCKET_SET_SIZE;
+
+    // The per-thread recorders, for merging on read. Recorders of dead
+    // threads are dropped once their windows expire, see pruneRecorders
+    private final List<LatencyRecorder> recorders =
+            new CopyOnWriteArrayList<LatencyRecorder>();
+    private final ThreadLocal<LatencyRecorder> localRecorder =
+            new ThreadLocal<LatencyRecorder>() {
+        @Override
+        protected LatencyRecorder initialValue() {
+            LatencyRecorder r =
+                    new LatencyRecorder(windowDuration_ns, numWindows);
+            pruneRecorders(getMinEpoch());
+            recorders.add(r);
+            return r;
+        }
+    };
+
+    /**
+     * @return the epoch of the oldest window in the rolling window
+     */
+    private long getMinEpoch() {
+        return LatencyRecorder.epochOf(System.nanoTime(), windowDuration_ns)
+                - numWindows + 1;
+    }
+
+    /**
+     * Drop the recorders of threads that have died and hold no window
+     * since {@code minEpoch}, so short-lived threads don't leak recorders
+     */
+    private void pruneRecorders(long minEpoch) {
+        for (LatencyRecorder r : recorders) {
+            if (!r.isOwnerAlive() && !r.hasWindowsSince(minEpoch)) {
+                recorders.remove(r);
+            }
+        }
+    }
+
     @Override
     public void bootstrap(List<IOFMessageListener> listeners) {
-            ctb = new CumulativeTimeBucket(listeners);
+        // Called on every packet-in, so only publish a changed list
+        if (listeners != this.listeners) {
+            this.listeners = listeners;
+        }
     }
     
     @Override
@@ -120,31 +165,63 @@ public class PktInProcessingTime
     }
     
     @Override
-    public CumulativeTimeBucket getCtb() {
-        return ctb;
+    public void reset() {
+        for (LatencyRecorder r : recorders) {
+            if (r.isOwnerAlive()) {
+                r.reset();
+            } else {
+                recorders.remove(r);
+            }
+        }
+    }
+
+    @Override
+    public LatencySummary getLatencySummary() {
+        long minEpoch = getMinEpoch();
+        pruneRecorders(minEpoch);
+        Map<String, LatencyHistogram> merged =
+                new HashMap<String, LatencyHistogram>();
+        for (LatencyRecorder r : recorders) {
+            r.mergeInto(minEpoch, merged);
+        }
+
+        LatencyHistogram total = merged.remove(LatencyRecorder.TOTAL);
+        if (total == null) total = new LatencyHistogram();
+        List<ModuleLatency> modules = new ArrayList<ModuleLatency>();
+        for (IOFMessageListener l : listeners) {
+            LatencyHistogram h = merged.remove(l.getName());
+            modules.add(new ModuleLatency(l.getName(),
+                    h == null ? new LatencyHistogram() : h));
+        }
+        // listeners that have been removed since they were recorded
+        for (Map.Entry<String, LatencyHistogram> e : merged.entrySet()) {
+            modules.add(new ModuleLatency(e.getKey(), e.getValue()));
+        }
+        return new LatencySummary(
+                TimeUnit.NANOSECONDS.toSeconds(windowDuration_ns * numWindows),
+                new ModuleLatency(LatencyRecorder.TOTAL, total), modules);
     }
     
-    private long startTimePktNs;
-    private long startTimeCompNs;
     @Override
     public void recordStartTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            startTimeCompNs = System.nanoTime();
+            localRecorder.get().startTimeCompNs = System.nanoTime();
         }
     }
     
     @Override
     public void recordEndTimeComp(IOFMessageListener listener) {
         if (isEnabled()) {
-            long procTime = System.nanoTime() - startTimeCompNs;
-            ctb.updateOneComponent(listener, procTime);
+            long now = System.nanoTime();
+            LatencyRecorder r = localRecorder.get();
+            r.record(listener.getName(), now, now - r.startTimeCompNs);
         }
     }
     
     @Override
     public void recordStartTimePktIn() {
         if (isEnabled()) {
-            startTimePktNs = System.nanoTime();
+            localRecorder.get().startTimePktNs = System.nanoTime();
         }
     }
     
@@ -156,8 +233,10 @@ public class PktInProcessingTime
             recommendation=LogMessageDoc.CHECK_CONTROLLER)
     public void recordEndTimePktIn(IOFSwitch sw, OFMessage m, FloodlightContext cntx) {
         if (isEnabled()) {
-            long procTimeNs = System.nanoTime() - startTimePktNs;
-            ctb.updatePerPacketCounters(procTimeNs);
+            long now = System.nanoTime();
+            LatencyRecorder r = localRecorder.get();
+            long procTimeNs = now - r.startTimePktNs;
+            r.record(LatencyRecorder.TOTAL, now, procTimeNs);
             
             if (ptWarningThresholdInNano > 0 && 
                     procTimeNs > ptWarningThresholdInNano) {
@@ -204,6 +283,22 @@ public class PktInProcessingTime
     	floodlightProvider = context
                 .getServiceImpl(IFloodlightProviderService.class);
         restApi = context.getServiceImpl(IRestApiService.class);
+
+        Map<String, String> configOptions = context.getConfigParams(this);
+        String window = configOptions.get("windowSeconds");
+        if (window != null) {
+            windowDuration_ns =
+                    TimeUnit.SECONDS.toNanos(Integer.parseInt(window));
+        }
+        String windows = configOptions.get("numWindows");
+        if (windows != null) {
+            numWindows = Integer.parseInt(windows);
+        }
+        if (windowDuration_ns <= 0 || numWindows <= 0) {
+            throw new FloodlightModuleException("Invalid performance " +
+                    "monitor window configuration: " + window + "s x " +
+                    windows);
+        }
     }
     
     @Override
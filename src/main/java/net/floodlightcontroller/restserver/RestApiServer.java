@@ -53,6 +53,8 @@ public class RestApiServer
     protected FloodlightModuleContext fmlContext;
     protected String restHost = null;
     protected int restPort = 8080;
+    /** Whether to gzip responses for clients that accept it */
+    protected boolean compressResponses = true;
     
     // ***********
     // Application
@@ -94,6 +96,7 @@ public class RestApiServer
         }
         
         public void run(FloodlightModuleContext fmlContext, String restHost, int restPort) {
+            getEncoderService().setEnabled(compressResponses);
             setStatusService(new StatusService() {
                 @Override
                 public Representation getRepresentation(Status status,
@@ -215,6 +218,10 @@ public class RestApiServer
             restPort = Integer.parseInt(port);
         }
         logger.debug("REST port set to {}", restPort);
+        String compress = configOptions.get("compress-responses");
+        if (compress != null) {
+            compressResponses = Boolean.parseBoolean(compress);
+        }
     }
 
     @Override
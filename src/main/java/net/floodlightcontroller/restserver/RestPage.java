@@ -0,0 +1,124 @@
+package net.floodlightcontroller.restserver;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+import net.floodlightcontroller.util.FilterIterator;
+
+import org.restlet.data.Form;
+
+import com.google.common.base.Function;
+
+/**
+ * The page of a listing asked for in a REST request, given by two optional
+ * query parameters:
+ * <ul>
+ * <li><code>limit</code>: the most entries to return</li>
+ * <li><code>after</code>: return only the entries whose key sorts after
+ * this one</li>
+ * </ul>
+ * When a limit is given, the entries are returned in the order of their
+ * keys, so the key of the last entry of a page is the <code>after</code>
+ * cursor for the next page.  Selecting a page never holds more than the
+ * limit of entries in memory.
+ */
+public class RestPage {
+    public static final String LIMIT = "limit";
+    public static final String AFTER = "after";
+    public static final String LIMIT_ERROR =
+            "Invalid limit: must be a positive integer";
+
+    private final int limit;
+    private final String after;
+
+    public RestPage(int limit, String after) {
+        this.limit = limit;
+        this.after = after;
+    }
+
+    /**
+     * Get the page asked for in the query of a request
+     * @param query the query
+     * @return the page
+     * @throws IllegalArgumentException if the limit is not a positive
+     * integer
+     */
+    public static RestPage fromQuery(Form query) {
+        String limitStr = query.getFirstValue(LIMIT, true);
+        int limit = 0;
+        if (limitStr != null) {
+            try {
+                limit = Integer.parseInt(limitStr);
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException(LIMIT_ERROR);
+            }
+            if (limit <= 0)
+                throw new IllegalArgumentException(LIMIT_ERROR);
+        }
+        return new RestPage(limit, query.getFirstValue(AFTER, true));
+    }
+
+    /**
+     * @return the most entries to return, or 0 if there is no limit
+     */
+    public int getLimit() {
+        return limit;
+    }
+
+    /**
+     * @return the key after which to start, or null to start at the
+     * beginning
+     */
+    public String getAfter() {
+        return after;
+    }
+
+    /**
+     * Select the entries of this page
+     * @param entries the entries, in any order
+     * @param key gets the key of an entry
+     * @param afterKey the parsed key after which to start, or null
+     * @return the entries after the given key; if there is a limit, the
+     * ones with the lowest keys in the order of their keys, otherwise all
+     * of them in the order of the given entries
+     */
+    public <T, K extends Comparable<? super K>> Iterator<T>
+            select(Iterator<T> entries, final Function<? super T, K> key,
+                   final K afterKey) {
+        Iterator<T> selected = entries;
+        if (afterKey != null) {
+            selected = new FilterIterator<T>(entries) {
+                @Override
+                protected boolean matches(T value) {
+                    return key.apply(value).compareTo(afterKey) > 0;
+                }
+            };
+        }
+        if (limit == 0)
+            return selected;
+
+        // keep the entries with the lowest keys in a heap with the
+        // highest key on top
+        PriorityQueue<T> lowest = new PriorityQueue<T>(limit + 1,
+            new Comparator<T>() {
+                @Override
+                public int compare(T a, T b) {
+                    return key.apply(b).compareTo(key.apply(a));
+                }
+            });
+        while (selected.hasNext()) {
+            lowest.add(selected.next());
+            if (lowest.size() > limit)
+                lowest.poll();
+        }
+        List<T> page = new ArrayList<T>(lowest.size());
+        while (!lowest.isEmpty())
+            page.add(lowest.poll());
+        Collections.reverse(page);
+        return page.iterator();
+    }
+}
@@ -0,0 +1,76 @@
+package net.floodlightcontroller.restserver;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+
+import org.restlet.data.MediaType;
+import org.restlet.representation.OutputRepresentation;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A JSON representation that is written directly to the response as it is
+ * generated, rather than built in memory first.  The objects written with
+ * {@link JsonGenerator#writeObject(Object)} are serialized the same way as
+ * the objects returned by a resource, so a resource can switch to a
+ * streaming representation without changing its output.
+ *
+ * Note that {@link #writeJson(JsonGenerator)} runs while the response is
+ * written, after the resource method returned, so errors can no longer be
+ * reported through the response status.
+ */
+public abstract class StreamingJsonRepresentation extends OutputRepresentation {
+    private static final ObjectMapper mapper;
+    static {
+        JsonFactory factory = new JsonFactory();
+        factory.configure(JsonGenerator.Feature.AUTO_CLOSE_TARGET, false);
+        mapper = new ObjectMapper(factory);
+    }
+
+    public StreamingJsonRepresentation() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    /**
+     * Write the JSON document
+     * @param gen the generator to write with
+     * @throws IOException
+     */
+    protected abstract void writeJson(JsonGenerator gen) throws IOException;
+
+    @Override
+    public void write(OutputStream outputStream) throws IOException {
+        JsonGenerator gen =
+                mapper.getFactory().createGenerator(outputStream,
+                                                    JsonEncoding.UTF8);
+        try {
+            writeJson(gen);
+        } finally {
+            gen.close();
+        }
+    }
+
+    /**
+     * Get a representation that writes the elements of an iterator as a
+     * JSON array, taking them from the iterator only as they are written
+     * @param elements the elements
+     * @return the representation
+     */
+    public static StreamingJsonRepresentation
+            ofIterator(final Iterator<?> elements) {
+        return new StreamingJsonRepresentation() {
+            @Override
+            protected void writeJson(JsonGenerator gen) throws IOException {
+                gen.writeStartArray();
+                while (elements.hasNext()) {
+                    gen.writeObject(elements.next());
+                }
+                gen.writeEndArray();
+            }
+        };
+    }
+}
@@ -132,6 +132,25 @@ public abstract class ForwardingBase implements IOFMessageListener {
 
 	}
 
+	/**
+	 * Register debug counters for the hit rate and fingerprinting cost of
+	 * the message damper. The module must already be registered with the
+	 * debug counter service.
+	 * @param moduleName the module to register the counters under
+	 */
+	protected void registerDamperCounters(String moduleName) {
+		messageDamper.setDebugCounters(
+				debugCounterService.registerCounter(moduleName,
+						"damper-dampened", "Flow-mods not written because " +
+						"the same flow-mod was written recently"),
+				debugCounterService.registerCounter(moduleName,
+						"damper-written", "Flow-mods written through the " +
+						"message damper"),
+				debugCounterService.registerCounter(moduleName,
+						"damper-fingerprint-ns", "Time spent fingerprinting " +
+						"flow-mods for the message damper, in nanoseconds"));
+	}
+
 	/**
 	 * Adds a listener for devicemanager and registers for PacketIns.
 	 */
@@ -226,49 +245,11 @@ public abstract class ForwardingBase implements IOFMessageListener {
 				return srcSwitchIncluded;
 			}
 			
-			// need to build flow mod based on what type it is. Cannot set command later
-			OFFlowMod.Builder fmb;
-			switch (flowModCommand) {
-			case ADD:
-				fmb = sw.getOFFactory().buildFlowAdd();
-				break;
-			case DELETE:
-				fmb = sw.getOFFactory().buildFlowDelete();
-				break;
-			case DELETE_STRICT:
-				fmb = sw.getOFFactory().buildFlowDeleteStrict();
-				break;
-			case MODIFY:
-				fmb = sw.getOFFactory().buildFlowModify();
-				break;
-			default:
-				log.error("Could not decode OFFlowModCommand. Using MODIFY_STRICT. (Should another be used as the default?)");        
-			case MODIFY_STRICT:
-				fmb = sw.getOFFactory().buildFlowModifyStrict();
-				break;			
-			}
-			
-			OFActionOutput.Builder aob = sw.getOFFactory().actions().buildOutput();
-			List<OFAction> actions = new ArrayList<OFAction>();	
-			Match.Builder mb = MatchUtils.createRetentiveBuilder(match);
-
 			// set input and output ports on the switch
 			OFPort outPort = switchPortList.get(indx).getPortId();
 			OFPort inPort = switchPortList.get(indx - 1).getPortId();
-			mb.setExact(MatchField.IN_PORT, inPort);
-			aob.setPort(outPort);
-			aob.setMaxLen(Integer.MAX_VALUE);
-			actions.add(aob.build());
-			
-			// compile
-			fmb.setMatch(mb.build()) // was match w/o modifying input port
-			.setActions(actions)
-			.setIdleTimeout(FLOWMOD_DEFAULT_IDLE_TIMEOUT)
-			.setHardTimeout(FLOWMOD_DEFAULT_HARD_TIMEOUT)
-			.setBufferId(OFBufferId.NO_BUFFER)
-			.setCookie(cookie)
-			.setOutPort(outPort)
-			.setPriority(FLOWMOD_DEFAULT_PRIORITY);
+			OFFlowMod fm = buildRouteFlowMod(sw, match, inPort, outPort,
+					cookie, flowModCommand);
 
 			try {
 				if (log.isTraceEnabled()) {
@@ -276,10 +257,10 @@ public abstract class ForwardingBase implements IOFMessageListener {
 							"sw={} inPort={} outPort={}",
 							new Object[] {indx,
 							sw,
-							fmb.getMatch().get(MatchField.IN_PORT),
+							inPort,
 							outPort });
 				}
-				messageDamper.write(sw, fmb.build());
+				messageDamper.write(sw, fm);
 				if (doFlush) {
 					sw.flush();
 				}
@@ -299,6 +280,62 @@ public abstract class ForwardingBase implements IOFMessageListener {
 		return srcSwitchIncluded;
 	}
 
+	/**
+	 * Build the flow-mod for one hop of a route
+	 * @param sw the switch of the hop
+	 * @param match OpenFlow fields to match on, the input port is overwritten
+	 * @param inPort the input port of the route on the switch
+	 * @param outPort the output port of the route on the switch
+	 * @param cookie The cookie to set in the flow_mod
+	 * @param flowModCommand flow mod. command to use
+	 * @return the flow-mod
+	 */
+	protected OFFlowMod buildRouteFlowMod(IOFSwitch sw, Match match,
+			OFPort inPort, OFPort outPort, U64 cookie,
+			OFFlowModCommand flowModCommand) {
+		// need to build flow mod based on what type it is. Cannot set command later
+		OFFlowMod.Builder fmb;
+		switch (flowModCommand) {
+		case ADD:
+			fmb = sw.getOFFactory().buildFlowAdd();
+			break;
+		case DELETE:
+			fmb = sw.getOFFactory().buildFlowDelete();
+			break;
+		case DELETE_STRICT:
+			fmb = sw.getOFFactory().buildFlowDeleteStrict();
+			break;
+		case MODIFY:
+			fmb = sw.getOFFactory().buildFlowModify();
+			break;
+		default:
+			log.error("Could not decode OFFlowModCommand. Using MODIFY_STRICT. (Should another be used as the default?)");        
+		case MODIFY_STRICT:
+			fmb = sw.getOFFactory().buildFlowModifyStrict();
+			break;			
+		}
+
+		OFActionOutput.Builder aob = sw.getOFFactory().actions().buildOutput();
+		List<OFAction> actions = new ArrayList<OFAction>();	
+		Match.Builder mb = MatchUtils.createRetentiveBuilder(match);
+
+		mb.setExact(MatchField.IN_PORT, inPort);
+		aob.setPort(outPort);
+		aob.setMaxLen(Integer.MAX_VALUE);
+		actions.add(aob.build());
+
+		// compile
+		return fmb.setMatch(mb.build()) // was match w/o modifying input port
+		.setActions(actions)
+		.setIdleTimeout(FLOWMOD_DEFAULT_IDLE_TIMEOUT)
+		.setHardTimeout(FLOWMOD_DEFAULT_HARD_TIMEOUT)
+		.setBufferId(OFBufferId.NO_BUFFER)
+		.setCookie(cookie)
+		.setOutPort(outPort)
+		.setPriority(FLOWMOD_DEFAULT_PRIORITY)
+		.build();
+	}
+
 	/**
 	 * Pushes a packet-out to a switch. If bufferId != BUFFER_ID_NONE we
 	 * assume that the packetOut switch is the same as the packetIn switch
@@ -0,0 +1,373 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.staticflowentry;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.floodlightcontroller.core.IOFSwitch;
+
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFErrorMsg;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+/**
+ * Installs large numbers of static flow entries on switches.
+ *
+ * The flow-mods of an install are written to the switch in batches, each
+ * followed by a barrier request. At most a fixed number of batches are
+ * outstanding at a time; the next batch is written when the barrier of an
+ * earlier one is answered. This bounds the number of unconfirmed messages
+ * per switch without waiting for the switch after every flow-mod.
+ *
+ * Every flow-mod is sent with its own xid so that error messages from the
+ * switch can be tracked back to the entry that caused them. A switch
+ * answers a barrier only after processing, and reporting errors for, all
+ * messages before it, so the entries of a batch that have not failed by the
+ * time its barrier is answered are confirmed.
+ */
+public class BulkFlowInstaller {
+    protected static Logger log = LoggerFactory.getLogger(BulkFlowInstaller.class);
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+    public static final int DEFAULT_MAX_OUTSTANDING_BATCHES = 4;
+    /** Number of finished installs kept for status queries */
+    static final int MAX_FINISHED_INSTALLS = 32;
+
+    public enum State { RUNNING, DONE, FAILED }
+
+    /**
+     * The flow-mod with the given xid and the install and entry it belongs to
+     */
+    private static class PendingEntry {
+        final BulkInstall install;
+        final String entryName;
+
+        PendingEntry(BulkInstall install, String entryName) {
+            this.install = install;
+            this.entryName = entryName;
+        }
+    }
+
+    /**
+     * An install of entries on one switch and its progress
+     */
+    public class BulkInstall {
+        private final long id;
+        private final IOFSwitch sw;
+        private final long startTime;
+        private volatile long endTime = 0;
+        private volatile State state = State.RUNNING;
+        private volatile String failure = null;
+        private final int total;
+        private final AtomicInteger confirmed = new AtomicInteger();
+        private final ConcurrentMap<String, String> errors =
+                new ConcurrentHashMap<String, String>();
+        private final SettableFuture<BulkInstall> future = SettableFuture.create();
+
+        // guarded by this
+        private List<String> names;
+        private List<OFMessage> messages;
+        private int next = 0;
+        private int outstandingBatches = 0;
+        private boolean pumping = false;
+
+        BulkInstall(long id, IOFSwitch sw, List<String> names,
+                    List<OFMessage> messages) {
+            this.id = id;
+            this.sw = sw;
+            this.startTime = System.currentTimeMillis();
+            this.names = names;
+            this.messages = messages;
+            this.total = messages.size();
+        }
+
+        public long getId() {
+            return id;
+        }
+
+        public String getSwitchId() {
+            return sw.getId().toString();
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        /**
+         * @return why the install failed, or null
+         */
+        public String getFailure() {
+            return failure;
+        }
+
+        public long getStartTime() {
+            return startTime;
+        }
+
+        /**
+         * @return the time the install finished, or 0 while it is running
+         */
+        public long getEndTime() {
+            return endTime;
+        }
+
+        public int getTotal() {
+            return total;
+        }
+
+        /**
+         * @return the number of entries the switch confirmed installing
+         */
+        public int getConfirmed() {
+            return confirmed.get();
+        }
+
+        /**
+         * @return the entries the switch rejected, mapped to the error
+         */
+        public Map<String, String> getErrors() {
+            return Collections.unmodifiableMap(errors);
+        }
+
+        /**
+         * @return a future completed with this install when it is done or
+         * has failed
+         */
+        public ListenableFuture<BulkInstall> future() {
+            return future;
+        }
+
+        /**
+         * Write batches until the maximum number of batches is outstanding
+         */
+        private void pump() {
+            synchronized (this) {
+                if (pumping)
+                    return;
+                pumping = true;
+            }
+            while (true) {
+                int from;
+                int to;
+                synchronized (this) {
+                    if (state != State.RUNNING ||
+                            outstandingBatches >= maxOutstandingBatches ||
+                            next >= total) {
+                        pumping = false;
+                        return;
+                    }
+                    from = next;
+                    to = Math.min(next + batchSize, total);
+                    next = to;
+                    outstandingBatches++;
+                }
+                writeBatch(from, to);
+            }
+        }
+
+        private void writeBatch(final int from, final int to) {
+            List<OFMessage> batch;
+            synchronized (this) {
+                batch = new ArrayList<OFMessage>(messages.subList(from, to));
+                for (int i = from; i < to; i++) {
+                    pendingByXid.put(messages.get(i).getXid(),
+                            new PendingEntry(this, names.get(i)));
+                }
+            }
+            sw.write(batch);
+            ListenableFuture<OFBarrierReply> reply =
+                    sw.writeRequest(sw.getOFFactory().buildBarrierRequest().build());
+            sw.flush();
+            if (reply == null) {
+                batchFailed(from, to, "Switch did not accept barrier request");
+                return;
+            }
+            Futures.addCallback(reply, new FutureCallback<OFBarrierReply>() {
+                @Override
+                public void onSuccess(OFBarrierReply result) {
+                    batchConfirmed(from, to);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    batchFailed(from, to, t.toString());
+                }
+            });
+        }
+
+        private void batchConfirmed(int from, int to) {
+            boolean done;
+            synchronized (this) {
+                if (state != State.RUNNING)
+                    return;
+                for (int i = from; i < to; i++) {
+                    pendingByXid.remove(messages.get(i).getXid());
+                    if (!errors.containsKey(names.get(i)))
+                        confirmed.incrementAndGet();
+                }
+                outstandingBatches--;
+                done = (outstandingBatches == 0 && next >= total);
+            }
+            if (done)
+                finish(State.DONE, null);
+            else
+                pump();
+        }
+
+        private void batchFailed(int from, int to, String reason) {
+            log.warn("Bulk install {} of static flows on switch {} failed: {}",
+                     new Object[] { id, getSwitchId(), reason });
+            finish(State.FAILED, reason);
+        }
+
+        private void finish(State finalState, String reason) {
+            synchronized (this) {
+                if (state != State.RUNNING)
+                    return;
+                for (int i = 0; i < next; i++) {
+                    pendingByXid.remove(messages.get(i).getXid());
+                }
+                failure = reason;
+                endTime = System.currentTimeMillis();
+                state = finalState;
+                names = null;
+                messages = null;
+            }
+            if (log.isDebugEnabled()) {
+                log.debug("Bulk install {} on switch {} finished: {} of {} " +
+                          "entries confirmed, {} rejected",
+                          new Object[] { id, getSwitchId(), confirmed.get(),
+                                         total, errors.size() });
+            }
+            pruneFinished();
+            future.set(this);
+        }
+
+        @Override
+        public String toString() {
+            return "BulkInstall [id=" + id + ", switch=" + getSwitchId() +
+                    ", state=" + state + ", confirmed=" + confirmed.get() +
+                    "/" + total + ", errors=" + errors.size() + "]";
+        }
+    }
+
+    private final int batchSize;
+    private final int maxOutstandingBatches;
+    private final AtomicLong nextId = new AtomicLong();
+    private final ConcurrentSkipListMap<Long, BulkInstall> installs =
+            new ConcurrentSkipListMap<Long, BulkInstall>();
+    private final ConcurrentMap<Long, PendingEntry> pendingByXid =
+            new ConcurrentHashMap<Long, PendingEntry>();
+
+    public BulkFlowInstaller() {
+        this(DEFAULT_BATCH_SIZE, DEFAULT_MAX_OUTSTANDING_BATCHES);
+    }
+
+    public BulkFlowInstaller(int batchSize, int maxOutstandingBatches) {
+        if (batchSize <= 0 || maxOutstandingBatches <= 0) {
+            throw new IllegalArgumentException("batchSize and " +
+                    "maxOutstandingBatches must be > 0");
+        }
+        this.batchSize = batchSize;
+        this.maxOutstandingBatches = maxOutstandingBatches;
+    }
+
+    /**
+     * Start installing the given messages on a switch, in order
+     * @param sw the switch
+     * @param names the name of the entry each message belongs to
+     * @param messages the flow-mods to write
+     * @return the install, which completes asynchronously
+     */
+    public BulkInstall install(IOFSwitch sw, List<String> names,
+                               List<? extends OFMessage> messages) {
+        if (names.size() != messages.size())
+            throw new IllegalArgumentException("Need one name per message");
+        // give every message its own xid so errors can be matched to it
+        OFFactory factory = sw.getOFFactory();
+        List<OFMessage> stamped = new ArrayList<OFMessage>(messages.size());
+        for (OFMessage m : messages) {
+            stamped.add(m.createBuilder().setXid(factory.nextXid()).build());
+        }
+        BulkInstall install = new BulkInstall(nextId.incrementAndGet(), sw,
+                new ArrayList<String>(names), stamped);
+        installs.put(install.getId(), install);
+        if (stamped.isEmpty())
+            install.finish(State.DONE, null);
+        else
+            install.pump();
+        return install;
+    }
+
+    /**
+     * Record an error reported by a switch against the entry whose flow-mod
+     * caused it
+     * @return true if the error belongs to a running install
+     */
+    public boolean handleError(DatapathId switchId, OFErrorMsg error) {
+        PendingEntry pending = pendingByXid.get(error.getXid());
+        if (pending == null ||
+                !pending.install.sw.getId().equals(switchId))
+            return false;
+        pending.install.errors.put(pending.entryName,
+                                   error.getErrType().toString());
+        return true;
+    }
+
+    /**
+     * @return the running installs and the most recently finished ones
+     */
+    public Collection<BulkInstall> getInstalls() {
+        return Collections.unmodifiableCollection(installs.values());
+    }
+
+    /**
+     * @return the install with the given id, or null if it is unknown or
+     * has been forgotten
+     */
+    public BulkInstall getInstall(long id) {
+        return installs.get(id);
+    }
+
+    private void pruneFinished() {
+        int finished = 0;
+        for (BulkInstall install : installs.descendingMap().values()) {
+            if (install.getState() != State.RUNNING &&
+                    ++finished > MAX_FINISHED_INSTALLS) {
+                installs.remove(install.getId(), install);
+            }
+        }
+    }
+}
@@ -16,6 +16,8 @@
 
 package net.floodlightcontroller.staticflowentry;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Map;
 
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
@@ -31,6 +33,15 @@ public interface IStaticFlowEntryPusherService extends IFloodlightService {
      * @param swDpid The switch DPID to push it to, in 00:00:00:00:00:00:00:01 notation.
      */
     public void addFlow(String name, OFFlowMod fm, DatapathId swDpid);
+
+    /**
+     * Adds static flows given as storage rows. The flows of each connected
+     * switch are installed in one bulk install; the others are installed
+     * when their switch connects.
+     * @param rows The flows, as built by StaticFlowEntries.jsonToStorageEntry()
+     * @return the bulk installs started, one per connected switch
+     */
+    public Collection<BulkFlowInstaller.BulkInstall> addFlows(List<Map<String, Object>> rows);
     
     /**
      * Deletes a static flow
@@ -59,4 +70,16 @@ public interface IStaticFlowEntryPusherService extends IFloodlightService {
      */
     public Map<String, OFFlowMod> getFlows(DatapathId dpid);
 
+    /**
+     * Gets the running and most recently finished bulk installs of flows
+     * on switches
+     */
+    public Collection<BulkFlowInstaller.BulkInstall> getInstalls();
+
+    /**
+     * Gets a bulk install by id
+     * @return the install, or null if it is unknown
+     */
+    public BulkFlowInstaller.BulkInstall getInstall(long id);
+
 }
@@ -55,10 +55,12 @@ import net.floodlightcontroller.util.FlowModUtils;
 import net.floodlightcontroller.util.InstructionUtils;
 import net.floodlightcontroller.util.MatchUtils;
 
+import org.projectfloodlight.openflow.protocol.OFErrorMsg;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFlowAdd;
 import org.projectfloodlight.openflow.protocol.OFFlowDeleteStrict;
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
+import org.projectfloodlight.openflow.protocol.OFFlowModFlags;
 import org.projectfloodlight.openflow.protocol.OFFlowRemoved;
 import org.projectfloodlight.openflow.protocol.OFFlowRemovedReason;
 import org.projectfloodlight.openflow.protocol.OFPortDesc;
@@ -208,6 +210,16 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 	// Entry Name -> DPID of Switch it's on
 	protected Map<String, String> entry2dpid;
 
+	// Pipelines flow-mods to switches and tracks their installation
+	protected BulkFlowInstaller bulkInstaller;
+	/**
+	 * Entries installed by {@link #addFlows(List)}, mapped to their parsed
+	 * flow-mod, whose storage notification has not been seen yet. The
+	 * notification of an unchanged entry is skipped, so the entry is not
+	 * sent to the switch a second time.
+	 */
+	protected Map<String, OFFlowMod> bulkAdded = new ConcurrentHashMap<String, OFFlowMod>();
+
 	// Class to sort FlowMod's by priority, from lowest to highest
 	class FlowModSorter implements Comparator<String> {
 		private String dpid;
@@ -275,15 +287,19 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 			List<String> sortedList = new ArrayList<String>(entries.keySet());
 			// weird that Collections.sort() returns void
 			Collections.sort( sortedList, new FlowModSorter(stringId));
+			List<String> names = new ArrayList<String>(sortedList.size());
+			List<OFMessage> flowMods = new ArrayList<OFMessage>(sortedList.size());
 			for (String entryName : sortedList) {
 				OFFlowMod flowMod = entries.get(entryName);
 				if (flowMod != null) {
-					if (log.isDebugEnabled()) {
-						log.debug("Pushing static entry {} for {}", stringId, entryName);
-					}
-					writeFlowModToSwitch(sw, flowMod);
+					names.add(entryName);
+					flowMods.add(flowMod);
 				}
 			}
+			if (log.isDebugEnabled()) {
+				log.debug("Pushing {} static entries to {}", flowMods.size(), stringId);
+			}
+			bulkInstaller.install(sw, names, flowMods);
 		}
 	}
 
@@ -373,8 +389,18 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 				if (key.equals(COLUMN_SWITCH) || key.equals(COLUMN_NAME) || key.equals("id")) {
 					continue; // already handled
 				}
-				// explicitly ignore timeouts and wildcards
-				if (key.equals(COLUMN_HARD_TIMEOUT) || key.equals(COLUMN_IDLE_TIMEOUT)) {
+				// explicitly ignore hard timeouts and wildcards
+				if (key.equals(COLUMN_HARD_TIMEOUT)) {
+					continue;
+				}
+				// entries with an idle timeout report their expiry, so that
+				// the module that pushed them can clean up
+				if (key.equals(COLUMN_IDLE_TIMEOUT)) {
+					int idleTimeout = Integer.parseInt((String) row.get(COLUMN_IDLE_TIMEOUT));
+					if (idleTimeout > 0) {
+						fmb.setIdleTimeout(idleTimeout);
+						fmb.setFlags(Collections.singleton(OFFlowModFlags.SEND_FLOW_REM));
+					}
 					continue;
 				}
 				if (key.equals(COLUMN_ACTIVE)) {
@@ -489,12 +515,35 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 				parseRow(row, entriesToAdd);
 			}
 		}
+		// skip the entries addFlows() already installed
+		for (Map<String, OFFlowMod> entries : entriesToAdd.values()) {
+			Iterator<Entry<String, OFFlowMod>> it = entries.entrySet().iterator();
+			while (it.hasNext()) {
+				Entry<String, OFFlowMod> e = it.next();
+				OFFlowMod added = bulkAdded.remove(e.getKey());
+				if (added != null && added.equals(e.getValue()))
+					it.remove();
+			}
+		}
+		applyEntries(entriesToAdd);
+	}
+
+	/**
+	 * Update the entries and batch the flow-mods for them by switch
+	 * @param entriesToAdd the entries by switch, null for inactive ones
+	 * @return the bulk installs started, one per connected switch
+	 */
+	private List<BulkFlowInstaller.BulkInstall> applyEntries(
+			Map<String, Map<String, OFFlowMod>> entriesToAdd) {
+		List<BulkFlowInstaller.BulkInstall> installs =
+				new ArrayList<BulkFlowInstaller.BulkInstall>();
 		// batch updates by switch and blast them out
 		for (String dpid : entriesToAdd.keySet()) {
 			if (!entriesFromStorage.containsKey(dpid))
 				entriesFromStorage.put(dpid, new HashMap<String, OFFlowMod>());
 
 			List<OFMessage> outQueue = new ArrayList<OFMessage>();
+			List<String> outNames = new ArrayList<String>();
 			
 			/* For every flow per dpid, decide how to "add" the flow. */
 			for (String entry : entriesToAdd.get(dpid).keySet()) {
@@ -516,6 +565,7 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 						entry2dpid.put(entry, dpid);
 						newFlowMod = FlowModUtils.toFlowModifyStrict(newFlowMod);
 						outQueue.add(newFlowMod);
+						outNames.add(entry);
 					/* DELETE_STRICT and then ADD b/c the match is now different */
 					} else {
 						oldFlowMod = FlowModUtils.toFlowDeleteStrict(oldFlowMod);
@@ -524,6 +574,8 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 						if (dpidOldFlowMod.equals(dpid)) {
 							outQueue.add(oldFlowMod);
 							outQueue.add(addTmp); 
+							outNames.add(entry);
+							outNames.add(entry);
 						/* Otherwise, go ahead and send the flows now (since queuing them will send to the wrong switch). */
 						} else {
 							writeOFMessageToSwitch(DatapathId.of(dpidOldFlowMod), oldFlowMod);
@@ -538,6 +590,7 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 					entriesFromStorage.get(dpid).put(entry, addTmp);
 					entry2dpid.put(entry, dpid);
 					outQueue.add(addTmp);
+					outNames.add(entry);
 				/* Something strange happened, so remove the flow */
 				} else if (newFlowMod == null) { 
 					entriesFromStorage.get(dpid).remove(entry);
@@ -545,8 +598,12 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 				}
 			}
 			/* Batch-write all queued messages to the switch */
-			writeOFMessagesToSwitch(DatapathId.of(dpid), outQueue);
+			BulkFlowInstaller.BulkInstall install =
+					installOnSwitch(DatapathId.of(dpid), outNames, outQueue);
+			if (install != null)
+				installs.add(install);
 		}
+		return installs;
 	}
 
 	@Override
@@ -597,24 +654,22 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 	}
 
 	/**
-	 * Writes a list of OFMessages to a switch
+	 * Installs a list of flow-mods on a switch with the bulk installer
 	 * @param dpid The datapath ID of the switch to write to
-	 * @param messages The list of OFMessages to write.
+	 * @param names The name of the entry of each flow-mod
+	 * @param messages The list of flow-mods to write.
+	 * @return the install, or null if the switch is not connected or there
+	 * is nothing to write
 	 */
-	@LogMessageDoc(level="ERROR",
-			message="Tried to write to switch {switch} but got {error}",
-			explanation="An I/O error occured while trying to write a " +
-					"static flow to a switch",
-					recommendation=LogMessageDoc.CHECK_SWITCH)
-	private void writeOFMessagesToSwitch(DatapathId dpid, List<OFMessage> messages) {
+	private BulkFlowInstaller.BulkInstall installOnSwitch(DatapathId dpid, List<String> names, List<OFMessage> messages) {
 		IOFSwitch ofswitch = switchService.getSwitch(dpid);
-		if (ofswitch != null) {  // is the switch connected
+		if (ofswitch != null && !messages.isEmpty()) {  // is the switch connected
 			if (log.isDebugEnabled()) {
 				log.debug("Sending {} new entries to {}", messages.size(), dpid);
 			}
-			ofswitch.write(messages);
-			ofswitch.flush();
+			return bulkInstaller.install(ofswitch, names, messages);
 		}
+		return null;
 	}
 
 	/**
@@ -691,6 +746,10 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 		 * never expire.
 		 */
 		if (AppCookie.extractApp(cookie) == STATIC_FLOW_APP_ID) {
+			// entries pushed with an idle timeout are expected to expire;
+			// let the module that pushed them handle it
+			if (OFFlowRemovedReason.IDLE_TIMEOUT.equals(msg.getReason()))
+				return Command.CONTINUE;
 			if (OFFlowRemovedReason.DELETE.equals(msg.getReason()))
 				log.error("Got a FlowRemove message for a infinite " +
 						"timeout flow: {} from switch {}", msg, sw);
@@ -712,6 +771,11 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 		switch (msg.getType()) {
 		case FLOW_REMOVED:
 			return handleFlowRemoved(sw, (OFFlowRemoved) msg, cntx);
+		case ERROR:
+			if (bulkInstaller.handleError(sw.getId(), (OFErrorMsg) msg)) {
+				log.warn("Switch {} rejected a static flow entry: {}", sw.getId(), msg);
+			}
+			return Command.CONTINUE;
 		default:
 			return Command.CONTINUE;
 		}
@@ -765,11 +829,27 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 		storageSourceService = context.getServiceImpl(IStorageSourceService.class);
 		restApiService = context.getServiceImpl(IRestApiService.class);
 		haListener = new HAListenerDelegate();
+
+		int batchSize = BulkFlowInstaller.DEFAULT_BATCH_SIZE;
+		int maxOutstanding = BulkFlowInstaller.DEFAULT_MAX_OUTSTANDING_BATCHES;
+		Map<String, String> configParameters = context.getConfigParams(this);
+		String tmp = configParameters.get("batch-size");
+		if (tmp != null) {
+			batchSize = Integer.parseInt(tmp);
+			log.info("Static flow batch size set to {}.", batchSize);
+		}
+		tmp = configParameters.get("max-outstanding-batches");
+		if (tmp != null) {
+			maxOutstanding = Integer.parseInt(tmp);
+			log.info("Static flow outstanding batches set to {}.", maxOutstanding);
+		}
+		bulkInstaller = new BulkFlowInstaller(batchSize, maxOutstanding);
 	} 
 
 	@Override
 	public void startUp(FloodlightModuleContext context) {
 		floodlightProviderService.addOFMessageListener(OFType.FLOW_REMOVED, this);
+		floodlightProviderService.addOFMessageListener(OFType.ERROR, this);
 		switchService.addOFSwitchListener(this);
 		floodlightProviderService.addHAListener(this.haListener);
 		// assumes no switches connected at startup()
@@ -794,6 +874,29 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 		}
 	}
 
+	@Override
+	public Collection<BulkFlowInstaller.BulkInstall> addFlows(List<Map<String, Object>> rows) {
+		Map<String, Map<String, OFFlowMod>> entriesToAdd =
+				new HashMap<String, Map<String, OFFlowMod>>();
+		for (Map<String, Object> row : rows) {
+			String dpid = (String) row.get(COLUMN_SWITCH);
+			// entries of disconnected switches are installed when they connect
+			if (dpid != null && switchService.getSwitch(DatapathId.of(dpid)) != null)
+				parseRow(row, entriesToAdd);
+		}
+		for (Map<String, OFFlowMod> entries : entriesToAdd.values()) {
+			for (Entry<String, OFFlowMod> e : entries.entrySet()) {
+				if (e.getValue() != null)
+					bulkAdded.put(e.getKey(), e.getValue());
+			}
+		}
+		List<BulkFlowInstaller.BulkInstall> installs = applyEntries(entriesToAdd);
+		for (Map<String, Object> row : rows) {
+			storageSourceService.insertRow(TABLE_NAME, row);
+		}
+		return installs;
+	}
+
 	@Override
 	public void deleteFlow(String name) {
 		storageSourceService.deleteRowAsync(TABLE_NAME, name);
@@ -918,6 +1021,16 @@ implements IOFSwitchListener, IFloodlightModule, IStaticFlowEntryPusherService,
 		return entriesFromStorage.get(dpid.toString());
 	}
 
+	@Override
+	public Collection<BulkFlowInstaller.BulkInstall> getInstalls() {
+		return bulkInstaller.getInstalls();
+	}
+
+	@Override
+	public BulkFlowInstaller.BulkInstall getInstall(long id) {
+		return bulkInstaller.getInstall(id);
+	}
+
 	// IHAListener
 
 	private class HAListenerDelegate implements IHAListener {
@@ -0,0 +1,92 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.staticflowentry.web;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.restlet.resource.Post;
+import org.restlet.resource.ServerResource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import net.floodlightcontroller.core.annotations.LogMessageCategory;
+import net.floodlightcontroller.core.annotations.LogMessageDoc;
+import net.floodlightcontroller.staticflowentry.BulkFlowInstaller.BulkInstall;
+import net.floodlightcontroller.staticflowentry.IStaticFlowEntryPusherService;
+import net.floodlightcontroller.staticflowentry.StaticFlowEntries;
+import net.floodlightcontroller.staticflowentry.StaticFlowEntryPusher;
+
+/**
+ * Pushes a JSON array of static flow entries in one request. The entries
+ * of each switch are installed in one bulk install; the installs are
+ * returned, and their progress can be followed with
+ * {@link StaticFlowInstallStatusResource}.
+ */
+@LogMessageCategory("Static Flow Pusher")
+public class StaticFlowEntryBulkResource extends ServerResource {
+    protected static Logger log = LoggerFactory.getLogger(StaticFlowEntryBulkResource.class);
+
+    @Post
+    @LogMessageDoc(level="ERROR",
+        message="Error parsing bulk push flow mod request: {request}",
+        explanation="An invalid request was sent to static flow pusher",
+        recommendation="Fix the format of the static flow mod request")
+    public Map<String, Object> store(String fmJson) {
+        IStaticFlowEntryPusherService sfpService =
+                (IStaticFlowEntryPusherService)getContext().getAttributes().
+                    get(IStaticFlowEntryPusherService.class.getCanonicalName());
+
+        Map<String, Object> result = new HashMap<String, Object>();
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        List<String> rejected = new ArrayList<String>();
+        try {
+            JsonNode entries = new ObjectMapper().readTree(fmJson);
+            if (entries == null || !entries.isArray()) {
+                result.put("status", "Error! Expected a JSON array of entries.");
+                return result;
+            }
+            for (JsonNode entry : entries) {
+                Map<String, Object> rowValues =
+                        StaticFlowEntries.jsonToStorageEntry(entry.toString());
+                if (StaticFlowEntryPusherResource.checkFlow(rowValues) == 0) {
+                    rows.add(rowValues);
+                } else {
+                    rejected.add((String) rowValues.get(StaticFlowEntryPusher.COLUMN_NAME));
+                }
+            }
+        } catch (IOException e) {
+            log.error("Error parsing bulk push flow mod request: " + fmJson, e);
+            result.put("status", "Error! Could not parse flow mods, see log for details.");
+            return result;
+        }
+
+        Collection<BulkInstall> installs = sfpService.addFlows(rows);
+        result.put("status", rows.size() + " entries pushed, " +
+                   installs.size() + " installs started");
+        result.put("rejected", rejected);
+        result.put("installs", installs);
+        return result;
+    }
+}
@@ -48,7 +48,7 @@ public class StaticFlowEntryPusherResource extends ServerResource {
 	 * @param Map containing the fields of the flow
 	 * @return state indicating whether a flow is valid or not
 	 */
-	private int checkFlow(Map<String, Object> rows) {    
+	public static int checkFlow(Map<String, Object> rows) {    
 		//Declaring & Initializing flags
 		int state = 0;
 		boolean dl_type = false;
@@ -32,6 +32,9 @@ public class StaticFlowEntryWebRoutable implements RestletRoutable {
         router.attach("/json", StaticFlowEntryPusherResource.class);
         router.attach("/json/store", StaticFlowEntryPusherResource.class);
         router.attach("/json/delete", StaticFlowEntryDeleteResource.class);
+        router.attach("/bulk/json", StaticFlowEntryBulkResource.class);
+        router.attach("/install/json", StaticFlowInstallStatusResource.class);
+        router.attach("/install/{id}/json", StaticFlowInstallStatusResource.class);
         router.attach("/clear/{switch}/json", ClearStaticFlowEntriesResource.class);
         router.attach("/list/{switch}/json", ListStaticFlowEntriesResource.class);
         return router;
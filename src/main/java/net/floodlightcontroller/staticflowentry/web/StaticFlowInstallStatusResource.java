@@ -0,0 +1,58 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.staticflowentry.web;
+
+import java.util.Collection;
+import java.util.Collections;
+
+import net.floodlightcontroller.staticflowentry.BulkFlowInstaller.BulkInstall;
+import net.floodlightcontroller.staticflowentry.IStaticFlowEntryPusherService;
+
+import org.restlet.data.Status;
+import org.restlet.resource.Get;
+import org.restlet.resource.ServerResource;
+
+/**
+ * Reports the progress of installing static flow entries on switches:
+ * all running and recently finished installs, or the one given by id
+ */
+public class StaticFlowInstallStatusResource extends ServerResource {
+
+    @Get("json")
+    public Collection<BulkInstall> getInstalls() {
+        IStaticFlowEntryPusherService sfpService =
+                (IStaticFlowEntryPusherService)getContext().getAttributes().
+                    get(IStaticFlowEntryPusherService.class.getCanonicalName());
+
+        String param = (String) getRequestAttributes().get("id");
+        if (param == null) {
+            return sfpService.getInstalls();
+        }
+        BulkInstall install = null;
+        try {
+            install = sfpService.getInstall(Long.parseLong(param));
+        } catch (NumberFormatException e) {
+            setStatus(Status.CLIENT_ERROR_BAD_REQUEST, "Invalid install id");
+            return null;
+        }
+        if (install == null) {
+            setStatus(Status.CLIENT_ERROR_NOT_FOUND, "Unknown install id");
+            return null;
+        }
+        return Collections.singletonList(install);
+    }
+}
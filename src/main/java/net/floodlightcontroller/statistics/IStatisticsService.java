@@ -0,0 +1,63 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.statistics;
+
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.ListenableFuture;
+
+import net.floodlightcontroller.core.module.IFloodlightService;
+
+/**
+ * Collects statistics from switches without blocking and caches the most
+ * recent replies per switch and statistics type.
+ */
+public interface IStatisticsService extends IFloodlightService {
+    /**
+     * Get the most recently collected statistics without contacting the
+     * switch
+     * @param switchId the switch
+     * @param statType the type of statistics
+     * @return the cached statistics, or null if none have been collected
+     */
+    public SwitchStatistics getCachedStatistics(DatapathId switchId,
+                                                OFStatsType statType);
+
+    /**
+     * Get statistics that are at most the configured maximum age old.
+     * @see #getStatistics(DatapathId, OFStatsType, long)
+     */
+    public ListenableFuture<SwitchStatistics>
+            getStatistics(DatapathId switchId, OFStatsType statType);
+
+    /**
+     * Get statistics that are at most maxAgeMs old. Cached statistics are
+     * returned if they are fresh enough; otherwise a request is sent to the
+     * switch. Callers asking for the same switch and type while a request
+     * is outstanding share that request.
+     * @param switchId the switch
+     * @param statType the type of statistics
+     * @param maxAgeMs the maximum age of cached statistics to accept
+     * @return a future completed with the statistics, with null if the
+     * switch is not connected or does not support the type, or with an
+     * exception if the request failed
+     */
+    public ListenableFuture<SwitchStatistics>
+            getStatistics(DatapathId switchId, OFStatsType statType,
+                          long maxAgeMs);
+}
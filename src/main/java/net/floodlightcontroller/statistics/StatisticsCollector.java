@@ -0,0 +1,420 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPortDesc;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.ver13.OFMeterSerializerVer13;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TableId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.google.common.primitives.UnsignedLong;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.IOFSwitchListener;
+import net.floodlightcontroller.core.PortChangeType;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.module.IFloodlightModule;
+import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.core.util.SingletonTask;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+
+/**
+ * Collects switch statistics using the asynchronous stats request futures
+ * of the switches.
+ *
+ * The configured statistics types are polled from every switch on a fixed
+ * schedule and the replies are kept in a cache. Callers get cached
+ * statistics if they are fresh enough and otherwise trigger a request;
+ * concurrent callers for the same switch and type share one outstanding
+ * request. No thread ever waits for a switch to reply.
+ *
+ * By default only the cheap PORT and AGGREGATE statistics are polled, once
+ * a minute. Other types are still served on demand through the cache.
+ * Polling FLOW statistics pulls the whole flow table of every switch on
+ * each poll, so only enable it where the control channel can afford it,
+ * e.g. with
+ * <pre>
+ * net.floodlightcontroller.statistics.StatisticsCollector.collected-types=FLOW,PORT,AGGREGATE
+ * net.floodlightcontroller.statistics.StatisticsCollector.poll-interval=60
+ * </pre>
+ * A poll-interval of 0 or an empty collected-types disables polling.
+ */
+public class StatisticsCollector implements IFloodlightModule,
+        IStatisticsService, IOFSwitchListener {
+    protected static Logger log =
+            LoggerFactory.getLogger(StatisticsCollector.class);
+
+    public static final int DEFAULT_POLL_INTERVAL_SECONDS = 60;
+    public static final long DEFAULT_MAX_AGE_MS = 5000;
+    public static final Set<OFStatsType> DEFAULT_COLLECTED_TYPES =
+            EnumSet.of(OFStatsType.PORT, OFStatsType.AGGREGATE);
+
+    protected IOFSwitchService switchService;
+    protected IThreadPoolService threadPoolService;
+
+    protected int pollIntervalSeconds = DEFAULT_POLL_INTERVAL_SECONDS;
+    protected long maxAgeMs = DEFAULT_MAX_AGE_MS;
+    protected Set<OFStatsType> collectedTypes =
+            EnumSet.copyOf(DEFAULT_COLLECTED_TYPES);
+    protected SingletonTask pollTask;
+
+    protected final ConcurrentMap<Key, SwitchStatistics> cache =
+            new ConcurrentHashMap<Key, SwitchStatistics>();
+    protected final ConcurrentMap<Key, SettableFuture<SwitchStatistics>> inFlight =
+            new ConcurrentHashMap<Key, SettableFuture<SwitchStatistics>>();
+
+    protected static class Key {
+        final DatapathId switchId;
+        final OFStatsType statType;
+
+        Key(DatapathId switchId, OFStatsType statType) {
+            this.switchId = switchId;
+            this.statType = statType;
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * switchId.hashCode() + statType.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (!(obj instanceof Key))
+                return false;
+            Key other = (Key) obj;
+            return statType == other.statType &&
+                    switchId.equals(other.switchId);
+        }
+    }
+
+    /**
+     * Build the request for all statistics of the given type
+     * @return the request, or null if the type is not supported by the
+     * OpenFlow version of the factory
+     */
+    public static OFStatsRequest<?> buildStatsRequest(OFFactory factory,
+                                                      OFStatsType statType) {
+        Match match;
+        switch (statType) {
+        case FLOW:
+            match = factory.buildMatch().build();
+            return factory.buildFlowStatsRequest()
+                    .setMatch(match)
+                    .setOutPort(OFPort.ANY)
+                    .setTableId(TableId.ALL)
+                    .build();
+        case AGGREGATE:
+            match = factory.buildMatch().build();
+            return factory.buildAggregateStatsRequest()
+                    .setMatch(match)
+                    .setOutPort(OFPort.ANY)
+                    .setTableId(TableId.ALL)
+                    .build();
+        case PORT:
+            return factory.buildPortStatsRequest()
+                    .setPortNo(OFPort.ANY)
+                    .build();
+        case QUEUE:
+            return factory.buildQueueStatsRequest()
+                    .setPortNo(OFPort.ANY)
+                    .setQueueId(UnsignedLong.MAX_VALUE.longValue())
+                    .build();
+        case DESC:
+            return factory.buildDescStatsRequest().build();
+        case GROUP:
+            if (factory.getVersion().compareTo(OFVersion.OF_10) > 0)
+                return factory.buildGroupStatsRequest().build();
+            return null;
+        case METER:
+            if (factory.getVersion().compareTo(OFVersion.OF_13) >= 0) {
+                return factory.buildMeterStatsRequest()
+                        .setMeterId(OFMeterSerializerVer13.ALL_VAL)
+                        .build();
+            }
+            return null;
+        case GROUP_DESC:
+            if (factory.getVersion().compareTo(OFVersion.OF_10) > 0)
+                return factory.buildGroupDescStatsRequest().build();
+            return null;
+        case GROUP_FEATURES:
+            if (factory.getVersion().compareTo(OFVersion.OF_10) > 0)
+                return factory.buildGroupFeaturesStatsRequest().build();
+            return null;
+        case METER_CONFIG:
+            if (factory.getVersion().compareTo(OFVersion.OF_13) >= 0)
+                return factory.buildMeterConfigStatsRequest().build();
+            return null;
+        case METER_FEATURES:
+            if (factory.getVersion().compareTo(OFVersion.OF_13) >= 0)
+                return factory.buildMeterFeaturesStatsRequest().build();
+            return null;
+        case TABLE:
+            if (factory.getVersion().compareTo(OFVersion.OF_10) > 0)
+                return factory.buildTableStatsRequest().build();
+            return null;
+        case TABLE_FEATURES:
+            if (factory.getVersion().compareTo(OFVersion.OF_10) > 0)
+                return factory.buildTableFeaturesStatsRequest().build();
+            return null;
+        case PORT_DESC:
+            if (factory.getVersion().compareTo(OFVersion.OF_13) >= 0)
+                return factory.buildPortDescStatsRequest().build();
+            return null;
+        case EXPERIMENTER: //TODO @Ryan support new OF1.1+ stats types
+        default:
+            log.error("Stats Request Type {} not implemented yet",
+                      statType.name());
+            return null;
+        }
+    }
+
+    // IStatisticsService
+
+    @Override
+    public SwitchStatistics getCachedStatistics(DatapathId switchId,
+                                                OFStatsType statType) {
+        return cache.get(new Key(switchId, statType));
+    }
+
+    @Override
+    public ListenableFuture<SwitchStatistics>
+            getStatistics(DatapathId switchId, OFStatsType statType) {
+        return getStatistics(switchId, statType, maxAgeMs);
+    }
+
+    @Override
+    public ListenableFuture<SwitchStatistics>
+            getStatistics(DatapathId switchId, OFStatsType statType,
+                          long maxAgeMs) {
+        Key key = new Key(switchId, statType);
+        SwitchStatistics cached = cache.get(key);
+        if (cached != null &&
+                cached.getAge(System.currentTimeMillis()) <= maxAgeMs) {
+            return Futures.immediateFuture(cached);
+        }
+        return request(key);
+    }
+
+    /**
+     * Send a request for the given switch and type, or join the one that
+     * is already outstanding
+     */
+    protected ListenableFuture<SwitchStatistics> request(final Key key) {
+        final SettableFuture<SwitchStatistics> future = SettableFuture.create();
+        SettableFuture<SwitchStatistics> existing =
+                inFlight.putIfAbsent(key, future);
+        if (existing != null)
+            return existing;
+
+        IOFSwitch sw = switchService.getSwitch(key.switchId);
+        OFStatsRequest<?> req = (sw == null) ? null :
+                buildStatsRequest(sw.getOFFactory(), key.statType);
+        if (req == null) {
+            inFlight.remove(key, future);
+            future.set(null);
+            return future;
+        }
+        try {
+            Futures.addCallback(writeStatsRequest(sw, req),
+                                new FutureCallback<List<OFStatsReply>>() {
+                @Override
+                public void onSuccess(List<OFStatsReply> replies) {
+                    SwitchStatistics stats = new SwitchStatistics(key.switchId,
+                            key.statType, System.currentTimeMillis(), replies);
+                    // don't cache replies of switches that left meanwhile
+                    if (switchService.getSwitch(key.switchId) != null)
+                        cache.put(key, stats);
+                    inFlight.remove(key, future);
+                    future.set(stats);
+                }
+
+                @Override
+                public void onFailure(Throwable t) {
+                    inFlight.remove(key, future);
+                    future.setException(t);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, future);
+            future.setException(e);
+        }
+        return future;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R extends OFStatsReply> ListenableFuture<List<OFStatsReply>>
+            writeStatsRequest(IOFSwitch sw, OFStatsRequest<R> req) {
+        ListenableFuture<?> f = sw.writeStatsRequest(req);
+        return (ListenableFuture<List<OFStatsReply>>) f;
+    }
+
+    /**
+     * Refresh the collected types on all switches. Statistics that were
+     * refreshed by a caller during the last half interval are left alone.
+     */
+    protected void poll() {
+        long maxAge = TimeUnit.SECONDS.toMillis(pollIntervalSeconds) / 2;
+        for (DatapathId switchId : switchService.getAllSwitchDpids()) {
+            for (OFStatsType statType : collectedTypes) {
+                getStatistics(switchId, statType, maxAge);
+            }
+        }
+    }
+
+    // IOFSwitchListener
+
+    @Override
+    public void switchAdded(DatapathId switchId) {
+    }
+
+    @Override
+    public void switchRemoved(DatapathId switchId) {
+        for (Key key : cache.keySet()) {
+            if (key.switchId.equals(switchId))
+                cache.remove(key);
+        }
+    }
+
+    @Override
+    public void switchActivated(DatapathId switchId) {
+    }
+
+    @Override
+    public void switchPortChanged(DatapathId switchId, OFPortDesc port,
+                                  PortChangeType type) {
+    }
+
+    @Override
+    public void switchChanged(DatapathId switchId) {
+    }
+
+    // IFloodlightModule
+
+    @Override
+    public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+        Collection<Class<? extends IFloodlightService>> l =
+                new ArrayList<Class<? extends IFloodlightService>>();
+        l.add(IStatisticsService.class);
+        return l;
+    }
+
+    @Override
+    public Map<Class<? extends IFloodlightService>, IFloodlightService>
+            getServiceImpls() {
+        Map<Class<? extends IFloodlightService>, IFloodlightService> m =
+                new HashMap<Class<? extends IFloodlightService>,
+                            IFloodlightService>();
+        m.put(IStatisticsService.class, this);
+        return m;
+    }
+
+    @Override
+    public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+        Collection<Class<? extends IFloodlightService>> l =
+                new ArrayList<Class<? extends IFloodlightService>>();
+        l.add(IOFSwitchService.class);
+        l.add(IThreadPoolService.class);
+        return l;
+    }
+
+    @Override
+    public void init(FloodlightModuleContext context)
+            throws FloodlightModuleException {
+        switchService = context.getServiceImpl(IOFSwitchService.class);
+        threadPoolService = context.getServiceImpl(IThreadPoolService.class);
+
+        Map<String, String> configParameters = context.getConfigParams(this);
+        String tmp = configParameters.get("poll-interval");
+        if (tmp != null) {
+            pollIntervalSeconds = Integer.parseInt(tmp);
+            log.info("Statistics poll interval set to {}s.", pollIntervalSeconds);
+        }
+        tmp = configParameters.get("max-age-ms");
+        if (tmp != null) {
+            maxAgeMs = Long.parseLong(tmp);
+            log.info("Statistics max age set to {}ms.", maxAgeMs);
+        }
+        tmp = configParameters.get("collected-types");
+        if (tmp != null) {
+            collectedTypes = EnumSet.noneOf(OFStatsType.class);
+            for (String t : tmp.split(",")) {
+                t = t.trim();
+                if (t.isEmpty())
+                    continue;
+                try {
+                    collectedTypes.add(OFStatsType.valueOf(t.toUpperCase()));
+                } catch (IllegalArgumentException e) {
+                    throw new FloodlightModuleException(
+                            "Unknown statistics type " + t);
+                }
+            }
+            log.info("Collecting statistics {}.", collectedTypes);
+        }
+    }
+
+    @Override
+    public void startUp(FloodlightModuleContext context)
+            throws FloodlightModuleException {
+        switchService.addOFSwitchListener(this);
+        if (pollIntervalSeconds <= 0 || collectedTypes.isEmpty()) {
+            log.info("Periodic statistics collection disabled");
+            return;
+        }
+        pollTask = new SingletonTask(threadPoolService.getScheduledExecutor(),
+                new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    poll();
+                } catch (Exception e) {
+                    log.error("Exception in statistics collection", e);
+                } finally {
+                    pollTask.reschedule(pollIntervalSeconds, TimeUnit.SECONDS);
+                }
+            }
+        });
+        pollTask.reschedule(pollIntervalSeconds, TimeUnit.SECONDS);
+    }
+}
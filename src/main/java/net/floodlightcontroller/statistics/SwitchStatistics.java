@@ -0,0 +1,76 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.statistics;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+/**
+ * The statistics replies of one switch for one statistics type, and when
+ * they were received
+ */
+public class SwitchStatistics {
+    private final DatapathId switchId;
+    private final OFStatsType statType;
+    private final long timestamp;
+    private final List<OFStatsReply> replies;
+
+    public SwitchStatistics(DatapathId switchId, OFStatsType statType,
+                            long timestamp, List<OFStatsReply> replies) {
+        this.switchId = switchId;
+        this.statType = statType;
+        this.timestamp = timestamp;
+        this.replies = Collections.unmodifiableList(replies);
+    }
+
+    public DatapathId getSwitchId() {
+        return switchId;
+    }
+
+    public OFStatsType getStatType() {
+        return statType;
+    }
+
+    /**
+     * @return the time the replies were received, in milliseconds
+     */
+    public long getTimestamp() {
+        return timestamp;
+    }
+
+    public List<OFStatsReply> getReplies() {
+        return replies;
+    }
+
+    /**
+     * @return the age of the replies at the given time, in milliseconds
+     */
+    public long getAge(long now) {
+        return now - timestamp;
+    }
+
+    @Override
+    public String toString() {
+        return "SwitchStatistics [switchId=" + switchId + ", statType=" +
+                statType + ", timestamp=" + timestamp + ", replies=" +
+                replies.size() + "]";
+    }
+}
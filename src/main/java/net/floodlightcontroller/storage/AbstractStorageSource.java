@@ -29,6 +29,8 @@ import java.util.concurrent.CopyOnWriteArraySet;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.annotations.LogMessageCategory;
 import net.floodlightcontroller.core.annotations.LogMessageDoc;
@@ -75,6 +77,15 @@ implements IStorageSourceService, IFloodlightModule {
 	private Map<String, Set<IStorageSourceListener>> listeners =
 			new ConcurrentHashMap<String, Set<IStorageSourceListener>>();
 
+	// Unless configured with a number of notification threads, listeners
+	// are notified on the thread doing the write, one notification at a
+	// time, before the write returns. With notification threads they are
+	// notified per table in order, with back-to-back notifications of a
+	// table merged.
+	protected static final String NOTIFICATION_THREADS_PARAM = "notificationThreads";
+	private ExecutorService notificationExecutor = null;
+	private volatile StorageNotificationDispatcher notificationDispatcher = null;
+
 	// Our dependencies
 	protected IRestApiService restApi = null;
 
@@ -464,7 +475,59 @@ implements IStorageSourceService, IFloodlightModule {
 			explanation="An unknown error occured while trying to notify" +
 					" storage listeners",
 					recommendation=LogMessageDoc.GENERIC_ACTION)
-	protected synchronized void notifyListeners(StorageSourceNotification notification) {
+	protected void notifyListeners(StorageSourceNotification notification) {
+		StorageNotificationDispatcher dispatcher = notificationDispatcher;
+		if (dispatcher != null) {
+			dispatcher.dispatch(notification);
+			return;
+		}
+		synchronized (this) {
+			deliverNotification(notification);
+		}
+	}
+
+	private StorageNotificationDispatcher createNotificationDispatcher(ExecutorService executor) {
+		return new StorageNotificationDispatcher(executor) {
+			@Override
+			protected void deliver(StorageSourceNotification notification) {
+				deliverNotification(notification);
+			}
+		};
+	}
+
+	/**
+	 * Use a pool of the given number of threads to notify listeners, or
+	 * notify them on the writing thread if the number is 0 (the default).
+	 * With a pool a write returns before its listeners have run, and the
+	 * listeners of different tables run concurrently, so only use one if
+	 * every listener of this storage source is thread-safe and does not
+	 * rely on seeing a write when it returns.
+	 */
+	public void setNotificationThreads(int threads) {
+		ExecutorService old = notificationExecutor;
+		if (threads > 0) {
+			final ThreadGroup tg = new ThreadGroup("Storage Notification Threads");
+			ThreadFactory f = new ThreadFactory() {
+				AtomicInteger id = new AtomicInteger();
+
+				@Override
+				public Thread newThread(Runnable runnable) {
+					return new Thread(tg, runnable,
+							"StorageNotify-" + id.getAndIncrement());
+				}
+			};
+			notificationExecutor = Executors.newFixedThreadPool(threads, f);
+			notificationDispatcher =
+					createNotificationDispatcher(notificationExecutor);
+		} else {
+			notificationExecutor = null;
+			notificationDispatcher = null;
+		}
+		if (old != null)
+			old.shutdown();
+	}
+
+	protected void deliverNotification(StorageSourceNotification notification) {
 		if (logger.isTraceEnabled()) {
 			logger.trace("Notifying storage listeneres: {}", notification);
 		}
@@ -533,6 +596,16 @@ implements IStorageSourceService, IFloodlightModule {
 				context.getServiceImpl(IRestApiService.class);
 		debugCounterService =
 				context.getServiceImpl(IDebugCounterService.class);
+		String threads = context.getConfigParams(this).get(NOTIFICATION_THREADS_PARAM);
+		if (threads != null) {
+			try {
+				setNotificationThreads(Integer.parseInt(threads));
+			} catch (NumberFormatException e) {
+				throw new FloodlightModuleException("Invalid " +
+						NOTIFICATION_THREADS_PARAM + ": " + threads, e);
+			}
+			logger.info("Notifying storage listeners on {} threads", threads);
+		}
 	}
 
 	@Override
@@ -0,0 +1,119 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.storage;
+
+import java.util.ArrayDeque;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Dispatches storage notifications to listeners, partitioned by table.
+ *
+ * Every table has its own queue of pending notifications that is drained
+ * by at most one task at a time, so listeners see the notifications of a
+ * table in the order they were generated while different tables are
+ * delivered in parallel on the executor. A notification that arrives
+ * while the last pending notification of its table has the same action is
+ * merged into it, so a burst of writes to a table reaches the listeners
+ * as a few notifications with large key sets instead of one per write.
+ */
+abstract class StorageNotificationDispatcher {
+    /**
+     * Maximum number of notifications a drain task delivers before it
+     * yields its thread to other tables
+     */
+    static final int MAX_DELIVERIES_PER_RUN = 64;
+
+    private final Executor executor;
+    private final ConcurrentMap<String, TableQueue> queues =
+            new ConcurrentHashMap<String, TableQueue>();
+
+    private class TableQueue implements Runnable {
+        // guarded by this
+        private final ArrayDeque<StorageSourceNotification> pending =
+                new ArrayDeque<StorageSourceNotification>();
+        private boolean scheduled = false;
+
+        void add(StorageSourceNotification notification) {
+            Set<Object> keys = notification.getKeys();
+            boolean schedule;
+            synchronized (this) {
+                StorageSourceNotification last = pending.peekLast();
+                if (last != null &&
+                        last.getAction() == notification.getAction()) {
+                    if (keys != null)
+                        last.getKeys().addAll(keys);
+                } else {
+                    // pending notifications own their key sets
+                    Set<Object> copy = (keys != null) ?
+                            new HashSet<Object>(keys) : new HashSet<Object>();
+                    pending.addLast(new StorageSourceNotification(
+                            notification.getTableName(),
+                            notification.getAction(), copy));
+                }
+                schedule = !scheduled;
+                scheduled = true;
+            }
+            if (schedule)
+                executor.execute(this);
+        }
+
+        @Override
+        public void run() {
+            for (int i = 0; i < MAX_DELIVERIES_PER_RUN; i++) {
+                StorageSourceNotification notification;
+                synchronized (this) {
+                    notification = pending.pollFirst();
+                    if (notification == null) {
+                        scheduled = false;
+                        return;
+                    }
+                }
+                deliver(notification);
+            }
+            // still scheduled: let other tables run before we continue
+            executor.execute(this);
+        }
+    }
+
+    StorageNotificationDispatcher(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Queue a notification for delivery
+     */
+    void dispatch(StorageSourceNotification notification) {
+        String tableName = notification.getTableName();
+        TableQueue queue = queues.get(tableName);
+        if (queue == null) {
+            queue = new TableQueue();
+            TableQueue existing = queues.putIfAbsent(tableName, queue);
+            if (existing != null)
+                queue = existing;
+        }
+        queue.add(notification);
+    }
+
+    /**
+     * Deliver a (possibly merged) notification to the listeners of its table
+     */
+    protected abstract void deliver(StorageSourceNotification notification);
+}
@@ -65,8 +65,12 @@ public class MemoryStorageSource extends NoSqlStorageSource {
     protected List<Map<String,Object>> executeEqualityQuery(String tableName,
             String[] columnNameList, String predicateColumnName, Comparable<?> value) {
         MemoryTable table = getTable(tableName, false);
-        List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
+        List<Map<String,Object>> result;
         synchronized (table) {
+            result = table.findEqual(predicateColumnName, value);
+            if (result != null)
+                return result;
+            result = new ArrayList<Map<String,Object>>();
             Collection<Map<String,Object>> allRows = table.getAllRows();
             for (Map<String,Object> row : allRows) {
                 Object v = row.get(predicateColumnName);
@@ -87,19 +91,28 @@ public class MemoryStorageSource extends NoSqlStorageSource {
             String[] columnNameList, String predicateColumnName,
             Comparable<?> startValue, boolean startInclusive, Comparable<?> endValue, boolean endInclusive) {
         MemoryTable table = getTable(tableName, false);
-        List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
+        List<Map<String,Object>> result;
         synchronized (table) {
+            result = table.findRange(predicateColumnName, startValue,
+                                     startInclusive, endValue, endInclusive);
+            if (result != null)
+                return result;
+            result = new ArrayList<Map<String,Object>>();
             Collection<Map<String,Object>> allRows = table.getAllRows();
             for (Map<String,Object> row : allRows) {
                 Comparable value = (Comparable) row.get(predicateColumnName);
                 if (value != null) {
-                    int compareResult = value.compareTo(startValue);
-                    if ((compareResult > 0) || (startInclusive && (compareResult >= 0))) {
-                        compareResult = value.compareTo(endValue);
-                        if ((compareResult < 0) || (startInclusive && (compareResult <= 0))) {
-                            result.add(row);
-                        }
+                    if (startValue != null) {
+                        int compareResult = value.compareTo(startValue);
+                        if ((compareResult < 0) || (!startInclusive && (compareResult == 0)))
+                            continue;
                     }
+                    if (endValue != null) {
+                        int compareResult = value.compareTo(endValue);
+                        if ((compareResult > 0) || (!endInclusive && (compareResult == 0)))
+                            continue;
+                    }
+                    result.add(row);
                 }
             }
         }
@@ -130,12 +143,7 @@ public class MemoryStorageSource extends NoSqlStorageSource {
         MemoryTable table = getTable(tableName, false);
         synchronized (table) {
             for (Object rowKey : rowKeys) {
-                Map<String,Object> row = table.getRow(rowKey);
-                if (row == null)
-                    row = table.newRow(rowKey);
-                for (Map.Entry<String,Object> entry: updateRowList.entrySet()) {
-                    row.put(entry.getKey(), entry.getValue());
-                }
+                table.updateRow(rowKey, updateRowList);
             }
         }
     }
@@ -149,12 +157,7 @@ public class MemoryStorageSource extends NoSqlStorageSource {
                 Object rowKey = updateRow.get(primaryKeyName);
                 if (rowKey == null)
                     throw new StorageException("Primary key not found.");
-                Map<String,Object> row = table.getRow(rowKey);
-                if (row == null)
-                    row = table.newRow(rowKey);
-                for (Map.Entry<String,Object> entry: updateRow.entrySet()) {
-                    row.put(entry.getKey(), entry.getValue());
-                }
+                table.updateRow(rowKey, updateRow);
             }
         }
     }
@@ -175,6 +178,18 @@ public class MemoryStorageSource extends NoSqlStorageSource {
         getTable(tableName, true);
     }
     
+    @Override
+    public void setColumnIndexMode(String tableName, String columnName,
+                                   ColumnIndexMode indexMode) {
+        super.setColumnIndexMode(tableName, columnName, indexMode);
+        MemoryTable table = getTable(tableName, true);
+        synchronized (table) {
+            table.setColumnIndex(columnName,
+                    indexMode != ColumnIndexMode.NOT_INDEXED,
+                    indexMode == ColumnIndexMode.RANGE_INDEXED);
+        }
+    }
+    
     public void setPktinProcessingTime(
             IPktInProcessingTimeService pktinProcessingTime) {
         this.pktinProcessingTime = pktinProcessingTime;
@@ -17,20 +17,98 @@
 
 package net.floodlightcontroller.storage.memory;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Set;
 import java.util.TreeMap;
 
+/**
+ * An in-memory table keyed by primary key, with optional secondary indexes
+ * on other columns.
+ *
+ * A secondary index maps the values of one column to the primary keys of
+ * the rows holding them. Equality indexes are hash based; range indexes
+ * are sorted and can also answer equality lookups. Indexes are kept up to
+ * date by {@link #insertRow}, {@link #updateRow} and {@link #deleteRow}, so
+ * rows must not be modified in place by callers. Callers must synchronize
+ * on the table.
+ */
 public class MemoryTable {
 
+    /**
+     * The index of a single column
+     */
+    static class ColumnIndex {
+        final boolean sorted;
+        final Map<Object,Set<Object>> keysByValue;
+        final Set<Object> nullKeys = new HashSet<Object>();
+        /**
+         * Cleared if a sorted index was given values that cannot be compared
+         * with each other. Such values are left out of the index, so lookups
+         * have to scan the table instead.
+         */
+        boolean ordered = true;
+
+        ColumnIndex(boolean sorted) {
+            this.sorted = sorted;
+            if (sorted)
+                keysByValue = new TreeMap<Object,Set<Object>>();
+            else
+                keysByValue = new HashMap<Object,Set<Object>>();
+        }
+
+        void add(Object value, Object key) {
+            if (value == null) {
+                nullKeys.add(key);
+                return;
+            }
+            Set<Object> keys;
+            try {
+                keys = keysByValue.get(value);
+            } catch (ClassCastException e) {
+                ordered = false;
+                return;
+            }
+            if (keys == null) {
+                keys = new HashSet<Object>();
+                keysByValue.put(value, keys);
+            }
+            keys.add(key);
+        }
+
+        void remove(Object value, Object key) {
+            if (value == null) {
+                nullKeys.remove(key);
+                return;
+            }
+            Set<Object> keys;
+            try {
+                keys = keysByValue.get(value);
+            } catch (ClassCastException e) {
+                return;
+            }
+            if (keys != null) {
+                keys.remove(key);
+                if (keys.isEmpty())
+                    keysByValue.remove(value);
+            }
+        }
+    }
+
     private String tableName;
     private Map<Object,Map<String,Object>> rowMap;
+    private Map<String,ColumnIndex> indexMap;
     private int nextId;
     
     MemoryTable(String tableName) {
         this.tableName = tableName;
         rowMap = new TreeMap<Object,Map<String,Object>>();
+        indexMap = new HashMap<String,ColumnIndex>();
         nextId = 0;
     }
     
@@ -54,19 +132,148 @@ public class MemoryTable {
         Map<String,Object> row = new HashMap<String, Object>();
         row.put("id", key);
         rowMap.put(key, row);
+        indexRow(key, row);
         return row;
     }
     
     void insertRow(Object key, Map<String,Object> rowValues) {
         assert(key != null);
-        rowMap.put(key, rowValues);
+        Map<String,Object> oldRow = rowMap.put(key, rowValues);
+        if (oldRow != null)
+            unindexRow(key, oldRow);
+        indexRow(key, rowValues);
+    }
+    
+    /**
+     * Set the given column values in the row with the given key, creating
+     * the row if it does not exist yet
+     */
+    void updateRow(Object key, Map<String,Object> values) {
+        Map<String,Object> row = rowMap.get(key);
+        if (row == null)
+            row = newRow(key);
+        for (Map.Entry<String,Object> entry: values.entrySet()) {
+            ColumnIndex index = indexMap.get(entry.getKey());
+            if (index != null) {
+                index.remove(row.get(entry.getKey()), key);
+                index.add(entry.getValue(), key);
+            }
+            row.put(entry.getKey(), entry.getValue());
+        }
     }
     
     void deleteRow(Object rowKey) {
-        rowMap.remove(rowKey);
+        Map<String,Object> row = rowMap.remove(rowKey);
+        if (row != null)
+            unindexRow(rowKey, row);
     }
     
     Integer getNextId() {
         return new Integer(++nextId);
     }
+    
+    /**
+     * Create or drop the index of a column. Existing rows are (re)indexed.
+     * @param sorted whether the index must support range lookups
+     */
+    void setColumnIndex(String columnName, boolean indexed, boolean sorted) {
+        if (!indexed) {
+            indexMap.remove(columnName);
+            return;
+        }
+        ColumnIndex index = indexMap.get(columnName);
+        if (index != null && index.sorted == sorted)
+            return;
+        index = new ColumnIndex(sorted);
+        for (Map.Entry<Object,Map<String,Object>> entry: rowMap.entrySet()) {
+            index.add(entry.getValue().get(columnName), entry.getKey());
+        }
+        indexMap.put(columnName, index);
+    }
+    
+    /**
+     * Look up the rows whose column equals the given value using the
+     * column's index
+     * @return the matching rows, or null if the column has no usable index
+     */
+    List<Map<String,Object>> findEqual(String columnName, Object value) {
+        ColumnIndex index = indexMap.get(columnName);
+        if (index == null || !index.ordered)
+            return null;
+        Set<Object> keys;
+        if (value == null) {
+            keys = index.nullKeys;
+        } else {
+            try {
+                keys = index.keysByValue.get(value);
+            } catch (ClassCastException e) {
+                keys = null;
+            }
+        }
+        return getRows(keys);
+    }
+    
+    /**
+     * Look up the rows whose non-null column value lies in the given range
+     * using the column's index. A null bound leaves that end of the range
+     * open.
+     * @return the matching rows in column order, or null if the column has
+     * no usable sorted index or the bounds cannot be compared with its values
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    List<Map<String,Object>> findRange(String columnName,
+            Object startValue, boolean startInclusive,
+            Object endValue, boolean endInclusive) {
+        ColumnIndex index = indexMap.get(columnName);
+        if (index == null || !index.sorted || !index.ordered)
+            return null;
+        NavigableMap<Object,Set<Object>> values =
+                (NavigableMap<Object,Set<Object>>) index.keysByValue;
+        try {
+            if (startValue != null && endValue != null) {
+                if (((Comparable)startValue).compareTo(endValue) > 0)
+                    return new ArrayList<Map<String,Object>>();
+                values = values.subMap(startValue, startInclusive,
+                                       endValue, endInclusive);
+            } else if (startValue != null) {
+                values = values.tailMap(startValue, startInclusive);
+            } else if (endValue != null) {
+                values = values.headMap(endValue, endInclusive);
+            }
+            List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
+            for (Set<Object> keys: values.values()) {
+                for (Object key: keys) {
+                    result.add(rowMap.get(key));
+                }
+            }
+            return result;
+        } catch (ClassCastException e) {
+            return null;
+        } catch (IllegalArgumentException e) {
+            // equal bounds that are not both inclusive
+            return new ArrayList<Map<String,Object>>();
+        }
+    }
+    
+    private List<Map<String,Object>> getRows(Set<Object> keys) {
+        List<Map<String,Object>> result = new ArrayList<Map<String,Object>>();
+        if (keys != null) {
+            for (Object key: keys) {
+                result.add(rowMap.get(key));
+            }
+        }
+        return result;
+    }
+    
+    private void indexRow(Object key, Map<String,Object> row) {
+        for (Map.Entry<String,ColumnIndex> entry: indexMap.entrySet()) {
+            entry.getValue().add(row.get(entry.getKey()), key);
+        }
+    }
+    
+    private void unindexRow(Object key, Map<String,Object> row) {
+        for (Map.Entry<String,ColumnIndex> entry: indexMap.entrySet()) {
+            entry.getValue().remove(row.get(entry.getKey()), key);
+        }
+    }
 }
@@ -211,7 +211,14 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
             return (startValue == endValue) && startInclusive && endInclusive;
         }
         
+        private boolean isPrimaryKeyLookup() {
+            return isEqualityRange() && (startValue != null) &&
+                    columnName.equals(storageSource.getTablePrimaryKeyName(tableName));
+        }
+        
         public boolean canExecuteEfficiently() {
+            if (isPrimaryKeyLookup())
+                return true;
             ColumnIndexMode indexMode = storageSource.getColumnIndexMode(tableName, columnName);
             switch (indexMode) {
             case NOT_INDEXED:
@@ -226,7 +233,19 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
 
         public List<Map<String,Object>> execute(String columnNameList[]) {
             List<Map<String,Object>> rowList;
-            if (isEqualityRange())
+            if (isPrimaryKeyLookup()) {
+                rowList = new ArrayList<Map<String,Object>>();
+                Map<String,Object> row;
+                try {
+                    row = storageSource.getRow(tableName, columnNameList, startValue);
+                } catch (ClassCastException e) {
+                    // value of a different type than the keys
+                    return storageSource.executeEqualityQuery(tableName,
+                            columnNameList, columnName, startValue);
+                }
+                if (row != null)
+                    rowList.add(row);
+            } else if (isEqualityRange())
                 rowList = storageSource.executeEqualityQuery(tableName, columnNameList, columnName, startValue);
             else
                 rowList = storageSource.executeRangeQuery(tableName, columnNameList, columnName,
@@ -389,6 +408,9 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
         }
 
         public boolean canExecuteEfficiently() {
+            // The complement of an index lookup needs a scan anyway
+            if (negated)
+                return false;
             if (operator == CompoundPredicate.Operator.AND) {
                 for (NoSqlPredicate predicate: predicateList) {
                     if (predicate.canExecuteEfficiently()) {
@@ -527,19 +549,29 @@ public abstract class NoSqlStorageSource extends AbstractStorageSource {
             if (inefficientPredicates.isEmpty())
                 return combinedRowList;
 
+            // Only AND predicates can have inefficient children here, so the
+            // rows fetched through the indexes must match all of them
             List<Map<String,Object>> filteredRowList = new ArrayList<Map<String,Object>>();
             for (Map<String,Object> row: combinedRowList) {
+                boolean matches = true;
                 for (NoSqlPredicate predicate: inefficientPredicates) {
-                    if (predicate.matchesRow(row)) {
-                        filteredRowList.add(row);
+                    if (!predicate.matchesRow(row)) {
+                        matches = false;
+                        break;
                     }
                 }
+                if (matches)
+                    filteredRowList.add(row);
             }
 
             return filteredRowList;
         }
 
         public boolean matchesRow(Map<String,Object> row) {
+            return matchesRowIgnoringNegation(row) != negated;
+        }
+        
+        private boolean matchesRowIgnoringNegation(Map<String,Object> row) {
             if (operator == CompoundPredicate.Operator.AND) {
                 for (NoSqlPredicate predicate : predicateList) {
                     if (!predicate.matchesRow(row))  {
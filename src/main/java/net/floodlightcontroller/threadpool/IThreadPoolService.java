@@ -28,4 +28,15 @@ public interface IThreadPoolService extends IFloodlightService {
      * @return
      */
     public ScheduledExecutorService getScheduledExecutor();
+
+    /**
+     * Get a scheduled executor of its own for a group of related tasks, so
+     * that they are not delayed by the tasks of other modules. The executor
+     * is created on first use with the number of threads configured as
+     * &lt;name&gt;-threads for the ThreadPool module, one by default.
+     * Executors export their load through the debug counter service.
+     * @param name the name of the executor
+     * @return the executor; the same one for every call with the same name
+     */
+    public ScheduledExecutorService getScheduledExecutor(String name);
 }
@@ -0,0 +1,148 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.threadpool;
+
+import java.util.concurrent.Delayed;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
+
+/**
+ * A scheduled executor that exports how well it keeps up through debug
+ * counters: the number of tasks run and rejected, the total time tasks
+ * waited past their scheduled time and spent running, a sample of the queue
+ * depth, and the number of {@link net.floodlightcontroller.core.util.SingletonTask}
+ * runs that were due again before they finished.
+ */
+public class InstrumentedScheduledExecutor extends ScheduledThreadPoolExecutor {
+    private final String name;
+    private final ThreadLocal<Long> runStart = new ThreadLocal<Long>();
+
+    private volatile IDebugCounter ctrTasks;
+    private volatile IDebugCounter ctrRejected;
+    private volatile IDebugCounter ctrLatency;
+    private volatile IDebugCounter ctrRunTime;
+    private volatile IDebugCounter ctrQueueDepth;
+    private volatile IDebugCounter ctrOverruns;
+
+    private static class CountingRejectionHandler
+            implements RejectedExecutionHandler {
+        InstrumentedScheduledExecutor executor;
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor e) {
+            IDebugCounter c = (executor == null) ? null : executor.ctrRejected;
+            if (c != null)
+                c.increment();
+            throw new RejectedExecutionException("Task " + r +
+                                                 " rejected from " + e);
+        }
+    }
+
+    public InstrumentedScheduledExecutor(String name, int corePoolSize,
+                                         ThreadFactory threadFactory) {
+        this(name, corePoolSize, threadFactory, new CountingRejectionHandler());
+    }
+
+    private InstrumentedScheduledExecutor(String name, int corePoolSize,
+                                          ThreadFactory threadFactory,
+                                          CountingRejectionHandler handler) {
+        super(corePoolSize, threadFactory, handler);
+        this.name = name;
+        handler.executor = this;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Export the counters of this executor under the given module, in a
+     * hierarchy named after the executor
+     */
+    public void registerCounters(IDebugCounterService debugCounterService,
+                                 String moduleName) {
+        debugCounterService.registerCounter(moduleName, name,
+                "Counters of the " + name + " executor");
+        ctrTasks = debugCounterService.registerCounter(moduleName,
+                name + "/tasks-run", "Tasks run by the executor");
+        ctrRejected = debugCounterService.registerCounter(moduleName,
+                name + "/tasks-rejected", "Tasks the executor refused to accept",
+                MetaData.ERROR);
+        ctrLatency = debugCounterService.registerCounter(moduleName,
+                name + "/task-latency-us",
+                "Total time tasks waited past their scheduled time, " +
+                "in microseconds");
+        ctrRunTime = debugCounterService.registerCounter(moduleName,
+                name + "/task-run-time-us",
+                "Total time spent running tasks, in microseconds");
+        ctrQueueDepth = debugCounterService.registerCounter(moduleName,
+                name + "/queue-depth",
+                "Tasks queued or scheduled when the last task finished");
+        ctrOverruns = debugCounterService.registerCounter(moduleName,
+                name + "/singleton-task-overruns",
+                "Singleton task runs that were due again before they " +
+                "finished", MetaData.WARN);
+    }
+
+    /**
+     * Record that a periodic task ran past the time of its next run
+     */
+    public void recordOverrun() {
+        IDebugCounter c = ctrOverruns;
+        if (c != null)
+            c.increment();
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        super.beforeExecute(t, r);
+        IDebugCounter c = ctrLatency;
+        if (c != null && r instanceof Delayed) {
+            // the delay of a task that is due is zero or negative
+            long late = -((Delayed) r).getDelay(TimeUnit.MICROSECONDS);
+            if (late > 0)
+                c.add(late);
+        }
+        runStart.set(System.nanoTime());
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        super.afterExecute(r, t);
+        Long start = runStart.get();
+        IDebugCounter c = ctrRunTime;
+        if (c != null && start != null) {
+            c.add(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - start));
+        }
+        c = ctrTasks;
+        if (c != null)
+            c.increment();
+        c = ctrQueueDepth;
+        if (c != null) {
+            c.reset();
+            c.add(getQueue().size());
+        }
+    }
+}
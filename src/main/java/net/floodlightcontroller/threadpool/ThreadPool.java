@@ -20,31 +20,101 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.ThreadFactory;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
 import net.floodlightcontroller.core.module.IFloodlightModule;
 import net.floodlightcontroller.core.module.IFloodlightService;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
 
 public class ThreadPool implements IThreadPoolService, IFloodlightModule {
-    protected ScheduledExecutorService executor = null;
-    
+    protected static Logger log = LoggerFactory.getLogger(ThreadPool.class);
+
+    public static final String DEFAULT_EXECUTOR = "default";
+    public static final int DEFAULT_EXECUTOR_THREADS = 5;
+    public static final int NAMED_EXECUTOR_THREADS = 1;
+    public static final String PACKAGE = ThreadPool.class.getPackage().getName();
+
+    protected InstrumentedScheduledExecutor executor = null;
+    protected final ConcurrentMap<String, InstrumentedScheduledExecutor> executors =
+            new ConcurrentHashMap<String, InstrumentedScheduledExecutor>();
+    protected Map<String, String> configParams = new HashMap<String, String>();
+    protected IDebugCounterService debugCounterService;
+
     // IThreadPoolService
 
     @Override
     public ScheduledExecutorService getScheduledExecutor() {
         return executor;
     }
-    
+
+    @Override
+    public synchronized ScheduledExecutorService getScheduledExecutor(String name) {
+        if (DEFAULT_EXECUTOR.equals(name))
+            return executor;
+        InstrumentedScheduledExecutor e = executors.get(name);
+        if (e == null) {
+            e = createExecutor(name, "Scheduled-" + name + "-",
+                               getPoolSize(name, NAMED_EXECUTOR_THREADS));
+            executors.put(name, e);
+        }
+        return e;
+    }
+
+    /**
+     * @return the number of threads configured for an executor as
+     * &lt;name&gt;-threads, or the given default
+     */
+    protected int getPoolSize(String name, int defaultSize) {
+        String tmp = configParams.get(name + "-threads");
+        if (tmp == null)
+            return defaultSize;
+        try {
+            int size = Integer.parseInt(tmp.trim());
+            if (size > 0)
+                return size;
+        } catch (NumberFormatException e) {
+            // fall through
+        }
+        log.warn("Invalid thread count {} for executor {}; using {}",
+                 new Object[] { tmp, name, defaultSize });
+        return defaultSize;
+    }
+
+    protected InstrumentedScheduledExecutor createExecutor(String name,
+                                                           final String threadPrefix,
+                                                           int poolSize) {
+        final ThreadGroup tg = new ThreadGroup("Scheduled Task Threads");
+        ThreadFactory f = new ThreadFactory() {
+            AtomicInteger id = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable runnable) {
+                return new Thread(tg, runnable,
+                                  threadPrefix + id.getAndIncrement());
+            }
+        };
+        InstrumentedScheduledExecutor e =
+                new InstrumentedScheduledExecutor(name, poolSize, f);
+        if (debugCounterService != null)
+            e.registerCounters(debugCounterService, PACKAGE);
+        log.debug("Created executor {} with {} threads", name, poolSize);
+        return e;
+    }
+
     // IFloodlightModule
-    
+
     @Override
     public Collection<Class<? extends IFloodlightService>> getModuleServices() {
-        Collection<Class<? extends IFloodlightService>> l = 
+        Collection<Class<? extends IFloodlightService>> l =
                 new ArrayList<Class<? extends IFloodlightService>>();
         l.add(IThreadPoolService.class);
         return l;
@@ -54,7 +124,7 @@ public class ThreadPool implements IThreadPoolService, IFloodlightModule {
     public Map<Class<? extends IFloodlightService>, IFloodlightService>
             getServiceImpls() {
         Map<Class<? extends IFloodlightService>,
-            IFloodlightService> m = 
+            IFloodlightService> m =
                 new HashMap<Class<? extends IFloodlightService>,
                     IFloodlightService>();
         m.put(IThreadPoolService.class, this);
@@ -65,24 +135,22 @@ public class ThreadPool implements IThreadPoolService, IFloodlightModule {
     @Override
     public Collection<Class<? extends IFloodlightService>>
             getModuleDependencies() {
-        // No dependencies
-        return null;
+        Collection<Class<? extends IFloodlightService>> l =
+                new ArrayList<Class<? extends IFloodlightService>>();
+        l.add(IDebugCounterService.class);
+        return l;
     }
 
     @Override
     public void init(FloodlightModuleContext context)
                                  throws FloodlightModuleException {
-        final ThreadGroup tg = new ThreadGroup("Scheduled Task Threads");
-        ThreadFactory f = new ThreadFactory() {
-            AtomicInteger id = new AtomicInteger();
-            
-            @Override
-            public Thread newThread(Runnable runnable) {
-                return new Thread(tg, runnable, 
-                                  "Scheduled-" + id.getAndIncrement());
-            }
-        };
-        executor = Executors.newScheduledThreadPool(5, f);
+        configParams = context.getConfigParams(this);
+        debugCounterService = context.getServiceImpl(IDebugCounterService.class);
+        // the standalone sync client runs us without a debug counter service
+        if (debugCounterService != null)
+            debugCounterService.registerModule(PACKAGE);
+        executor = createExecutor(DEFAULT_EXECUTOR, "Scheduled-",
+                getPoolSize(DEFAULT_EXECUTOR, DEFAULT_EXECUTOR_THREADS));
     }
 
     @Override
@@ -0,0 +1,208 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.topology;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+/**
+ * A queue of link discovery updates that keeps only the latest update for
+ * each link, switch, port or tunnel port. An update replaces the pending
+ * update for the same element and moves to the back of the queue, so the
+ * surviving updates are applied in the order of their last change.
+ * The queue also remembers which links and tunnel ports were added since
+ * it was last drained, so a removal that only cancels such an add can be
+ * told apart from the removal of an element that existed before.
+ */
+public class LDUpdateQueue {
+    /** What an update is about */
+    private enum Kind {
+        LINK, SWITCH, PORT, TUNNEL_PORT
+    }
+
+    private static class Key {
+        private final Kind kind;
+        private final DatapathId src;
+        private final OFPort srcPort;
+        private final DatapathId dst;
+        private final OFPort dstPort;
+
+        Key(LDUpdate update) {
+            switch (update.getOperation()) {
+                case LINK_UPDATED:
+                case LINK_REMOVED:
+                    kind = Kind.LINK;
+                    src = update.getSrc();
+                    srcPort = update.getSrcPort();
+                    dst = update.getDst();
+                    dstPort = update.getDstPort();
+                    return;
+                case SWITCH_UPDATED:
+                case SWITCH_REMOVED:
+                    kind = Kind.SWITCH;
+                    src = update.getSrc();
+                    srcPort = null;
+                    break;
+                case TUNNEL_PORT_ADDED:
+                case TUNNEL_PORT_REMOVED:
+                    kind = Kind.TUNNEL_PORT;
+                    src = update.getSrc();
+                    srcPort = update.getSrcPort();
+                    break;
+                default:
+                    kind = Kind.PORT;
+                    src = update.getSrc();
+                    srcPort = update.getSrcPort();
+                    break;
+            }
+            dst = null;
+            dstPort = null;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = kind.hashCode();
+            result = prime * result + ((src == null) ? 0 : src.hashCode());
+            result = prime * result + ((srcPort == null) ? 0 : srcPort.hashCode());
+            result = prime * result + ((dst == null) ? 0 : dst.hashCode());
+            result = prime * result + ((dstPort == null) ? 0 : dstPort.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) return true;
+            if (!(obj instanceof Key)) return false;
+            Key other = (Key) obj;
+            return kind == other.kind &&
+                    equal(src, other.src) && equal(srcPort, other.srcPort) &&
+                    equal(dst, other.dst) && equal(dstPort, other.dstPort);
+        }
+
+        private static boolean equal(Object a, Object b) {
+            return (a == null) ? b == null : a.equals(b);
+        }
+    }
+
+    private final LinkedHashMap<Key, LDUpdate> pending =
+            new LinkedHashMap<Key, LDUpdate>();
+    // links and tunnel ports added since the last drain
+    private final Set<Key> added = new HashSet<Key>();
+    private long firstUpdateTime;
+    private long lastUpdateTime;
+
+    /**
+     * Queue an update
+     * @return true if the update replaced a pending update
+     */
+    public synchronized boolean add(LDUpdate update) {
+        long now = System.currentTimeMillis();
+        if (pending.isEmpty())
+            firstUpdateTime = now;
+        lastUpdateTime = now;
+        Key key = new Key(update);
+        switch (update.getOperation()) {
+            case LINK_UPDATED:
+            case TUNNEL_PORT_ADDED:
+                added.add(key);
+                break;
+            default:
+                break;
+        }
+        // remove first so the update moves to the back of the queue
+        boolean merged = (pending.remove(key) != null);
+        pending.put(key, update);
+        return merged;
+    }
+
+    public synchronized boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    public synchronized int size() {
+        return pending.size();
+    }
+
+    /**
+     * Check whether the pending updates should be applied now
+     * @param now the current time in milliseconds
+     * @param debounceMs how long no update must have been queued
+     * @param maxDelayMs how long the oldest pending update may wait for
+     * the updates to settle
+     * @return true if there are pending updates and either no update was
+     * queued for debounceMs or the oldest update waited for maxDelayMs
+     */
+    public synchronized boolean isSettled(long now, long debounceMs,
+                                          long maxDelayMs) {
+        if (pending.isEmpty())
+            return false;
+        return (now - lastUpdateTime >= debounceMs) ||
+                (now - firstUpdateTime >= maxDelayMs);
+    }
+
+    /**
+     * Get the time at which the pending updates settle
+     * @param debounceMs how long no update must have been queued
+     * @param maxDelayMs how long the oldest pending update may wait for
+     * the updates to settle
+     * @return the time in milliseconds at which {@link #isSettled} becomes
+     * true, or Long.MAX_VALUE if there are no pending updates
+     */
+    public synchronized long getSettleTime(long debounceMs, long maxDelayMs) {
+        if (pending.isEmpty())
+            return Long.MAX_VALUE;
+        return Math.min(lastUpdateTime + debounceMs,
+                        firstUpdateTime + maxDelayMs);
+    }
+
+    /**
+     * Remove all pending updates
+     * @param removedAfterAdd receives the pending removals of links and
+     * tunnel ports that were also added since the last drain
+     * @return the updates in the order they should be applied
+     */
+    public synchronized List<LDUpdate> drain(Set<LDUpdate> removedAfterAdd) {
+        List<LDUpdate> updates = new ArrayList<LDUpdate>(pending.size());
+        for (Map.Entry<Key, LDUpdate> e : pending.entrySet()) {
+            LDUpdate update = e.getValue();
+            if (added.contains(e.getKey())) {
+                switch (update.getOperation()) {
+                    case LINK_REMOVED:
+                    case TUNNEL_PORT_REMOVED:
+                        removedAfterAdd.add(update);
+                        break;
+                    default:
+                        break;
+                }
+            }
+            updates.add(update);
+        }
+        pending.clear();
+        added.clear();
+        return updates;
+    }
+}
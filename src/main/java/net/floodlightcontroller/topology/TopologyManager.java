@@ -25,8 +25,6 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
@@ -90,6 +88,8 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	protected static Logger log = LoggerFactory.getLogger(TopologyManager.class);
 
 	public static final String MODULE_NAME = "topology";
+	/** Name of the executor computing topology instances */
+	public static final String EXECUTOR_NAME = MODULE_NAME;
 
 	public static final String CONTEXT_TUNNEL_ENABLED =
 			"com.bigswitch.floodlight.topologymanager.tunnelEnabled";
@@ -134,7 +134,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	// Modules that listen to our updates
 	protected ArrayList<ITopologyListener> topologyAware;
 
-	protected BlockingQueue<LDUpdate> ldUpdates;
+	protected LDUpdateQueue ldUpdates;
 
 	// These must be accessed using getCurrentInstance(), not directly
 	protected TopologyInstance currentInstance;
@@ -159,6 +159,13 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	protected boolean tunnelPortsUpdated;
 
 	protected int TOPOLOGY_COMPUTE_INTERVAL_MS = 500;
+	/**
+	 * Link discovery updates are applied once none arrived for this long,
+	 * or once the oldest pending update waited for
+	 * TOPOLOGY_UPDATE_MAX_DELAY_MS
+	 */
+	protected int TOPOLOGY_UPDATE_DEBOUNCE_MS = 100;
+	protected int TOPOLOGY_UPDATE_MAX_DELAY_MS = 2000;
 
 	private IHAListener haListener;
 
@@ -167,6 +174,9 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 	 */
 	protected static final String PACKAGE = TopologyManager.class.getPackage().getName();
 	protected IDebugCounter ctrIncoming;
+	protected IDebugCounter ctrUpdatesMerged;
+	protected IDebugCounter ctrUpdatesApplied;
+	protected IDebugCounter ctrUpdateBatches;
 
 	/**
 	 * Debug Events
@@ -264,6 +274,16 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		TOPOLOGY_COMPUTE_INTERVAL_MS = time_ms;
 	}
 
+	/**
+	 * Set how long link discovery updates must stop arriving before they
+	 * are applied, and how long the oldest pending update may wait for
+	 * that. The times are in milliseconds.
+	 */
+	public void setTopologyUpdateDebounce(int debounce_ms, int max_delay_ms) {
+		TOPOLOGY_UPDATE_DEBOUNCE_MS = debounce_ms;
+		TOPOLOGY_UPDATE_MAX_DELAY_MS = max_delay_ms;
+	}
+
 	/**
 	 * Thread for recomputing topology.  The thread is always running,
 	 * however the function applyUpdates() has a blocking call.
@@ -277,7 +297,9 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		@Override
 		public void run() {
 			try {
-				if (ldUpdates.peek() != null)
+				if (ldUpdates.isSettled(System.currentTimeMillis(),
+						TOPOLOGY_UPDATE_DEBOUNCE_MS,
+						TOPOLOGY_UPDATE_MAX_DELAY_MS))
 					updateTopology();
 				handleMiscellaneousPeriodicEvents();
 			}
@@ -285,12 +307,36 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 				log.error("Error in topology instance task thread", e);
 			} finally {
 				if (floodlightProviderService.getRole() != HARole.STANDBY)
-					newInstanceTask.reschedule(TOPOLOGY_COMPUTE_INTERVAL_MS,
+					newInstanceTask.reschedule(getNextRunDelay(),
 							TimeUnit.MILLISECONDS);
 			}
 		}
 	}
 
+	/**
+	 * Get the delay until the next run of the topology worker: the
+	 * periodic interval, or less if the pending link discovery updates
+	 * settle before that.
+	 */
+	protected long getNextRunDelay() {
+		long settleTime = ldUpdates.getSettleTime(TOPOLOGY_UPDATE_DEBOUNCE_MS,
+				TOPOLOGY_UPDATE_MAX_DELAY_MS);
+		long delay = settleTime - System.currentTimeMillis();
+		return Math.max(0, Math.min(TOPOLOGY_COMPUTE_INTERVAL_MS, delay));
+	}
+
+	/**
+	 * Run the topology worker once the first update of a new batch
+	 * settles, rather than on its next periodic run. Later updates of
+	 * the batch are covered by the worker rescheduling itself.
+	 */
+	private void scheduleUpdates() {
+		if (newInstanceTask != null &&
+				floodlightProviderService.getRole() != HARole.STANDBY)
+			newInstanceTask.reschedule(TOPOLOGY_UPDATE_DEBOUNCE_MS,
+					TimeUnit.MILLISECONDS);
+	}
+
 	// To be used for adding any periodic events that's required by topology.
 	protected void handleMiscellaneousPeriodicEvents() {
 		return;
@@ -302,6 +348,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		dtLinksUpdated = false;
 		tunnelPortsUpdated = false;
 		List<LDUpdate> appliedUpdates = applyUpdates();
+		ctrUpdateBatches.increment();
 		newInstanceFlag = createNewInstance("link-discovery-updates");
 		lastUpdateTime = new Date();
 		informListeners(appliedUpdates);
@@ -316,7 +363,16 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		if (log.isTraceEnabled()) {
 			log.trace("Queuing update: {}", updateList);
 		}
-		ldUpdates.addAll(updateList);
+		boolean newBatch;
+		synchronized (ldUpdates) {
+			newBatch = ldUpdates.isEmpty();
+			for (LDUpdate update : updateList) {
+				if (ldUpdates.add(update))
+					ctrUpdatesMerged.increment();
+			}
+		}
+		if (newBatch)
+			scheduleUpdates();
 	}
 
 	@Override
@@ -324,7 +380,14 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		if (log.isTraceEnabled()) {
 			log.trace("Queuing update: {}", update);
 		}
-		ldUpdates.add(update);
+		boolean newBatch;
+		synchronized (ldUpdates) {
+			newBatch = ldUpdates.isEmpty();
+			if (ldUpdates.add(update))
+				ctrUpdatesMerged.increment();
+		}
+		if (newBatch)
+			scheduleUpdates();
 	}
 
 	// ****************
@@ -856,7 +919,14 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		portBroadcastDomainLinks = new HashMap<NodePortTuple, Set<Link>>();
 		tunnelPorts = new HashSet<NodePortTuple>();
 		topologyAware = new ArrayList<ITopologyListener>();
-		ldUpdates = new LinkedBlockingQueue<LDUpdate>();
+		ldUpdates = new LDUpdateQueue();
+		Map<String, String> configParams = context.getConfigParams(this);
+		String debounce = configParams.get("update-debounce-ms");
+		if (debounce != null)
+			TOPOLOGY_UPDATE_DEBOUNCE_MS = Integer.parseInt(debounce);
+		String maxDelay = configParams.get("update-max-delay-ms");
+		if (maxDelay != null)
+			TOPOLOGY_UPDATE_MAX_DELAY_MS = Integer.parseInt(maxDelay);
 		haListener = new HAListenerDelegate();
 		registerTopologyDebugCounters();
 		registerTopologyDebugEvents();
@@ -881,7 +951,7 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		// Initialize role to floodlight provider role.
 		this.role = floodlightProviderService.getRole();
 
-		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor();
+		ScheduledExecutorService ses = threadPoolService.getScheduledExecutor(EXECUTOR_NAME);
 		newInstanceTask = new SingletonTask(ses, new UpdateTopologyWorker());
 
 		if (role != HARole.STANDBY)
@@ -902,6 +972,17 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 		ctrIncoming = debugCounterService.registerCounter(
 				PACKAGE, "incoming",
 				"All incoming packets seen by this module");
+		ctrUpdatesMerged = debugCounterService.registerCounter(
+				PACKAGE, "updates-merged",
+				"Link discovery updates superseded by a later update " +
+				"or dropped because they changed nothing");
+		ctrUpdatesApplied = debugCounterService.registerCounter(
+				PACKAGE, "updates-applied",
+				"Link discovery updates applied to the topology");
+		ctrUpdateBatches = debugCounterService.registerCounter(
+				PACKAGE, "update-batches",
+				"Batches of link discovery updates applied, each " +
+				"followed by a topology computation");
 	}
 
 	protected void addRestletRoutable() {
@@ -1111,13 +1192,8 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 			recommendation=LogMessageDoc.REPORT_CONTROLLER_BUG)
 	public List<LDUpdate> applyUpdates() {
 		List<LDUpdate> appliedUpdates = new ArrayList<LDUpdate>();
-		LDUpdate update = null;
-		while (ldUpdates.peek() != null) {
-			try {
-				update = ldUpdates.take();
-			} catch (Exception e) {
-				log.error("Error reading link discovery update.", e);
-			}
+		Set<LDUpdate> removedAfterAdd = new HashSet<LDUpdate>();
+		for (LDUpdate update : ldUpdates.drain(removedAfterAdd)) {
 			if (log.isTraceEnabled()) {
 				log.trace("Applying update: {}", update);
 			}
@@ -1129,6 +1205,13 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 						update.getType());
 				break;
 			case LINK_REMOVED:
+				// the link was added and removed again within the batch.
+				// Removals of other unknown links, e.g. ones already
+				// removed with their switch, are still passed on.
+				if (removedAfterAdd.contains(update) && !isKnownLink(update)) {
+					ctrUpdatesMerged.increment();
+					continue;
+				}
 				removeLink(update.getSrc(), update.getSrcPort(),
 						update.getDst(), update.getDstPort());
 				break;
@@ -1142,6 +1225,12 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 				addTunnelPort(update.getSrc(), update.getSrcPort());
 				break;
 			case TUNNEL_PORT_REMOVED:
+				if (removedAfterAdd.contains(update) &&
+						!tunnelPorts.contains(new NodePortTuple(update.getSrc(),
+						update.getSrcPort()))) {
+					ctrUpdatesMerged.increment();
+					continue;
+				}
 				removeTunnelPort(update.getSrc(), update.getSrcPort());
 				break;
 			case PORT_UP: case PORT_DOWN:
@@ -1150,9 +1239,24 @@ public class TopologyManager implements IFloodlightModule, ITopologyService, IRo
 			// Add to the list of applied updates.
 			appliedUpdates.add(update);
 		}
+		ctrUpdatesApplied.add(appliedUpdates.size());
 		return (Collections.unmodifiableList(appliedUpdates));
 	}
 
+	/**
+	 * Check whether a removed direct or multihop link is in the topology.
+	 * Tunnel links are tracked by subclasses, so they are always known.
+	 */
+	private boolean isKnownLink(LDUpdate update) {
+		if (update.getType() != LinkType.DIRECT_LINK &&
+				update.getType() != LinkType.MULTIHOP_LINK)
+			return true;
+		Set<Link> links = switchPortLinks.get(
+				new NodePortTuple(update.getSrc(), update.getSrcPort()));
+		return links != null && links.contains(new Link(update.getSrc(),
+				update.getSrcPort(), update.getDst(), update.getDstPort()));
+	}
+
 	protected void addOrUpdateSwitch(DatapathId sw) {
 		// nothing to do here for the time being.
 		return;
@@ -0,0 +1,238 @@
+package net.floodlightcontroller.util;
+
+import java.util.Arrays;
+
+/**
+ * A concurrent map from long keys to long values that stores both in
+ * primitive arrays, so an entry takes 16 bytes rather than a map entry and
+ * two boxed longs.  The map is split into segments, each an open-addressing
+ * table guarded by its own lock.
+ *
+ * {@link #NO_VALUE} cannot be stored; it is returned for a missing key.
+ */
+public class ConcurrentLongLongMap {
+    /**
+     * The value returned for a key that is not in the map
+     */
+    public static final long NO_VALUE = Long.MIN_VALUE;
+
+    private static final int SEGMENTS = 64;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Segment[] segments;
+
+    public ConcurrentLongLongMap() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment();
+    }
+
+    static int hash(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int)(h ^ (h >>> 32));
+    }
+
+    private Segment segmentFor(int hash) {
+        return segments[hash >>> 26];
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key or {@link #NO_VALUE} if there is none
+     */
+    public long get(long key) {
+        int h = hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    /**
+     * Set the value of a key
+     * @param key the key
+     * @param value the value
+     * @return the previous value or {@link #NO_VALUE} if there was none
+     */
+    public long put(long key, long value) {
+        checkValue(value);
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    /**
+     * Set the value of a key unless it already has one
+     * @param key the key
+     * @param value the value
+     * @return the current value or {@link #NO_VALUE} if the value was set
+     */
+    public long putIfAbsent(long key, long value) {
+        checkValue(value);
+        int h = hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    /**
+     * Remove a key
+     * @param key the key
+     * @return the removed value or {@link #NO_VALUE} if there was none
+     */
+    public long remove(long key) {
+        int h = hash(key);
+        return segmentFor(h).remove(key, h, NO_VALUE);
+    }
+
+    /**
+     * Remove a key only if it has the given value
+     * @param key the key
+     * @param value the value
+     * @return true if the key was removed
+     */
+    public boolean remove(long key, long value) {
+        checkValue(value);
+        int h = hash(key);
+        return segmentFor(h).remove(key, h, value) != NO_VALUE;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment s : segments)
+            size += s.size();
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment s : segments)
+            s.clear();
+    }
+
+    /**
+     * @return the values in the map, one segment at a time; the values of
+     * a segment are consistent, but the map may change between segments
+     */
+    public long[] values() {
+        long[][] parts = new long[SEGMENTS][];
+        int total = 0;
+        for (int i = 0; i < SEGMENTS; i++) {
+            parts[i] = segments[i].values();
+            total += parts[i].length;
+        }
+        long[] values = new long[total];
+        int n = 0;
+        for (long[] part : parts) {
+            System.arraycopy(part, 0, values, n, part.length);
+            n += part.length;
+        }
+        return values;
+    }
+
+    private static void checkValue(long value) {
+        if (value == NO_VALUE)
+            throw new IllegalArgumentException("Cannot store NO_VALUE");
+    }
+
+    /**
+     * A linear-probing table; a slot is free when its value is
+     * {@link ConcurrentLongLongMap#NO_VALUE}
+     */
+    private static class Segment {
+        private long[] keys;
+        private long[] values;
+        private int size;
+
+        Segment() {
+            allocate(MIN_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new long[capacity];
+            Arrays.fill(values, NO_VALUE);
+        }
+
+        private int slot(long key, int hash) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (values[i] != NO_VALUE && keys[i] != key)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        synchronized long get(long key, int hash) {
+            return values[slot(key, hash)];
+        }
+
+        synchronized long put(long key, int hash, long value,
+                              boolean onlyIfAbsent) {
+            int i = slot(key, hash);
+            long old = values[i];
+            if (old != NO_VALUE && onlyIfAbsent)
+                return old;
+            keys[i] = key;
+            values[i] = value;
+            if (old == NO_VALUE && ++size * 4 > keys.length * 3)
+                resize(keys.length * 2);
+            return old;
+        }
+
+        synchronized long remove(long key, int hash, long expected) {
+            int i = slot(key, hash);
+            long old = values[i];
+            if (old == NO_VALUE || (expected != NO_VALUE && old != expected))
+                return NO_VALUE;
+            values[i] = NO_VALUE;
+            size -= 1;
+            // shift back the entries that probed past the freed slot
+            int mask = keys.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == NO_VALUE)
+                    break;
+                int home = hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = NO_VALUE;
+                    i = j;
+                }
+            }
+            if (keys.length > MIN_CAPACITY && size * 8 < keys.length)
+                resize(keys.length / 2);
+            return old;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            long[] oldValues = values;
+            allocate(capacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != NO_VALUE) {
+                    int j = slot(oldKeys[i], hash(oldKeys[i]));
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            allocate(MIN_CAPACITY);
+            size = 0;
+        }
+
+        synchronized long[] values() {
+            long[] result = new long[size];
+            int n = 0;
+            for (long v : values) {
+                if (v != NO_VALUE)
+                    result[n++] = v;
+            }
+            return result;
+        }
+    }
+}
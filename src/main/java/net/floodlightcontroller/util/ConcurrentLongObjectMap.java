@@ -0,0 +1,243 @@
+package net.floodlightcontroller.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A concurrent map from long keys to objects that stores the keys in a
+ * primitive array, so a key costs 8 bytes rather than a map entry and a
+ * boxed long.  The map is split into segments, each an open-addressing
+ * table guarded by its own lock.  Null values cannot be stored.
+ *
+ * @param <V> the type of the values
+ * @see ConcurrentLongLongMap
+ */
+public class ConcurrentLongObjectMap<V> {
+    private static final int SEGMENTS = 64;
+    private static final int MIN_CAPACITY = 16;
+
+    private final Segment<V>[] segments;
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public ConcurrentLongObjectMap() {
+        segments = new Segment[SEGMENTS];
+        for (int i = 0; i < SEGMENTS; i++)
+            segments[i] = new Segment<V>();
+    }
+
+    private Segment<V> segmentFor(int hash) {
+        return segments[hash >>> 26];
+    }
+
+    /**
+     * @param key the key
+     * @return the value of the key or null if there is none
+     */
+    public V get(long key) {
+        int h = ConcurrentLongLongMap.hash(key);
+        return segmentFor(h).get(key, h);
+    }
+
+    /**
+     * Set the value of a key
+     * @param key the key
+     * @param value the value
+     * @return the previous value or null if there was none
+     */
+    public V put(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        int h = ConcurrentLongLongMap.hash(key);
+        return segmentFor(h).put(key, h, value, false);
+    }
+
+    /**
+     * Set the value of a key unless it already has one
+     * @param key the key
+     * @param value the value
+     * @return the current value or null if the value was set
+     */
+    public V putIfAbsent(long key, V value) {
+        if (value == null)
+            throw new NullPointerException();
+        int h = ConcurrentLongLongMap.hash(key);
+        return segmentFor(h).put(key, h, value, true);
+    }
+
+    /**
+     * Remove a key
+     * @param key the key
+     * @return the removed value or null if there was none
+     */
+    public V remove(long key) {
+        int h = ConcurrentLongLongMap.hash(key);
+        return segmentFor(h).remove(key, h, null);
+    }
+
+    /**
+     * Remove a key only if it has the given value
+     * @param key the key
+     * @param value the value
+     * @return true if the key was removed
+     */
+    public boolean remove(long key, V value) {
+        if (value == null)
+            return false;
+        int h = ConcurrentLongLongMap.hash(key);
+        return segmentFor(h).remove(key, h, value) != null;
+    }
+
+    /**
+     * Replace the value of a key only if it has the given value
+     * @param key the key
+     * @param oldValue the expected value
+     * @param newValue the new value
+     * @return true if the value was replaced
+     */
+    public boolean replace(long key, V oldValue, V newValue) {
+        if (oldValue == null || newValue == null)
+            throw new NullPointerException();
+        int h = ConcurrentLongLongMap.hash(key);
+        return segmentFor(h).replace(key, h, oldValue, newValue);
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment<V> s : segments)
+            size += s.size();
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size() == 0;
+    }
+
+    public void clear() {
+        for (Segment<V> s : segments)
+            s.clear();
+    }
+
+    /**
+     * @return the values in the map, one segment at a time; the values of
+     * a segment are consistent, but the map may change between segments
+     */
+    public List<V> values() {
+        List<V> values = new ArrayList<V>();
+        for (Segment<V> s : segments)
+            s.addValuesTo(values);
+        return values;
+    }
+
+    /**
+     * A linear-probing table; a slot is free when its value is null
+     */
+    private static class Segment<V> {
+        private long[] keys;
+        private Object[] values;
+        private int size;
+
+        Segment() {
+            allocate(MIN_CAPACITY);
+        }
+
+        private void allocate(int capacity) {
+            keys = new long[capacity];
+            values = new Object[capacity];
+        }
+
+        private int slot(long key, int hash) {
+            int mask = keys.length - 1;
+            int i = hash & mask;
+            while (values[i] != null && keys[i] != key)
+                i = (i + 1) & mask;
+            return i;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V get(long key, int hash) {
+            return (V)values[slot(key, hash)];
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V put(long key, int hash, V value,
+                           boolean onlyIfAbsent) {
+            int i = slot(key, hash);
+            V old = (V)values[i];
+            if (old != null && onlyIfAbsent)
+                return old;
+            keys[i] = key;
+            values[i] = value;
+            if (old == null && ++size * 4 > keys.length * 3)
+                resize(keys.length * 2);
+            return old;
+        }
+
+        synchronized boolean replace(long key, int hash, V oldValue,
+                                     V newValue) {
+            int i = slot(key, hash);
+            if (values[i] == null || !values[i].equals(oldValue))
+                return false;
+            values[i] = newValue;
+            return true;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized V remove(long key, int hash, V expected) {
+            int i = slot(key, hash);
+            V old = (V)values[i];
+            if (old == null || (expected != null && !old.equals(expected)))
+                return null;
+            values[i] = null;
+            size -= 1;
+            // shift back the entries that probed past the freed slot
+            int mask = keys.length - 1;
+            int j = i;
+            while (true) {
+                j = (j + 1) & mask;
+                if (values[j] == null)
+                    break;
+                int home = ConcurrentLongLongMap.hash(keys[j]) & mask;
+                if (((j - home) & mask) >= ((j - i) & mask)) {
+                    keys[i] = keys[j];
+                    values[i] = values[j];
+                    values[j] = null;
+                    i = j;
+                }
+            }
+            if (keys.length > MIN_CAPACITY && size * 8 < keys.length)
+                resize(keys.length / 2);
+            return old;
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            allocate(capacity);
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null) {
+                    int j = slot(oldKeys[i],
+                                 ConcurrentLongLongMap.hash(oldKeys[i]));
+                    keys[j] = oldKeys[i];
+                    values[j] = oldValues[i];
+                }
+            }
+        }
+
+        synchronized int size() {
+            return size;
+        }
+
+        synchronized void clear() {
+            allocate(MIN_CAPACITY);
+            size = 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        synchronized void addValuesTo(List<V> list) {
+            for (Object v : values) {
+                if (v != null)
+                    list.add((V)v);
+            }
+        }
+    }
+}
@@ -32,4 +32,34 @@ public class OFMatchWithSwDpid {
 		this.dpid = dpid;
 	}
 	
+	@Override
+	public int hashCode() {
+		final int prime = 31;
+		int result = 1;
+		result = prime * result + ((dpid == null) ? 0 : dpid.hashCode());
+		result = prime * result + ((match == null) ? 0 : match.hashCode());
+		return result;
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		if (this == obj)
+			return true;
+		if (obj == null)
+			return false;
+		if (getClass() != obj.getClass())
+			return false;
+		OFMatchWithSwDpid other = (OFMatchWithSwDpid) obj;
+		if (dpid == null) {
+			if (other.dpid != null)
+				return false;
+		} else if (!dpid.equals(other.dpid))
+			return false;
+		if (match == null) {
+			if (other.match != null)
+				return false;
+		} else if (!match.equals(other.match))
+			return false;
+		return true;
+	}
 }
@@ -21,73 +21,107 @@ import java.util.EnumSet;
 import java.util.Set;
 
 import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
 
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.projectfloodlight.openflow.protocol.OFMessage;
 import org.projectfloodlight.openflow.protocol.OFType;
 
 /**
  * Dampens OFMessages sent to an OF switch. A message is only written to 
- * a switch if the same message (as defined by .equals()) has not been written
- * in the last n milliseconds. Timer granularity is based on TimedCache
+ * a switch if the same message has not been written in the last n
+ * milliseconds.
+ * 
+ * Messages are identified by a 64-bit fingerprint of their wire encoding
+ * and of the switch they are written to, rather than by .equals() on the
+ * message. The fingerprints and the time they were last written are kept
+ * in an open-addressing table split into independently locked stripes, so
+ * a write doesn't allocate a cache entry and doesn't walk the match and
+ * action lists of the message twice.
+ * 
+ * The number of dampened and written messages and the time spent
+ * fingerprinting are kept per stripe, and are also exported through debug
+ * counters if the owner of the damper sets them.
+ * 
+ * We use the identity of the IOFSwitch object and /not/ the switch DPID.
+ * This way we are guaranteed to not dampen messages if a switch disconnects
+ * and then reconnects.
  * @author gregor
  *
  */
 public class OFMessageDamper {
+    /** Number of slots a fingerprint may be stored in */
+    protected static final int PROBE_LIMIT = 8;
+    protected static final int STRIPES = 16;
+
     /**
-     * An entry in the TimedCache. A cache entry consists of the sent message
-     * as well as the switch to which the message was sent. 
-     * 
-     * NOTE: We currently use the full OFMessage object. To save space, we 
-     * could use a cryptographic hash (e.g., SHA-1). However, this would 
-     * obviously be more time-consuming.... 
-     * 
-     * We also store a reference to the actual IOFSwitch object and /not/
-     * the switch DPID. This way we are guarnteed to not dampen messages if
-     * a switch disconnects and then reconnects.
-     * 
-     * @author gregor
+     * A part of the table. Empty slots have a fingerprint of 0.
      */
-    protected static class DamperEntry {
-        OFMessage msg;
-        IOFSwitch sw;
-        public DamperEntry(OFMessage msg, IOFSwitch sw) {
-            super();
-            this.msg = msg;
-            this.sw = sw;
+    private static class Stripe {
+        final long[] fingerprints;
+        final long[] writeTimes;
+        final int mask;
+        long dampened;
+        long written;
+        long fingerprintNanos;
+
+        Stripe(int size) {
+            fingerprints = new long[size];
+            writeTimes = new long[size];
+            mask = size - 1;
         }
-        /* (non-Javadoc)
-         * @see java.lang.Object#hashCode()
+
+        /**
+         * Record a write of the message with the given fingerprint
+         * @return true if the message was written less than timeout ms ago
          */
-        @Override
-        public int hashCode() {
-            final int prime = 31;
-            int result = 1;
-            result = prime * result + ((msg == null) ? 0 : msg.hashCode());
-            result = prime * result + ((sw == null) ? 0 : sw.hashCode());
-            return result;
+        synchronized boolean update(long fp, long now, long timeout,
+                                    long nanos) {
+            fingerprintNanos += nanos;
+            int start = (int) (fp >>> 32) & mask;
+            int victim = -1;
+            long victimTime = Long.MAX_VALUE;
+            for (int i = 0; i < PROBE_LIMIT; i++) {
+                int slot = (start + i) & mask;
+                long cur = fingerprints[slot];
+                if (cur == fp) {
+                    if (now - writeTimes[slot] > timeout) {
+                        writeTimes[slot] = now;
+                        written++;
+                        return false;
+                    }
+                    dampened++;
+                    return true;
+                }
+                // reuse the empty or least recently written slot
+                long t = (cur == 0) ? Long.MIN_VALUE : writeTimes[slot];
+                if (t < victimTime) {
+                    victim = slot;
+                    victimTime = t;
+                }
+            }
+            fingerprints[victim] = fp;
+            writeTimes[victim] = now;
+            written++;
+            return false;
         }
-        /* (non-Javadoc)
-         * @see java.lang.Object#equals(java.lang.Object)
-         */
+    }
+
+    private static final ThreadLocal<ChannelBuffer> encodeBuffer =
+            new ThreadLocal<ChannelBuffer>() {
         @Override
-        public boolean equals(Object obj) {
-            if (this == obj) return true;
-            if (obj == null) return false;
-            if (getClass() != obj.getClass()) return false;
-            DamperEntry other = (DamperEntry) obj;
-            if (msg == null) {
-                if (other.msg != null) return false;
-            } else if (!msg.equals(other.msg)) return false;
-            if (sw == null) {
-                if (other.sw != null) return false;
-            } else if (!sw.equals(other.sw)) return false;
-            return true;
+        protected ChannelBuffer initialValue() {
+            return ChannelBuffers.dynamicBuffer(512);
         }
-        
-      
-    }
-    TimedCache<DamperEntry> cache;
+    };
+
+    private final Stripe[] stripes;
+    private final long timeout;
     EnumSet<OFType> msgTypesToCache;
+    private volatile IDebugCounter ctrDampened;
+    private volatile IDebugCounter ctrWritten;
+    private volatile IDebugCounter ctrFingerprintNanos;
     /**
      * 
      * @param capacity the maximum number of messages that should be 
@@ -101,9 +135,30 @@ public class OFMessageDamper {
     public OFMessageDamper(int capacity, 
                            Set<OFType> typesToDampen,  
                            int timeout) {
-        cache = new TimedCache<DamperEntry>(capacity, timeout);
+        int stripeSize = PROBE_LIMIT;
+        while (stripeSize * STRIPES < capacity)
+            stripeSize <<= 1;
+        stripes = new Stripe[STRIPES];
+        for (int i = 0; i < STRIPES; i++)
+            stripes[i] = new Stripe(stripeSize);
+        this.timeout = timeout;
         msgTypesToCache = EnumSet.copyOf(typesToDampen);
     }        
+
+    /**
+     * Export the statistics of this damper through debug counters
+     * @param dampened counts the dampened messages
+     * @param written counts the written messages of a dampened type
+     * @param fingerprintNanos counts the time spent fingerprinting, in
+     * nanoseconds
+     */
+    public void setDebugCounters(IDebugCounter dampened,
+                                 IDebugCounter written,
+                                 IDebugCounter fingerprintNanos) {
+        this.ctrDampened = dampened;
+        this.ctrWritten = written;
+        this.ctrFingerprintNanos = fingerprintNanos;
+    }
     
     /**
      * write the message to the switch according to our dampening settings
@@ -135,9 +190,22 @@ public class OFMessageDamper {
             return true;
         }
         
-        DamperEntry entry = new DamperEntry(msg, sw);
-        if (cache.update(entry)) {
-            // entry exists in cache. Dampening.
+        long start = System.nanoTime();
+        long fp = fingerprint(sw, msg);
+        long now = System.currentTimeMillis();
+        long nanos = System.nanoTime() - start;
+        Stripe stripe = stripes[(int) fp & (STRIPES - 1)];
+        boolean dampened = stripe.update(fp, now, timeout, nanos);
+        IDebugCounter ctrNanos = ctrFingerprintNanos;
+        if (ctrNanos != null) {
+            ctrNanos.add(nanos);
+        }
+        IDebugCounter ctr = dampened ? ctrDampened : ctrWritten;
+        if (ctr != null) {
+            ctr.increment();
+        }
+        if (dampened) {
+            // message was recently written. Dampening.
             return false; 
         } else {
             sw.write(msg);
@@ -147,4 +215,76 @@ public class OFMessageDamper {
             return true;
         }
     }
+
+    /**
+     * Compute a 64-bit fingerprint of the wire encoding of a message and
+     * the switch it is written to. Never returns 0.
+     */
+    protected static long fingerprint(IOFSwitch sw, OFMessage msg) {
+        ChannelBuffer buf = encodeBuffer.get();
+        buf.clear();
+        msg.writeTo(buf);
+
+        long h = mix(System.identityHashCode(sw));
+        int len = buf.writerIndex();
+        int i = 0;
+        for (; i + 8 <= len; i += 8) {
+            h = mix(h ^ buf.getLong(i));
+        }
+        long tail = len;
+        for (; i < len; i++) {
+            tail = (tail << 8) | (buf.getByte(i) & 0xff);
+        }
+        h = mix(h ^ tail);
+        return (h == 0) ? 1 : h;
+    }
+
+    /** The finalizer of MurmurHash3 */
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    /**
+     * @return the number of messages that were dampened
+     */
+    public long getDampenedCount() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.dampened;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the number of messages of a dampened type that were written
+     */
+    public long getWrittenCount() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.written;
+            }
+        }
+        return n;
+    }
+
+    /**
+     * @return the total time spent fingerprinting messages, in nanoseconds
+     */
+    public long getFingerprintNanos() {
+        long n = 0;
+        for (Stripe s : stripes) {
+            synchronized (s) {
+                n += s.fingerprintNanos;
+            }
+        }
+        return n;
+    }
 }
@@ -0,0 +1,148 @@
+package net.floodlightcontroller.util;
+
+/**
+ * A hierarchical timing wheel of long ids with deadlines.  Scheduling an id
+ * and advancing the wheel cost time in proportion to the ids that are due
+ * and the ticks that pass, not to the ids that are scheduled, so the wheel
+ * suits timeouts that are far more numerous than the expirations in any
+ * one tick.
+ *
+ * Each level has 64 slots; a slot of level 0 spans one tick and a slot of
+ * level n spans 64 slots of level n-1.  An id waits in the lowest level
+ * whose slots it cannot lap, and moves down a level each time the wheel
+ * reaches its slot.  Ids are not removed when they are cancelled; the
+ * owner should check whether an id that falls due is still relevant.
+ */
+public class TimingWheel {
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+    private static final int LEVELS = 6;
+
+    private final long tickMs;
+    private final Bucket[][] levels;
+    private final Bucket due = new Bucket();
+    private long currentTick;
+    private int size;
+
+    /**
+     * Create a timing wheel
+     * @param tickMs the resolution of the wheel in milliseconds
+     * @param nowMs the current time in milliseconds
+     */
+    public TimingWheel(long tickMs, long nowMs) {
+        if (tickMs <= 0)
+            throw new IllegalArgumentException("tickMs must be positive");
+        this.tickMs = tickMs;
+        this.currentTick = nowMs / tickMs;
+        levels = new Bucket[LEVELS][SLOTS];
+        for (Bucket[] level : levels) {
+            for (int i = 0; i < SLOTS; i++)
+                level[i] = new Bucket();
+        }
+    }
+
+    /**
+     * Schedule an id.  An id can be scheduled more than once, and then
+     * falls due once for every time it was scheduled.
+     * @param id the id
+     * @param deadlineMs the time in milliseconds after which the id is due
+     */
+    public synchronized void schedule(long id, long deadlineMs) {
+        // round up so an id never falls due before its deadline
+        long tick = deadlineMs / tickMs;
+        if (tick * tickMs < deadlineMs)
+            tick += 1;
+        place(id, tick);
+        size += 1;
+    }
+
+    /**
+     * Advance the wheel to the given time and take the ids that are due
+     * @param nowMs the current time in milliseconds
+     * @return the ids whose deadline is no later than the current time
+     */
+    public synchronized long[] advance(long nowMs) {
+        long target = nowMs / tickMs;
+        while (currentTick < target) {
+            currentTick += 1;
+            // move down the ids of the higher levels whose slots start now
+            for (int level = 1; level < LEVELS; level++) {
+                int shift = level * SLOT_BITS;
+                if ((currentTick & ((1L << shift) - 1)) != 0)
+                    break;
+                Bucket b = levels[level][(int)(currentTick >>> shift) & SLOT_MASK];
+                if (b.size == 0)
+                    continue;
+                long[] ids = b.ids;
+                long[] ticks = b.ticks;
+                int n = b.size;
+                b.reset();
+                for (int i = 0; i < n; i++)
+                    place(ids[i], ticks[i]);
+            }
+            Bucket b = levels[0][(int)currentTick & SLOT_MASK];
+            for (int i = 0; i < b.size; i++)
+                due.add(b.ids[i], b.ticks[i]);
+            b.reset();
+        }
+        long[] result = new long[due.size];
+        System.arraycopy(due.ids, 0, result, 0, due.size);
+        size -= due.size;
+        due.reset();
+        return result;
+    }
+
+    /**
+     * @return the number of ids that are scheduled and not yet taken
+     */
+    public synchronized int size() {
+        return size;
+    }
+
+    private void place(long id, long tick) {
+        long delta = tick - currentTick;
+        if (delta <= 0) {
+            due.add(id, tick);
+            return;
+        }
+        int level = 0;
+        while (level < LEVELS - 1 &&
+                delta >= (1L << ((level + 1) * SLOT_BITS)))
+            level += 1;
+        int slot = (int)(tick >>> (level * SLOT_BITS)) & SLOT_MASK;
+        levels[level][slot].add(id, tick);
+    }
+
+    /**
+     * The ids of a slot with their deadline ticks
+     */
+    private static class Bucket {
+        private static final long[] EMPTY = new long[0];
+
+        long[] ids = EMPTY;
+        long[] ticks = EMPTY;
+        int size;
+
+        void add(long id, long tick) {
+            if (size == ids.length) {
+                int capacity = Math.max(4, size * 2);
+                long[] newIds = new long[capacity];
+                long[] newTicks = new long[capacity];
+                System.arraycopy(ids, 0, newIds, 0, size);
+                System.arraycopy(ticks, 0, newTicks, 0, size);
+                ids = newIds;
+                ticks = newTicks;
+            }
+            ids[size] = id;
+            ticks[size] = tick;
+            size += 1;
+        }
+
+        void reset() {
+            ids = EMPTY;
+            ticks = EMPTY;
+            size = 0;
+        }
+    }
+}
@@ -17,6 +17,7 @@
 package org.sdnplatform.sync;
 
 import java.util.Iterator;
+import java.util.Map;
 import java.util.Map.Entry;
 
 import org.sdnplatform.sync.error.ObsoleteVersionException;
@@ -130,6 +131,18 @@ public interface IStoreClient<K, V> {
      */
     public IVersion put(K key, V value) throws SyncException;
 
+    /**
+     * Associate each of the given values to its key, clobbering any
+     * existing values, as with {@link #put(Object, Object)}. Every value is
+     * written even if writing another one fails; the first failure is
+     * thrown once all values have been attempted.
+     *
+     * @param values The keys and the values to store for them
+     * @throws ObsoleteVersionException
+     * @throws SyncException
+     */
+    public void putAll(Map<K, V> values) throws SyncException;
+
     /**
      * Put the given Versioned value into the store for the given key if the
      * version is greater to or concurrent with existing values. Throw an
@@ -0,0 +1,34 @@
+package org.sdnplatform.sync;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * A codec that serializes the values of a store.  Every value is written
+ * with the codec's format marker as its first byte, so any node can read
+ * values written with any codec it knows about, whichever codec its own
+ * store client writes with.  Keys are always serialized with the default
+ * encoding so that the same key has the same bytes on every node.
+ * @see SyncCodecs
+ * @see ISyncService#registerStore(String, ISyncService.Scope, ISyncCodec)
+ */
+public interface ISyncCodec {
+    /**
+     * Get the format marker written before each serialized value.  The
+     * marker identifies the codec within the cluster, so it must never
+     * change once values have been written with it.
+     * @return the format marker
+     */
+    public byte getFormat();
+
+    /**
+     * Get the name of the codec, used to select it in configuration
+     * @return the name
+     */
+    public String getName();
+
+    /**
+     * Get the mapper used to serialize and deserialize values
+     * @return the mapper
+     */
+    public ObjectMapper getMapper();
+}
@@ -52,6 +52,22 @@ public interface ISyncService extends IFloodlightService {
     public void registerStore(String storeName, Scope scope) 
             throws SyncException;
 
+    /**
+     * Create a store with the given store name and scope whose values are
+     * written with the given codec.  Values written with any other codec
+     * can still be read from the store, but nodes that do not know the
+     * codec will not be able to read the values written with it.
+     * @param storeName the name of the store
+     * @param scope the distribution scope for the data
+     * @param codec the codec for values written through this node's store
+     * clients, or null for the default encoding
+     * @throws SyncException
+     * @see SyncCodecs
+     */
+    public void registerStore(String storeName, Scope scope,
+                              ISyncCodec codec)
+            throws SyncException;
+
     /**
      * Create a store with the given store name and scope that will be 
      * persistent across reboots.  The performance will be dramatically slower
@@ -0,0 +1,78 @@
+package org.sdnplatform.sync;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.sdnplatform.sync.internal.store.SmileCodec;
+
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
+
+/**
+ * The codecs available to serialize store values.  A store registered
+ * without a codec writes the original Smile encoding, which carries no
+ * format marker and can be read by every version.  A store should only
+ * switch to another codec once every node that replicates it knows that
+ * codec.
+ */
+public class SyncCodecs {
+    /**
+     * Smile with shared property names and string values
+     */
+    public static final ISyncCodec SMILE =
+            new SmileCodec((byte)1, "smile", false);
+
+    /**
+     * Smile with java beans written as arrays of their property values in
+     * alphabetical order of the property names, so no property names are
+     * written at all.  Every node must use the same version of the value
+     * classes, so a change to the properties of a value class requires a
+     * new codec with a new format marker.
+     */
+    public static final ISyncCodec SMILE_POSITIONAL =
+            new SmileCodec((byte)2, "smile-positional", true);
+
+    private static final ConcurrentHashMap<Byte, ISyncCodec> codecs =
+            new ConcurrentHashMap<Byte, ISyncCodec>();
+    static {
+        register(SMILE);
+        register(SMILE_POSITIONAL);
+    }
+
+    /**
+     * Make a codec available to read values written with its format marker
+     * @param codec the codec
+     * @throws IllegalArgumentException if the marker is already in use or
+     * could be confused with the original encoding
+     */
+    public static void register(ISyncCodec codec) {
+        if (codec.getFormat() == SmileConstants.HEADER_BYTE_1)
+            throw new IllegalArgumentException("Format marker " +
+                    codec.getFormat() + " is reserved");
+        ISyncCodec old = codecs.putIfAbsent(codec.getFormat(), codec);
+        if (old != null && old != codec)
+            throw new IllegalArgumentException("Format marker " +
+                    codec.getFormat() + " is already used by " +
+                    old.getName());
+    }
+
+    /**
+     * Get the codec for a format marker
+     * @param format the format marker
+     * @return the codec or null if there is no codec for the marker
+     */
+    public static ISyncCodec getCodec(byte format) {
+        return codecs.get(format);
+    }
+
+    /**
+     * Get a codec by name
+     * @param name the name of the codec
+     * @return the codec or null if there is no codec with the name
+     */
+    public static ISyncCodec getCodec(String name) {
+        for (ISyncCodec codec : codecs.values()) {
+            if (codec.getName().equals(name))
+                return codec;
+        }
+        return null;
+    }
+}
@@ -1,6 +1,7 @@
 package org.sdnplatform.sync.internal;
 
 import java.util.List;
+import java.util.Map;
 
 import org.sdnplatform.sync.IStoreClient;
 import org.sdnplatform.sync.IVersion;
@@ -55,6 +56,21 @@ public abstract class AbstractStoreClient<K,V> implements IStoreClient<K, V> {
         return put(key, versioned);
     }
 
+    @Override
+    public void putAll(Map<K, V> values) throws SyncException {
+        SyncException failure = null;
+        for (Map.Entry<K, V> e : values.entrySet()) {
+            try {
+                put(e.getKey(), e.getValue());
+            } catch (SyncException ex) {
+                if (failure == null)
+                    failure = ex;
+            }
+        }
+        if (failure != null)
+            throw failure;
+    }
+
     @Override
     public boolean putIfNotObsolete(K key, Versioned<V> versioned)
             throws SyncException {
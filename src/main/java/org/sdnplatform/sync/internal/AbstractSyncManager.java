@@ -4,11 +4,14 @@ import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.sdnplatform.sync.IInconsistencyResolver;
 import org.sdnplatform.sync.IStoreClient;
+import org.sdnplatform.sync.ISyncCodec;
 import org.sdnplatform.sync.ISyncService;
 import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.error.UnknownStoreException;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.store.JacksonStore;
@@ -27,10 +30,27 @@ import com.fasterxml.jackson.core.type.TypeReference;
 public abstract class AbstractSyncManager 
     implements ISyncService, IFloodlightModule {
 
+    /**
+     * The codecs chosen for the stores registered with a codec
+     */
+    private final ConcurrentHashMap<String, ISyncCodec> storeCodecs =
+            new ConcurrentHashMap<String, ISyncCodec>();
+
     // ************
     // ISyncService
     // ************
 
+    @Override
+    public void registerStore(String storeName, Scope scope,
+                              ISyncCodec codec)
+            throws SyncException {
+        registerStore(storeName, scope);
+        if (codec != null)
+            storeCodecs.put(storeName, codec);
+        else
+            storeCodecs.remove(storeName);
+    }
+
     @Override
     public <K, V> IStoreClient<K, V> 
         getStoreClient(String storeName, 
@@ -123,13 +143,15 @@ public abstract class AbstractSyncManager
                            IInconsistencyResolver<Versioned<V>> resolver)
                                    throws UnknownStoreException {
         IStore<ByteArray,byte[]> store = getStore(storeName);
+        ISyncCodec codec = storeCodecs.get(storeName);
         IStore<K, V> serializingStore;
         if (valueType != null && keyType != null) {
             serializingStore = 
-                    new JacksonStore<K, V>(store, keyType, valueType);
+                    new JacksonStore<K, V>(store, keyType, valueType, codec);
         } else if (valueClass != null && keyClass != null) {
             serializingStore = 
-                    new JacksonStore<K, V>(store, keyClass, valueClass);
+                    new JacksonStore<K, V>(store, keyClass, valueClass,
+                                           codec);
         } else {
             throw new IllegalArgumentException("Must include type reference" +
                     " or value class");
@@ -1,21 +1,19 @@
 package org.sdnplatform.sync.internal;
 
-import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
-import java.util.concurrent.locks.Condition;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Semaphore;
 
 import javax.sql.ConnectionPoolDataSource;
 
-import net.floodlightcontroller.core.annotations.LogMessageDoc;
-
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.ISyncService.Scope;
+import org.sdnplatform.sync.IVersion.Occurred;
 import org.sdnplatform.sync.error.PersistException;
-import org.sdnplatform.sync.error.SyncException;
 import org.sdnplatform.sync.internal.store.IStorageEngine;
 import org.sdnplatform.sync.internal.store.InMemoryStorageEngine;
 import org.sdnplatform.sync.internal.store.JavaDBStorageEngine;
@@ -55,26 +53,39 @@ public class StoreRegistry {
             new HashMap<String, SynchronizingStorageEngine>();
 
     /**
-     * Undelivered hints associated with the stores
+     * The default number of hint shards
      */
-    private InMemoryStorageEngine<HintKey,byte[]> hints;
-    
+    public static final int DEFAULT_HINT_SHARDS = 4;
+
     /**
-     * A queue containing pending hints.  
+     * Undelivered hints associated with the stores, sharded by the hash
+     * of the hint key.  Each shard is drained by a single worker.
      */
-    private ArrayDeque<HintKey> hintQueue = new ArrayDeque<HintKey>();
-    private Lock hintLock = new ReentrantLock();
-    private Condition hintsAvailable = hintLock.newCondition();
-    
+    private final HintShard[] hintShards;
+
     /**
      * Construct a new {@link StoreRegistry}
      * @param syncManager The associated syncManager
      */
     public StoreRegistry(SyncManager syncManager, String dbPath) {
+        this(syncManager, dbPath, DEFAULT_HINT_SHARDS);
+    }
+
+    /**
+     * Construct a new {@link StoreRegistry}
+     * @param syncManager The associated syncManager
+     * @param dbPath directory where the persistent store will be located
+     * @param numHintShards the number of independent hint queues
+     */
+    public StoreRegistry(SyncManager syncManager, String dbPath,
+                         int numHintShards) {
         super();
         this.syncManager = syncManager;
         this.dbPath = dbPath;
-        hints = new InMemoryStorageEngine<HintKey, byte[]>("system-hints");
+        hintShards = new HintShard[Math.max(1, numHintShards)];
+        for (int i = 0; i < hintShards.length; i++) {
+            hintShards[i] = new HintShard();
+        }
     }
     
     // **************
@@ -132,73 +143,136 @@ public class StoreRegistry {
         return localStores.values();
     }
     
+    /**
+     * Get the number of hint shards.  Each shard must be drained by
+     * exactly one caller of {@link #takeHints(int, Collection, int)}
+     * @return the number of shards
+     */
+    public int getHintShards() {
+        return hintShards.length;
+    }
+
     /**
      * Add a key/value to the hint store for the given store
      * @param storeName the name of the store for the keyed value
      * @param key the key
      * @param value the value
      */
-    @LogMessageDoc(level="ERROR",
-                   message="Failed to queue hint for store {storeName}",
-                   explanation="There was an error synchronizing data to " + 
-                               "remote nodes",
-                   recommendation=LogMessageDoc.REPORT_CONTROLLER_BUG)
     public void queueHint(String storeName, 
                           ByteArray key, Versioned<byte[]> value) {
-        try {
-            HintKey hk = new HintKey(storeName,key);
-            hintLock.lock();
-            try {
-                boolean needed = !hints.containsKey(hk);
-                needed &= hints.doput(hk, value);
-                if (needed) {
-                    hintQueue.add(hk);
-                    hintsAvailable.signal();
-                }
-            } finally {
-                hintLock.unlock();
-            }
-        } catch (SyncException e) {
-            logger.error("Failed to queue hint for store " + storeName, e);
-        }
+        HintKey hk = new HintKey(storeName,key);
+        int shard = (hk.hashCode() & Integer.MAX_VALUE) % hintShards.length;
+        hintShards[shard].queue(hk, value);
     }
 
     /**
-     * Drain up to the given number of hints to the provided collection.
-     * This method will block until at least one hint is available
+     * Drain up to the given number of hints from a shard to the provided
+     * collection.  This method will block until at least one hint is 
+     * available
+     * @param shard the shard to drain
      * @param c the collection to which the hints should be copied
      * @param maxElements the maximum number of hints to drain
      * @throws InterruptedException
      */
-    public void takeHints(Collection<Hint> c, int maxElements) 
+    public void takeHints(int shard, Collection<Hint> c, int maxElements) 
             throws InterruptedException {
-        int count = 0;
-        try {
-            while (count == 0) {
-                hintLock.lock();
-                while (hintQueue.isEmpty()) {
-                    hintsAvailable.await();
+        hintShards[shard].take(c, maxElements);
+    }
+
+    public void shutdown() {
+        for (HintShard shard : hintShards) {
+            shard.clear();
+        }
+    }
+
+    /**
+     * A queue of hints with at most one entry for each hint key.  Any
+     * thread may queue hints, but only one thread may take them.  A value
+     * queued for a key that is already pending is merged with the pending
+     * values in the same way as {@link InMemoryStorageEngine} merges them.
+     */
+    private static class HintShard {
+        private final ConcurrentHashMap<HintKey, PendingHint> pending =
+                new ConcurrentHashMap<HintKey, PendingHint>();
+        private final ConcurrentLinkedQueue<HintKey> queue =
+                new ConcurrentLinkedQueue<HintKey>();
+        /**
+         * One permit for each key in the queue
+         */
+        private final Semaphore available = new Semaphore(0);
+
+        public void queue(HintKey hk, Versioned<byte[]> value) {
+            while (true) {
+                PendingHint p = pending.get(hk);
+                if (p == null) {
+                    p = new PendingHint(value);
+                    if (pending.putIfAbsent(hk, p) != null)
+                        continue;
+                    queue.offer(hk);
+                    available.release();
+                    return;
                 }
-                while (count < maxElements && !hintQueue.isEmpty()) {
-                    HintKey hintKey = hintQueue.pollFirst();
-                    if (hintKey != null) {
-                        List<Versioned<byte[]>> values = hints.remove(hintKey);
-                        if (values == null) {
-                            continue;
-                        }
-                        c.add(new Hint(hintKey, values));
-                        count += 1;
-                    }
+                synchronized (p) {
+                    // if this check fails, the hint has been taken, so we
+                    // try again.
+                    if (pending.get(hk) != p)
+                        continue;
+                    p.merge(value);
                 }
+                return;
             }
-        } finally {
-            hintLock.unlock();
+        }
+
+        public void take(Collection<Hint> c, int maxElements)
+                throws InterruptedException {
+            available.acquire();
+            int count = 0;
+            do {
+                HintKey hk = queue.poll();
+                if (hk == null) continue;
+                PendingHint p = pending.get(hk);
+                if (p == null) continue;
+                synchronized (p) {
+                    pending.remove(hk, p);
+                    c.add(new Hint(hk, p.values, p.queuedTime));
+                }
+                count += 1;
+            } while (count < maxElements && available.tryAcquire());
+        }
+
+        public void clear() {
+            queue.clear();
+            pending.clear();
         }
     }
 
-    public void shutdown() {
-        hintQueue.clear();
-        hints.close();
+    /**
+     * The values pending for a hint key
+     */
+    private static class PendingHint {
+        private final List<Versioned<byte[]>> values =
+                new ArrayList<Versioned<byte[]>>(1);
+        private final long queuedTime = System.nanoTime();
+
+        public PendingHint(Versioned<byte[]> value) {
+            values.add(value);
+        }
+
+        public void merge(Versioned<byte[]> value) {
+            List<Versioned<byte[]>> itemsToRemove =
+                    new ArrayList<Versioned<byte[]>>(values.size());
+            for (Versioned<byte[]> versioned : values) {
+                Occurred occurred =
+                        value.getVersion().compare(versioned.getVersion());
+                if (occurred == Occurred.BEFORE) {
+                    return;
+                } else if (occurred == Occurred.AFTER) {
+                    itemsToRemove.add(versioned);
+                }
+            }
+            values.removeAll(itemsToRemove);
+            values.add(value);
+        }
     }
 
     /**
@@ -272,10 +346,16 @@ public class StoreRegistry {
     public static class Hint {
         private HintKey hintKey;
         private List<Versioned<byte[]>> values;
+        private long queuedTime;
         public Hint(HintKey hintKey, List<Versioned<byte[]>> values) {
+            this(hintKey, values, System.nanoTime());
+        }
+        public Hint(HintKey hintKey, List<Versioned<byte[]>> values,
+                    long queuedTime) {
             super();
             this.hintKey = hintKey;
             this.values = values;
+            this.queuedTime = queuedTime;
         }
         public HintKey getHintKey() {
             return hintKey;
@@ -283,5 +363,12 @@ public class StoreRegistry {
         public List<Versioned<byte[]>> getValues() {
             return values;
         }
+        /**
+         * @return the {@link System#nanoTime()} when the first of the
+         * values was queued
+         */
+        public long getQueuedTime() {
+            return queuedTime;
+        }
     }
 }
@@ -75,6 +75,9 @@ public class SyncManager extends AbstractSyncManager {
     protected static final Logger logger =
             LoggerFactory.getLogger(SyncManager.class.getName());
 
+    /** Name of the executor running cleanup and anti-entropy */
+    public static final String EXECUTOR_NAME = "sync";
+
     protected IThreadPoolService threadPool;
     protected IDebugCounterService debugCounter;
 
@@ -121,9 +124,10 @@ public class SyncManager extends AbstractSyncManager {
 
     /**
      * Number of {@link HintWorker} workers used to drain the queue of writes
-     * that need to be sent to the connected nodes
+     * that need to be sent to the connected nodes.  Each worker drains one
+     * shard of the queue.
      */
-    private static final int SYNC_WORKER_POOL = 2;
+    private int hintWorkers = StoreRegistry.DEFAULT_HINT_SHARDS;
 
     /**
      * A thread pool for the {@link HintWorker} threads.
@@ -161,6 +165,8 @@ public class SyncManager extends AbstractSyncManager {
     public static IDebugCounter counterIterators;
     public static IDebugCounter counterErrorRemote;
     public static IDebugCounter counterErrorProcessing;
+    protected IDebugCounter[] counterShardHints;
+    protected IDebugCounter[] counterShardLatency;
 
     // ************
     // ISyncService
@@ -462,7 +468,11 @@ public class SyncManager extends AbstractSyncManager {
         threadPool = context.getServiceImpl(IThreadPoolService.class);
         debugCounter = context.getServiceImpl(IDebugCounterService.class);
         Map<String, String> config = context.getConfigParams(this);
-        storeRegistry = new StoreRegistry(this, config.get("dbPath"));
+        if (config.containsKey("hintWorkers")) {
+            hintWorkers = Integer.parseInt(config.get("hintWorkers"));
+        }
+        storeRegistry = new StoreRegistry(this, config.get("dbPath"),
+                                          hintWorkers);
 
         String[] configProviders =
              {PropertyCCProvider.class.getName(),
@@ -532,6 +542,20 @@ public class SyncManager extends AbstractSyncManager {
     				"error-processing",
     				"Number of errors processing messages from remote clients",
     				IDebugCounterService.MetaData.ERROR);
+    		int shards = storeRegistry.getHintShards();
+    		counterShardHints = new IDebugCounter[shards];
+    		counterShardLatency = new IDebugCounter[shards];
+    		for (int i = 0; i < shards; i++) {
+    			String shard = "hint-shard-" + i;
+    			debugCounter.registerCounter(PACKAGE, shard,
+    					"Queued sync events of hint shard " + i);
+    			counterShardHints[i] = debugCounter.registerCounter(PACKAGE,
+    					shard + "/hints", "Queued sync events sent");
+    			counterShardLatency[i] = debugCounter.registerCounter(PACKAGE,
+    					shard + "/latency-us",
+    					"Total time from the local put to the sync event " +
+    					"being sent, in microseconds");
+    		}
     	}
 
     }
@@ -542,12 +566,12 @@ public class SyncManager extends AbstractSyncManager {
 
         rpcService = new RPCService(this, debugCounter);
 
-        cleanupTask = new SingletonTask(threadPool.getScheduledExecutor(),
+        cleanupTask = new SingletonTask(threadPool.getScheduledExecutor(EXECUTOR_NAME),
                                         new CleanupTask());
         cleanupTask.reschedule(CLEANUP_INTERVAL +
                                random.nextInt(30), TimeUnit.SECONDS);
 
-        antientropyTask = new SingletonTask(threadPool.getScheduledExecutor(),
+        antientropyTask = new SingletonTask(threadPool.getScheduledExecutor(EXECUTOR_NAME),
                                        new AntientropyTask());
         antientropyTask.reschedule(ANTIENTROPY_INTERVAL +
                                    random.nextInt(30), TimeUnit.SECONDS);
@@ -564,15 +588,15 @@ public class SyncManager extends AbstractSyncManager {
             }
         };
         hintThreadPool = Executors.newCachedThreadPool(f);
-        for (int i = 0; i < SYNC_WORKER_POOL; i++) {
-            hintThreadPool.execute(new HintWorker());
+        for (int i = 0; i < storeRegistry.getHintShards(); i++) {
+            hintThreadPool.execute(new HintWorker(i));
         }
 
         doUpdateConfiguration();
         rpcService.run();
 
         updateConfigTask =
-                new SingletonTask(threadPool.getScheduledExecutor(),
+                new SingletonTask(threadPool.getScheduledExecutor(EXECUTOR_NAME),
                                   new UpdateConfigTask());
         updateConfigTask.reschedule(CONFIG_RESCAN_INTERVAL, TimeUnit.SECONDS);
     }
@@ -758,6 +782,14 @@ public class SyncManager extends AbstractSyncManager {
         ArrayList<Hint> tasks = new ArrayList<Hint>(50);
         protected Map<String, SyncMessage> messages =
                 new LinkedHashMap<String, SyncMessage>();
+        private final int shard;
+
+        /**
+         * @param shard the hint shard drained by this worker
+         */
+        public HintWorker(int shard) {
+            this.shard = shard;
+        }
 
         @Override
         public void run() {
@@ -765,7 +797,7 @@ public class SyncManager extends AbstractSyncManager {
                 try {
                     // Batch up sync tasks so we use fewer, larger messages
                     // XXX - todo - handle hints targeted to specific nodes
-                    storeRegistry.takeHints(tasks, 50);
+                    storeRegistry.takeHints(shard, tasks, 50);
                     for (Hint task : tasks) {
                         counterHints.increment();
                         SynchronizingStorageEngine store =
@@ -803,6 +835,7 @@ public class SyncManager extends AbstractSyncManager {
                             rpcService.writeToNode(n.getNodeId(), bsm);
                         }
                     }
+                    recordLatency();
                     tasks.clear();
                     clearMessages();
 
@@ -812,6 +845,18 @@ public class SyncManager extends AbstractSyncManager {
             }
         }
 
+        private void recordLatency() {
+            if (counterShardLatency == null) return;
+            long now = System.nanoTime();
+            long total = 0;
+            for (Hint task : tasks) {
+                total += now - task.getQueuedTime();
+            }
+            counterShardHints[shard].add(tasks.size());
+            counterShardLatency[shard].add(TimeUnit.NANOSECONDS.
+                                           toMicros(total));
+        }
+
         /**
          * Clear the current list of pending messages
          */
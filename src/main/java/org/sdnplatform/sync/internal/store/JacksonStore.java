@@ -1,20 +1,26 @@
 package org.sdnplatform.sync.internal.store;
 
+import java.io.ByteArrayOutputStream;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
 
+import com.fasterxml.jackson.databind.JavaType;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import com.fasterxml.jackson.databind.ObjectWriter;
 import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.dataformat.smile.SmileConstants;
 import com.fasterxml.jackson.dataformat.smile.SmileFactory;
 import com.fasterxml.jackson.core.type.TypeReference;
 
 import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.ISyncCodec;
 import org.sdnplatform.sync.IVersion;
+import org.sdnplatform.sync.SyncCodecs;
 import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.error.SerializationException;
 import org.sdnplatform.sync.error.SyncException;
@@ -26,7 +32,9 @@ import org.slf4j.LoggerFactory;
 
 
 /**
- * A store that will serialize and deserialize objects to JSON using Jackson
+ * A store that will serialize and deserialize objects to JSON using Jackson.
+ * Values are written with the store's {@link ISyncCodec} if it has one, or
+ * as plain Smile otherwise, and values in any known format can be read.
  */
 public class JacksonStore<K, V> implements IStore<K, V> {
     protected static Logger logger =
@@ -49,11 +57,28 @@ public class JacksonStore<K, V> implements IStore<K, V> {
     private final boolean keyAsTree;
     private final boolean valueAsTree;
 
+    /**
+     * The codec used to write values, or null to write plain Smile
+     */
+    private final ISyncCodec codec;
+    private final JavaType valueJavaType;
+    private final ObjectWriter codecWriter;
+    private final ConcurrentHashMap<Byte, ObjectReader> codecReaders =
+            new ConcurrentHashMap<Byte, ObjectReader>();
+
     public JacksonStore(IStore<ByteArray, byte[]> delegate,
                         Class<K> keyClass,
                         Class<V> valueClass) {
+        this(delegate, keyClass, valueClass, null);
+    }
+
+    public JacksonStore(IStore<ByteArray, byte[]> delegate,
+                        Class<K> keyClass,
+                        Class<V> valueClass,
+                        ISyncCodec codec) {
         super();
         this.delegate = delegate;
+        this.codec = codec;
         if (keyClass.isAssignableFrom(JsonNode.class)) {
             keyAsTree = true;
             this.keyWriter = null;
@@ -72,19 +97,33 @@ public class JacksonStore<K, V> implements IStore<K, V> {
             this.valueWriter = mapper.writerWithType(valueClass);
             this.valueReader = mapper.reader(valueClass);
         }
+        this.valueJavaType =
+                mapper.getTypeFactory().constructType(valueClass);
+        this.codecWriter = getCodecWriter();
     }
     
     public JacksonStore(IStore<ByteArray, byte[]> delegate,
                         TypeReference<K> keyType,
                         TypeReference<V> valueType) {
+        this(delegate, keyType, valueType, null);
+    }
+
+    public JacksonStore(IStore<ByteArray, byte[]> delegate,
+                        TypeReference<K> keyType,
+                        TypeReference<V> valueType,
+                        ISyncCodec codec) {
         super();
         this.delegate = delegate;
+        this.codec = codec;
         keyAsTree = false;
         valueAsTree = false;
         this.keyWriter = mapper.writerWithType(keyType);
         this.keyReader = mapper.reader(keyType);
         this.valueWriter = mapper.writerWithType(valueType);
         this.valueReader = mapper.reader(valueType);
+        this.valueJavaType =
+                mapper.getTypeFactory().constructType(valueType);
+        this.codecWriter = getCodecWriter();
     }
 
     // ************
@@ -154,10 +193,33 @@ public class JacksonStore<K, V> implements IStore<K, V> {
         }
     }
 
+    private ObjectWriter getCodecWriter() {
+        if (codec == null) return null;
+        return codec.getMapper().writerWithType(valueJavaType);
+    }
+
+    private ObjectReader getCodecReader(byte format) throws SyncException {
+        ObjectReader reader = codecReaders.get(format);
+        if (reader != null) return reader;
+
+        ISyncCodec c = SyncCodecs.getCodec(format);
+        if (c == null)
+            throw new SerializationException("Unknown value format " +
+                                             format);
+        reader = c.getMapper().reader(valueJavaType);
+        codecReaders.put(format, reader);
+        return reader;
+    }
+
     private byte[] getValueBytes(V value) throws SyncException {
         try {
             byte[] v = null;
-            if (valueAsTree)
+            if (codecWriter != null) {
+                ByteArrayOutputStream bos = new ByteArrayOutputStream(128);
+                bos.write(codec.getFormat());
+                codecWriter.writeValue(bos, value);
+                v = bos.toByteArray();
+            } else if (valueAsTree)
                 v = mapper.writeValueAsBytes(value);
             else
                 v = valueWriter.writeValueAsBytes(value);
@@ -176,10 +238,17 @@ public class JacksonStore<K, V> implements IStore<K, V> {
     private V getValueObject(byte[] value) throws SyncException {
         try {
             if (value == null) return null;
+            if (value.length > 0 &&
+                value[0] != SmileConstants.HEADER_BYTE_1) {
+                return getCodecReader(value[0]).readValue(value, 1,
+                                                          value.length - 1);
+            }
             if (valueAsTree)
                 return (V)mapper.readTree(value);
             else
                 return valueReader.readValue(value);
+        } catch (SerializationException e) {
+            throw e;
         } catch (Exception e) {
             throw new SerializationException(e);
         }
@@ -0,0 +1,85 @@
+package org.sdnplatform.sync.internal.store;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.sdnplatform.sync.ISyncCodec;
+
+import com.fasterxml.jackson.annotation.JsonFormat;
+import com.fasterxml.jackson.databind.MapperFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.introspect.Annotated;
+import com.fasterxml.jackson.databind.introspect.AnnotatedClass;
+import com.fasterxml.jackson.databind.introspect.JacksonAnnotationIntrospector;
+import com.fasterxml.jackson.dataformat.smile.SmileFactory;
+import com.fasterxml.jackson.dataformat.smile.SmileGenerator;
+
+/**
+ * A codec writing values as Smile, optionally with java beans written as
+ * arrays of their property values
+ */
+public class SmileCodec implements ISyncCodec {
+    private final byte format;
+    private final String name;
+    private final ObjectMapper mapper;
+
+    /**
+     * Treat every java bean that does not say otherwise as if it was
+     * annotated with <code>@JsonFormat(shape=Shape.ARRAY)</code>
+     */
+    private static class PositionalIntrospector
+        extends JacksonAnnotationIntrospector {
+        private static final long serialVersionUID = 1L;
+
+        @Override
+        public JsonFormat.Value findFormat(Annotated a) {
+            JsonFormat.Value v = super.findFormat(a);
+            if (v != null || !(a instanceof AnnotatedClass))
+                return v;
+            Class<?> c = a.getRawType();
+            if (c.isEnum() || c.isArray() || c.isPrimitive() ||
+                Collection.class.isAssignableFrom(c) ||
+                Map.class.isAssignableFrom(c))
+                return null;
+            return new JsonFormat.Value().withShape(JsonFormat.Shape.ARRAY);
+        }
+    }
+
+    public SmileCodec(byte format, String name, boolean positional) {
+        this.format = format;
+        this.name = name;
+
+        SmileFactory factory = new SmileFactory();
+        factory.configure(SmileGenerator.Feature.CHECK_SHARED_STRING_VALUES,
+                          true);
+        mapper = new ObjectMapper(factory);
+        mapper.configure(SerializationFeature.ORDER_MAP_ENTRIES_BY_KEYS,
+                         true);
+        if (positional) {
+            mapper.configure(MapperFeature.SORT_PROPERTIES_ALPHABETICALLY,
+                             true);
+            mapper.setAnnotationIntrospector(new PositionalIntrospector());
+        }
+    }
+
+    @Override
+    public byte getFormat() {
+        return format;
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public ObjectMapper getMapper() {
+        return mapper;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
@@ -0,0 +1,165 @@
+package net.floodlightcontroller.core.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+public class HandshakeAdmissionControllerTest {
+    /** Collects the deferred starts so the test decides when they run */
+    private static class QueueExecutor implements Executor {
+        final List<Runnable> tasks = new ArrayList<Runnable>();
+
+        @Override
+        public void execute(Runnable command) {
+            tasks.add(command);
+        }
+
+        void runAll() {
+            while (!tasks.isEmpty())
+                tasks.remove(0).run();
+        }
+    }
+
+    private static class Start implements Runnable {
+        final List<String> started;
+        final String name;
+
+        Start(List<String> started, String name) {
+            this.started = started;
+            this.name = name;
+        }
+
+        @Override
+        public void run() {
+            started.add(name);
+        }
+    }
+
+    @Test
+    public void testLimitAndPriority() {
+        QueueExecutor executor = new QueueExecutor();
+        HandshakeAdmissionController ac =
+                new HandshakeAdmissionController(2, executor, null, null);
+        List<String> started = new ArrayList<String>();
+
+        assertTrue(ac.submit("a", false, new Start(started, "a")));
+        assertTrue(ac.submit("b", false, new Start(started, "b")));
+        assertFalse(ac.isBackpressured());
+        assertFalse(ac.submit("c", false, new Start(started, "c")));
+        assertFalse(ac.submit("d", true, new Start(started, "d")));
+        assertFalse(ac.submit("e", true, new Start(started, "e")));
+        assertEquals(2, ac.getActiveCount());
+        assertEquals(3, ac.getWaitingCount());
+        assertTrue(ac.isBackpressured());
+        assertEquals(-1, ac.getLastFullControlNs());
+
+        // a waiting handshake that goes away frees nothing
+        ac.release("e");
+        assertEquals(2, ac.getActiveCount());
+        assertEquals(2, ac.getWaitingCount());
+        executor.runAll();
+
+        // the known switch goes first
+        ac.release("a");
+        executor.runAll();
+        ac.release("b");
+        executor.runAll();
+        assertEquals(2, ac.getActiveCount());
+        assertFalse(ac.isBackpressured());
+
+        // releasing twice has no effect
+        ac.release("a");
+        assertEquals(2, ac.getActiveCount());
+
+        ac.release("d");
+        ac.release("c");
+        assertEquals(0, ac.getActiveCount());
+        assertEquals(0, ac.getWaitingCount());
+        assertTrue(ac.getLastFullControlNs() >= 0);
+
+        List<String> expected = new ArrayList<String>();
+        for (String s : new String[] {"a", "b", "d", "c"})
+            expected.add(s);
+        assertEquals(expected, started);
+    }
+
+    @Test
+    public void testNoLimit() {
+        QueueExecutor executor = new QueueExecutor();
+        HandshakeAdmissionController ac =
+                new HandshakeAdmissionController(0, executor, null, null);
+        List<String> started = new ArrayList<String>();
+        for (int i = 0; i < 100; i++)
+            assertTrue(ac.submit(i, false, new Start(started, "" + i)));
+        assertEquals(100, started.size());
+        assertFalse(ac.isBackpressured());
+        for (int i = 0; i < 100; i++)
+            ac.release(i);
+        assertEquals(0, ac.getActiveCount());
+        // nothing waited, so there was no backlog to report
+        assertEquals(-1, ac.getLastFullControlNs());
+    }
+
+    /**
+     * Connect a large number of switches at once, with handshakes that
+     * complete on other threads, and check that all of them get through
+     * without ever exceeding the limit
+     */
+    @Test
+    public void testReconnectStorm() throws Exception {
+        final int switches = 5000;
+        final int limit = 64;
+        final ExecutorService handshakes = Executors.newFixedThreadPool(8);
+        final AtomicInteger active = new AtomicInteger();
+        final AtomicInteger maxActive = new AtomicInteger();
+        final CountDownLatch done = new CountDownLatch(switches);
+        final ConcurrentLinkedQueue<Integer> order =
+                new ConcurrentLinkedQueue<Integer>();
+        final HandshakeAdmissionController ac =
+                new HandshakeAdmissionController(limit, handshakes, null, null);
+
+        try {
+            for (int i = 0; i < switches; i++) {
+                final Integer token = i;
+                // every fourth switch was connected before
+                ac.submit(token, i % 4 == 0, new Runnable() {
+                    @Override
+                    public void run() {
+                        int a = active.incrementAndGet();
+                        int m;
+                        while (a > (m = maxActive.get()) &&
+                               !maxActive.compareAndSet(m, a));
+                        order.add(token);
+                        handshakes.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                active.decrementAndGet();
+                                ac.release(token);
+                                done.countDown();
+                            }
+                        });
+                    }
+                });
+            }
+            assertTrue(done.await(30, TimeUnit.SECONDS));
+        } finally {
+            handshakes.shutdown();
+        }
+
+        assertTrue(maxActive.get() <= limit);
+        assertEquals(switches, order.size());
+        assertEquals(0, ac.getActiveCount());
+        assertFalse(ac.isBackpressured());
+        assertTrue(ac.getLastFullControlNs() >= 0);
+    }
+}
@@ -8,9 +8,11 @@ import static org.easymock.EasyMock.replay;
 import static org.easymock.EasyMock.reset;
 import static org.easymock.EasyMock.verify;
 import static org.hamcrest.CoreMatchers.equalTo;
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertThat;
 
 import java.util.EnumSet;
+import java.util.List;
 
 import org.hamcrest.CoreMatchers;
 import org.hamcrest.Matchers;
@@ -33,6 +35,9 @@ import org.projectfloodlight.openflow.protocol.OFPortDescStatsReply;
 import org.projectfloodlight.openflow.protocol.OFPortDescStatsRequest;
 import org.projectfloodlight.openflow.protocol.OFRoleReply;
 import org.projectfloodlight.openflow.protocol.OFRoleRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.protocol.OFType;
 import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
@@ -94,8 +99,15 @@ public class OFSwitchHandshakeHandlerVer13Test extends OFSwitchHandlerTestBase {
     }
 
     public void handleDescStatsAndCreateSwitch(boolean subHandShakeComplete) throws Exception {
+        handleDescStatsAndCreateSwitch(subHandShakeComplete, 0);
+    }
+
+    public void handleDescStatsAndCreateSwitch(boolean subHandShakeComplete,
+                                               long xid) throws Exception {
         // build the stats reply
-        OFDescStatsReply sr = createDescriptionStatsReply();
+        OFDescStatsReply sr = createDescriptionStatsReply().createBuilder()
+                .setXid(xid)
+                .build();
 
         reset(sw);
         SwitchDescription switchDescription = new SwitchDescription(sr);
@@ -135,6 +147,46 @@ public class OFSwitchHandshakeHandlerVer13Test extends OFSwitchHandlerTestBase {
                    CoreMatchers.instanceOf(WaitAppHandshakeState.class));
     }
 
+    /** Send all the handshake requests at once and answer them out of
+     * order
+     */
+    @Test
+    public void testPipelinedHandshake() throws Exception {
+        testInitState();
+        switchHandler.setPipelinedHandshake(true);
+        switchHandler.beginHandshake();
+
+        List<OFMessage> msgs = connection.getMessages();
+        assertEquals(5, msgs.size());
+        assertThat(msgs.get(0), CoreMatchers.instanceOf(OFPortDescStatsRequest.class));
+        assertEquals(OFType.SET_CONFIG, msgs.get(1).getType());
+        assertEquals(OFType.BARRIER_REQUEST, msgs.get(2).getType());
+        assertEquals(OFType.GET_CONFIG_REQUEST, msgs.get(3).getType());
+        assertEquals(OFType.STATS_REQUEST, msgs.get(4).getType());
+        assertEquals(OFStatsType.DESC, ((OFStatsRequest<?>) msgs.get(4)).getStatsType());
+        verifyUniqueXids(msgs);
+        long portDescXid = msgs.get(0).getXid();
+        long getConfigXid = msgs.get(3).getXid();
+        long descXid = msgs.get(4).getXid();
+        connection.clearMessages();
+        assertThat(switchHandler.getStateForTesting(),
+                   CoreMatchers.instanceOf(OFSwitchHandshakeHandler.WaitPipelinedRepliesState.class));
+
+        switchHandler.processOFMessage(factory.buildGetConfigReply()
+                .setXid(getConfigXid)
+                .setMissSendLen(0xFFFF)
+                .build());
+        switchHandler.processOFMessage(getPortDescStatsReply().createBuilder()
+                .setXid(portDescXid)
+                .build());
+        assertThat(switchHandler.getStateForTesting(),
+                   CoreMatchers.instanceOf(OFSwitchHandshakeHandler.WaitPipelinedRepliesState.class));
+
+        handleDescStatsAndCreateSwitch(true, descXid);
+        assertThat(switchHandler.getStateForTesting(),
+                   CoreMatchers.instanceOf(WaitAppHandshakeState.class));
+    }
+
     @Override
     Class<?> getRoleRequestClass() {
         return OFRoleRequest.class;
@@ -75,6 +75,7 @@ import org.projectfloodlight.openflow.protocol.OFVersion;
 import org.projectfloodlight.openflow.types.DatapathId;
 import org.projectfloodlight.openflow.types.OFAuxId;
 import org.projectfloodlight.openflow.types.OFPort;
+import org.sdnplatform.sync.IStoreClient;
 import org.sdnplatform.sync.ISyncService;
 import org.sdnplatform.sync.test.MockSyncService;
 
@@ -88,6 +89,7 @@ import com.google.common.collect.ImmutableSet;
 public class OFSwitchManagerTest{
     private Controller controller;
     private OFSwitchManager switchManager;
+    private MockSyncService syncService;
 
     // FIXME:LOJI: For now just work with OF 1.0
     private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_10);
@@ -127,7 +129,7 @@ public class OFSwitchManagerTest{
         switchManager = new OFSwitchManager();
         fmc.addService(IOFSwitchService.class, switchManager);
 
-        MockSyncService syncService = new MockSyncService();
+        syncService = new MockSyncService();
         fmc.addService(ISyncService.class, syncService);
 
         IShutdownService shutdownService = createMock(IShutdownService.class);
@@ -243,6 +245,32 @@ public class OFSwitchManagerTest{
         verify(listener);
     }
 
+    /**
+     * Test that switches are persisted when added and that persisted
+     * switches are known, i.e., get handshake admission priority, after
+     * they are loaded at startup
+     */
+    @Test
+    public void testKnownSwitchesPersisted() throws Exception {
+        IStoreClient<String, Long> store =
+                syncService.getStoreClient(OFSwitchManager.KNOWN_SWITCH_STORE_NAME,
+                                           String.class, Long.class);
+        assertTrue(!switchManager.isKnownSwitch(DATAPATH_ID_0));
+
+        IOFSwitchBackend sw = createMock(IOFSwitchBackend.class);
+        setupSwitchForAddSwitch(sw, DATAPATH_ID_0, null, null);
+        replay(sw);
+        switchManager.switchAdded(sw);
+        assertTrue(switchManager.isKnownSwitch(DATAPATH_ID_0));
+        assertNotNull(store.getValue(DATAPATH_ID_0.toString()));
+
+        // a switch persisted before a restart
+        store.put(DATAPATH_ID_1.toString(), 1L);
+        assertTrue(!switchManager.isKnownSwitch(DATAPATH_ID_1));
+        switchManager.loadKnownSwitches();
+        assertTrue(switchManager.isKnownSwitch(DATAPATH_ID_1));
+    }
+
     /**
      * Test switchActivated for a new switch while in slave: disconnect the switch
      */
@@ -0,0 +1,223 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.core.module;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.internal.ShutdownServiceImpl;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.restserver.RestApiServer;
+import net.floodlightcontroller.restserver.RestletRoutable;
+import net.floodlightcontroller.storage.memory.MemoryStorageSource;
+import net.floodlightcontroller.ui.web.StaticWebRoutable;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class FloodlightModuleLoaderTest {
+    public interface IProviderService extends IFloodlightService {
+    }
+
+    /** Records when it was initialized and started */
+    private class TestModule implements IFloodlightModule, IProviderService {
+        final String name;
+        final boolean provides;
+        final boolean depends;
+        CountDownLatch initGate;
+        FloodlightModuleException initFailure;
+        volatile int initIndex = -1;
+        volatile int startIndex = -1;
+
+        TestModule(String name, boolean provides, boolean depends) {
+            this.name = name;
+            this.provides = provides;
+            this.depends = depends;
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleServices() {
+            if (!provides) return null;
+            return Collections.<Class<? extends IFloodlightService>>
+                    singletonList(IProviderService.class);
+        }
+
+        @Override
+        public Map<Class<? extends IFloodlightService>, IFloodlightService> getServiceImpls() {
+            if (!provides) return null;
+            return Collections.<Class<? extends IFloodlightService>,
+                    IFloodlightService>singletonMap(IProviderService.class, this);
+        }
+
+        @Override
+        public Collection<Class<? extends IFloodlightService>> getModuleDependencies() {
+            if (!depends) return null;
+            return Collections.<Class<? extends IFloodlightService>>
+                    singletonList(IProviderService.class);
+        }
+
+        @Override
+        public void init(FloodlightModuleContext context)
+                throws FloodlightModuleException {
+            if (initGate != null) {
+                try {
+                    // only opens if another module inits at the same time
+                    assertTrue(name + " did not run concurrently",
+                               initGate.await(5, TimeUnit.SECONDS));
+                } catch (InterruptedException e) {
+                    throw new FloodlightModuleException(e);
+                }
+            }
+            if (initFailure != null)
+                throw initFailure;
+            synchronized (events) {
+                initIndex = events.size();
+                events.add(name + ".init");
+            }
+        }
+
+        @Override
+        public void startUp(FloodlightModuleContext context) {
+            synchronized (events) {
+                startIndex = events.size();
+                events.add(name + ".startUp");
+            }
+        }
+    }
+
+    /** Exposes the routables that were registered */
+    private static class RecordingRestApiServer extends RestApiServer {
+        List<RestletRoutable> getRestlets() {
+            return restlets;
+        }
+    }
+
+    private final List<String> events = new ArrayList<>();
+    private FloodlightModuleLoader loader;
+
+    @Before
+    public void setUp() {
+        loader = new FloodlightModuleLoader();
+        loader.setInitThreads(4);
+    }
+
+    @Test
+    public void testDependenciesAreRespected() throws Exception {
+        TestModule provider = new TestModule("provider", true, false);
+        TestModule consumer = new TestModule("consumer", false, true);
+        TestModule other = new TestModule("other", false, false);
+        List<IFloodlightModule> modules = new ArrayList<>();
+        modules.add(provider);
+        modules.add(other);
+        modules.add(consumer);
+
+        // the provider waits for the independent module to init
+        final CountDownLatch otherStarted = new CountDownLatch(1);
+        provider.initGate = otherStarted;
+        other.initGate = new CountDownLatch(0) {
+            @Override
+            public boolean await(long timeout, TimeUnit unit) {
+                otherStarted.countDown();
+                return true;
+            }
+        };
+
+        loader.initModules(modules);
+        loader.startupModules(modules);
+
+        assertTrue(other.initIndex >= 0);
+        assertTrue(provider.initIndex < consumer.initIndex);
+        // every init happens before any startUp
+        assertTrue(consumer.initIndex < provider.startIndex);
+        // modules start up one at a time in set order
+        assertEquals("provider.startUp", events.get(3));
+        assertEquals("other.startUp", events.get(4));
+        assertEquals("consumer.startUp", events.get(5));
+
+        assertNotNull(loader.getModuleTimings()
+                      .get(TestModule.class.getCanonicalName()));
+    }
+
+    @Test
+    public void testSerial() throws Exception {
+        loader.setInitThreads(1);
+        TestModule provider = new TestModule("provider", true, false);
+        TestModule other = new TestModule("other", false, false);
+        List<IFloodlightModule> modules = new ArrayList<>();
+        modules.add(other);
+        modules.add(provider);
+
+        loader.initModules(modules);
+        loader.startupModules(modules);
+        assertEquals(4, events.size());
+        assertEquals("other.init", events.get(0));
+        assertEquals("provider.init", events.get(1));
+        assertEquals("other.startUp", events.get(2));
+        assertEquals("provider.startUp", events.get(3));
+    }
+
+    @Test
+    public void testRealModulesWithDefaultThreads() throws Exception {
+        // real modules register their REST routables while starting up
+        FloodlightModuleLoader defaultLoader = new FloodlightModuleLoader();
+        assertEquals(Runtime.getRuntime().availableProcessors(),
+                     defaultLoader.getInitThreads());
+        RecordingRestApiServer restApi = new RecordingRestApiServer();
+        List<IFloodlightModule> modules = new ArrayList<>();
+        modules.add(new ShutdownServiceImpl());
+        modules.add(new DebugCounterServiceImpl());
+        modules.add(restApi);
+        modules.add(new MemoryStorageSource());
+        modules.add(new StaticWebRoutable());
+
+        defaultLoader.initModules(modules);
+        defaultLoader.startupModules(modules);
+
+        List<Class<?>> registered = new ArrayList<>();
+        for (RestletRoutable r : restApi.getRestlets())
+            registered.add(r.getClass());
+        assertEquals(2, registered.size());
+        assertTrue(registered.contains(StaticWebRoutable.class));
+        assertEquals(5, defaultLoader.getModuleTimings().size());
+    }
+
+    @Test
+    public void testFailureIsReported() throws Exception {
+        TestModule provider = new TestModule("provider", true, false);
+        TestModule consumer = new TestModule("consumer", false, true);
+        provider.initFailure = new FloodlightModuleException("broken");
+        List<IFloodlightModule> modules = new ArrayList<>();
+        modules.add(provider);
+        modules.add(consumer);
+
+        try {
+            loader.initModules(modules);
+            fail("Expected the init failure to be reported");
+        } catch (FloodlightModuleException e) {
+            assertEquals("broken", e.getMessage());
+        }
+        // the dependent module never ran
+        assertEquals(-1, consumer.initIndex);
+    }
+}
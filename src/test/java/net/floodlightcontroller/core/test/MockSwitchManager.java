@@ -100,6 +100,11 @@ public class MockSwitchManager implements IFloodlightModule, IOFSwitchManager, I
         return ImmutableList.copyOf(this.switchHandlers.values());
     }
 
+    @Override
+    public boolean isHandshakeBackpressured() {
+        return false;
+    }
+
     @Override
     public void addOFSwitchDriver(String manufacturerDescriptionPrefix,
                                   IOFSwitchDriver driver) {
@@ -41,6 +41,14 @@ public class MockThreadPoolService implements IFloodlightModule, IThreadPoolServ
         return mockExecutor;
     }
 
+    /**
+     * All named executors are the same mock executor.
+     */
+    @Override
+    public ScheduledExecutorService getScheduledExecutor(String name) {
+        return mockExecutor;
+    }
+
     // IFloodlightModule
     
     @Override
@@ -5,6 +5,7 @@ import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
 import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
 
 import org.junit.Test;
 import net.floodlightcontroller.debugcounter.IDebugCounterService.MetaData;
@@ -78,4 +79,44 @@ public class DebugCounterImplTest {
         assertEquals(ImmutableSet.of(MetaData.WARN, MetaData.DROP),
                      c2.getMetaData());
     }
+
+    @Test
+    public void testConcurrentIncrements() throws Exception {
+        final DebugCounterImpl c =
+                new DebugCounterImpl("foo", "bar", "The foo bar counter",
+                                     Collections.<MetaData>emptyList());
+        final int nThreads = 32;
+        final int nIncrements = 20000;
+        final CountDownLatch start = new CountDownLatch(1);
+        Thread[] threads = new Thread[nThreads];
+        for (int i = 0; i < nThreads; i++) {
+            threads[i] = new Thread() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    for (int j = 0; j < nIncrements; j++) {
+                        c.increment();
+                        c.add(2);
+                    }
+                }
+            };
+            threads[i].start();
+        }
+        long before = System.currentTimeMillis();
+        start.countDown();
+        for (Thread t: threads) {
+            t.join();
+        }
+        assertEquals(3L * nThreads * nIncrements, c.getCounterValue());
+        assertTrue(c.getLastModified() >= before);
+
+        c.reset();
+        assertEquals(0L, c.getCounterValue());
+        c.increment();
+        assertEquals(1L, c.getCounterValue());
+    }
 }
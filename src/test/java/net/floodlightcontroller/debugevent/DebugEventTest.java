@@ -73,20 +73,20 @@ public class DebugEventTest extends FloodlightTestCase {
         assertEquals(true, debugEvent.containsModuleEventName("dbgevtest","switchevent"));
         assertEquals(true, debugEvent.containsModuleEventName("dbgevtest","pktinevent"));
 
-        assertEquals(0, debugEvent.allEvents.get(eventId1).circularEventBuffer.size());
-        assertEquals(0, debugEvent.allEvents.get(eventId2).circularEventBuffer.size());
+        assertEquals(0, debugEvent.allEvents.get(eventId1).size());
+        assertEquals(0, debugEvent.allEvents.get(eventId2).size());
 
         // update is immediately flushed to global store
         event1.newEventWithFlush(new SwitchyEvent(DatapathId.of(1L), "connected"));
-        assertEquals(1, debugEvent.allEvents.get(eventId1).circularEventBuffer.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId1).size());
 
-        // update is flushed only when flush is explicitly called
+        // updates are visible to readers right away, with or without flush
         event2.newEventNoFlush(new PacketyEvent(DatapathId.of(1L), 24L));
-        assertEquals(0, debugEvent.allEvents.get(eventId2).circularEventBuffer.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId2).size());
 
         debugEvent.flushEvents();
-        assertEquals(1, debugEvent.allEvents.get(eventId1).circularEventBuffer.size());
-        assertEquals(1, debugEvent.allEvents.get(eventId2).circularEventBuffer.size());
+        assertEquals(1, debugEvent.allEvents.get(eventId1).size());
+        assertEquals(1, debugEvent.allEvents.get(eventId2).size());
 
         EventInfoResource de = debugEvent.getSingleEventHistory("dbgevtest","switchevent", 100);
         assertEquals(1, de.events.size());
@@ -231,4 +231,44 @@ public class DebugEventTest extends FloodlightTestCase {
         dei = debugEvent.getSingleEventHistory("test","ack", 1);
         assertTrue(dei.getEvents().get(0).isAcked());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testEventsFromManyThreads() throws Exception {
+        final IEventCategory<IntEvent> ev = debugEvent.buildEvent(IntEvent.class)
+                .setModuleName("test")
+                .setEventName("threads")
+                .setEventDescription("just a test")
+                .setEventType(EventType.ALWAYS_LOG)
+                .setBufferCapacity(20)
+                .setAckable(false)
+                .register();
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int base = t * 100;
+            threads[t] = new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < 50; i++)
+                        ev.newEventNoFlush(new IntEvent(base + i));
+                }
+            };
+            threads[t].start();
+            // serialize the writers so the most recent events are known
+            threads[t].join();
+        }
+        EventInfoResource dei = debugEvent.getSingleEventHistory("test","threads", 0);
+        assertEquals(20, dei.events.size());
+        int k = 349;
+        for (EventResource m : dei.events) {
+            assertEquals(String.valueOf(k), m.getDataFields().get(0).getEventData());
+            k--;
+        }
+
+        debugEvent.resetSingleEvent("test", "threads");
+        dei = debugEvent.getSingleEventHistory("test","threads", 0);
+        assertEquals(0, dei.events.size());
+        ev.newEventNoFlush(new IntEvent(7));
+        dei = debugEvent.getSingleEventHistory("test","threads", 0);
+        assertEquals(1, dei.events.size());
+    }
+}
@@ -48,6 +48,8 @@ import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import net.floodlightcontroller.core.FloodlightContext;
 import net.floodlightcontroller.core.IFloodlightProviderService;
@@ -56,7 +58,9 @@ import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.HARole;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.module.FloodlightModuleException;
+import net.floodlightcontroller.core.test.MockScheduledExecutor;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.core.util.SingletonTask;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
 import net.floodlightcontroller.debugevent.IDebugEventService;
@@ -90,6 +94,7 @@ import net.floodlightcontroller.topology.ITopologyService;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
+import org.junit.Ignore;
 import org.junit.Test;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFPacketIn;
@@ -1676,16 +1681,17 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 					// clone entities
 					Device newDevice = d;
 					for (Entity e: d.getEntities()) {
-						Entity newEntity = new Entity (e.macAddress,
-								e.vlan,
-								e.ipv4Address,
-								e.switchDPID,
-								e.switchPort,
-								e.lastSeenTimestamp);
-						if (e.vlan == null)
-							newEntity.vlan = VlanVid.ofVlan(1);
+						VlanVid newVlan;
+						if (e.getVlan() == null)
+							newVlan = VlanVid.ofVlan(1);
 						else
-							newEntity.vlan = VlanVid.ofVlan(((e.vlan.getVlan() + 1 % 4095)+1));
+							newVlan = VlanVid.ofVlan(((e.getVlan().getVlan() + 1 % 4095)+1));
+						Entity newEntity = new Entity (e.getMacAddress(),
+								newVlan,
+								e.getIpv4Address(),
+								e.getSwitchDPID(),
+								e.getSwitchPort(),
+								e.getLastSeenTimestamp());
 						newDevice = new Device(newDevice, newEntity, -1);
 					}
 					assertEquals(false, newDevice.equals(d));
@@ -2033,6 +2039,191 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 		doTestDeviceQuery();
 	}
 
+	private static void assertDeviceKeys(Iterator<? extends IDevice> iter,
+			IDevice... expected) {
+		Set<Long> expectedKeys = new HashSet<Long>();
+		for (IDevice d : expected)
+			expectedKeys.add(d.getDeviceKey());
+		Set<Long> keys = new HashSet<Long>();
+		while (iter.hasNext())
+			assertTrue(keys.add(iter.next().getDeviceKey()));
+		assertEquals(expectedKeys, keys);
+	}
+
+	@Test
+	public void testDeviceQueryFieldIndices() throws Exception {
+		ITopologyService mockTopology = createMock(ITopologyService.class);
+		deviceManager.topology = mockTopology;
+		expect(mockTopology.isAttachmentPointPort(DatapathId.of(anyLong()),
+				OFPort.of(anyShort()))).
+				andReturn(true).anyTimes();
+		expect(mockTopology.getL2DomainId(DatapathId.of(EasyMock.anyLong()))).andReturn(DatapathId.of(1L)).anyTimes();
+		replay(mockTopology);
+
+		// No indices are registered, so these queries are answered from
+		// the query planner's indices
+		Entity entity1 = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), DatapathId.of(1L), OFPort.of(1), new Date());
+		Entity entity2 = new Entity(MacAddress.of(2L), VlanVid.ofVlan(2), IPv4Address.of(2), DatapathId.of(1L), OFPort.of(2), new Date());
+		Entity entity3 = new Entity(MacAddress.of(3L), VlanVid.ofVlan(1), IPv4Address.of(3), DatapathId.of(5L), OFPort.of(1), new Date());
+		IDevice d1 = deviceManager.learnDeviceByEntity(entity1);
+		IDevice d2 = deviceManager.learnDeviceByEntity(entity2);
+		IDevice d3 = deviceManager.learnDeviceByEntity(entity3);
+
+		assertDeviceKeys(deviceManager.queryDevices(null, null,
+				IPv4Address.of(2), null, null), d2);
+		assertDeviceKeys(deviceManager.queryDevices(MacAddress.of(3L), null,
+				null, null, null), d3);
+		assertDeviceKeys(deviceManager.queryDevices(null, VlanVid.ofVlan(1),
+				null, null, null), d1, d3);
+		assertDeviceKeys(deviceManager.queryDevices(null, null, null,
+				DatapathId.of(1L), null), d1, d2);
+		assertDeviceKeys(deviceManager.queryDevices(null, null, null,
+				DatapathId.of(1L), OFPort.of(2)), d2);
+		assertDeviceKeys(deviceManager.queryDevices(MacAddress.of(3L),
+				VlanVid.ofVlan(1), IPv4Address.of(3), null, null), d3);
+		assertDeviceKeys(deviceManager.queryDevices(null, VlanVid.ofVlan(2),
+				IPv4Address.of(1), null, null));
+		assertDeviceKeys(deviceManager.queryDevices(null, null,
+				IPv4Address.of(9), null, null));
+		assertDeviceKeys(deviceManager.queryClassDevices(d1.getEntityClass(),
+				null, null, null, DatapathId.of(5L), null), d3);
+
+		// the indices follow deleted devices
+		deviceManager.deleteDevice((Device)d2);
+		assertDeviceKeys(deviceManager.queryDevices(null, null, null,
+				DatapathId.of(1L), null), d1);
+		assertDeviceKeys(deviceManager.queryDevices(null, null,
+				IPv4Address.of(2), null, null));
+	}
+
+	@Test
+	public void testDeviceQueryIndicesFollowExpiry() throws Exception {
+		Calendar c = Calendar.getInstance();
+		c.add(Calendar.MILLISECOND, -DeviceManagerImpl.ENTITY_TIMEOUT-1);
+		Date expired = c.getTime();
+
+		ITopologyService mockTopology = createMock(ITopologyService.class);
+		deviceManager.topology = mockTopology;
+		expect(mockTopology.isAttachmentPointPort(DatapathId.of(EasyMock.anyLong()),
+				OFPort.of(EasyMock.anyShort()))).
+				andReturn(true).anyTimes();
+		expect(mockTopology.getL2DomainId(DatapathId.of(EasyMock.anyLong()))).andReturn(DatapathId.of(1L)).anyTimes();
+		expect(mockTopology.isConsistent(DatapathId.of(EasyMock.anyLong()),
+				OFPort.of(EasyMock.anyShort()),
+				DatapathId.of(EasyMock.anyLong()),
+				OFPort.of(EasyMock.anyShort()))).andReturn(false).
+				anyTimes();
+		expect(mockTopology.isBroadcastDomainPort(DatapathId.of(EasyMock.anyLong()),
+				OFPort.of(EasyMock.anyShort()))).
+				andReturn(false).anyTimes();
+		replay(mockTopology);
+
+		// d1 expires entirely; d2 keeps its entity on port 4 but its old
+		// entity on port 3 expires
+		IDevice d1 = deviceManager.learnDeviceByEntity(new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), DatapathId.of(1L), OFPort.of(1), expired));
+		deviceManager.learnDeviceByEntity(new Entity(MacAddress.of(2L), VlanVid.ZERO, IPv4Address.of(2), DatapathId.of(5L), OFPort.of(3), expired));
+		IDevice d2 = deviceManager.learnDeviceByEntity(new Entity(MacAddress.of(2L), VlanVid.ZERO, IPv4Address.of(22), DatapathId.of(5L), OFPort.of(4), new Date()));
+		assertArrayEquals(new SwitchPort[] { new SwitchPort(DatapathId.of(5L), OFPort.of(4)) },
+				d2.getAttachmentPoints());
+		// the device has also left the old attachment point behind
+		deviceManager.deviceMap.get(d2.getDeviceKey()).oldAPs = null;
+
+		DeviceIndex switchIndex =
+				deviceManager.queryPlanner.attachmentPointIndices.get(0);
+		DeviceIndex switchPortIndex =
+				deviceManager.queryPlanner.attachmentPointIndices.get(1);
+		Entity sw1 = new Entity(null, null, null, DatapathId.of(1L), null, null);
+		Entity sw5port3 = new Entity(null, null, null, DatapathId.of(5L), OFPort.of(3), null);
+		Entity sw5port4 = new Entity(null, null, null, DatapathId.of(5L), OFPort.of(4), null);
+		assertTrue(switchIndex.getDeviceKeys(sw1).contains(d1.getDeviceKey()));
+		assertTrue(switchPortIndex.getDeviceKeys(sw5port3).contains(d2.getDeviceKey()));
+
+		// untagged hosts are not indexed by VLAN, but can still be found
+		DeviceIndex vlanIndex = deviceManager.queryPlanner.fieldIndices.get(2);
+		assertTrue(vlanIndex.getDeviceKeys(
+				new Entity(null, VlanVid.ZERO, null, null, null, null)).isEmpty());
+		assertDeviceKeys(deviceManager.queryDevices(null, VlanVid.ZERO,
+				null, DatapathId.of(5L), null), d2);
+
+		deviceManager.cleanupEntities();
+		assertNull(deviceManager.getDevice(d1.getDeviceKey()));
+		assertTrue(switchIndex.getDeviceKeys(sw1).isEmpty());
+		assertTrue(vlanIndex.getDeviceKeys(new Entity(null, VlanVid.ofVlan(1),
+				null, null, null, null)).isEmpty());
+		assertTrue(switchPortIndex.getDeviceKeys(sw5port3).isEmpty());
+		assertEquals(Collections.singleton(d2.getDeviceKey()),
+				new HashSet<Long>(switchPortIndex.getDeviceKeys(sw5port4)));
+		assertDeviceKeys(deviceManager.queryDevices(null, null, null,
+				DatapathId.of(5L), OFPort.of(4)), d2);
+	}
+
+	@Test
+	@Ignore // ignored just to speed up routine tests
+	public void testPerfQueryDevices() throws Exception {
+		ITopologyService mockTopology = createNiceMock(ITopologyService.class);
+		deviceManager.topology = mockTopology;
+		expect(mockTopology.isAttachmentPointPort(DatapathId.of(anyLong()),
+				OFPort.of(anyShort()))).
+				andReturn(true).anyTimes();
+		expect(mockTopology.getL2DomainId(DatapathId.of(EasyMock.anyLong()))).andReturn(DatapathId.of(1L)).anyTimes();
+		replay(mockTopology);
+
+		final int queries = 1000;
+		int learned = 0;
+		for (int devices = 1000; devices <= 100000; devices *= 10) {
+			// 48 hosts per switch
+			for (; learned < devices; learned++) {
+				deviceManager.learnDeviceByEntity(new Entity(
+						MacAddress.of(learned + 1), VlanVid.ZERO,
+						IPv4Address.of(0x0a000000 + learned + 1),
+						DatapathId.of(learned / 48 + 1),
+						OFPort.of(learned % 48 + 1), new Date()));
+			}
+
+			long start = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				int host = (i * 7919) % devices;
+				Iterator<? extends IDevice> iter =
+						deviceManager.queryDevices(null, null,
+								IPv4Address.of(0x0a000000 + host + 1),
+								null, null);
+				assertTrue(iter.hasNext());
+			}
+			long ipv4Ns = (System.nanoTime() - start) / queries;
+
+			start = System.nanoTime();
+			for (int i = 0; i < queries; i++) {
+				int host = (i * 7919) % devices;
+				Iterator<? extends IDevice> iter =
+						deviceManager.queryDevices(null, null, null,
+								DatapathId.of(host / 48 + 1),
+								OFPort.of(host % 48 + 1));
+				assertTrue(iter.hasNext());
+			}
+			long switchPortNs = (System.nanoTime() - start) / queries;
+
+			// the full scan the same IPv4 queries took without an index
+			int scans = Math.max(1, queries / (devices / 1000));
+			start = System.nanoTime();
+			for (int i = 0; i < scans; i++) {
+				int host = (i * 7919) % devices;
+				Iterator<Device> iter = new DeviceIterator(
+						deviceManager.deviceMap.values().iterator(), null,
+						null, null, IPv4Address.of(0x0a000000 + host + 1),
+						null, null);
+				assertTrue(iter.hasNext());
+				while (iter.hasNext())
+					iter.next();
+			}
+			long scanNs = (System.nanoTime() - start) / scans;
+
+			logger.info("{} devices: IPv4 query {} us, switch/port query " +
+					"{} us, full scan {} us",
+					new Object[] { devices, ipv4Ns / 1000,
+							switchPortNs / 1000, scanNs / 1000 });
+		}
+	}
+
 	protected void doTestDeviceClassQuery() throws Exception {
 		Entity entity1 = new Entity(MacAddress.of(1L), VlanVid.ofVlan(1), IPv4Address.of(1), DatapathId.of(1L), OFPort.of(1), new Date());
 		Entity entity2 = new Entity(MacAddress.of(2L), VlanVid.ofVlan(2), IPv4Address.of(2), DatapathId.of(1L), OFPort.of(2), new Date());
@@ -2687,10 +2878,19 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 	 * list. We don't return the key from the store however, we assert
 	 * that the key from the store matches the key in the representation.
 	 * If we have a null value (tombstone) we simply add the null value to
-	 * the list to return.
+	 * the list to return. Queued device updates are written first.
 	 */
 	private List<DeviceSyncRepresentation> getEntriesFromStore()
 			throws Exception {
+		deviceManager.writePendingDevicesToStore();
+		return getWrittenEntriesFromStore();
+	}
+
+	/* Like getEntriesFromStore() but without writing the queued device
+	 * updates
+	 */
+	private List<DeviceSyncRepresentation> getWrittenEntriesFromStore()
+			throws Exception {
 		List<DeviceSyncRepresentation> entries =
 				new ArrayList<DeviceSyncRepresentation>();
 		IClosableIterator<Entry<String, Versioned<DeviceSyncRepresentation>>> iter =
@@ -2841,6 +3041,60 @@ public class DeviceManagerImplTest extends FloodlightTestCase {
 	}
 
 
+	/* Updates to the sync store are queued and written in a batch, with
+	 * repeated updates to the same device written once.
+	 */
+	@Test
+	public void testWriteToSyncStoreBatched() throws Exception {
+		ITopologyService mockTopology = makeMockTopologyAllPortsAp();
+		replay(mockTopology);
+		deviceManager.topology = mockTopology;
+		deviceManager.setSyncStoreWriteInterval(0);
+		// the test decides when the queue is written
+		final AtomicInteger writeSchedules = new AtomicInteger();
+		deviceManager.setStoreWriteTask(
+				new SingletonTask(new MockScheduledExecutor(), null) {
+			@Override
+			public void reschedule(long delay, TimeUnit unit) {
+				assertEquals(DeviceManagerImpl.SYNC_STORE_WRITE_DELAY_MS,
+						unit.toMillis(delay));
+				writeSchedules.incrementAndGet();
+			}
+		});
+
+		Entity e1a = new Entity(MacAddress.of(1L), VlanVid.ofVlan(2), IPv4Address.of(3), DatapathId.of(4L), OFPort.of(5), new Date());
+		Entity e1b = new Entity(MacAddress.of(1L), VlanVid.ofVlan(2), IPv4Address.of(33), DatapathId.of(4L), OFPort.of(5), new Date());
+		Entity e2 = new Entity(MacAddress.of(2L), null, null, DatapathId.of(5L), OFPort.of(5), new Date());
+		deviceManager.learnDeviceByEntity(e1a);
+		deviceManager.learnDeviceByEntity(e1b);
+		deviceManager.learnDeviceByEntity(e2);
+		assertEquals(0, getWrittenEntriesFromStore().size());
+		// one write is scheduled for all the queued updates
+		assertEquals(1, writeSchedules.get());
+
+		deviceManager.writePendingDevicesToStore();
+		List<DeviceSyncRepresentation> entries = getWrittenEntriesFromStore();
+		assertEquals(2, entries.size());
+		for (DeviceSyncRepresentation dsr: entries) {
+			if (dsr.getKey().contains("::00:00:00:00:00:01::")) {
+				// the latest version of device 1
+				assertEquals(2, dsr.getEntities().size());
+			} else if (dsr.getKey().contains("::00:00:00:00:00:02::")) {
+				assertEquals(1, dsr.getEntities().size());
+			} else {
+				fail("Unknown entry in store: " + dsr);
+			}
+		}
+
+		// an update after the write schedules the next one
+		Entity e3 = new Entity(MacAddress.of(3L), null, null, DatapathId.of(5L), OFPort.of(6), new Date());
+		deviceManager.learnDeviceByEntity(e3);
+		assertEquals(2, writeSchedules.get());
+		assertEquals(2, getWrittenEntriesFromStore().size());
+		deviceManager.writePendingDevicesToStore();
+		assertEquals(3, getWrittenEntriesFromStore().size());
+	}
+
 	private void assertDeviceIps(IPv4Address[] expected, IDevice d) {
 		List<IPv4Address> expectedList = Arrays.asList(expected);
 		Collections.sort(expectedList);
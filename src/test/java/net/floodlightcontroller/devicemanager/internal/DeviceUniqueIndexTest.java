@@ -147,7 +147,9 @@ public class DeviceUniqueIndexTest extends TestCase {
         // only one key field is null
         idx2.updateIndex(e3, 3L);
         assertEquals(Long.valueOf(3L), idx2.findByEntity(e3));
-        e3.ipv4Address = IPv4Address.of(3);
+        e3 = new Entity(e3.getMacAddress(), e3.getVlan(), IPv4Address.of(3),
+                        e3.getSwitchDPID(), e3.getSwitchPort(),
+                        e3.getLastSeenTimestamp());
         assertEquals(null, idx2.findByEntity(e3));
         // all key fields are null
         idx2.updateIndex(e4, 4L);
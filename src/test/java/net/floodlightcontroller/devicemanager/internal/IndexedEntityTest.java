@@ -0,0 +1,244 @@
+package net.floodlightcontroller.devicemanager.internal;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.VlanVid;
+
+import net.floodlightcontroller.devicemanager.IDeviceService.DeviceField;
+
+/**
+ * Checks that packed keys behave like {@link IndexedEntity} keys
+ */
+public class IndexedEntityTest {
+    // a MAC above 48 bits can't be packed; for the other fields null, 0
+    // and all bits set are different values, and VLAN -1 is untagged
+    private static final MacAddress[] MACS = {
+        MacAddress.of(1L), MacAddress.of(0xffffffffffffL),
+        MacAddress.of((1L << 48) | 1L)
+    };
+    private static final VlanVid[] VLANS = {
+        null, VlanVid.ofVlan(-1), VlanVid.ofVlan(0), VlanVid.ofVlan(1),
+        VlanVid.ofVlan(4095)
+    };
+    private static final IPv4Address[] IPS = {
+        null, IPv4Address.of(0), IPv4Address.of(1), IPv4Address.of(-1)
+    };
+    private static final OFPort[] PORTS = {
+        null, OFPort.of(1), OFPort.LOCAL
+    };
+
+    /**
+     * @return an entity for each combination of the values above
+     */
+    private static List<Entity> allEntities() {
+        List<Entity> entities = new ArrayList<Entity>();
+        for (MacAddress mac : MACS)
+            for (VlanVid vlan : VLANS)
+                for (IPv4Address ip : IPS)
+                    for (OFPort port : PORTS)
+                        entities.add(new Entity(mac, vlan, ip,
+                                                DatapathId.of(1L), port,
+                                                null));
+        return entities;
+    }
+
+    /**
+     * @return every non-empty set of key fields
+     */
+    private static List<EnumSet<DeviceField>> allKeyFields() {
+        DeviceField[] fields = DeviceField.values();
+        List<EnumSet<DeviceField>> r = new ArrayList<EnumSet<DeviceField>>();
+        for (int bits = 1; bits < (1 << fields.length); bits++) {
+            EnumSet<DeviceField> keyFields = EnumSet.noneOf(DeviceField.class);
+            for (int i = 0; i < fields.length; i++) {
+                if ((bits & (1 << i)) != 0)
+                    keyFields.add(fields[i]);
+            }
+            r.add(keyFields);
+        }
+        return r;
+    }
+
+    @Test
+    public void testCanPack() {
+        assertTrue(IndexedEntity.canPack(EnumSet.of(DeviceField.MAC)));
+        assertTrue(IndexedEntity.canPack(EnumSet.of(DeviceField.MAC,
+                                                    DeviceField.VLAN)));
+        assertTrue(IndexedEntity.canPack(EnumSet.of(DeviceField.IPV4,
+                                                    DeviceField.VLAN)));
+        assertTrue(IndexedEntity.canPack(EnumSet.of(DeviceField.PORT,
+                                                    DeviceField.VLAN)));
+        assertFalse(IndexedEntity.canPack(EnumSet.of(DeviceField.SWITCH)));
+        assertFalse(IndexedEntity.canPack(EnumSet.of(DeviceField.MAC,
+                                                     DeviceField.IPV4)));
+        assertFalse(IndexedEntity.canPack(EnumSet.of(DeviceField.IPV4,
+                                                     DeviceField.PORT)));
+    }
+
+    @Test
+    public void testPackedKeyMatchesEquals() {
+        List<Entity> entities = allEntities();
+        for (EnumSet<DeviceField> keyFields : allKeyFields()) {
+            boolean canPack = IndexedEntity.canPack(keyFields);
+            for (Entity a : entities) {
+                long pa = IndexedEntity.packKey(keyFields, a);
+                boolean bigMac = keyFields.contains(DeviceField.MAC) &&
+                        (a.getMacAddress().getLong() >>> 48) != 0;
+                if (!canPack || bigMac) {
+                    assertEquals(IndexedEntity.NO_PACKED_KEY, pa);
+                    continue;
+                }
+                assertTrue(pa >= 0);
+                IndexedEntity ia = new IndexedEntity(keyFields, a);
+                for (Entity b : entities) {
+                    long pb = IndexedEntity.packKey(keyFields, b);
+                    boolean equal =
+                            ia.equals(new IndexedEntity(keyFields, b));
+                    if (pb == IndexedEntity.NO_PACKED_KEY) {
+                        // b is kept as an IndexedEntity, so it must not
+                        // be the same key as a packed one
+                        assertFalse(keyFields + ": " + a + " " + b, equal);
+                    } else {
+                        assertEquals(keyFields + ": " + a + " " + b,
+                                     equal, pa == pb);
+                    }
+                }
+            }
+        }
+    }
+
+    private static Device randomDevice(Random r, List<Entity> entities,
+                                       long deviceKey) {
+        List<Entity> es = new ArrayList<Entity>();
+        int n = 1 + r.nextInt(3);
+        for (int i = 0; i < n; i++)
+            es.add(entities.get(r.nextInt(entities.size())));
+        return new Device(null, deviceKey, null, null, null, es, null);
+    }
+
+    private static List<Long> sorted(Iterator<Long> keys) {
+        List<Long> r = new ArrayList<Long>();
+        while (keys.hasNext())
+            r.add(keys.next());
+        Collections.sort(r);
+        return r;
+    }
+
+    @Test
+    public void testUniqueIndexPackedMatchesUnpacked() {
+        List<Entity> entities = allEntities();
+        Random r = new Random(42);
+        for (EnumSet<DeviceField> keyFields : allKeyFields()) {
+            DeviceUniqueIndex packed = new DeviceUniqueIndex(keyFields);
+            DeviceUniqueIndex unpacked = new DeviceUniqueIndex(keyFields);
+            unpacked.packKeys = false;
+            for (int i = 0; i < 2000; i++) {
+                Entity e = entities.get(r.nextInt(entities.size()));
+                Long deviceKey = Long.valueOf(r.nextInt(8));
+                switch (r.nextInt(5)) {
+                    case 0:
+                        assertEquals(unpacked.updateIndex(e, deviceKey),
+                                     packed.updateIndex(e, deviceKey));
+                        break;
+                    case 1:
+                        Device d = randomDevice(r, entities, deviceKey);
+                        assertEquals(unpacked.updateIndex(d, deviceKey),
+                                     packed.updateIndex(d, deviceKey));
+                        break;
+                    case 2:
+                        unpacked.removeEntity(e);
+                        packed.removeEntity(e);
+                        break;
+                    default:
+                        unpacked.removeEntity(e, deviceKey);
+                        packed.removeEntity(e, deviceKey);
+                        break;
+                }
+            }
+            for (Entity e : entities) {
+                assertEquals(keyFields + ": " + e, unpacked.findByEntity(e),
+                             packed.findByEntity(e));
+                assertEquals(sorted(unpacked.queryByEntity(e)),
+                             sorted(packed.queryByEntity(e)));
+            }
+            assertEquals(sorted(unpacked.getAll()), sorted(packed.getAll()));
+        }
+    }
+
+    @Test
+    public void testMultiIndexPackedMatchesUnpacked() {
+        List<Entity> entities = allEntities();
+        Random r = new Random(42);
+        for (EnumSet<DeviceField> keyFields : allKeyFields()) {
+            DeviceMultiIndex packed = new DeviceMultiIndex(keyFields);
+            DeviceMultiIndex unpacked = new DeviceMultiIndex(keyFields);
+            unpacked.packKeys = false;
+            for (int i = 0; i < 2000; i++) {
+                Entity e = entities.get(r.nextInt(entities.size()));
+                // more device keys than fit in the arrays of a packed key
+                Long deviceKey = Long.valueOf(
+                        r.nextInt(2 * DeviceMultiIndex.MAX_ARRAY_SIZE));
+                switch (r.nextInt(6)) {
+                    case 0:
+                    case 1:
+                        assertEquals(unpacked.updateIndex(e, deviceKey),
+                                     packed.updateIndex(e, deviceKey));
+                        break;
+                    case 2:
+                        Device d = randomDevice(r, entities, deviceKey);
+                        assertEquals(unpacked.updateIndex(d, deviceKey),
+                                     packed.updateIndex(d, deviceKey));
+                        break;
+                    case 3:
+                        unpacked.removeEntity(e);
+                        packed.removeEntity(e);
+                        break;
+                    default:
+                        unpacked.removeEntity(e, deviceKey);
+                        packed.removeEntity(e, deviceKey);
+                        break;
+                }
+            }
+            for (Entity e : entities) {
+                assertEquals(keyFields + ": " + e,
+                             new HashSet<Long>(unpacked.getDeviceKeys(e)),
+                             new HashSet<Long>(packed.getDeviceKeys(e)));
+                assertEquals(sorted(unpacked.queryByEntity(e)),
+                             sorted(packed.queryByEntity(e)));
+            }
+            assertEquals(sorted(unpacked.getAll()), sorted(packed.getAll()));
+        }
+    }
+
+    @Test
+    public void testMultiIndexRemovesEmptyKeys() {
+        DeviceMultiIndex index =
+                new DeviceMultiIndex(EnumSet.of(DeviceField.MAC));
+        Entity e = new Entity(MACS[0], null, null, DatapathId.of(1L), null,
+                              null);
+        // as an array, then promoted to a set
+        for (int n : new int[] { 3, DeviceMultiIndex.MAX_ARRAY_SIZE + 5 }) {
+            for (long key = 0; key < n; key++)
+                index.updateIndex(e, key);
+            assertEquals(1, index.getPackedKeyCount());
+            assertEquals(n, index.getDeviceKeys(e).size());
+            for (long key = 0; key < n; key++)
+                index.removeEntity(e, key);
+            assertEquals(0, index.getPackedKeyCount());
+            assertTrue(index.getDeviceKeys(e).isEmpty());
+        }
+    }
+}
@@ -0,0 +1,247 @@
+package net.floodlightcontroller.firewall;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import net.floodlightcontroller.packet.ARP;
+import net.floodlightcontroller.packet.Data;
+import net.floodlightcontroller.packet.Ethernet;
+import net.floodlightcontroller.packet.ICMP;
+import net.floodlightcontroller.packet.IPv4;
+import net.floodlightcontroller.packet.TCP;
+import net.floodlightcontroller.packet.UDP;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.EthType;
+import org.projectfloodlight.openflow.types.IPv4Address;
+import org.projectfloodlight.openflow.types.IPv4AddressWithMask;
+import org.projectfloodlight.openflow.types.IpProtocol;
+import org.projectfloodlight.openflow.types.MacAddress;
+import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
+
+/**
+ * Checks {@link FirewallRuleClassifier} against a linear scan of the rules
+ * with {@link FirewallRule#matchesThisPacket}
+ */
+public class FirewallRuleClassifierTest {
+    private static final OFFactory factory =
+            OFFactories.getFactory(OFVersion.OF_13);
+
+    // small value spaces, so that rules and packets often match
+    private static final long[] DPIDS = { 1, 2 };
+    private static final int[] PORTS = { 1, 2 };
+    private static final long[] MACS = { 1, 2 };
+    private static final int[] IPS = {
+        IPv4Address.of("10.0.0.1").getInt(),
+        IPv4Address.of("10.0.0.2").getInt(),
+        IPv4Address.of("10.0.1.1").getInt(),
+        IPv4Address.of("11.0.0.1").getInt()
+    };
+    private static final int[] MASK_BITS = { 0, 8, 24, 32 };
+    private static final int[] TP_PORTS = { 80, 81 };
+    // IPv6 is never matched by matchesThisPacket
+    private static final EthType[] DL_TYPES = {
+        EthType.ARP, EthType.IPv4, EthType.IPv6
+    };
+    private static final IpProtocol[] NW_PROTOS = {
+        IpProtocol.TCP, IpProtocol.UDP, IpProtocol.ICMP
+    };
+
+    /**
+     * Generate a rule constraining each field with probability 1/3.
+     * Fields are constrained independently, so the rules include ones that
+     * matchesThisPacket partly ignores, e.g. IPv4 addresses on a rule
+     * without dl_type or transport ports on an ICMP rule.
+     */
+    private static FirewallRule randomRule(Random r, int ruleid) {
+        FirewallRule rule = new FirewallRule();
+        rule.ruleid = ruleid;
+        rule.priority = r.nextInt(10);
+        rule.action = r.nextBoolean() ? FirewallRule.FirewallAction.ALLOW
+                                      : FirewallRule.FirewallAction.DROP;
+        if (r.nextInt(3) == 0) {
+            rule.dpid = DatapathId.of(DPIDS[r.nextInt(DPIDS.length)]);
+            rule.any_dpid = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.in_port = OFPort.of(PORTS[r.nextInt(PORTS.length)]);
+            rule.any_in_port = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.dl_src = MacAddress.of(MACS[r.nextInt(MACS.length)]);
+            rule.any_dl_src = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.dl_dst = MacAddress.of(MACS[r.nextInt(MACS.length)]);
+            rule.any_dl_dst = false;
+        }
+        if (r.nextInt(3) != 0) {
+            rule.dl_type = DL_TYPES[r.nextInt(DL_TYPES.length)];
+            rule.any_dl_type = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.nw_src_prefix_and_mask = randomPrefix(r);
+            rule.any_nw_src = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.nw_dst_prefix_and_mask = randomPrefix(r);
+            rule.any_nw_dst = false;
+        }
+        if (r.nextInt(3) != 0) {
+            rule.nw_proto = NW_PROTOS[r.nextInt(NW_PROTOS.length)];
+            rule.any_nw_proto = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.tp_src = TransportPort.of(TP_PORTS[r.nextInt(TP_PORTS.length)]);
+            rule.any_tp_src = false;
+        }
+        if (r.nextInt(3) == 0) {
+            rule.tp_dst = TransportPort.of(TP_PORTS[r.nextInt(TP_PORTS.length)]);
+            rule.any_tp_dst = false;
+        }
+        return rule;
+    }
+
+    private static IPv4AddressWithMask randomPrefix(Random r) {
+        IPv4Address ip = IPv4Address.of(IPS[r.nextInt(IPS.length)]);
+        int bits = MASK_BITS[r.nextInt(MASK_BITS.length)];
+        return ip.withMaskOfLength(bits);
+    }
+
+    private static Ethernet randomPacket(Random r) {
+        Ethernet eth = new Ethernet()
+        .setSourceMACAddress(MacAddress.of(MACS[r.nextInt(MACS.length)]))
+        .setDestinationMACAddress(MacAddress.of(MACS[r.nextInt(MACS.length)]));
+        int type = r.nextInt(4);
+        if (type == 0) {
+            eth.setEtherType(Ethernet.TYPE_ARP);
+            eth.setPayload(new ARP()
+                .setHardwareType(ARP.HW_TYPE_ETHERNET)
+                .setProtocolType(ARP.PROTO_TYPE_IP)
+                .setOpCode(ARP.OP_REQUEST)
+                .setHardwareAddressLength((byte)6)
+                .setProtocolAddressLength((byte)4)
+                .setSenderHardwareAddress(eth.getSourceMACAddress().getBytes())
+                .setSenderProtocolAddress(IPS[r.nextInt(IPS.length)])
+                .setTargetHardwareAddress(MacAddress.NONE.getBytes())
+                .setTargetProtocolAddress(IPS[r.nextInt(IPS.length)])
+                .setPayload(new Data(new byte[] {0x01})));
+            return eth;
+        }
+
+        IPv4 ip = new IPv4()
+        .setTtl((byte) 128)
+        .setSourceAddress(IPS[r.nextInt(IPS.length)])
+        .setDestinationAddress(IPS[r.nextInt(IPS.length)]);
+        int tpSrc = TP_PORTS[r.nextInt(TP_PORTS.length)];
+        int tpDst = TP_PORTS[r.nextInt(TP_PORTS.length)];
+        if (type == 1) {
+            ip.setProtocol(IpProtocol.TCP);
+            ip.setPayload(new TCP()
+                .setSourcePort(tpSrc)
+                .setDestinationPort(tpDst)
+                .setPayload(new Data(new byte[] {0x01})));
+        } else if (type == 2) {
+            ip.setProtocol(IpProtocol.UDP);
+            ip.setPayload(new UDP()
+                .setSourcePort(TransportPort.of(tpSrc))
+                .setDestinationPort(TransportPort.of(tpDst))
+                .setPayload(new Data(new byte[] {0x01})));
+        } else {
+            ip.setProtocol(IpProtocol.ICMP);
+            ip.setPayload(new ICMP()
+                .setIcmpType((byte) 8)
+                .setIcmpCode((byte) 0)
+                .setPayload(new Data(new byte[] {0x01})));
+        }
+        eth.setEtherType(Ethernet.TYPE_IPv4);
+        eth.setPayload(ip);
+        return eth;
+    }
+
+    @Test
+    public void testEmpty() {
+        FirewallRuleClassifier c =
+                FirewallRuleClassifier.compile(new ArrayList<FirewallRule>());
+        Random r = new Random(42);
+        assertEquals(-1, c.classify(DatapathId.of(1), OFPort.of(1),
+                                    randomPacket(r)));
+    }
+
+    @Test
+    public void testAgainstLinearScan() {
+        Random r = new Random(42);
+        int matched = 0;
+        int replayed = 0;
+        for (int round = 0; round < 200; round++) {
+            List<FirewallRule> rules = new ArrayList<FirewallRule>();
+            int n = 1 + r.nextInt(30);
+            for (int i = 0; i < n; i++) {
+                rules.add(randomRule(r, i));
+            }
+            // sorted the same way Firewall sorts its rules
+            Collections.sort(rules);
+            FirewallRuleClassifier c = FirewallRuleClassifier.compile(rules);
+            assertSame(rules, c.getRules());
+
+            for (int p = 0; p < 100; p++) {
+                DatapathId dpid = DatapathId.of(DPIDS[r.nextInt(DPIDS.length)]);
+                OFPort inPort = OFPort.of(PORTS[r.nextInt(PORTS.length)]);
+                Ethernet eth = randomPacket(r);
+
+                // the linear scan done by Firewall without a classifier
+                AllowDropPair expected = new AllowDropPair(factory);
+                int expectedIndex = -1;
+                for (int i = 0; i < rules.size(); i++) {
+                    if (rules.get(i).matchesThisPacket(dpid, inPort, eth,
+                                                       expected)) {
+                        expectedIndex = i;
+                        break;
+                    }
+                }
+
+                int index = c.classify(dpid, inPort, eth);
+                assertEquals("rules " + rules + " packet " + eth,
+                             expectedIndex, index);
+                if (index < 0) continue;
+                matched++;
+
+                // the classifier path of Firewall.matchWithRule
+                FirewallRule rule = rules.get(index);
+                AllowDropPair actual = new AllowDropPair(factory);
+                if (c.needsReplay(index)) {
+                    replayed++;
+                    for (int i = 0; i < index; i++) {
+                        FirewallRule hr = rules.get(i);
+                        if (hr.action == rule.action) {
+                            hr.matchesThisPacket(dpid, inPort, eth, actual);
+                        }
+                    }
+                }
+                assertTrue(rule.matchesThisPacket(dpid, inPort, eth, actual));
+
+                // only the match of the matched rule's action is used
+                if (rule.action == FirewallRule.FirewallAction.ALLOW) {
+                    assertEquals("rules " + rules + " packet " + eth,
+                                 expected.allow.build(), actual.allow.build());
+                } else {
+                    assertEquals("rules " + rules + " packet " + eth,
+                                 expected.drop.build(), actual.drop.build());
+                }
+            }
+        }
+        // make sure the random rules exercise both paths
+        assertTrue(matched > 0);
+        assertTrue(replayed > 0);
+        assertTrue(replayed < matched);
+    }
+}
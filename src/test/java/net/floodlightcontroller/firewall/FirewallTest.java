@@ -31,6 +31,7 @@ import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.IOFSwitch;
 import net.floodlightcontroller.core.internal.IOFSwitchService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockThreadPoolService;
 import net.floodlightcontroller.debugcounter.IDebugCounterService;
 import net.floodlightcontroller.debugcounter.MockDebugCounterService;
 import net.floodlightcontroller.packet.ARP;
@@ -46,6 +47,7 @@ import net.floodlightcontroller.routing.IRoutingDecision;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.storage.memory.MemoryStorageSource;
 import net.floodlightcontroller.test.FloodlightTestCase;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
 
 import org.easymock.EasyMock;
 import org.junit.Before;
@@ -94,6 +96,7 @@ public class FirewallTest extends FloodlightTestCase {
         firewall = new Firewall();
         MemoryStorageSource storageService = new MemoryStorageSource();
         RestApiServer restApi = new RestApiServer();
+        MockThreadPoolService threadPool = new MockThreadPoolService();
 
         // Mock switches
         DatapathId dpid = DatapathId.of(TestSwitch1DPID);
@@ -113,10 +116,12 @@ public class FirewallTest extends FloodlightTestCase {
         fmc.addService(IFirewallService.class, firewall);
         fmc.addService(IStorageSourceService.class, storageService);
         fmc.addService(IRestApiService.class, restApi);
+        fmc.addService(IThreadPoolService.class, threadPool);
 
         debugCounterService.init(fmc);
         storageService.init(fmc);
         restApi.init(fmc);
+        threadPool.init(fmc);
         firewall.init(fmc);
         debugCounterService.startUp(fmc);
         storageService.startUp(fmc);
@@ -0,0 +1,107 @@
+package net.floodlightcontroller.flowcache;
+
+import static org.junit.Assert.*;
+
+import java.util.concurrent.TimeUnit;
+
+import net.floodlightcontroller.core.IFloodlightProviderService;
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.test.MockFloodlightProvider;
+import net.floodlightcontroller.core.test.MockScheduledExecutor;
+import net.floodlightcontroller.core.test.MockThreadPoolService;
+import net.floodlightcontroller.core.util.SingletonTask;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+import net.floodlightcontroller.debugcounter.MockDebugCounterService;
+import net.floodlightcontroller.flowcache.PriorityPendingQueue.EventPriority;
+import net.floodlightcontroller.test.FloodlightTestCase;
+import net.floodlightcontroller.threadpool.IThreadPoolService;
+import net.floodlightcontroller.util.OFMatchWithSwDpid;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class FlowReconcileManagerTest extends FloodlightTestCase {
+    protected FlowReconcileManager frm;
+    protected OFFactory factory;
+    protected int taskSchedules;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        factory = OFFactories.getFactory(OFVersion.OF_13);
+
+        FloodlightModuleContext fmc = new FloodlightModuleContext();
+        fmc.addService(IFloodlightProviderService.class,
+                       new MockFloodlightProvider());
+        fmc.addService(IThreadPoolService.class, new MockThreadPoolService());
+        fmc.addService(IDebugCounterService.class,
+                       new MockDebugCounterService());
+
+        frm = new FlowReconcileManager();
+        frm.init(fmc);
+        // count the schedules instead of reconciling in the background, so
+        // the test decides when the queue is drained
+        taskSchedules = 0;
+        frm.flowReconcileTask = new SingletonTask(new MockScheduledExecutor(),
+                                                  null) {
+            @Override
+            public void reschedule(long delay, TimeUnit unit) {
+                taskSchedules++;
+            }
+        };
+    }
+
+    private OFMatchReconcile request(long dpid, int port) {
+        OFMatchReconcile ofmr = new OFMatchReconcile();
+        ofmr.ofmWithSwDpid = new OFMatchWithSwDpid(
+                factory.buildMatch().build(), DatapathId.of(dpid));
+        ofmr.rcAction = OFMatchReconcile.ReconcileAction.UPDATE_PATH;
+        ofmr.outPort = OFPort.of(port);
+        return ofmr;
+    }
+
+    @Test
+    public void testIdenticalRequestsAreCoalesced() throws Exception {
+        frm.reconcileFlow(request(1, 1), EventPriority.HIGH);
+        frm.reconcileFlow(request(1, 1), EventPriority.HIGH);
+        frm.reconcileFlow(request(1, 2), EventPriority.HIGH);
+        assertEquals(2, frm.flowQueue.size());
+        assertEquals(2, frm.queuedRequests.size());
+        // the task is only scheduled for the first request
+        assertEquals(1, taskSchedules);
+
+        // once the requests are taken off the queue, an identical request
+        // is queued again
+        frm.doReconcile();
+        assertEquals(0, frm.flowQueue.size());
+        assertTrue(frm.queuedRequests.isEmpty());
+        frm.reconcileFlow(request(1, 1), EventPriority.HIGH);
+        assertEquals(1, frm.flowQueue.size());
+    }
+
+    @Test
+    public void testRejectedRequestIsNotCoalesced() throws Exception {
+        frm.flowQueue = new PriorityPendingQueue<OFMatchReconcile>() {
+            @Override
+            public boolean offer(OFMatchReconcile e, EventPriority p) {
+                // the queue is full
+                return false;
+            }
+        };
+        frm.reconcileFlow(request(1, 1), EventPriority.HIGH);
+        assertTrue(frm.queuedRequests.isEmpty());
+        assertEquals(0, taskSchedules);
+
+        // a later identical request is queued once there is room
+        frm.flowQueue = new PriorityPendingQueue<OFMatchReconcile>();
+        frm.reconcileFlow(request(1, 1), EventPriority.HIGH);
+        assertEquals(1, frm.flowQueue.size());
+        assertEquals(1, frm.queuedRequests.size());
+    }
+}
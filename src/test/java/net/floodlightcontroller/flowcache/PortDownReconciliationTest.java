@@ -0,0 +1,141 @@
+package net.floodlightcontroller.flowcache;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscoveryService;
+import net.floodlightcontroller.linkdiscovery.LinkInfo;
+import net.floodlightcontroller.routing.Link;
+import net.floodlightcontroller.test.FloodlightTestCase;
+import net.floodlightcontroller.util.OFMatchWithSwDpid;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFFlowDelete;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsEntry;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsReply;
+import org.projectfloodlight.openflow.protocol.OFFlowStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.action.OFAction;
+import org.projectfloodlight.openflow.protocol.instruction.OFInstruction;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+import com.google.common.util.concurrent.Futures;
+
+public class PortDownReconciliationTest extends FloodlightTestCase {
+    protected PortDownReconciliation pdr;
+    protected OFFactory factory;
+    protected IOFSwitch sw;
+
+    @Override
+    @Before
+    public void setUp() throws Exception {
+        super.setUp();
+        factory = OFFactories.getFactory(OFVersion.OF_13);
+
+        sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DatapathId.of(1L)).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+
+        IOFSwitchService switchService = createMock(IOFSwitchService.class);
+        expect(switchService.getSwitch(DatapathId.of(1L)))
+                .andReturn(sw).anyTimes();
+        ILinkDiscoveryService lds = createMock(ILinkDiscoveryService.class);
+        expect(lds.getLinks())
+                .andReturn(Collections.<Link, LinkInfo>emptyMap()).anyTimes();
+        replay(switchService, lds);
+
+        pdr = new PortDownReconciliation();
+        pdr.switchService = switchService;
+        pdr.lds = lds;
+    }
+
+    private OFFlowStatsEntry flowTo(int port) {
+        List<OFAction> actions = new ArrayList<OFAction>();
+        actions.add(factory.actions().output(OFPort.of(port), Integer.MAX_VALUE));
+        List<OFInstruction> instructions = new ArrayList<OFInstruction>();
+        instructions.add(factory.instructions().applyActions(actions));
+        return factory.buildFlowStatsEntry()
+                .setMatch(factory.buildMatch().build())
+                .setInstructions(instructions)
+                .build();
+    }
+
+    private OFMatchReconcile portDown(int port) {
+        OFMatchReconcile ofmr = new OFMatchReconcile();
+        ofmr.ofmWithSwDpid = new OFMatchWithSwDpid(
+                factory.buildMatch().build(), DatapathId.of(1L));
+        ofmr.rcAction = OFMatchReconcile.ReconcileAction.UPDATE_PATH;
+        ofmr.outPort = OFPort.of(port);
+        return ofmr;
+    }
+
+    @Test
+    public void testBatchIsReconciledInOneRound() throws Exception {
+        List<OFFlowStatsEntry> entries = new ArrayList<OFFlowStatsEntry>();
+        entries.add(flowTo(1));
+        entries.add(flowTo(2));
+        entries.add(flowTo(3));
+        List<OFFlowStatsReply> replies = new ArrayList<OFFlowStatsReply>();
+        replies.add(factory.buildFlowStatsReply().setEntries(entries).build());
+
+        // the flows of the switch are requested once for the whole batch,
+        // and the deletes are written together
+        expect(sw.writeStatsRequest(anyObject(OFFlowStatsRequest.class)))
+                .andReturn(Futures.immediateFuture(replies)).once();
+        Capture<Iterable<OFMessage>> written =
+                new Capture<Iterable<OFMessage>>(CaptureType.ALL);
+        sw.write(capture(written));
+        expectLastCall().once();
+        sw.flush();
+        expectLastCall().once();
+        replay(sw);
+
+        ArrayList<OFMatchReconcile> batch = new ArrayList<OFMatchReconcile>();
+        batch.add(portDown(1));
+        batch.add(portDown(1));
+        batch.add(portDown(2));
+        pdr.reconcileFlows(batch);
+        verify(sw);
+
+        Set<OFPort> deletedPorts = new HashSet<OFPort>();
+        int deletes = 0;
+        for (OFMessage m : written.getValue()) {
+            assertTrue(m instanceof OFFlowDelete);
+            deletedPorts.add(((OFFlowDelete) m).getOutPort());
+            deletes++;
+        }
+        // the duplicate request for port 1 is merged
+        assertEquals(2, deletes);
+        assertEquals(new HashSet<OFPort>(
+                Arrays.asList(OFPort.of(1), OFPort.of(2))),
+                deletedPorts);
+    }
+
+    @Test
+    public void testOtherActionsAreIgnored() throws Exception {
+        replay(sw);
+        ArrayList<OFMatchReconcile> batch = new ArrayList<OFMatchReconcile>();
+        OFMatchReconcile ofmr = portDown(1);
+        ofmr.rcAction = OFMatchReconcile.ReconcileAction.NO_CHANGE;
+        batch.add(ofmr);
+        pdr.reconcileFlows(batch);
+        // no flows are requested or deleted
+        verify(sw);
+    }
+}
@@ -41,6 +41,7 @@ import net.floodlightcontroller.devicemanager.test.MockDeviceManager;
 import net.floodlightcontroller.devicemanager.IDevice;
 import net.floodlightcontroller.devicemanager.IDeviceService;
 import net.floodlightcontroller.devicemanager.IEntityClassifierService;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
 import net.floodlightcontroller.packet.Data;
 import net.floodlightcontroller.packet.Ethernet;
 import net.floodlightcontroller.packet.IPacket;
@@ -433,6 +434,52 @@ public class ForwardingTest extends FloodlightTestCase {
         assertTrue(OFMessageUtils.equalsIgnoreXid(wc2.getValue(), packetOut));
     }
 
+    @Test
+    public void testDecisionCache() throws Exception {
+        learnDevices(DestDeviceToLearn.DEVICE2);
+
+        Capture<OFMessage> wc1 = new Capture<OFMessage>(CaptureType.ALL);
+
+        Route route = new  Route(DatapathId.of(1L), DatapathId.of(1L));
+        route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(1)));
+        route.getPath().add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
+        // once for the first packet-in, and once after each invalidation
+        expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(1), DatapathId.of(1L), OFPort.of(3), U64.ZERO)).andReturn(route).times(3);
+
+        sw1.write(capture(wc1));
+        expectLastCall().anyTimes();
+
+        reset(topology);
+        expect(topology.isIncomingBroadcastAllowed(DatapathId.of(anyLong()), OFPort.of(anyShort()))).andReturn(true).anyTimes();
+        expect(topology.getL2DomainId(DatapathId.of(1L))).andReturn(DatapathId.of(1L)).anyTimes();
+        expect(topology.isAttachmentPointPort(DatapathId.of(1L),  OFPort.of(1))).andReturn(true).anyTimes();
+        expect(topology.isAttachmentPointPort(DatapathId.of(1L),  OFPort.of(3))).andReturn(true).anyTimes();
+
+        replay(sw1, sw2, routingEngine, topology);
+        forwarding.receive(sw1, this.packetIn, cntx);
+        assertEquals(1, forwarding.decisionCache.size());
+        // served from the cache
+        forwarding.receive(sw1, this.packetIn, cntx);
+        // a topology change drops all decisions
+        forwarding.topologyChanged(new ArrayList<LDUpdate>());
+        assertEquals(0, forwarding.decisionCache.size());
+        forwarding.receive(sw1, this.packetIn, cntx);
+        // a host move drops the decisions of the host
+        forwarding.deviceListener.deviceMoved(dstDevice2);
+        assertEquals(0, forwarding.decisionCache.size());
+        forwarding.receive(sw1, this.packetIn, cntx);
+        verify(sw1, sw2, routingEngine);
+
+        int packetOuts = 0;
+        for (OFMessage m : wc1.getValues()) {
+            if (m instanceof OFPacketOut) {
+                assertTrue(OFMessageUtils.equalsIgnoreXid(m, packetOut));
+                packetOuts++;
+            }
+        }
+        assertEquals(4, packetOuts);
+    }
+
     /*TODO OFMessageDamper broken due to XID variability in OFMessages... need to fix @Test */
     public void testFlowModDampening() throws Exception {
         learnDevices(DestDeviceToLearn.DEVICE2);
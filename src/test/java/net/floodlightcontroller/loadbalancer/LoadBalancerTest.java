@@ -30,6 +30,7 @@ import static org.junit.Assert.*;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 
@@ -50,6 +51,7 @@ import org.projectfloodlight.openflow.types.IpProtocol;
 import org.projectfloodlight.openflow.types.MacAddress;
 import org.projectfloodlight.openflow.types.OFBufferId;
 import org.projectfloodlight.openflow.types.OFPort;
+import org.projectfloodlight.openflow.types.TransportPort;
 import org.projectfloodlight.openflow.types.U64;
 import org.projectfloodlight.openflow.protocol.OFPacketInReason;
 import org.projectfloodlight.openflow.protocol.action.OFAction;
@@ -418,6 +420,43 @@ public class LoadBalancerTest extends FloodlightTestCase {
 
 	}
 
+	@Test
+	public void testConsistentMemberPick() {
+		LBPool pool = new LBPool();
+		pool.addMember("1");
+		pool.addMember("2");
+		pool.addMember("3");
+
+		Map<Integer, String> picked = new HashMap<Integer, String>();
+		for (int i = 1; i <= 200; i++) {
+			LoadBalancer.IPClient client = lb.new IPClient();
+			client.ipAddress = IPv4Address.of(0x0a000000 + i);
+			client.nw_proto = IpProtocol.TCP;
+			client.srcPort = TransportPort.of(40000 + i);
+			String member = pool.pickMember(client);
+			assertNotNull(member);
+			// the same connection always gets the same member
+			assertEquals(member, pool.pickMember(client));
+			picked.put(i, member);
+		}
+		assertEquals(3, new HashSet<String>(picked.values()).size());
+
+		// removing a member only moves that member's clients
+		pool.removeMember("2");
+		for (int i = 1; i <= 200; i++) {
+			LoadBalancer.IPClient client = lb.new IPClient();
+			client.ipAddress = IPv4Address.of(0x0a000000 + i);
+			client.nw_proto = IpProtocol.TCP;
+			client.srcPort = TransportPort.of(40000 + i);
+			String member = pool.pickMember(client);
+			if (picked.get(i).equals("2")) {
+				assertFalse(member.equals("2"));
+			} else {
+				assertEquals(picked.get(i), member);
+			}
+		}
+	}
+
 	@Test
 	public void testTwoSubsequentIcmpRequests() throws Exception {
 		testCreateVip();
@@ -649,21 +688,21 @@ public class LoadBalancerTest extends FloodlightTestCase {
 		route2.setPath(nptList2);
 		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(3), DatapathId.of(1L), OFPort.of(1), U64.of(0))).andReturn(route2).atLeastOnce();
 
-		// inbound #2
+		// inbound #2 - consistent hashing also picks member 1 for client 2
 		Route route3 = new Route(DatapathId.of(1L), DatapathId.of(1L));
 		List<NodePortTuple> nptList3 = new ArrayList<NodePortTuple>();
 		nptList3.add(new NodePortTuple(DatapathId.of(1L), OFPort.of(2)));
-		nptList3.add(new NodePortTuple(DatapathId.of(1L), OFPort.of(4)));
+		nptList3.add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
 		route3.setPath(nptList3);
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(2), DatapathId.of(1L), OFPort.of(4), U64.of(0))).andReturn(route3).atLeastOnce();
+		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(2), DatapathId.of(1L), OFPort.of(3), U64.of(0))).andReturn(route3).atLeastOnce();
 
 		// outbound #2
 		Route route4 = new Route(DatapathId.of(1L), DatapathId.of(1L));
 		List<NodePortTuple> nptList4 = new ArrayList<NodePortTuple>();
-		nptList4.add(new NodePortTuple(DatapathId.of(1L), OFPort.of(4)));
+		nptList4.add(new NodePortTuple(DatapathId.of(1L), OFPort.of(3)));
 		nptList4.add(new NodePortTuple(DatapathId.of(1L), OFPort.of(2)));
-		route4.setPath(nptList3);
-		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(4), DatapathId.of(1L), OFPort.of(2), U64.of(0))).andReturn(route4).atLeastOnce();
+		route4.setPath(nptList4);
+		expect(routingEngine.getRoute(DatapathId.of(1L), OFPort.of(3), DatapathId.of(1L), OFPort.of(2), U64.of(0))).andReturn(route4).atLeastOnce();
 
 		replay(routingEngine);
 
@@ -0,0 +1,115 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Test;
+
+public class LatencyHistogramTest {
+
+    @Test
+    public void testBucketBoundaries() {
+        LatencyHistogram h = new LatencyHistogram();
+        // every bucket's lowest and highest value must map back to it
+        int last = h.bucketIndex((1L << LatencyHistogram.DEFAULT_MAX_VALUE_BITS) - 1);
+        for (int i = 0; i <= last; i++) {
+            assertEquals(i, h.bucketIndex(h.lowestValueAt(i)));
+            assertEquals(i, h.bucketIndex(h.highestValueAt(i)));
+            if (i > 0) {
+                assertEquals(h.highestValueAt(i - 1) + 1, h.lowestValueAt(i));
+            }
+        }
+    }
+
+    @Test
+    public void testPercentiles() {
+        LatencyHistogram h = new LatencyHistogram();
+        assertEquals(0, h.getTotalCount());
+        assertEquals(0, h.getValueAtPercentile(99.0));
+        for (long v = 1; v <= 100000; v++) {
+            h.recordValue(v * 1000);
+        }
+        assertEquals(100000, h.getTotalCount());
+        assertWithin(50000000L, h.getValueAtPercentile(50.0));
+        assertWithin(99000000L, h.getValueAtPercentile(99.0));
+        assertWithin(99900000L, h.getValueAtPercentile(99.9));
+        assertWithin(100000000L, h.getMaxValue());
+        assertWithin(1000L, h.getMinValue());
+        assertWithin(50000500L, h.getMean());
+    }
+
+    @Test
+    public void testClampAndMerge() {
+        LatencyHistogram h1 = new LatencyHistogram();
+        LatencyHistogram h2 = new LatencyHistogram();
+        h1.recordValue(-5);
+        h1.recordValue(Long.MAX_VALUE);
+        h2.recordValue(10);
+        h1.add(h2);
+        assertEquals(3, h1.getTotalCount());
+        assertEquals(0, h1.getMinValue());
+        assertEquals((1L << LatencyHistogram.DEFAULT_MAX_VALUE_BITS) - 1,
+                     h1.getMaxValue());
+        h1.reset();
+        assertEquals(0, h1.getTotalCount());
+        assertEquals(1, h2.getTotalCount());
+
+        try {
+            h1.add(new LatencyHistogram(7, 40));
+            fail("Expected Exception not thrown");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testRecorderWindows() {
+        long windowNs = 1000;
+        LatencyRecorder r = new LatencyRecorder(windowNs, 3);
+        r.record("a", 0, 5);
+        r.record("a", 1500, 7);
+        r.record(LatencyRecorder.TOTAL, 2500, 9);
+
+        Map<String, LatencyHistogram> merged =
+                new HashMap<String, LatencyHistogram>();
+        r.mergeInto(0, merged);
+        assertEquals(2, merged.get("a").getTotalCount());
+        assertEquals(1, merged.get(LatencyRecorder.TOTAL).getTotalCount());
+
+        // epoch 3 recycles the slot of epoch 0
+        r.record("a", 3100, 11);
+        merged.clear();
+        r.mergeInto(1, merged);
+        assertEquals(2, merged.get("a").getTotalCount());
+        assertEquals(7, merged.get("a").getMinValue());
+
+        r.reset();
+        merged.clear();
+        r.mergeInto(0, merged);
+        assertEquals(0, merged.get("a").getTotalCount());
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        // default layout guarantees a relative error below 1/32
+        assertTrue("expected ~" + expected + " got " + actual,
+                   Math.abs(actual - expected) <= expected / 32 + 1);
+    }
+}
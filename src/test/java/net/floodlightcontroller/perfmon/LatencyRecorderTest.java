@@ -0,0 +1,87 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.perfmon;
+
+import static org.junit.Assert.*;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.junit.Test;
+
+public class LatencyRecorderTest {
+    private static final long WINDOW_NS = 1000;
+    private static final int NUM_WINDOWS = 6;
+
+    private static long count(LatencyRecorder r, long minEpoch) {
+        Map<String, LatencyHistogram> merged =
+                new HashMap<String, LatencyHistogram>();
+        r.mergeInto(minEpoch, merged);
+        LatencyHistogram h = merged.get(LatencyRecorder.TOTAL);
+        return h == null ? 0 : h.getTotalCount();
+    }
+
+    @Test
+    public void testEpochOf() {
+        assertEquals(0, LatencyRecorder.epochOf(0, WINDOW_NS));
+        assertEquals(0, LatencyRecorder.epochOf(999, WINDOW_NS));
+        assertEquals(1, LatencyRecorder.epochOf(1000, WINDOW_NS));
+        assertEquals(-1, LatencyRecorder.epochOf(-1, WINDOW_NS));
+        assertEquals(-1, LatencyRecorder.epochOf(-1000, WINDOW_NS));
+        assertEquals(-2, LatencyRecorder.epochOf(-1001, WINDOW_NS));
+    }
+
+    @Test
+    public void testNegativeTime() {
+        // nanoTime may be negative; windows must still rotate through
+        // every slot and expire in order
+        LatencyRecorder r = new LatencyRecorder(WINDOW_NS, NUM_WINDOWS);
+        long start = -10 * WINDOW_NS - 1;
+        for (int i = 0; i < 2 * NUM_WINDOWS; i++) {
+            long now = start + i * WINDOW_NS;
+            r.record(LatencyRecorder.TOTAL, now, 10);
+            long minEpoch = LatencyRecorder.epochOf(now, WINDOW_NS)
+                    - NUM_WINDOWS + 1;
+            assertEquals(Math.min(i + 1, NUM_WINDOWS), count(r, minEpoch));
+        }
+        assertFalse(r.hasWindowsSince(
+                LatencyRecorder.epochOf(start + 3 * NUM_WINDOWS * WINDOW_NS,
+                                        WINDOW_NS)));
+        r.reset();
+        assertEquals(0, count(r, Long.MIN_VALUE + 1));
+        assertFalse(r.hasWindowsSince(Long.MIN_VALUE + 1));
+    }
+
+    @Test
+    public void testOwner() throws Exception {
+        LatencyRecorder mine = new LatencyRecorder(WINDOW_NS, NUM_WINDOWS);
+        assertTrue(mine.isOwnerAlive());
+
+        final AtomicReference<LatencyRecorder> other =
+                new AtomicReference<LatencyRecorder>();
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                other.set(new LatencyRecorder(WINDOW_NS, NUM_WINDOWS));
+            }
+        };
+        t.start();
+        t.join();
+        assertFalse(other.get().isOwnerAlive());
+    }
+}
@@ -0,0 +1,86 @@
+package net.floodlightcontroller.restserver;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+import org.junit.Test;
+import org.restlet.data.Form;
+
+import com.google.common.base.Functions;
+import com.google.common.collect.Lists;
+
+public class RestPageTest {
+    private static List<Integer> shuffled(int n) {
+        List<Integer> l = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++)
+            l.add(i);
+        Collections.shuffle(l);
+        return l;
+    }
+
+    @Test
+    public void testFromQuery() {
+        RestPage page = RestPage.fromQuery(new Form("limit=10&after=abc"));
+        assertEquals(10, page.getLimit());
+        assertEquals("abc", page.getAfter());
+
+        page = RestPage.fromQuery(new Form(""));
+        assertEquals(0, page.getLimit());
+        assertNull(page.getAfter());
+
+        for (String bad : new String[] {"limit=0", "limit=-1", "limit=x"}) {
+            try {
+                RestPage.fromQuery(new Form(bad));
+                fail("Expected IllegalArgumentException for " + bad);
+            } catch (IllegalArgumentException e) {
+                assertEquals(RestPage.LIMIT_ERROR, e.getMessage());
+            }
+        }
+    }
+
+    @Test
+    public void testSelect() {
+        // no limit: everything after the cursor, in the original order
+        List<Integer> entries = shuffled(100);
+        List<Integer> all = Lists.newArrayList(new RestPage(0, null)
+                .select(entries.iterator(), Functions.<Integer>identity(),
+                        null));
+        assertEquals(entries, all);
+        List<Integer> rest = Lists.newArrayList(new RestPage(0, "89")
+                .select(entries.iterator(), Functions.<Integer>identity(),
+                        89));
+        Collections.sort(rest);
+        assertEquals(Arrays.asList(90, 91, 92, 93, 94, 95, 96, 97, 98, 99),
+                     rest);
+
+        // page through with a limit
+        List<Integer> paged = new ArrayList<Integer>();
+        Integer after = null;
+        while (true) {
+            Iterator<Integer> page = new RestPage(30, null)
+                    .select(entries.iterator(), Functions.<Integer>identity(),
+                            after);
+            if (!page.hasNext())
+                break;
+            while (page.hasNext())
+                paged.add(after = page.next());
+        }
+        assertEquals(100, paged.size());
+        for (int i = 0; i < 100; i++)
+            assertEquals(i, paged.get(i).intValue());
+    }
+
+    @Test
+    public void testStreamingRepresentation() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        StreamingJsonRepresentation.ofIterator(
+                Arrays.asList("a", 1, null).iterator()).write(out);
+        assertEquals("[\"a\",1,null]", out.toString("UTF-8"));
+    }
+}
@@ -0,0 +1,147 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.staticflowentry;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.staticflowentry.BulkFlowInstaller.BulkInstall;
+import net.floodlightcontroller.staticflowentry.BulkFlowInstaller.State;
+
+import org.easymock.Capture;
+import org.easymock.CaptureType;
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierReply;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
+import org.projectfloodlight.openflow.protocol.OFBadRequestCode;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFMessage;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.U64;
+
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class BulkFlowInstallerTest {
+    private static final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private static final DatapathId DPID = DatapathId.of(1L);
+
+    private IOFSwitch sw;
+    private Capture<List<OFMessage>> writes;
+    private List<SettableFuture<OFBarrierReply>> barriers;
+    private List<String> names;
+    private List<OFMessage> flowMods;
+
+    @Before
+    public void setUp() {
+        writes = new Capture<List<OFMessage>>(CaptureType.ALL);
+        barriers = new ArrayList<SettableFuture<OFBarrierReply>>();
+        sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DPID).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        sw.write(capture(writes));
+        expectLastCall().anyTimes();
+        sw.flush();
+        expectLastCall().anyTimes();
+        for (int i = 0; i < 3; i++) {
+            SettableFuture<OFBarrierReply> f = SettableFuture.create();
+            barriers.add(f);
+            expect(sw.writeRequest(anyObject(OFBarrierRequest.class))).andReturn(f);
+        }
+        replay(sw);
+
+        names = new ArrayList<String>();
+        flowMods = new ArrayList<OFMessage>();
+        for (int i = 0; i < 5; i++) {
+            names.add("entry" + i);
+            flowMods.add(factory.buildFlowAdd().setCookie(U64.of(i)).build());
+        }
+    }
+
+    @Test
+    public void testPipelinedBatches() {
+        BulkFlowInstaller installer = new BulkFlowInstaller(2, 2);
+        BulkInstall install = installer.install(sw, names, flowMods);
+
+        // two batches are written before the first barrier is answered
+        assertEquals(2, writes.getValues().size());
+        assertEquals(2, writes.getValues().get(0).size());
+        assertEquals(2, writes.getValues().get(1).size());
+        assertEquals(State.RUNNING, install.getState());
+
+        // the switch rejects an entry of the second batch
+        OFMessage rejected = writes.getValues().get(1).get(1);
+        assertTrue(installer.handleError(DPID, factory.errorMsgs()
+                .buildBadRequestErrorMsg()
+                .setXid(rejected.getXid())
+                .setCode(OFBadRequestCode.BAD_TYPE)
+                .build()));
+        // errors from other switches are not attributed to the install
+        assertFalse(installer.handleError(DatapathId.of(2L), factory.errorMsgs()
+                .buildBadRequestErrorMsg()
+                .setXid(writes.getValues().get(0).get(0).getXid())
+                .setCode(OFBadRequestCode.BAD_TYPE)
+                .build()));
+
+        barriers.get(0).set(factory.barrierReply());
+        assertEquals(2, install.getConfirmed());
+        // the last batch only goes out once a barrier is answered
+        assertEquals(3, writes.getValues().size());
+        assertEquals(1, writes.getValues().get(2).size());
+
+        barriers.get(1).set(factory.barrierReply());
+        barriers.get(2).set(factory.barrierReply());
+        assertEquals(State.DONE, install.getState());
+        assertTrue(install.future().isDone());
+        assertEquals(4, install.getConfirmed());
+        assertEquals(1, install.getErrors().size());
+        assertTrue(install.getErrors().containsKey("entry3"));
+        assertSame(install, installer.getInstall(install.getId()));
+        verify(sw);
+    }
+
+    @Test
+    public void testDisconnectFailsInstall() {
+        BulkFlowInstaller installer = new BulkFlowInstaller(2, 1);
+        BulkInstall install = installer.install(sw, names, flowMods);
+        assertEquals(1, writes.getValues().size());
+
+        barriers.get(0).setException(new Exception("disconnected"));
+        assertEquals(State.FAILED, install.getState());
+        assertNotNull(install.getFailure());
+        assertTrue(install.future().isDone());
+        // nothing more is written to the switch
+        assertEquals(1, writes.getValues().size());
+    }
+
+    @Test
+    public void testEmptyInstall() throws Exception {
+        BulkFlowInstaller installer = new BulkFlowInstaller();
+        BulkInstall install = installer.install(sw,
+                new ArrayList<String>(), new ArrayList<OFMessage>());
+        assertEquals(State.DONE, install.getState());
+        assertSame(install, Futures.getUnchecked(install.future()));
+        assertTrue(writes.getValues().isEmpty());
+    }
+}
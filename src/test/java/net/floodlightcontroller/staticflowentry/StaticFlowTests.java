@@ -17,6 +17,8 @@
 package net.floodlightcontroller.staticflowentry;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.LinkedList;
@@ -27,6 +29,7 @@ import java.util.Set;
 import org.easymock.Capture;
 import org.easymock.CaptureType;
 import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFBarrierRequest;
 import org.projectfloodlight.openflow.protocol.OFFactories;
 import org.projectfloodlight.openflow.protocol.OFFactory;
 import org.projectfloodlight.openflow.protocol.OFFlowMod;
@@ -55,6 +58,9 @@ import net.floodlightcontroller.restserver.RestApiServer;
 import net.floodlightcontroller.staticflowentry.StaticFlowEntryPusher;
 import net.floodlightcontroller.storage.IStorageSourceService;
 import net.floodlightcontroller.storage.memory.MemoryStorageSource;
+
+import com.google.common.util.concurrent.Futures;
+
 import static net.floodlightcontroller.staticflowentry.StaticFlowEntryPusher.*;
 import static org.easymock.EasyMock.*;
 import static org.junit.Assert.*;
@@ -252,6 +258,8 @@ public class StaticFlowTests extends FloodlightTestCase {
         expectLastCall().anyTimes();
         expect(mockSwitch.getOFFactory()).andReturn(factory).anyTimes();
         expect(mockSwitch.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        expect(mockSwitch.writeRequest(anyObject(OFBarrierRequest.class)))
+                .andReturn(Futures.immediateFuture(factory.barrierReply())).anyTimes();
         replay(mockSwitch);
 
         // hook the static pusher up to the fake switch
@@ -259,20 +267,30 @@ public class StaticFlowTests extends FloodlightTestCase {
 
         verify(mockSwitch);
 
-        // Verify that the switch has gotten some flow_mods
-        assertEquals(true, writeCapture.hasCaptured());
-        assertEquals(TotalTestRules, writeCapture.getValues().size());
+        // Verify that the switch has gotten the flow_mods in one batch
+        assertEquals(true, writeCaptureList.hasCaptured());
+        assertEquals(1, writeCaptureList.getValues().size());
+        List<OFMessage> pushed = writeCaptureList.getValues().get(0);
+        assertEquals(TotalTestRules, pushed.size());
 
         // Order assumes how things are stored in hash bucket;
         // should be fixed because OFMessage.hashCode() is deterministic
-        OFFlowMod firstFlowMod = (OFFlowMod) writeCapture.getValues().get(2);
+        OFFlowMod firstFlowMod = (OFFlowMod) pushed.get(2);
         verifyFlowMod(firstFlowMod, FlowMod1);
-        OFFlowMod secondFlowMod = (OFFlowMod) writeCapture.getValues().get(1);
+        OFFlowMod secondFlowMod = (OFFlowMod) pushed.get(1);
         verifyFlowMod(secondFlowMod, FlowMod2);
-        OFFlowMod thirdFlowMod = (OFFlowMod) writeCapture.getValues().get(0);
+        OFFlowMod thirdFlowMod = (OFFlowMod) pushed.get(0);
         verifyFlowMod(thirdFlowMod, FlowMod3);
 
+        // and that the switch confirmed them with the barrier
+        assertEquals(1, staticFlowEntryPusher.getInstalls().size());
+        BulkFlowInstaller.BulkInstall install =
+                staticFlowEntryPusher.getInstalls().iterator().next();
+        assertEquals(BulkFlowInstaller.State.DONE, install.getState());
+        assertEquals(TotalTestRules, install.getConfirmed());
+
         writeCapture.reset();
+        writeCaptureList.reset();
 
         // delete two rules and verify they've been removed
         // this should invoke staticFlowPusher.rowsDeleted()
@@ -339,6 +357,43 @@ public class StaticFlowTests extends FloodlightTestCase {
     }
 
 
+    @Test
+    public void testAddFlows() throws Exception {
+        resetToNice(mockSwitch);
+        mockSwitch.write(capture(writeCaptureList));
+        expectLastCall().anyTimes();
+        expect(mockSwitch.getOFFactory()).andReturn(factory).anyTimes();
+        expect(mockSwitch.getId()).andReturn(DatapathId.of(dpid)).anyTimes();
+        expect(mockSwitch.writeRequest(anyObject(OFBarrierRequest.class)))
+                .andReturn(Futures.immediateFuture(factory.barrierReply())).anyTimes();
+        replay(mockSwitch);
+
+        List<Map<String, Object>> rows = new ArrayList<Map<String, Object>>();
+        Map<String, Object> row = new HashMap<String, Object>(TestRule1);
+        row.put(COLUMN_NAME, "BulkRule1");
+        rows.add(row);
+        row = new HashMap<String, Object>(TestRule2);
+        row.put(COLUMN_NAME, "BulkRule2");
+        rows.add(row);
+
+        Collection<BulkFlowInstaller.BulkInstall> installs =
+                staticFlowEntryPusher.addFlows(rows);
+
+        // both entries are installed in one install on the switch
+        assertEquals(1, installs.size());
+        BulkFlowInstaller.BulkInstall install = installs.iterator().next();
+        assertEquals(BulkFlowInstaller.State.DONE, install.getState());
+        assertEquals(2, install.getTotal());
+        assertEquals(2, install.getConfirmed());
+        assertEquals(TotalTestRules + 2, staticFlowEntryPusher.countEntries());
+        // and stored, without being sent again when storage notifies
+        assertTrue(storage.getRow(StaticFlowEntryPusher.TABLE_NAME,
+                                  "BulkRule1").next());
+        assertEquals(1, writeCaptureList.getValues().size());
+        assertEquals(2, writeCaptureList.getValues().get(0).size());
+        assertTrue(staticFlowEntryPusher.bulkAdded.isEmpty());
+    }
+
     IStorageSourceService createStorageWithFlowEntries() {
         return populateStorageWithFlowEntries();
     }
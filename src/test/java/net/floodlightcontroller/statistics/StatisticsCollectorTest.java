@@ -0,0 +1,162 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.statistics;
+
+import static org.easymock.EasyMock.*;
+import static org.junit.Assert.*;
+
+import java.util.Collections;
+import java.util.List;
+
+import net.floodlightcontroller.core.IOFSwitch;
+import net.floodlightcontroller.core.internal.IOFSwitchService;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFPortStatsReply;
+import org.projectfloodlight.openflow.protocol.OFPortStatsRequest;
+import org.projectfloodlight.openflow.protocol.OFStatsReply;
+import org.projectfloodlight.openflow.protocol.OFStatsType;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.types.DatapathId;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.SettableFuture;
+
+public class StatisticsCollectorTest {
+    private static final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+    private static final DatapathId DPID = DatapathId.of(1L);
+
+    private StatisticsCollector collector;
+    private IOFSwitchService switchService;
+    private IOFSwitch sw;
+
+    @Before
+    public void setUp() {
+        sw = createMock(IOFSwitch.class);
+        expect(sw.getId()).andReturn(DPID).anyTimes();
+        expect(sw.getOFFactory()).andReturn(factory).anyTimes();
+        switchService = createMock(IOFSwitchService.class);
+        expect(switchService.getSwitch(DPID)).andReturn(sw).anyTimes();
+        expect(switchService.getSwitch(DatapathId.of(2L))).andReturn(null).anyTimes();
+
+        collector = new StatisticsCollector();
+        collector.switchService = switchService;
+    }
+
+    @Test
+    public void testConcurrentRequestsAreCoalesced() throws Exception {
+        SettableFuture<List<OFPortStatsReply>> reply = SettableFuture.create();
+        expect(sw.writeStatsRequest(anyObject(OFPortStatsRequest.class)))
+                .andReturn(reply).once();
+        replay(sw, switchService);
+
+        ListenableFuture<SwitchStatistics> f1 =
+                collector.getStatistics(DPID, OFStatsType.PORT, 0);
+        ListenableFuture<SwitchStatistics> f2 =
+                collector.getStatistics(DPID, OFStatsType.PORT, 0);
+        assertFalse(f1.isDone());
+        assertSame(f1, f2);
+        assertNull(collector.getCachedStatistics(DPID, OFStatsType.PORT));
+
+        OFPortStatsReply r = factory.buildPortStatsReply().build();
+        reply.set(Collections.singletonList(r));
+        SwitchStatistics stats = f1.get();
+        assertEquals(DPID, stats.getSwitchId());
+        assertEquals(OFStatsType.PORT, stats.getStatType());
+        assertEquals(Collections.<OFStatsReply>singletonList(r), stats.getReplies());
+        assertSame(stats, collector.getCachedStatistics(DPID, OFStatsType.PORT));
+        verify(sw);
+    }
+
+    @Test
+    public void testFreshnessPolicy() throws Exception {
+        SettableFuture<List<OFPortStatsReply>> reply1 = SettableFuture.create();
+        SettableFuture<List<OFPortStatsReply>> reply2 = SettableFuture.create();
+        expect(sw.writeStatsRequest(anyObject(OFPortStatsRequest.class)))
+                .andReturn(reply1).andReturn(reply2);
+        replay(sw, switchService);
+
+        reply1.set(Collections.<OFPortStatsReply>emptyList());
+        SwitchStatistics first =
+                collector.getStatistics(DPID, OFStatsType.PORT, 0).get();
+
+        // fresh enough: answered from the cache without a request
+        ListenableFuture<SwitchStatistics> cached =
+                collector.getStatistics(DPID, OFStatsType.PORT, 60000);
+        assertTrue(cached.isDone());
+        assertSame(first, cached.get());
+
+        // too old: a new request is sent
+        Thread.sleep(5);
+        ListenableFuture<SwitchStatistics> refreshed =
+                collector.getStatistics(DPID, OFStatsType.PORT, 1);
+        assertFalse(refreshed.isDone());
+        reply2.set(Collections.<OFPortStatsReply>emptyList());
+        assertNotSame(first, refreshed.get());
+        verify(sw);
+    }
+
+    @Test
+    public void testFailedRequestIsNotCached() throws Exception {
+        SettableFuture<List<OFPortStatsReply>> reply = SettableFuture.create();
+        expect(sw.writeStatsRequest(anyObject(OFPortStatsRequest.class)))
+                .andReturn(reply).once();
+        replay(sw, switchService);
+
+        ListenableFuture<SwitchStatistics> f =
+                collector.getStatistics(DPID, OFStatsType.PORT, 0);
+        reply.setException(new Exception("disconnected"));
+        assertTrue(f.isDone());
+        try {
+            f.get();
+            fail("Expected the request to fail");
+        } catch (Exception e) {
+            // expected
+        }
+        assertNull(collector.getCachedStatistics(DPID, OFStatsType.PORT));
+        assertTrue(collector.inFlight.isEmpty());
+    }
+
+    @Test
+    public void testUnknownSwitch() throws Exception {
+        replay(sw, switchService);
+        assertNull(collector.getStatistics(DatapathId.of(2L),
+                                           OFStatsType.PORT, 0).get());
+        assertTrue(collector.inFlight.isEmpty());
+    }
+
+    @Test
+    public void testSwitchRemovedClearsCache() throws Exception {
+        expect(sw.writeStatsRequest(anyObject(OFPortStatsRequest.class)))
+                .andReturn(emptyReply()).once();
+        replay(sw, switchService);
+
+        assertNotNull(collector.getStatistics(DPID, OFStatsType.PORT, 0).get());
+        assertNotNull(collector.getCachedStatistics(DPID, OFStatsType.PORT));
+        collector.switchRemoved(DPID);
+        assertNull(collector.getCachedStatistics(DPID, OFStatsType.PORT));
+    }
+
+    private static SettableFuture<List<OFPortStatsReply>> emptyReply() {
+        SettableFuture<List<OFPortStatsReply>> f = SettableFuture.create();
+        f.set(Collections.<OFPortStatsReply>emptyList());
+        return f;
+    }
+}
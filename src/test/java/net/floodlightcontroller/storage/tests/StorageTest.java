@@ -19,13 +19,16 @@ package net.floodlightcontroller.storage.tests;
 
 import static org.easymock.EasyMock.*;
 
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeoutException;
 import java.util.concurrent.TimeUnit;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
@@ -279,6 +282,91 @@ public abstract class StorageTest extends FloodlightTestCase {
         checkExpectedResults(resultSet, columnList, expectedResults);
 }
     
+    @Test
+    public void testAndQueryWithUnindexedColumn() {
+        String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME, PERSON_AGE};
+        Object[][] expectedResults = {
+                {"Lisa", "Jones", 27}
+        };
+        IResultSet resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                new CompoundPredicate(CompoundPredicate.Operator.AND, false,
+                        new OperatorPredicate(PERSON_LAST_NAME, OperatorPredicate.Operator.EQ, "Jones"),
+                        new OperatorPredicate(PERSON_AGE, OperatorPredicate.Operator.GT, 20),
+                        new OperatorPredicate(PERSON_REGISTERED, OperatorPredicate.Operator.EQ, true)
+                ),
+                new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+    }
+
+    @Test
+    public void testNegatedQuery() {
+        String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME};
+        Object[][] expectedResults = {
+                {"John", "Smith"},
+                {"Jim", "White"},
+                {"Jose", "Garcia"},
+                {"Abigail", "Johnson"},
+                {"Bjorn", "Borg"},
+                {"John", "McEnroe"}
+        };
+        IResultSet resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                new CompoundPredicate(CompoundPredicate.Operator.OR, true,
+                        new OperatorPredicate(PERSON_LAST_NAME, OperatorPredicate.Operator.EQ, "Jones")
+                ),
+                new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+    }
+
+    @Test
+    public void testPrimaryKeyQuery() {
+        String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME};
+        IResultSet resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                new OperatorPredicate(PERSON_SSN, OperatorPredicate.Operator.EQ, "555-55-5555"),
+                null);
+        checkExpectedResults(resultSet, columnList, new Object[][] {{"Jose", "Garcia"}});
+
+        resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                new OperatorPredicate(PERSON_SSN, OperatorPredicate.Operator.EQ, "999-99-9999"),
+                null);
+        checkExpectedResults(resultSet, columnList, new Object[0][]);
+    }
+
+    @Test
+    public void testRangeIndexedQuery() {
+        storageSource.setColumnIndexMode(PERSON_TABLE_NAME, PERSON_AGE,
+                NoSqlStorageSource.ColumnIndexMode.RANGE_INDEXED);
+        String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME, PERSON_AGE};
+        IPredicate predicate = new CompoundPredicate(CompoundPredicate.Operator.AND, false,
+                new OperatorPredicate(PERSON_AGE, OperatorPredicate.Operator.GTE, 27),
+                new OperatorPredicate(PERSON_AGE, OperatorPredicate.Operator.LT, 40));
+        Object[][] expectedResults = {
+                {"Lisa", "Jones", 27},
+                {"Jose", "Garcia", 31},
+                {"Abigail", "Johnson", 35}
+        };
+        IResultSet resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                predicate, new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+
+        // The index must follow updates, deletes and inserts
+        Map<String,Object> values = new HashMap<String,Object>();
+        values.put(PERSON_AGE, 39);
+        storageSource.updateRow(PERSON_TABLE_NAME, "111-11-1111", values);
+        storageSource.deleteRow(PERSON_TABLE_NAME, "555-55-5555");
+        values = new HashMap<String,Object>();
+        values.put(PERSON_AGE, 45);
+        storageSource.updateRow(PERSON_TABLE_NAME, "333-33-3333", values);
+        insertPerson(new Object[] {"999-99-9999", "Chris", "Evert", 30, true});
+        expectedResults = new Object[][] {
+                {"John", "Smith", 39},
+                {"Abigail", "Johnson", 35},
+                {"Chris", "Evert", 30}
+        };
+        resultSet = storageSource.executeQuery(PERSON_TABLE_NAME, columnList,
+                predicate, new RowOrdering(PERSON_SSN));
+        checkExpectedResults(resultSet, columnList, expectedResults);
+    }
+
     @Test
     public void testCreateQuery() {
         String[] columnList = {PERSON_FIRST_NAME,PERSON_LAST_NAME};
@@ -545,6 +633,62 @@ public abstract class StorageTest extends FloodlightTestCase {
         verify(mockListener);
     }
     
+    @Test
+    public void testCoalescedNotifications() throws Exception {
+        storageSource.setNotificationThreads(2);
+        final CountDownLatch firstDelivered = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final CountDownLatch done = new CountDownLatch(1);
+        final List<Set<Object>> modified = new ArrayList<Set<Object>>();
+        final List<Set<Object>> deleted = new ArrayList<Set<Object>>();
+        IStorageSourceListener listener = new IStorageSourceListener() {
+            @Override
+            public void rowsModified(String tableName, Set<Object> rowKeys) {
+                modified.add(rowKeys);
+                if (modified.size() == 1) {
+                    firstDelivered.countDown();
+                    try {
+                        release.await(10, TimeUnit.SECONDS);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            }
+            @Override
+            public void rowsDeleted(String tableName, Set<Object> rowKeys) {
+                deleted.add(rowKeys);
+                if (modified.size() == 3)
+                    done.countDown();
+            }
+        };
+        storageSource.addListener(PERSON_TABLE_NAME, listener);
+
+        Map<String,Object> updateValues = new HashMap<String,Object>();
+        updateValues.put(PERSON_AGE, 41);
+        storageSource.updateRow(PERSON_TABLE_NAME, "111-11-1111", updateValues);
+        assertTrue(firstDelivered.await(10, TimeUnit.SECONDS));
+
+        // Queued while the listener is busy: the modifications are merged,
+        // but not across the delete
+        storageSource.updateRow(PERSON_TABLE_NAME, "222-22-2222", updateValues);
+        storageSource.updateRow(PERSON_TABLE_NAME, "333-33-3333", updateValues);
+        storageSource.deleteRow(PERSON_TABLE_NAME, "444-44-4444");
+        storageSource.updateRow(PERSON_TABLE_NAME, "555-55-5555", updateValues);
+        storageSource.deleteRow(PERSON_TABLE_NAME, "666-66-6666");
+        release.countDown();
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+
+        assertEquals(3, modified.size());
+        assertEquals(new HashSet<Object>(Arrays.asList("111-11-1111")), modified.get(0));
+        assertEquals(new HashSet<Object>(Arrays.asList("222-22-2222", "333-33-3333")),
+                     modified.get(1));
+        assertEquals(new HashSet<Object>(Arrays.asList("555-55-5555")), modified.get(2));
+        assertEquals(2, deleted.size());
+        assertEquals(new HashSet<Object>(Arrays.asList("444-44-4444")), deleted.get(0));
+        assertEquals(new HashSet<Object>(Arrays.asList("666-66-6666")), deleted.get(1));
+        storageSource.setNotificationThreads(0);
+    }
+
     public void waitForFuture(Future<?> future) {
         try
         {
@@ -0,0 +1,188 @@
+/**
+ *    Copyright 2013, Big Switch Networks, Inc.
+ *
+ *    Licensed under the Apache License, Version 2.0 (the "License"); you may
+ *    not use this file except in compliance with the License. You may obtain
+ *    a copy of the License at
+ *
+ *         http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *    Unless required by applicable law or agreed to in writing, software
+ *    distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ *    WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the
+ *    License for the specific language governing permissions and limitations
+ *    under the License.
+ **/
+
+package net.floodlightcontroller.threadpool;
+
+import static org.junit.Assert.*;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.floodlightcontroller.core.module.FloodlightModuleContext;
+import net.floodlightcontroller.core.util.SingletonTask;
+import net.floodlightcontroller.debugcounter.DebugCounterResource;
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounterService;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class ThreadPoolTest {
+    private ThreadPool tp;
+    private DebugCounterServiceImpl debugCounterService;
+
+    @Before
+    public void setUp() throws Exception {
+        FloodlightModuleContext fmc = new FloodlightModuleContext();
+        debugCounterService = new DebugCounterServiceImpl();
+        fmc.addService(IDebugCounterService.class, debugCounterService);
+        tp = new ThreadPool();
+        fmc.addConfigParam(tp, "busy-threads", "3");
+        tp.init(fmc);
+    }
+
+    @After
+    public void tearDown() {
+        tp.getScheduledExecutor().shutdownNow();
+        for (InstrumentedScheduledExecutor e : tp.executors.values()) {
+            e.shutdownNow();
+        }
+    }
+
+    private long getCounter(String hierarchy) {
+        List<DebugCounterResource> l = debugCounterService
+                .getCounterHierarchy(ThreadPool.PACKAGE, hierarchy);
+        assertEquals(1, l.size());
+        return l.get(0).getCounterValue();
+    }
+
+    @Test
+    public void testNamedExecutors() {
+        ScheduledExecutorService busy = tp.getScheduledExecutor("busy");
+        assertSame(busy, tp.getScheduledExecutor("busy"));
+        assertNotSame(busy, tp.getScheduledExecutor("idle"));
+        assertNotSame(busy, tp.getScheduledExecutor());
+        assertSame(tp.getScheduledExecutor(),
+                   tp.getScheduledExecutor(ThreadPool.DEFAULT_EXECUTOR));
+
+        assertEquals(3, ((InstrumentedScheduledExecutor) busy).getCorePoolSize());
+        assertEquals(ThreadPool.NAMED_EXECUTOR_THREADS,
+                ((InstrumentedScheduledExecutor) tp.getScheduledExecutor("idle"))
+                        .getCorePoolSize());
+        assertEquals(ThreadPool.DEFAULT_EXECUTOR_THREADS,
+                ((InstrumentedScheduledExecutor) tp.getScheduledExecutor())
+                        .getCorePoolSize());
+    }
+
+    @Test
+    public void testIsolation() throws Exception {
+        // a blocked task on one executor doesn't hold up another executor
+        final CountDownLatch release = new CountDownLatch(1);
+        ScheduledExecutorService slow = tp.getScheduledExecutor("slow");
+        slow.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+        });
+        final CountDownLatch ran = new CountDownLatch(1);
+        tp.getScheduledExecutor("fast").schedule(new Runnable() {
+            @Override
+            public void run() {
+                ran.countDown();
+            }
+        }, 1, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        release.countDown();
+    }
+
+    @Test
+    public void testCounters() throws Exception {
+        ScheduledExecutorService e = tp.getScheduledExecutor("counted");
+        final CountDownLatch ran = new CountDownLatch(2);
+        for (int i = 0; i < 2; i++) {
+            e.execute(new Runnable() {
+                @Override
+                public void run() {
+                    ran.countDown();
+                }
+            });
+        }
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        e.shutdown();
+        assertTrue(e.awaitTermination(5, TimeUnit.SECONDS));
+        assertEquals(2, getCounter("counted/tasks-run"));
+
+        try {
+            e.execute(new Runnable() {
+                @Override
+                public void run() {
+                }
+            });
+            fail("Expected the shut down executor to reject the task");
+        } catch (RejectedExecutionException ex) {
+            // expected
+        }
+        assertEquals(1, getCounter("counted/tasks-rejected"));
+    }
+
+    /**
+     * Run a singleton task on the "overrun" executor that sleeps for 20ms
+     * on each run and reschedules itself with the given delay on its first
+     * reschedules runs, and wait for the given number of runs
+     */
+    private void runSlowTask(final long repeatMs, final int reschedules,
+                             int runs) throws Exception {
+        final CountDownLatch ran = new CountDownLatch(runs);
+        final AtomicInteger count = new AtomicInteger();
+        final SingletonTask[] task = new SingletonTask[1];
+        task[0] = new SingletonTask(tp.getScheduledExecutor("overrun"),
+                new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (count.incrementAndGet() <= reschedules)
+                    task[0].reschedule(repeatMs, TimeUnit.MILLISECONDS);
+                ran.countDown();
+            }
+        });
+        task[0].reschedule(1, TimeUnit.MILLISECONDS);
+        assertTrue(ran.await(5, TimeUnit.SECONDS));
+        // the counter is updated right after the task returns
+        Thread.sleep(50);
+    }
+
+    @Test
+    public void testSingletonTaskOverrun() throws Exception {
+        // a task that repeats every 1ms but runs for 20ms overruns on every
+        // run that reschedules it
+        runSlowTask(1, 2, 3);
+        assertEquals(2, getCounter("overrun/singleton-task-overruns"));
+    }
+
+    @Test
+    public void testSingletonTaskNoOverrun() throws Exception {
+        // a short delay for a one-shot run isn't a period
+        runSlowTask(0, 0, 1);
+        assertEquals(0, getCounter("overrun/singleton-task-overruns"));
+        // nor is it for a task that then repeats every 10s
+        runSlowTask(10000, 1, 1);
+        assertEquals(0, getCounter("overrun/singleton-task-overruns"));
+    }
+}
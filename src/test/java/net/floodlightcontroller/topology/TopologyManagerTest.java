@@ -17,6 +17,9 @@
 package net.floodlightcontroller.topology;
 
 import static org.junit.Assert.*;
+
+import java.util.List;
+
 import net.floodlightcontroller.core.IFloodlightProviderService;
 import net.floodlightcontroller.core.module.FloodlightModuleContext;
 import net.floodlightcontroller.core.test.MockThreadPoolService;
@@ -25,6 +28,10 @@ import net.floodlightcontroller.debugcounter.MockDebugCounterService;
 import net.floodlightcontroller.debugevent.IDebugEventService;
 import net.floodlightcontroller.debugevent.MockDebugEventService;
 import net.floodlightcontroller.linkdiscovery.ILinkDiscovery;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LDUpdate;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.LinkType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.SwitchType;
+import net.floodlightcontroller.linkdiscovery.ILinkDiscovery.UpdateOperation;
 import net.floodlightcontroller.test.FloodlightTestCase;
 import net.floodlightcontroller.threadpool.IThreadPoolService;
 import net.floodlightcontroller.topology.TopologyManager;
@@ -131,4 +138,58 @@ public class TopologyManagerTest extends FloodlightTestCase {
         assertTrue(tm.getTunnelPorts().size()==0);
     }
 
+    @Test
+    public void testUpdateMerging() throws Exception {
+        DatapathId s1 = DatapathId.of(1);
+        DatapathId s2 = DatapathId.of(2);
+        // a link that flaps within one batch is never applied
+        tm.linkDiscoveryUpdate(new LDUpdate(s1, OFPort.of(1), s2, OFPort.of(1),
+                LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED));
+        tm.linkDiscoveryUpdate(new LDUpdate(s1, OFPort.of(1), s2, OFPort.of(1),
+                LinkType.DIRECT_LINK, UpdateOperation.LINK_REMOVED));
+        // only the last update of a link is kept
+        tm.linkDiscoveryUpdate(new LDUpdate(s1, OFPort.of(2), s2, OFPort.of(2),
+                LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED));
+        tm.linkDiscoveryUpdate(new LDUpdate(s1, OFPort.of(2), s2, OFPort.of(2),
+                LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED));
+        assertEquals(2, tm.ldUpdates.size());
+        assertFalse(tm.ldUpdates.isSettled(System.currentTimeMillis(),
+                                           1000, 2000));
+
+        List<LDUpdate> applied = tm.applyUpdates();
+        assertEquals(1, applied.size());
+        assertEquals(OFPort.of(2), applied.get(0).getSrcPort());
+        assertTrue(tm.ldUpdates.isEmpty());
+        assertEquals(2, tm.getSwitchPortLinks().size());
+
+        // a link removed with its switch is still reported as removed
+        tm.linkDiscoveryUpdate(new LDUpdate(s1, SwitchType.BASIC_SWITCH,
+                UpdateOperation.SWITCH_REMOVED));
+        tm.linkDiscoveryUpdate(new LDUpdate(s1, OFPort.of(2), s2, OFPort.of(2),
+                LinkType.DIRECT_LINK, UpdateOperation.LINK_REMOVED));
+        applied = tm.applyUpdates();
+        assertEquals(2, applied.size());
+        assertEquals(UpdateOperation.LINK_REMOVED,
+                     applied.get(1).getOperation());
+        assertEquals(0, tm.getSwitchPortLinks().size());
+    }
+
+    @Test
+    public void testUpdateSettleTime() throws Exception {
+        tm.setTopologyUpdateDebounce(100, 2000);
+        assertEquals(Long.MAX_VALUE, tm.ldUpdates.getSettleTime(100, 2000));
+        assertEquals(tm.getTopologyComputeInterval(), tm.getNextRunDelay());
+
+        long before = System.currentTimeMillis();
+        tm.linkDiscoveryUpdate(new LDUpdate(DatapathId.of(1), OFPort.of(1),
+                DatapathId.of(2), OFPort.of(1),
+                LinkType.DIRECT_LINK, UpdateOperation.LINK_UPDATED));
+        long after = System.currentTimeMillis();
+        long settleTime = tm.ldUpdates.getSettleTime(100, 2000);
+        assertTrue(settleTime >= before + 100 && settleTime <= after + 100);
+        // the worker runs when the update settles, not on the next tick
+        assertTrue(tm.getNextRunDelay() <= 100);
+        assertFalse(tm.ldUpdates.isSettled(settleTime - 1, 100, 2000));
+        assertTrue(tm.ldUpdates.isSettled(settleTime, 100, 2000));
+    }
 }
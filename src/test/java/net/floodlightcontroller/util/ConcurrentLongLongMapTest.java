@@ -0,0 +1,97 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConcurrentLongLongMapTest {
+    @Test
+    public void testBasic() {
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+        assertEquals(ConcurrentLongLongMap.NO_VALUE, map.get(1));
+        assertEquals(ConcurrentLongLongMap.NO_VALUE, map.put(1, 10));
+        assertEquals(10, map.put(1, 11));
+        assertEquals(11, map.putIfAbsent(1, 12));
+        assertEquals(ConcurrentLongLongMap.NO_VALUE, map.putIfAbsent(-1, 0));
+        assertEquals(11, map.get(1));
+        assertEquals(0, map.get(-1));
+        assertEquals(2, map.size());
+
+        assertFalse(map.remove(1, 10));
+        assertTrue(map.remove(1, 11));
+        assertEquals(ConcurrentLongLongMap.NO_VALUE, map.get(1));
+        assertEquals(0, map.remove(-1));
+        assertTrue(map.isEmpty());
+
+        try {
+            map.put(2, ConcurrentLongLongMap.NO_VALUE);
+            fail("Expected IllegalArgumentException");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        // grow, remove with backward shifts and shrink, checking
+        // every step against a HashMap
+        ConcurrentLongLongMap map = new ConcurrentLongLongMap();
+        Map<Long, Long> expected = new HashMap<Long, Long>();
+        Random r = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            // a small key range so keys collide and are removed often
+            long key = r.nextInt(5000) * 1024L;
+            switch (r.nextInt(3)) {
+                case 0:
+                case 1:
+                    long value = r.nextInt(1000);
+                    Long old = expected.put(key, value);
+                    assertEquals(old == null ? ConcurrentLongLongMap.NO_VALUE
+                                             : old.longValue(),
+                                 map.put(key, value));
+                    break;
+                default:
+                    old = expected.remove(key);
+                    assertEquals(old == null ? ConcurrentLongLongMap.NO_VALUE
+                                             : old.longValue(),
+                                 map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Long> e : expected.entrySet())
+            assertEquals(e.getValue().longValue(), map.get(e.getKey()));
+
+        long[] values = map.values();
+        long[] expectedValues = new long[expected.size()];
+        int n = 0;
+        for (Long v : expected.values())
+            expectedValues[n++] = v;
+        Arrays.sort(values);
+        Arrays.sort(expectedValues);
+        assertArrayEquals(expectedValues, values);
+
+        for (Long key : expected.keySet())
+            map.remove(key);
+        assertTrue(map.isEmpty());
+    }
+
+    @Test
+    public void testObjectMapReplace() {
+        ConcurrentLongObjectMap<String> map =
+                new ConcurrentLongObjectMap<String>();
+        assertNull(map.putIfAbsent(7, "a"));
+        assertEquals("a", map.putIfAbsent(7, "b"));
+        assertFalse(map.replace(7, "b", "c"));
+        assertTrue(map.replace(7, "a", "c"));
+        assertEquals("c", map.get(7));
+        assertFalse(map.remove(7, "a"));
+        assertTrue(map.remove(7, "c"));
+        assertNull(map.get(7));
+        assertTrue(map.values().isEmpty());
+    }
+}
@@ -0,0 +1,111 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class ConcurrentLongObjectMapTest {
+    @Test
+    public void testBasic() {
+        ConcurrentLongObjectMap<String> map =
+                new ConcurrentLongObjectMap<String>();
+        assertNull(map.get(1));
+        assertNull(map.put(1, "a"));
+        assertEquals("a", map.put(1, "b"));
+        assertEquals("b", map.putIfAbsent(1, "c"));
+        assertNull(map.putIfAbsent(-1, "d"));
+        assertNull(map.putIfAbsent(Long.MIN_VALUE, "e"));
+        assertEquals("b", map.get(1));
+        assertEquals("d", map.get(-1));
+        assertEquals("e", map.get(Long.MIN_VALUE));
+        assertEquals(3, map.size());
+
+        assertFalse(map.remove(1, "a"));
+        assertFalse(map.remove(1, null));
+        assertTrue(map.remove(1, "b"));
+        assertNull(map.get(1));
+        assertEquals("d", map.remove(-1));
+        assertNull(map.remove(-1));
+        assertEquals(1, map.size());
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(Long.MIN_VALUE));
+
+        try {
+            map.put(2, null);
+            fail("Expected NullPointerException");
+        } catch (NullPointerException e) {
+            // expected
+        }
+        try {
+            map.replace(2, "a", null);
+            fail("Expected NullPointerException");
+        } catch (NullPointerException e) {
+            // expected
+        }
+    }
+
+    @Test
+    public void testAgainstHashMap() {
+        // grow, remove with backward shifts and shrink, checking
+        // every step against a HashMap
+        ConcurrentLongObjectMap<Integer> map =
+                new ConcurrentLongObjectMap<Integer>();
+        Map<Long, Integer> expected = new HashMap<Long, Integer>();
+        Random r = new Random(42);
+        for (int i = 0; i < 200000; i++) {
+            // a small key range so keys collide and are removed often
+            long key = r.nextInt(5000) * 1024L;
+            Integer value = r.nextInt(4);
+            Integer old = expected.get(key);
+            switch (r.nextInt(6)) {
+                case 0:
+                case 1:
+                    expected.put(key, value);
+                    assertEquals(old, map.put(key, value));
+                    break;
+                case 2:
+                    if (old == null)
+                        expected.put(key, value);
+                    assertEquals(old, map.putIfAbsent(key, value));
+                    break;
+                case 3:
+                    boolean replace = old != null && old.equals(value);
+                    if (replace)
+                        expected.put(key, value + 1);
+                    assertEquals(replace, map.replace(key, value, value + 1));
+                    break;
+                case 4:
+                    boolean remove = old != null && old.equals(value);
+                    if (remove)
+                        expected.remove(key);
+                    assertEquals(remove, map.remove(key, value));
+                    break;
+                default:
+                    expected.remove(key);
+                    assertEquals(old, map.remove(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (Map.Entry<Long, Integer> e : expected.entrySet())
+            assertEquals(e.getValue(), map.get(e.getKey()));
+
+        List<Integer> values = map.values();
+        List<Integer> expectedValues =
+                new ArrayList<Integer>(expected.values());
+        Collections.sort(values);
+        Collections.sort(expectedValues);
+        assertEquals(expectedValues, values);
+
+        for (Long key : expected.keySet())
+            map.remove(key);
+        assertTrue(map.isEmpty());
+    }
+}
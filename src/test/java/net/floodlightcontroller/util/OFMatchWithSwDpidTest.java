@@ -0,0 +1,51 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+import org.projectfloodlight.openflow.protocol.OFFactories;
+import org.projectfloodlight.openflow.protocol.OFFactory;
+import org.projectfloodlight.openflow.protocol.OFVersion;
+import org.projectfloodlight.openflow.protocol.match.Match;
+import org.projectfloodlight.openflow.protocol.match.MatchField;
+import org.projectfloodlight.openflow.types.DatapathId;
+import org.projectfloodlight.openflow.types.OFPort;
+
+public class OFMatchWithSwDpidTest {
+    private final OFFactory factory = OFFactories.getFactory(OFVersion.OF_13);
+
+    private Match match(int inPort) {
+        return factory.buildMatch()
+                .setExact(MatchField.IN_PORT, OFPort.of(inPort))
+                .build();
+    }
+
+    @Test
+    public void testEqualsAndHashCode() {
+        OFMatchWithSwDpid a = new OFMatchWithSwDpid(match(1), DatapathId.of(1));
+        OFMatchWithSwDpid b = new OFMatchWithSwDpid(match(1), DatapathId.of(1));
+        assertEquals(a, b);
+        assertEquals(a.hashCode(), b.hashCode());
+
+        assertFalse(a.equals(new OFMatchWithSwDpid(match(2), DatapathId.of(1))));
+        assertFalse(a.equals(new OFMatchWithSwDpid(match(1), DatapathId.of(2))));
+        assertFalse(a.equals(null));
+        assertFalse(a.equals(match(1)));
+    }
+
+    @Test
+    public void testNullFields() {
+        OFMatchWithSwDpid empty = new OFMatchWithSwDpid();
+        assertEquals(empty, new OFMatchWithSwDpid());
+        assertEquals(empty.hashCode(), new OFMatchWithSwDpid().hashCode());
+        assertFalse(empty.equals(
+                new OFMatchWithSwDpid(match(1), DatapathId.NONE)));
+
+        OFMatchWithSwDpid noDpid = new OFMatchWithSwDpid(match(1), null);
+        assertEquals(noDpid, new OFMatchWithSwDpid(match(1), null));
+        assertFalse(noDpid.equals(
+                new OFMatchWithSwDpid(match(1), DatapathId.of(1))));
+        assertFalse(new OFMatchWithSwDpid(match(1), DatapathId.of(1))
+                .equals(noDpid));
+    }
+}
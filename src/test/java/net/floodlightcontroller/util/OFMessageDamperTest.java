@@ -31,6 +31,9 @@ import org.projectfloodlight.openflow.protocol.OFVersion;
 import java.io.IOException;
 import java.util.EnumSet;
 
+import net.floodlightcontroller.debugcounter.DebugCounterServiceImpl;
+import net.floodlightcontroller.debugcounter.IDebugCounter;
+
 public class OFMessageDamperTest {
     OFFactory factory;
     OFMessageDamper damper;
@@ -152,4 +155,50 @@ public class OFMessageDamperTest {
         doWrite(true, sw1, hello2);
     }
     
+    @Test
+    public void testStatistics() throws IOException {
+        damper = new OFMessageDamper(100, 
+                                     EnumSet.of(OFType.ECHO_REQUEST),
+                                     1000);
+        DebugCounterServiceImpl debugCounters = new DebugCounterServiceImpl();
+        debugCounters.registerModule("damper");
+        IDebugCounter dampened =
+                debugCounters.registerCounter("damper", "dampened", "");
+        IDebugCounter written =
+                debugCounters.registerCounter("damper", "written", "");
+        IDebugCounter fingerprintNanos =
+                debugCounters.registerCounter("damper", "fingerprint-ns", "");
+        damper.setDebugCounters(dampened, written, fingerprintNanos);
+        doWrite(true, sw1, echoRequst1);
+        doWrite(false, sw1, echoRequst1Clone);
+        doWrite(true, sw2, echoRequst1);
+        doWrite(true, sw1, hello1);
+        
+        assertEquals(1, damper.getDampenedCount());
+        // hellos are not dampened, so they are not counted
+        assertEquals(2, damper.getWrittenCount());
+        assertTrue(damper.getFingerprintNanos() > 0);
+        assertEquals(1, dampened.getCounterValue());
+        assertEquals(2, written.getCounterValue());
+        assertEquals(damper.getFingerprintNanos(),
+                     fingerprintNanos.getCounterValue());
+    }
+    
+    @Test
+    public void testOverCapacity() throws IOException {
+        damper = new OFMessageDamper(100, 
+                                     EnumSet.of(OFType.ECHO_REQUEST),
+                                     1000);
+        OFEchoRequest last = null;
+        for (int i = 0; i < 1000; i++) {
+            last = factory.buildEchoRequest()
+                    .setData(new byte[] { (byte) (i >> 8), (byte) i })
+                    .build();
+            doWrite(true, sw1, last);
+        }
+        // the most recent message is still known
+        doWrite(false, sw1, last);
+        assertEquals(1000, damper.getWrittenCount());
+    }
+    
 }
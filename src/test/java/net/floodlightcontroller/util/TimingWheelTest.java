@@ -0,0 +1,65 @@
+package net.floodlightcontroller.util;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TimingWheelTest {
+    @Test
+    public void testDueOnlyAfterDeadline() {
+        TimingWheel wheel = new TimingWheel(10, 1000);
+        wheel.schedule(1, 1005);
+        wheel.schedule(2, 1010);
+        wheel.schedule(3, 500);
+        assertEquals(3, wheel.size());
+
+        // already overdue
+        assertArrayEquals(new long[] { 3 }, wheel.advance(1000));
+        // 1005 is rounded up to the tick at 1010
+        assertArrayEquals(new long[0], wheel.advance(1009));
+        long[] due = wheel.advance(1010);
+        assertEquals(2, due.length);
+        assertEquals(0, wheel.size());
+        assertArrayEquals(new long[0], wheel.advance(100000));
+    }
+
+    @Test
+    public void testCascade() {
+        // deadlines spread over several levels, advanced in uneven steps
+        long tick = 7;
+        long start = 123456;
+        TimingWheel wheel = new TimingWheel(tick, start);
+        Random r = new Random(7);
+        int n = 5000;
+        long[] deadlines = new long[n];
+        for (int i = 0; i < n; i++) {
+            deadlines[i] = start + (long)(r.nextDouble() * r.nextDouble() *
+                                          tick * 300000);
+            wheel.schedule(i, deadlines[i]);
+        }
+
+        boolean[] seen = new boolean[n];
+        int count = 0;
+        long now = start;
+        while (count < n) {
+            now += 1 + r.nextInt((int)tick * 500);
+            for (long id : wheel.advance(now)) {
+                int i = (int)id;
+                assertFalse(seen[i]);
+                seen[i] = true;
+                count += 1;
+                assertTrue(deadlines[i] <= now);
+            }
+            // nothing that is due may be left behind
+            for (int i = 0; i < n; i++) {
+                if (!seen[i])
+                    assertTrue(deadlines[i] > now - tick);
+            }
+            if (now > start + tick * 400000)
+                fail("Not all ids fell due");
+        }
+        assertEquals(0, wheel.size());
+    }
+}
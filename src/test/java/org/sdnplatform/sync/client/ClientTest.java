@@ -85,8 +85,10 @@ public class ClientTest {
 
     @After
     public void tearDown() {
-        if (null != tp)
+        if (null != tp) {
             tp.getScheduledExecutor().shutdownNow();
+            tp.getScheduledExecutor(SyncManager.EXECUTOR_NAME).shutdownNow();
+        }
         tp = null;
 
         if (null != syncManager)
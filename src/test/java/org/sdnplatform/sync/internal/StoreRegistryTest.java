@@ -0,0 +1,119 @@
+package org.sdnplatform.sync.internal;
+
+import static org.junit.Assert.*;
+import static org.sdnplatform.sync.internal.TUtils.*;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.sdnplatform.sync.Versioned;
+import org.sdnplatform.sync.internal.StoreRegistry.Hint;
+import org.sdnplatform.sync.internal.util.ByteArray;
+
+public class StoreRegistryTest {
+    private StoreRegistry registry;
+
+    @Before
+    public void setUp() {
+        registry = new StoreRegistry(null, null, 4);
+    }
+
+    @Test
+    public void testMerge() throws Exception {
+        ByteArray key = new ByteArray(new byte[] {1});
+        registry.queueHint("store", key,
+                           new Versioned<byte[]>(new byte[] {1}, getClock(1)));
+        registry.queueHint("store", key,
+                           new Versioned<byte[]>(new byte[] {2}, getClock(1, 1)));
+        registry.queueHint("store", key,
+                           new Versioned<byte[]>(new byte[] {3}, getClock(2)));
+        // obsolete
+        registry.queueHint("store", key,
+                           new Versioned<byte[]>(new byte[] {4}, getClock()));
+
+        int shard = -1;
+        for (int i = 0; i < registry.getHintShards(); i++) {
+            List<Hint> hints = new ArrayList<Hint>();
+            // only the shard holding the key has a hint to take
+            if (takeIfAvailable(i, hints)) {
+                assertEquals(-1, shard);
+                shard = i;
+                assertEquals(1, hints.size());
+                List<Versioned<byte[]>> values = hints.get(0).getValues();
+                assertEquals(2, values.size());
+                assertEquals(2, values.get(0).getValue()[0]);
+                assertEquals(3, values.get(1).getValue()[0]);
+            }
+        }
+        assertTrue(shard >= 0);
+    }
+
+    /**
+     * Take hints from a shard, giving up if none are available
+     */
+    private boolean takeIfAvailable(final int shard, final List<Hint> hints)
+            throws InterruptedException {
+        final CountDownLatch taken = new CountDownLatch(1);
+        Thread t = new Thread() {
+            @Override
+            public void run() {
+                try {
+                    registry.takeHints(shard, hints, 10);
+                    taken.countDown();
+                } catch (InterruptedException e) {
+                    // no hints
+                }
+            }
+        };
+        t.start();
+        t.join(100);
+        t.interrupt();
+        t.join();
+        return taken.getCount() == 0;
+    }
+
+    @Test
+    public void testConcurrentQueue() throws Exception {
+        final int threads = 4;
+        final int keys = 1000;
+        final CountDownLatch done = new CountDownLatch(threads);
+        for (int t = 0; t < threads; t++) {
+            final int node = t;
+            new Thread() {
+                @Override
+                public void run() {
+                    for (int i = 0; i < keys; i++) {
+                        ByteArray key = new ByteArray(new byte[] {
+                                (byte)(i >> 8), (byte)i});
+                        registry.queueHint("store", key,
+                                new Versioned<byte[]>(new byte[] {(byte)node},
+                                                      getClock(node)));
+                    }
+                    done.countDown();
+                }
+            }.start();
+        }
+        done.await();
+
+        Set<ByteArray> seen = new HashSet<ByteArray>();
+        int values = 0;
+        for (int i = 0; i < registry.getHintShards(); i++) {
+            List<Hint> hints = new ArrayList<Hint>();
+            while (takeIfAvailable(i, hints)) {
+                // keep draining
+            }
+            for (Hint h : hints) {
+                assertTrue(seen.add(h.getHintKey().getKey()));
+                values += h.getValues().size();
+            }
+        }
+        // every key is sent once with the concurrent values of all threads
+        assertEquals(keys, seen.size());
+        assertEquals(keys * threads, values);
+    }
+}
@@ -124,6 +124,7 @@ public class SyncManagerTest {
     @After
     public void tearDown() {
         tp.getScheduledExecutor().shutdownNow();
+        tp.getScheduledExecutor(SyncManager.EXECUTOR_NAME).shutdownNow();
         tp = null;
 
         if (syncManagers != null) {
@@ -168,6 +169,25 @@ public class SyncManagerTest {
         
     }
 
+    @Test
+    public void testPutAll() throws Exception {
+        AbstractSyncManager sync = syncManagers[0];
+        IStoreClient<Key, TBean> testClient =
+                sync.getStoreClient("global", Key.class, TBean.class);
+        Key k1 = new Key("com.bigswitch.bigsync.internal", "putall1");
+        Key k2 = new Key("com.bigswitch.bigsync.internal", "putall2");
+        testClient.put(k1, new TBean("old", 1));
+
+        HashMap<Key, TBean> values = new HashMap<Key, TBean>();
+        values.put(k1, new TBean("new", 2));
+        values.put(k2, new TBean("new", 3));
+        testClient.putAll(values);
+
+        // existing values are clobbered like with put
+        assertEquals(new TBean("new", 2), testClient.getValue(k1));
+        assertEquals(new TBean("new", 3), testClient.getValue(k2));
+    }
+
     @Test
     public void testIterator() throws Exception {
         AbstractSyncManager sync = syncManagers[0];
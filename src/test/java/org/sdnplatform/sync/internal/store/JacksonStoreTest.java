@@ -2,10 +2,21 @@ package org.sdnplatform.sync.internal.store;
 
 import java.util.ArrayList;
 import java.util.List;
+
+import org.junit.Test;
+import org.sdnplatform.sync.IClosableIterator;
+import org.sdnplatform.sync.ISyncCodec;
+import org.sdnplatform.sync.SyncCodecs;
+import org.sdnplatform.sync.Versioned;
 import org.sdnplatform.sync.internal.store.IStore;
 import org.sdnplatform.sync.internal.store.InMemoryStorageEngine;
 import org.sdnplatform.sync.internal.store.JacksonStore;
 import org.sdnplatform.sync.internal.util.ByteArray;
+import org.sdnplatform.sync.internal.version.VectorClock;
+
+import com.fasterxml.jackson.databind.JsonNode;
+
+import static org.junit.Assert.*;
 
 
 public class JacksonStoreTest extends AbstractStoreT<Key, TBean> {
@@ -40,4 +51,57 @@ public class JacksonStoreTest extends AbstractStoreT<Key, TBean> {
         }
         return k;
     }
+
+    @Test
+    public void testCodecs() throws Exception {
+        IStore<ByteArray,byte[]> ims =
+                new InMemoryStorageEngine<ByteArray,byte[]>("test");
+        ISyncCodec[] codecs = {null, SyncCodecs.SMILE,
+                               SyncCodecs.SMILE_POSITIONAL};
+        List<Key> keys = getKeys(codecs.length);
+        List<TBean> values = getValues(codecs.length);
+
+        // each store writes with its own codec
+        for (int i = 0; i < codecs.length; i++) {
+            IStore<Key,TBean> js = new JacksonStore<Key, TBean>(ims,
+                    Key.class, TBean.class, codecs[i]);
+            js.put(keys.get(i),
+                   new Versioned<TBean>(values.get(i), new VectorClock()));
+        }
+
+        // and reads the values written with every codec
+        for (ISyncCodec codec : codecs) {
+            IStore<Key,TBean> js = new JacksonStore<Key, TBean>(ims,
+                    Key.class, TBean.class, codec);
+            for (int i = 0; i < codecs.length; i++) {
+                List<Versioned<TBean>> r = js.get(keys.get(i));
+                assertEquals(1, r.size());
+                assertEquals(values.get(i), r.get(0).getValue());
+            }
+        }
+
+        // the same key has the same bytes whatever the codec
+        assertEquals(codecs.length, countEntries(ims));
+
+        IStore<Key,JsonNode> tree = new JacksonStore<Key, JsonNode>(ims,
+                Key.class, JsonNode.class, SyncCodecs.SMILE);
+        JsonNode positional = tree.get(keys.get(2)).get(0).getValue();
+        assertTrue(positional.isArray());
+        assertEquals(2, positional.get(0).asInt());
+        assertEquals("2", positional.get(1).asText());
+    }
+
+    private static int countEntries(IStore<ByteArray,byte[]> store) {
+        int count = 0;
+        IClosableIterator<?> it = store.entries();
+        try {
+            while (it.hasNext()) {
+                it.next();
+                count += 1;
+            }
+        } finally {
+            it.close();
+        }
+        return count;
+    }
 }
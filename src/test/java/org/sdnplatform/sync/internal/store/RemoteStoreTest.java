@@ -56,6 +56,7 @@ public class RemoteStoreTest extends AbstractStoreT<ByteArray,byte[]> {
     @After
     public void tearDown() {
         tp.getScheduledExecutor().shutdownNow();
+        tp.getScheduledExecutor(SyncManager.EXECUTOR_NAME).shutdownNow();
         tp = null;
         syncManager.shutdown();
         remoteSyncManager.shutdown();